@@ -24,6 +24,7 @@ import com.ericsson.bss.cassandra.ecchronos.connection.StatementDecorator;
 import com.ericsson.bss.cassandra.ecchronos.core.*;
 import com.ericsson.bss.cassandra.ecchronos.core.metrics.TableRepairMetrics;
 import com.ericsson.bss.cassandra.ecchronos.core.metrics.TableRepairMetricsImpl;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.RepairNotificationDispatcher;
 import com.ericsson.bss.cassandra.ecchronos.core.scheduling.RunPolicy;
 import com.ericsson.bss.cassandra.ecchronos.core.scheduling.ScheduleManager;
 import com.ericsson.bss.cassandra.ecchronos.core.scheduling.ScheduleManagerImpl;
@@ -49,6 +50,7 @@ public class ECChronosInternals implements Closeable
 
     private final TableReferenceFactory myTableReferenceFactory;
     private final JmxProxyFactory myJmxProxyFactory;
+    private final RepairNotificationDispatcher myRepairNotificationDispatcher;
 
     private final CASLockFactory myLockFactory;
 
@@ -60,6 +62,8 @@ public class ECChronosInternals implements Closeable
                 .withJmxConnectionProvider(jmxConnectionProvider)
                 .build();
 
+        myRepairNotificationDispatcher = new RepairNotificationDispatcher();
+
         myHostStatesImpl = HostStatesImpl.builder()
                 .withJmxProxyFactory(myJmxProxyFactory)
                 .build();
@@ -69,6 +73,7 @@ public class ECChronosInternals implements Closeable
                 .withHostStates(myHostStatesImpl)
                 .withStatementDecorator(statementDecorator)
                 .withKeyspaceName(configuration.getLockFactory().getCas().getKeyspace())
+                .withMetricRegistry(metricRegistry)
                 .build();
 
         Host host = nativeConnectionProvider.getLocalHost();
@@ -101,6 +106,12 @@ public class ECChronosInternals implements Closeable
                 .withLockFactory(myLockFactory)
                 .withRunInterval(configuration.getScheduler().getFrequency().getInterval(TimeUnit.MILLISECONDS),
                         TimeUnit.MILLISECONDS)
+                .withWorkers(configuration.getScheduler().getWorkers())
+                .withJobOrdering(configuration.getScheduler().getOrdering())
+                .withMaxTasksPerLock(configuration.getScheduler().getMaxTasksPerLock())
+                .withMaxLockHoldTime(configuration.getScheduler().getMaxLockHoldTime().getInterval(TimeUnit.MILLISECONDS),
+                        TimeUnit.MILLISECONDS)
+                .withMetricRegistry(metricRegistry)
                 .build();
     }
 
@@ -139,6 +150,11 @@ public class ECChronosInternals implements Closeable
         return myJmxProxyFactory;
     }
 
+    public RepairNotificationDispatcher getRepairNotificationDispatcher()
+    {
+        return myRepairNotificationDispatcher;
+    }
+
     public TableStorageStates getTableStorageStates()
     {
         return myTableStorageStatesImpl;
@@ -171,6 +187,8 @@ public class ECChronosInternals implements Closeable
         myLockFactory.close();
 
         myHostStatesImpl.close();
+
+        myRepairNotificationDispatcher.close();
     }
 
     private static class NoOpRepairMetrics implements TableRepairMetrics
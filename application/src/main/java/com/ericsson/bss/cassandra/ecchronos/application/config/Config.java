@@ -15,7 +15,9 @@
 package com.ericsson.bss.cassandra.ecchronos.application.config; // NOPMD
 
 import java.io.File;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
@@ -30,6 +32,7 @@ import com.ericsson.bss.cassandra.ecchronos.connection.JmxConnectionProvider;
 import com.ericsson.bss.cassandra.ecchronos.connection.NativeConnectionProvider;
 import com.ericsson.bss.cassandra.ecchronos.connection.StatementDecorator;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.RepairLockType;
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.JobOrdering;
 
 public class Config
 {
@@ -305,6 +308,8 @@ public class Config
     {
         private Class<? extends AbstractRepairConfigurationProvider> provider = FileBasedRepairConfiguration.class;
         private RepairLockType lock_type = RepairLockType.VNODE;
+        private int locks_per_resource = 1;
+        private Map<String, Integer> data_center_locks_per_resource = new HashMap<>();
         private Interval history_lookback = new Interval(30, TimeUnit.DAYS);
         private RepairHistory history = new RepairHistory();
 
@@ -323,6 +328,26 @@ public class Config
             this.lock_type = RepairLockType.valueOf(lock_type.toUpperCase(Locale.US));
         }
 
+        public int getLocksPerResource()
+        {
+            return locks_per_resource;
+        }
+
+        public void setLocks_per_resource(int locks_per_resource)
+        {
+            this.locks_per_resource = locks_per_resource;
+        }
+
+        public Map<String, Integer> getDataCenterLocksPerResource()
+        {
+            return data_center_locks_per_resource;
+        }
+
+        public void setData_center_locks_per_resource(Map<String, Integer> data_center_locks_per_resource)
+        {
+            this.data_center_locks_per_resource = data_center_locks_per_resource;
+        }
+
         public void setHistory_lookback(Interval history_lookback)
         {
             this.history_lookback = history_lookback;
@@ -509,6 +534,10 @@ public class Config
     public static class SchedulerConfig
     {
         private Interval frequency = new Interval(30, TimeUnit.SECONDS);
+        private int workers = 1;
+        private JobOrdering ordering = JobOrdering.PRIORITY;
+        private int max_tasks_per_lock = 1;
+        private Interval max_lock_hold_time = new Interval(5, TimeUnit.MINUTES);
 
         public Interval getFrequency()
         {
@@ -519,6 +548,46 @@ public class Config
         {
             this.frequency = frequency;
         }
+
+        public int getWorkers()
+        {
+            return workers;
+        }
+
+        public void setWorkers(int workers)
+        {
+            this.workers = workers;
+        }
+
+        public JobOrdering getOrdering()
+        {
+            return ordering;
+        }
+
+        public void setOrdering(String ordering)
+        {
+            this.ordering = JobOrdering.valueOf(ordering.toUpperCase(Locale.US));
+        }
+
+        public int getMaxTasksPerLock()
+        {
+            return max_tasks_per_lock;
+        }
+
+        public void setMax_tasks_per_lock(int max_tasks_per_lock)
+        {
+            this.max_tasks_per_lock = max_tasks_per_lock;
+        }
+
+        public Interval getMaxLockHoldTime()
+        {
+            return max_lock_hold_time;
+        }
+
+        public void setMax_lock_hold_time(Interval max_lock_hold_time)
+        {
+            this.max_lock_hold_time = max_lock_hold_time;
+        }
     }
 
     public static class RestServerConfig
@@ -26,6 +26,10 @@ public class RepairConfig
             new Config.Interval(10, TimeUnit.DAYS));
     private double unwind_ratio = 0.0d;
     private long size_target = RepairConfiguration.FULL_REPAIR_SIZE;
+    private int session_concurrency = 1;
+    private int max_ranges_per_session = 1;
+    private Config.Interval session_time_target = new Config.Interval(15, TimeUnit.MINUTES);
+    private long coalescing_size = RepairConfiguration.NO_COALESCING;
 
     public void setInterval(Config.Interval interval)
     {
@@ -54,6 +58,33 @@ public class RepairConfig
         }
     }
 
+    public void setSession_concurrency(int session_concurrency)
+    {
+        this.session_concurrency = session_concurrency;
+    }
+
+    public void setMax_ranges_per_session(int max_ranges_per_session)
+    {
+        this.max_ranges_per_session = max_ranges_per_session;
+    }
+
+    public void setSession_time_target(Config.Interval session_time_target)
+    {
+        this.session_time_target = session_time_target;
+    }
+
+    public void setCoalescing_size(String coalescing_size)
+    {
+        if (coalescing_size == null)
+        {
+            this.coalescing_size = RepairConfiguration.NO_COALESCING;
+        }
+        else
+        {
+            this.coalescing_size = UnitConverter.toBytes(coalescing_size);
+        }
+    }
+
     public RepairConfiguration asRepairConfiguration()
     {
         return RepairConfiguration.newBuilder()
@@ -65,6 +96,11 @@ public class RepairConfig
                         TimeUnit.MILLISECONDS)
                 .withRepairUnwindRatio(unwind_ratio)
                 .withTargetRepairSizeInBytes(size_target)
+                .withRepairSessionConcurrency(session_concurrency)
+                .withMaxRangesPerSession(max_ranges_per_session)
+                .withTargetSessionTime(session_time_target.getInterval(TimeUnit.MILLISECONDS),
+                        TimeUnit.MILLISECONDS)
+                .withCoalescingSizeInBytes(coalescing_size)
                 .build();
     }
 }
@@ -65,6 +65,11 @@ public class ECChronos implements Closeable
 
         Config.GlobalRepairConfig repairConfig = configuration.getRepair();
 
+        RepairLockFactoryImpl.Builder repairLockFactoryBuilder = RepairLockFactoryImpl.builder()
+                .withLocksPerResource(repairConfig.getLocksPerResource());
+        repairConfig.getDataCenterLocksPerResource().forEach(repairLockFactoryBuilder::withLocksPerResource);
+        RepairLockFactory repairLockFactory = repairLockFactoryBuilder.build();
+
         RepairStateFactoryImpl repairStateFactoryImpl = RepairStateFactoryImpl.builder()
                 .withReplicationState(replicationState)
                 .withHostStates(myECChronosInternals.getHostStates())
@@ -80,11 +85,13 @@ public class ECChronos implements Closeable
 
         myRepairSchedulerImpl = RepairSchedulerImpl.builder()
                 .withJmxProxyFactory(myECChronosInternals.getJmxProxyFactory())
+                .withRepairNotificationDispatcher(myECChronosInternals.getRepairNotificationDispatcher())
                 .withFaultReporter(repairFaultReporter)
                 .withTableRepairMetrics(myECChronosInternals.getTableRepairMetrics())
                 .withScheduleManager(myECChronosInternals.getScheduleManager())
                 .withRepairStateFactory(repairStateFactoryImpl)
                 .withRepairLockType(repairConfig.getLockType())
+                .withRepairLockFactory(repairLockFactory)
                 .withTableStorageStates(myECChronosInternals.getTableStorageStates())
                 .withRepairPolicies(Collections.singletonList(myTimeBasedRunPolicy))
                 .withRepairHistory(repairHistory)
@@ -105,8 +112,10 @@ public class ECChronos implements Closeable
                 .withScheduleManager(myECChronosInternals.getScheduleManager())
                 .withTableRepairMetrics(myECChronosInternals.getTableRepairMetrics())
                 .withJmxProxyFactory(myECChronosInternals.getJmxProxyFactory())
+                .withRepairNotificationDispatcher(myECChronosInternals.getRepairNotificationDispatcher())
                 .withReplicationState(replicationState)
                 .withRepairLockType(repairConfig.getLockType())
+                .withRepairLockFactory(repairLockFactory)
                 .withMetadata(metadata)
                 .withRepairConfiguration(repairConfig.asRepairConfiguration())
                 .withRepairHistory(repairHistory)
@@ -15,6 +15,7 @@
 package com.ericsson.bss.cassandra.ecchronos.application.config;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
 
 import java.io.File;
 import java.util.Optional;
@@ -36,6 +37,7 @@ import com.ericsson.bss.cassandra.ecchronos.connection.StatementDecorator;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.RepairConfiguration;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.RepairLockType;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.RepairOptions;
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.JobOrdering;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.UnitConverter;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -74,12 +76,18 @@ public class TestConfig
                 .withRepairErrorTime(72, TimeUnit.HOURS)
                 .withRepairUnwindRatio(0.5d)
                 .withTargetRepairSizeInBytes(UnitConverter.toBytes("5m"))
+                .withRepairSessionConcurrency(4)
+                .withMaxRangesPerSession(8)
+                .withTargetSessionTime(5, TimeUnit.MINUTES)
+                .withCoalescingSizeInBytes(UnitConverter.toBytes("10m"))
                 .build();
 
         Config.GlobalRepairConfig repairConfig = config.getRepair();
         assertThat(repairConfig.asRepairConfiguration()).isEqualTo(expectedConfiguration);
 
         assertThat(repairConfig.getLockType()).isEqualTo(RepairLockType.DATACENTER);
+        assertThat(repairConfig.getLocksPerResource()).isEqualTo(2);
+        assertThat(repairConfig.getDataCenterLocksPerResource()).containsOnly(entry("dc1", 3));
         assertThat(repairConfig.getProvider()).isEqualTo(TestRepairConfigurationProvider.class);
 
         assertThat(repairConfig.getHistoryLookback().getInterval(TimeUnit.DAYS)).isEqualTo(13);
@@ -98,6 +106,10 @@ public class TestConfig
 
         Config.SchedulerConfig schedulerConfig = config.getScheduler();
         assertThat(schedulerConfig.getFrequency().getInterval(TimeUnit.SECONDS)).isEqualTo(60);
+        assertThat(schedulerConfig.getWorkers()).isEqualTo(4);
+        assertThat(schedulerConfig.getOrdering()).isEqualTo(JobOrdering.DEADLINE);
+        assertThat(schedulerConfig.getMaxTasksPerLock()).isEqualTo(10);
+        assertThat(schedulerConfig.getMaxLockHoldTime().getInterval(TimeUnit.MINUTES)).isEqualTo(2);
 
         Config.RestServerConfig restServerConfig = config.getRestServer();
         assertThat(restServerConfig.getHost()).isEqualTo("127.0.0.2");
@@ -142,6 +154,8 @@ public class TestConfig
         assertThat(repairConfig.asRepairConfiguration()).isEqualTo(expectedConfiguration);
 
         assertThat(repairConfig.getLockType()).isEqualTo(RepairLockType.VNODE);
+        assertThat(repairConfig.getLocksPerResource()).isEqualTo(1);
+        assertThat(repairConfig.getDataCenterLocksPerResource()).isEmpty();
         assertThat(repairConfig.getProvider()).isEqualTo(FileBasedRepairConfiguration.class);
 
         assertThat(repairConfig.getHistoryLookback().getInterval(TimeUnit.DAYS)).isEqualTo(30);
@@ -160,6 +174,10 @@ public class TestConfig
 
         Config.SchedulerConfig schedulerConfig = config.getScheduler();
         assertThat(schedulerConfig.getFrequency().getInterval(TimeUnit.SECONDS)).isEqualTo(30);
+        assertThat(schedulerConfig.getWorkers()).isEqualTo(1);
+        assertThat(schedulerConfig.getOrdering()).isEqualTo(JobOrdering.PRIORITY);
+        assertThat(schedulerConfig.getMaxTasksPerLock()).isEqualTo(1);
+        assertThat(schedulerConfig.getMaxLockHoldTime().getInterval(TimeUnit.MINUTES)).isEqualTo(5);
 
         Config.RestServerConfig restServerConfig = config.getRestServer();
         assertThat(restServerConfig.getHost()).isEqualTo("localhost");
@@ -204,6 +222,8 @@ public class TestConfig
         assertThat(repairConfig.asRepairConfiguration()).isEqualTo(expectedConfiguration);
 
         assertThat(repairConfig.getLockType()).isEqualTo(RepairLockType.VNODE);
+        assertThat(repairConfig.getLocksPerResource()).isEqualTo(1);
+        assertThat(repairConfig.getDataCenterLocksPerResource()).isEmpty();
         assertThat(repairConfig.getProvider()).isEqualTo(FileBasedRepairConfiguration.class);
 
         assertThat(repairConfig.getHistoryLookback().getInterval(TimeUnit.DAYS)).isEqualTo(30);
@@ -222,6 +242,10 @@ public class TestConfig
 
         Config.SchedulerConfig schedulerConfig = config.getScheduler();
         assertThat(schedulerConfig.getFrequency().getInterval(TimeUnit.SECONDS)).isEqualTo(30);
+        assertThat(schedulerConfig.getWorkers()).isEqualTo(1);
+        assertThat(schedulerConfig.getOrdering()).isEqualTo(JobOrdering.PRIORITY);
+        assertThat(schedulerConfig.getMaxTasksPerLock()).isEqualTo(1);
+        assertThat(schedulerConfig.getMaxLockHoldTime().getInterval(TimeUnit.MINUTES)).isEqualTo(5);
 
         Config.RestServerConfig restServerConfig = config.getRestServer();
         assertThat(restServerConfig.getHost()).isEqualTo("localhost");
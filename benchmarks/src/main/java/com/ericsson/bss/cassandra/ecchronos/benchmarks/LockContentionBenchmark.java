@@ -0,0 +1,202 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.benchmarks;
+
+import java.time.Clock;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import com.ericsson.bss.cassandra.ecchronos.core.InMemoryLockFactory;
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.RepairLockFactoryImpl;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.RepairResource;
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.LockFactory;
+
+/**
+ * Benchmarks acquiring repair locks for simulated nodes competing for the same resources.
+ * <p>
+ * Each benchmark thread is one node with its own {@link InMemoryLockFactory}, sharing a lock table with the other
+ * nodes. The nodes repeatedly lock the repair resources of a random set of replicas using {@link RepairLockFactoryImpl}
+ * and release them directly. Like the priority of a repair job, the priority of a node grows with the number of
+ * failed attempts since it last acquired the locks.
+ * <p>
+ * The number of acquired and failed locks is reported as secondary results and the number of acquired locks per node
+ * is printed after each trial to show the fairness between the nodes.
+ * The lock table uses a short TTL so that priorities announced by nodes that failed to lock expire during the trial.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class LockContentionBenchmark
+{
+    private static final String DATA_CENTER = "dc1";
+    private static final int REPLICAS = 3;
+    private static final long LOCK_TTL_IN_MS = 100;
+    private static final long FAILURE_CACHE_EXPIRY_IN_MS = 10;
+    private static final Map<String, String> METADATA = Collections.emptyMap();
+
+    @Param({"8", "64"})
+    public int nodes;
+
+    @Param({"1", "2"})
+    public int locksPerResource;
+
+    @Param({"0", "500"})
+    public long latencyInMicros;
+
+    @Param({"0.0", "0.01"})
+    public double failureRate;
+
+    private InMemoryLockFactory.LockTable myLockTable;
+    private RepairLockFactoryImpl myRepairLockFactory;
+    private final ConcurrentMap<Integer, LongAdder> myAcquiredLocks = new ConcurrentHashMap<>();
+
+    @Setup
+    public void setup()
+    {
+        myLockTable = new InMemoryLockFactory.LockTable(Clock.systemUTC(), LOCK_TTL_IN_MS, TimeUnit.MILLISECONDS);
+        myRepairLockFactory = RepairLockFactoryImpl.builder()
+                .withLocksPerResource(locksPerResource)
+                .build();
+        myAcquiredLocks.clear();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        System.out.println("Acquired locks per node: " + new TreeMap<>(myAcquiredLocks));
+    }
+
+    /**
+     * Lock and release the repair resources of a random set of replicas.
+     */
+    @Benchmark
+    public boolean lock(Node node)
+    {
+        try (LockFactory.DistributedLock lock = myRepairLockFactory.getLock(node.myLockFactory, node.nextRepairResources(nodes),
+                METADATA, node.nextPriority()))
+        {
+            node.acquired();
+            return true;
+        }
+        catch (LockException e)
+        {
+            node.failed();
+            return false;
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Node
+    {
+        public long acquired;
+        public long failed;
+
+        private InMemoryLockFactory myLockFactory;
+        private Random myRandom;
+        private LongAdder myAcquiredLocks;
+        private int myFailedAttempts;
+
+        @Setup
+        public void setup(LockContentionBenchmark benchmark, ThreadParams threadParams)
+        {
+            int node = threadParams.getThreadIndex();
+
+            myRandom = new Random(node);
+            myLockFactory = InMemoryLockFactory.builder()
+                    .withLockTable(benchmark.myLockTable)
+                    .withLatency(benchmark.latencyInMicros, TimeUnit.MICROSECONDS)
+                    .withFailureRate(benchmark.failureRate)
+                    .withRandom(new Random(node))
+                    .withFailureCacheExpiry(FAILURE_CACHE_EXPIRY_IN_MS, TimeUnit.MILLISECONDS)
+                    .build();
+            myAcquiredLocks = benchmark.myAcquiredLocks.computeIfAbsent(node, n -> new LongAdder());
+        }
+
+        @Setup(Level.Iteration)
+        public void resetCounters()
+        {
+            acquired = 0;
+            failed = 0;
+        }
+
+        @TearDown
+        public void tearDown()
+        {
+            myLockFactory.close();
+        }
+
+        Set<RepairResource> nextRepairResources(int nodes)
+        {
+            Set<RepairResource> repairResources = new HashSet<>();
+            int first = myRandom.nextInt(nodes);
+
+            for (int i = 0; i < REPLICAS; i++)
+            {
+                repairResources.add(new RepairResource(DATA_CENTER, "node-" + ((first + i) % nodes)));
+            }
+
+            return repairResources;
+        }
+
+        int nextPriority()
+        {
+            return myFailedAttempts + 1;
+        }
+
+        void acquired()
+        {
+            acquired++;
+            myAcquiredLocks.increment();
+            myFailedAttempts = 0;
+        }
+
+        void failed()
+        {
+            failed++;
+            myFailedAttempts++;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.VnodeRepairState;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
+
+/**
+ * Benchmarks the token range calculations of {@link LongTokenRange} for all vnodes of the local node.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LongTokenRangeBenchmark
+{
+    private static final int SUB_RANGES_PER_VNODE = 4;
+
+    @Param({"2", "4"})
+    public int dataCenters;
+
+    private List<LongTokenRange> myVnodes;
+    private List<LongTokenRange> mySubRanges;
+
+    @Setup
+    public void setup()
+    {
+        Topology topology = Topology.create(dataCenters, 6, 3, 0);
+
+        myVnodes = topology.getLocalVnodes(VnodeRepairState.UNREPAIRED).stream()
+                .map(VnodeRepairState::getTokenRange)
+                .collect(Collectors.toList());
+        mySubRanges = topology.getLocalSubRanges(SUB_RANGES_PER_VNODE, VnodeRepairState.UNREPAIRED, 0).stream()
+                .map(VnodeRepairState::getTokenRange)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public void rangeSize(Blackhole blackhole)
+    {
+        for (LongTokenRange vnode : myVnodes)
+        {
+            blackhole.consume(vnode.rangeSize());
+        }
+    }
+
+    /**
+     * Check every sub range against every vnode, which is the access pattern used when mapping repaired sub ranges to
+     * their vnodes.
+     */
+    @Benchmark
+    public void isCovering(Blackhole blackhole)
+    {
+        for (LongTokenRange subRange : mySubRanges)
+        {
+            for (LongTokenRange vnode : myVnodes)
+            {
+                blackhole.consume(vnode.isCovering(subRange));
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.ericsson.bss.cassandra.ecchronos.core.repair.RepairProgressParser;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.VnodeRepairState;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.TokenRangeIndex;
+
+/**
+ * Benchmarks the handling of the progress messages of finished repair sessions for all sub ranges of the local node,
+ * comparing the {@link RepairProgressParser} and {@link TokenRangeIndex} to matching the messages with regular expressions.
+ * <p>
+ * Run with the GC profiler to compare the allocation rate of the two approaches.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RepairProgressBenchmark
+{
+    private static final int SUB_RANGES_PER_VNODE = 4;
+
+    private static final Pattern REPAIR_PATTERN = Pattern.compile("Repair session [0-9a-zA-Z-]+ for range \\[((\\([-]?[0-9]+,[-]?[0-9]+\\](, )?)+)\\] finished");
+    private static final Pattern RANGE_PATTERN = Pattern.compile("\\(([-]?[0-9]+),([-]?[0-9]+)\\]");
+
+    @Param({"2", "4"})
+    public int dataCenters;
+
+    @Param({"1", "8"})
+    public int rangesPerMessage;
+
+    private List<String> myMessages;
+    private Map<LongTokenRange, LongTokenRange> myRangeMap;
+    private TokenRangeIndex<LongTokenRange> myRangeIndex;
+
+    private final RepairProgressParser myParser = new RepairProgressParser();
+
+    @Setup
+    public void setup()
+    {
+        Topology topology = Topology.create(dataCenters, 6, 3, 0);
+
+        List<LongTokenRange> subRanges = topology.getLocalSubRanges(SUB_RANGES_PER_VNODE, VnodeRepairState.UNREPAIRED, 0).stream()
+                .map(VnodeRepairState::getTokenRange)
+                .collect(Collectors.toList());
+
+        myRangeMap = new HashMap<>();
+        for (LongTokenRange subRange : subRanges)
+        {
+            myRangeMap.put(subRange, subRange);
+        }
+        myRangeIndex = new TokenRangeIndex<>(myRangeMap);
+
+        myMessages = new ArrayList<>();
+        for (int i = 0; i < subRanges.size(); i += rangesPerMessage)
+        {
+            List<LongTokenRange> messageRanges = subRanges.subList(i, Math.min(i + rangesPerMessage, subRanges.size()));
+            myMessages.add(String.format("Repair session 2d0a8d40-1a2b-11ea-9a9f-0242ac110002 for range %s finished", messageRanges));
+        }
+    }
+
+    @Benchmark
+    public void parser(Blackhole blackhole)
+    {
+        RepairProgressParser.RangeConsumer consumer = (start, end) -> blackhole.consume(myRangeIndex.get(start, end));
+
+        for (String message : myMessages)
+        {
+            blackhole.consume(myParser.parse(message, consumer));
+        }
+    }
+
+    @Benchmark
+    public void regex(Blackhole blackhole)
+    {
+        for (String message : myMessages)
+        {
+            Matcher matcher = REPAIR_PATTERN.matcher(message);
+
+            if (matcher.matches())
+            {
+                Matcher rangeMatcher = RANGE_PATTERN.matcher(matcher.group(1));
+
+                while (rangeMatcher.find())
+                {
+                    long start = Long.parseLong(rangeMatcher.group(1));
+                    long end = Long.parseLong(rangeMatcher.group(2));
+
+                    blackhole.consume(myRangeMap.get(new LongTokenRange(start, end)));
+                }
+            }
+        }
+    }
+}
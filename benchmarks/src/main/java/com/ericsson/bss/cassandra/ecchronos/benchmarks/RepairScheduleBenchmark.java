@@ -0,0 +1,98 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.benchmarks;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ericsson.bss.cassandra.ecchronos.application.config.RepairSchedule;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.RepairConfiguration;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Benchmarks looking up the repair configuration of a table in a file based {@link RepairSchedule}.
+ * <p>
+ * The schedule contains exact keyspace and table names as well as regular expressions matching all tables in a
+ * keyspace.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RepairScheduleBenchmark
+{
+    private static final int TABLES_PER_KEYSPACE = 10;
+
+    @Param({"10", "100"})
+    public int keyspaces;
+
+    private RepairSchedule myRepairSchedule;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        StringBuilder schedule = new StringBuilder("{\"keyspaces\":[");
+
+        for (int ks = 0; ks < keyspaces; ks++)
+        {
+            schedule.append(ks == 0 ? "" : ",").append("{\"name\":\"ks").append(ks).append("\",\"tables\":[");
+
+            for (int tb = 0; tb < TABLES_PER_KEYSPACE; tb++)
+            {
+                schedule.append(tb == 0 ? "" : ",").append("{\"name\":\"tb").append(tb).append("\"}");
+            }
+
+            schedule.append("]}");
+            schedule.append(",{\"name\":\"regex_ks").append(ks).append("_.*\",\"tables\":[{\"name\":\".*\"}]}");
+        }
+
+        schedule.append("]}");
+
+        myRepairSchedule = new ObjectMapper().readValue(schedule.toString(), RepairSchedule.class);
+    }
+
+    @Benchmark
+    public Optional<RepairConfiguration> exactMatch()
+    {
+        return myRepairSchedule.getRepairConfiguration("ks" + (keyspaces - 1), "tb" + (TABLES_PER_KEYSPACE - 1));
+    }
+
+    @Benchmark
+    public Optional<RepairConfiguration> regexMatch()
+    {
+        return myRepairSchedule.getRepairConfiguration("regex_ks" + (keyspaces - 1) + "_table", "tb");
+    }
+
+    @Benchmark
+    public Optional<RepairConfiguration> noMatch()
+    {
+        return myRepairSchedule.getRepairConfiguration("unknown", "tb");
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.benchmarks;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.DefaultJobComparator;
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.ScheduledJob;
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.ScheduledJobQueue;
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.ScheduledTask;
+
+/**
+ * Benchmarks retrieving jobs from the {@link ScheduledJobQueue}.
+ * <p>
+ * The jobs are spread over the configurable priorities and have been repaired at different times during the last two
+ * weeks, so that roughly half of them are runnable.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScheduledJobQueueBenchmark
+{
+    private static final ScheduledJob.Priority[] PRIORITIES = new ScheduledJob.Priority[] {
+            ScheduledJob.Priority.LOW, ScheduledJob.Priority.MEDIUM, ScheduledJob.Priority.HIGH
+    };
+
+    @Param({"1000", "10000", "50000"})
+    public int jobs;
+
+    private ScheduledJobQueue myQueue;
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(0);
+        long now = System.currentTimeMillis();
+
+        myQueue = new ScheduledJobQueue(new DefaultJobComparator());
+
+        for (int i = 0; i < jobs; i++)
+        {
+            ScheduledJob.Priority priority = PRIORITIES[random.nextInt(PRIORITIES.length)];
+            long lastSuccessfulRun = now - TimeUnit.MINUTES.toMillis(random.nextInt((int) TimeUnit.DAYS.toMinutes(14)));
+
+            myQueue.add(new BenchmarkJob(priority, lastSuccessfulRun));
+        }
+    }
+
+    /**
+     * Get the job with the highest priority, which is what the scheduler does on every attempt to run a job.
+     */
+    @Benchmark
+    public ScheduledJob next()
+    {
+        Iterator<ScheduledJob> iterator = myQueue.iterator();
+
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    /**
+     * Iterate over all runnable jobs, which is what the scheduler does when no job could be run.
+     */
+    @Benchmark
+    public void iterateAll(Blackhole blackhole)
+    {
+        for (ScheduledJob job : myQueue)
+        {
+            blackhole.consume(job);
+        }
+    }
+
+    private static class BenchmarkJob extends ScheduledJob
+    {
+        BenchmarkJob(Priority priority, long lastSuccessfulRun)
+        {
+            super(new ConfigurationBuilder().withPriority(priority).withRunInterval(7, TimeUnit.DAYS).build());
+            myLastSuccessfulRun = lastSuccessfulRun;
+        }
+
+        @Override
+        public Iterator<ScheduledTask> iterator()
+        {
+            return Collections.emptyIterator();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.SubRangeRepairStates;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.VnodeRepairState;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.VnodeRepairStates;
+
+/**
+ * Benchmarks building the sub range repair states of the local node from repair history.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SubRangeRepairStatesBenchmark
+{
+    @Param({"2", "4"})
+    public int dataCenters;
+
+    @Param({"4", "16"})
+    public int subRangesPerVnode;
+
+    private List<VnodeRepairState> myBaseVnodes;
+    private List<VnodeRepairState> myRepairHistory;
+
+    @Setup
+    public void setup()
+    {
+        Topology topology = Topology.create(dataCenters, 6, 3, 0);
+        long repairedAt = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(7);
+
+        myBaseVnodes = topology.getLocalVnodes(VnodeRepairState.UNREPAIRED);
+        myRepairHistory = topology.getLocalSubRanges(subRangesPerVnode, repairedAt, TimeUnit.MINUTES.toMillis(1));
+    }
+
+    @Benchmark
+    public VnodeRepairStates build()
+    {
+        VnodeRepairStates.Builder builder = SubRangeRepairStates.newBuilder(myBaseVnodes);
+
+        for (VnodeRepairState vnodeRepairState : myRepairHistory)
+        {
+            builder.updateVnodeRepairState(vnodeRepairState);
+        }
+
+        return builder.build();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.benchmarks;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.VnodeRepairState;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.TokenSubRangeUtil;
+
+/**
+ * Benchmarks splitting all vnodes of the local node into sub ranges, as done when a target repair size is used.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenSubRangeUtilBenchmark
+{
+    @Param({"2", "4"})
+    public int dataCenters;
+
+    /**
+     * The average number of sub ranges each vnode is split into.
+     */
+    @Param({"1", "16", "256"})
+    public int subRangesPerVnode;
+
+    private List<LongTokenRange> myVnodes;
+    private BigInteger myTokensPerSubRange;
+
+    @Setup
+    public void setup()
+    {
+        Topology topology = Topology.create(dataCenters, 6, 3, 0);
+
+        myVnodes = topology.getLocalVnodes(VnodeRepairState.UNREPAIRED).stream()
+                .map(VnodeRepairState::getTokenRange)
+                .collect(Collectors.toList());
+
+        BigInteger totalSize = myVnodes.stream()
+                .map(LongTokenRange::rangeSize)
+                .reduce(BigInteger.ZERO, BigInteger::add);
+
+        myTokensPerSubRange = totalSize.divide(BigInteger.valueOf((long) myVnodes.size() * subRangesPerVnode));
+    }
+
+    @Benchmark
+    public void generateSubRanges(Blackhole blackhole)
+    {
+        for (LongTokenRange vnode : myVnodes)
+        {
+            blackhole.consume(new TokenSubRangeUtil(vnode).generateSubRanges(myTokensPerSubRange));
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.benchmarks;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.VnodeRepairState;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.Node;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.TokenSubRangeUtil;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * A generated cluster topology with randomly assigned tokens.
+ * <p>
+ * Replicas are selected the same way as with NetworkTopologyStrategy without racks, walking the ring clockwise and
+ * picking the first nodes in each data center.
+ */
+public final class Topology
+{
+    public static final int VNODES_PER_NODE = 256;
+
+    private final List<Node> myNodes;
+    private final Map<LongTokenRange, ImmutableSet<Node>> myTokenRanges;
+
+    private Topology(List<Node> nodes, Map<LongTokenRange, ImmutableSet<Node>> tokenRanges)
+    {
+        myNodes = nodes;
+        myTokenRanges = tokenRanges;
+    }
+
+    /**
+     * Create a topology with {@link #VNODES_PER_NODE} vnodes per node.
+     *
+     * @param dataCenters The number of data centers.
+     * @param nodesPerDataCenter The number of nodes in each data center.
+     * @param replicationFactor The replication factor in each data center.
+     * @param seed The seed used for generating the tokens.
+     * @return The topology.
+     */
+    public static Topology create(int dataCenters, int nodesPerDataCenter, int replicationFactor, long seed)
+    {
+        Random random = new Random(seed);
+        List<Node> nodes = new ArrayList<>();
+        TreeMap<Long, Node> ring = new TreeMap<>();
+
+        for (int dc = 0; dc < dataCenters; dc++)
+        {
+            for (int n = 0; n < nodesPerDataCenter; n++)
+            {
+                Node node = new BenchmarkNode(new UUID(dc, n), address(dc, n), "DC" + (dc + 1));
+                nodes.add(node);
+
+                for (int i = 0; i < VNODES_PER_NODE; i++)
+                {
+                    ring.put(random.nextLong(), node);
+                }
+            }
+        }
+
+        List<Long> tokens = new ArrayList<>(ring.keySet());
+        List<Node> owners = new ArrayList<>(ring.values());
+        Map<LongTokenRange, ImmutableSet<Node>> tokenRanges = new HashMap<>();
+
+        for (int i = 0; i < tokens.size(); i++)
+        {
+            long start = tokens.get((i + tokens.size() - 1) % tokens.size());
+            LongTokenRange range = new LongTokenRange(start, tokens.get(i));
+            tokenRanges.put(range, replicas(owners, i, dataCenters, replicationFactor));
+        }
+
+        return new Topology(Collections.unmodifiableList(nodes), tokenRanges);
+    }
+
+    /**
+     * @return The first node in the first data center.
+     */
+    public Node getLocalNode()
+    {
+        return myNodes.get(0);
+    }
+
+    /**
+     * Get the vnodes replicated by the local node sorted by token.
+     *
+     * @param lastRepairedAt The repaired at of the vnodes.
+     * @return The vnode repair states of the local node.
+     */
+    public List<VnodeRepairState> getLocalVnodes(long lastRepairedAt)
+    {
+        List<VnodeRepairState> vnodes = new ArrayList<>();
+
+        for (Map.Entry<LongTokenRange, ImmutableSet<Node>> entry : myTokenRanges.entrySet())
+        {
+            if (entry.getValue().contains(getLocalNode()))
+            {
+                vnodes.add(new VnodeRepairState(entry.getKey(), entry.getValue(), lastRepairedAt));
+            }
+        }
+
+        vnodes.sort((v1, v2) -> Long.compare(v1.getTokenRange().start, v2.getTokenRange().start));
+
+        return vnodes;
+    }
+
+    /**
+     * Get the vnodes replicated by the local node split into sub ranges, as created by repairs with a target repair size.
+     *
+     * @param subRangesPerVnode The number of sub ranges to split each vnode into.
+     * @param lastRepairedAt The repaired at of the first sub range in each vnode.
+     * @param repairedAtStepInMs The difference in repaired at between adjacent sub ranges.
+     * @return The sub range repair states of the local node.
+     */
+    public List<VnodeRepairState> getLocalSubRanges(int subRangesPerVnode, long lastRepairedAt, long repairedAtStepInMs)
+    {
+        List<VnodeRepairState> subRanges = new ArrayList<>();
+
+        for (VnodeRepairState vnode : getLocalVnodes(lastRepairedAt))
+        {
+            LongTokenRange range = vnode.getTokenRange();
+            BigInteger tokensPerSubRange = range.rangeSize().divide(BigInteger.valueOf(subRangesPerVnode));
+            long repairedAt = lastRepairedAt;
+
+            for (LongTokenRange subRange : new TokenSubRangeUtil(range).generateSubRanges(tokensPerSubRange))
+            {
+                subRanges.add(new VnodeRepairState(subRange, vnode.getReplicas(), repairedAt));
+                repairedAt += repairedAtStepInMs;
+            }
+        }
+
+        return subRanges;
+    }
+
+    private static ImmutableSet<Node> replicas(List<Node> owners, int index, int dataCenters, int replicationFactor)
+    {
+        Map<String, Integer> replicasPerDataCenter = new HashMap<>();
+        Set<Node> replicas = new LinkedHashSet<>();
+
+        for (int i = 0; i < owners.size() && replicas.size() < dataCenters * replicationFactor; i++)
+        {
+            Node node = owners.get((index + i) % owners.size());
+            int dcReplicas = replicasPerDataCenter.getOrDefault(node.getDatacenter(), 0);
+
+            if (dcReplicas < replicationFactor && replicas.add(node))
+            {
+                replicasPerDataCenter.put(node.getDatacenter(), dcReplicas + 1);
+            }
+        }
+
+        return ImmutableSet.copyOf(replicas);
+    }
+
+    private static InetAddress address(int dc, int n)
+    {
+        try
+        {
+            return InetAddress.getByAddress(new byte[] { 127, 0, (byte) dc, (byte) (n + 1) });
+        }
+        catch (UnknownHostException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class BenchmarkNode implements Node
+    {
+        private final UUID myId;
+        private final InetAddress myAddress;
+        private final String myDatacenter;
+
+        BenchmarkNode(UUID id, InetAddress address, String datacenter)
+        {
+            myId = id;
+            myAddress = address;
+            myDatacenter = datacenter;
+        }
+
+        @Override
+        public UUID getId()
+        {
+            return myId;
+        }
+
+        @Override
+        public InetAddress getPublicAddress()
+        {
+            return myAddress;
+        }
+
+        @Override
+        public String getDatacenter()
+        {
+            return myDatacenter;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("Node(%s:%s)", myDatacenter, myAddress.getHostAddress());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.ReplicaRepairGroup;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.VnodeRepairGroupFactory;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.VnodeRepairState;
+
+/**
+ * Benchmarks grouping the vnodes of the local node by replicas.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VnodeRepairGroupFactoryBenchmark
+{
+    @Param({"2", "4"})
+    public int dataCenters;
+
+    private List<VnodeRepairState> myVnodes;
+
+    @Setup
+    public void setup()
+    {
+        Topology topology = Topology.create(dataCenters, 6, 3, 0);
+        Random random = new Random(0);
+        long now = System.currentTimeMillis();
+
+        myVnodes = new ArrayList<>();
+
+        for (VnodeRepairState vnode : topology.getLocalVnodes(VnodeRepairState.UNREPAIRED))
+        {
+            long repairedAt = now - TimeUnit.MINUTES.toMillis(random.nextInt((int) TimeUnit.DAYS.toMinutes(7)));
+            myVnodes.add(new VnodeRepairState(vnode.getTokenRange(), vnode.getReplicas(), repairedAt));
+        }
+    }
+
+    @Benchmark
+    public List<ReplicaRepairGroup> generateReplicaRepairGroups()
+    {
+        return VnodeRepairGroupFactory.INSTANCE.generateReplicaRepairGroups(myVnodes);
+    }
+}
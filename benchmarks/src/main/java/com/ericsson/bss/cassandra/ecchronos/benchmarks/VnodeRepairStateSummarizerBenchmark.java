@@ -0,0 +1,76 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.VnodeRepairState;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.VnodeRepairStateSummarizer;
+
+/**
+ * Benchmarks summarizing sub range repair history into vnode repair states for the local node.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VnodeRepairStateSummarizerBenchmark
+{
+    @Param({"2", "4"})
+    public int dataCenters;
+
+    @Param({"4", "16"})
+    public int subRangesPerVnode;
+
+    /**
+     * The time between the repair of adjacent sub ranges, sub ranges repaired within one hour are merged.
+     */
+    @Param({"60000", "7200000"})
+    public long repairedAtStepInMs;
+
+    private List<VnodeRepairState> myBaseVnodes;
+    private List<VnodeRepairState> myPartialVnodes;
+
+    @Setup
+    public void setup()
+    {
+        Topology topology = Topology.create(dataCenters, 6, 3, 0);
+        long repairedAt = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(7);
+
+        myBaseVnodes = topology.getLocalVnodes(VnodeRepairState.UNREPAIRED);
+        myPartialVnodes = topology.getLocalSubRanges(subRangesPerVnode, repairedAt, repairedAtStepInMs);
+    }
+
+    @Benchmark
+    public List<VnodeRepairState> summarizePartialVnodes()
+    {
+        return VnodeRepairStateSummarizer.summarizePartialVnodes(myBaseVnodes, myPartialVnodes);
+    }
+}
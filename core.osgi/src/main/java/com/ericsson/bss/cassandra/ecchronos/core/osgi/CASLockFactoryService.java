@@ -21,6 +21,7 @@ import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
 import com.ericsson.bss.cassandra.ecchronos.connection.NativeConnectionProvider;
 import com.ericsson.bss.cassandra.ecchronos.connection.StatementDecorator;
 import com.ericsson.bss.cassandra.ecchronos.core.scheduling.LockFactory;
+import com.google.common.util.concurrent.ListenableFuture;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
@@ -31,6 +32,7 @@ import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.Designate;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 
+import java.util.Collection;
 import java.util.Map;
 
 @Component(service = LockFactory.class)
@@ -73,6 +75,30 @@ public class CASLockFactoryService implements LockFactory
         return myDelegateLockFactory.tryLock(dataCenter, resource, priority, metadata);
     }
 
+    @Override
+    public ListenableFuture<DistributedLock> tryLockAsync(String dataCenter, String resource, int priority, Map<String, String> metadata)
+    {
+        return myDelegateLockFactory.tryLockAsync(dataCenter, resource, priority, metadata);
+    }
+
+    @Override
+    public Map<String, ListenableFuture<DistributedLock>> tryLocksAsync(String dataCenter, Collection<String> resources, int priority, Map<String, String> metadata)
+    {
+        return myDelegateLockFactory.tryLocksAsync(dataCenter, resources, priority, metadata);
+    }
+
+    @Override
+    public void addLockReleaseListener(LockReleaseListener listener)
+    {
+        myDelegateLockFactory.addLockReleaseListener(listener);
+    }
+
+    @Override
+    public void removeLockReleaseListener(LockReleaseListener listener)
+    {
+        myDelegateLockFactory.removeLockReleaseListener(listener);
+    }
+
     @Override
     public Map<String, String> getLockMetadata(String dataCenter, String resource)
     {
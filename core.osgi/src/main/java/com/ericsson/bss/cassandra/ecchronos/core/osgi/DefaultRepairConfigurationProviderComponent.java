@@ -45,6 +45,7 @@ public class DefaultRepairConfigurationProviderComponent
     private static final long DEFAULT_REPAIR_INTERVAL_SECONDS = 7L * 24L * 60L * 60L;
     private static final long DEFAULT_REPAIR_WARNING_SECONDS = 8L * 24L * 60L * 60L;
     private static final long DEFAULT_REPAIR_ERROR_SECONDS = 10L * 24L * 60L * 60L;
+    private static final long DEFAULT_TARGET_SESSION_TIME_SECONDS = 15L * 60L;
     private static final long DEFAULT_TARGET_REPAIR_SIZE_IN_BYTES = RepairConfiguration.FULL_REPAIR_SIZE;
 
     @Reference (service = NativeConnectionProvider.class, cardinality = ReferenceCardinality.MANDATORY, policy = ReferencePolicy.STATIC)
@@ -72,6 +73,11 @@ public class DefaultRepairConfigurationProviderComponent
             {
                 repairSizeInBytes = UnitConverter.toBytes(configuration.targetRepairSize());
             }
+            long coalescingSizeInBytes = RepairConfiguration.NO_COALESCING;
+            if (!configuration.repairCoalescingSize().isEmpty())
+            {
+                coalescingSizeInBytes = UnitConverter.toBytes(configuration.repairCoalescingSize());
+            }
 
             RepairConfiguration repairConfiguration = RepairConfiguration.newBuilder()
                     .withParallelism(configuration.repairParallelism())
@@ -80,6 +86,10 @@ public class DefaultRepairConfigurationProviderComponent
                     .withRepairErrorTime(configuration.repairErrorSeconds(), TimeUnit.SECONDS)
                     .withRepairUnwindRatio(configuration.repairUnwindRatio())
                     .withTargetRepairSizeInBytes(repairSizeInBytes)
+                    .withRepairSessionConcurrency(configuration.repairSessionConcurrency())
+                    .withMaxRangesPerSession(configuration.repairMaxRangesPerSession())
+                    .withTargetSessionTime(configuration.repairTargetSessionTimeSeconds(), TimeUnit.SECONDS)
+                    .withCoalescingSizeInBytes(coalescingSizeInBytes)
                     .build();
 
             myDelegateRepairConfigurationProvider = DefaultRepairConfigurationProvider.newBuilder()
@@ -124,5 +134,17 @@ public class DefaultRepairConfigurationProviderComponent
 
         @AttributeDefinition (name = "Target repair size", description = "An indication of how much data a repair session should handle.")
         String targetRepairSize() default "";
+
+        @AttributeDefinition (name = "Repair session concurrency", description = "The number of repair sessions to run concurrently for token ranges with the same replicas.")
+        int repairSessionConcurrency() default 1;
+
+        @AttributeDefinition (name = "Max ranges per repair session", description = "The maximum number of token ranges with the same replicas to repair in one repair session.")
+        int repairMaxRangesPerSession() default 1;
+
+        @AttributeDefinition (name = "Target repair session time", description = "The time in seconds a repair session with multiple token ranges should aim to take.")
+        long repairTargetSessionTimeSeconds() default DEFAULT_TARGET_SESSION_TIME_SECONDS;
+
+        @AttributeDefinition (name = "Repair coalescing size", description = "The table size below which tables in the same keyspace are repaired in the same repair session.")
+        String repairCoalescingSize() default "";
     }
 }
@@ -65,4 +65,10 @@ public class HostStatesService implements HostStates
     {
         return myDelegateHostStates.isUp(node);
     }
+
+    @Override
+    public boolean isUpNonBlocking(Host host)
+    {
+        return myDelegateHostStates.isUpNonBlocking(host);
+    }
 }
@@ -64,14 +64,19 @@ public class RepairSchedulerService implements RepairScheduler
     @Reference(service = RepairHistory.class, cardinality = ReferenceCardinality.MANDATORY, policy = ReferencePolicy.STATIC)
     private volatile RepairHistory myRepairHistory;
 
+    private volatile RepairNotificationDispatcher myRepairNotificationDispatcher;
+
     private volatile RepairSchedulerImpl myDelegateRepairSchedulerImpl;
 
     @Activate
     public synchronized void activate(Configuration configuration)
     {
+        myRepairNotificationDispatcher = new RepairNotificationDispatcher();
+
         myDelegateRepairSchedulerImpl = RepairSchedulerImpl.builder()
                 .withFaultReporter(myFaultReporter)
                 .withJmxProxyFactory(myJmxProxyFactory)
+                .withRepairNotificationDispatcher(myRepairNotificationDispatcher)
                 .withTableRepairMetrics(myTableRepairMetrics)
                 .withScheduleManager(myScheduleManager)
                 .withRepairStateFactory(myRepairStateFactory)
@@ -86,6 +91,7 @@ public class RepairSchedulerService implements RepairScheduler
     public synchronized void deactivate()
     {
         myDelegateRepairSchedulerImpl.close();
+        myRepairNotificationDispatcher.close();
     }
 
     @Override
@@ -17,6 +17,7 @@ package com.ericsson.bss.cassandra.ecchronos.core.osgi;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.JobOrdering;
 import com.ericsson.bss.cassandra.ecchronos.core.scheduling.LockFactory;
 import com.ericsson.bss.cassandra.ecchronos.core.scheduling.RunPolicy;
 import com.ericsson.bss.cassandra.ecchronos.core.scheduling.ScheduleManager;
@@ -43,6 +44,7 @@ public class ScheduleManagerService implements ScheduleManager
     private static final Logger LOG = LoggerFactory.getLogger(ScheduleManagerService.class);
 
     private static final long DEFAULT_SCHEDULE_INTERVAL_IN_SECONDS = 60L;
+    private static final int DEFAULT_WORKERS = 1;
 
     @Reference(service = RunPolicy.class, cardinality = ReferenceCardinality.MULTIPLE, policy = ReferencePolicy.DYNAMIC, bind = "bindRunPolicy", unbind = "unbindRunPolicy")
     private final Set<RunPolicy> myRunPolicies = Sets.newConcurrentHashSet();
@@ -60,6 +62,8 @@ public class ScheduleManagerService implements ScheduleManager
         myDelegateSchedulerManager = ScheduleManagerImpl.builder()
                 .withLockFactory(myLockFactory)
                 .withRunInterval(scheduleIntervalInSeconds, TimeUnit.SECONDS)
+                .withWorkers(configuration.workers())
+                .withJobOrdering(configuration.jobOrdering())
                 .build();
 
         for (RunPolicy runPolicy : myRunPolicies)
@@ -123,5 +127,11 @@ public class ScheduleManagerService implements ScheduleManager
     {
         @AttributeDefinition(name = "Schedule interval in seconds", description = "The interval in which jobs will be scheduled to run")
         long scheduleIntervalInSeconds() default DEFAULT_SCHEDULE_INTERVAL_IN_SECONDS;
+
+        @AttributeDefinition(name = "Workers", description = "The number of jobs that can run concurrently")
+        int workers() default DEFAULT_WORKERS;
+
+        @AttributeDefinition(name = "Job ordering", description = "The order in which runnable jobs are run (PRIORITY or DEADLINE)")
+        JobOrdering jobOrdering() default JobOrdering.PRIORITY;
     }
 }
@@ -14,14 +14,25 @@
  */
 package com.ericsson.bss.cassandra.ecchronos.core;
 
+import com.codahale.metrics.MetricRegistry;
 import com.datastax.driver.core.*;
 import com.datastax.driver.core.querybuilder.*;
 import com.ericsson.bss.cassandra.ecchronos.connection.DataCenterAwareStatement;
 import com.ericsson.bss.cassandra.ecchronos.connection.NativeConnectionProvider;
 import com.ericsson.bss.cassandra.ecchronos.connection.StatementDecorator;
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.InsufficientNodesException;
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockContendedException;
 import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
+import com.ericsson.bss.cassandra.ecchronos.core.metrics.LockMetricHolder;
 import com.ericsson.bss.cassandra.ecchronos.core.scheduling.LockFactory;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,12 +40,15 @@ import java.io.Closeable;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 import static com.datastax.driver.core.querybuilder.QueryBuilder.*;
 
@@ -72,6 +86,8 @@ public class CASLockFactory implements LockFactory, Closeable
     private static final int LOCK_TIME_IN_SECONDS = 600;
     private static final long LOCK_UPDATE_TIME_IN_SECONDS = 60;
     private static final int FAILED_LOCK_RETRY_ATTEMPTS = (int) (LOCK_TIME_IN_SECONDS / LOCK_UPDATE_TIME_IN_SECONDS) - 1;
+    private static final int MAX_IN_FLIGHT_RENEWALS = 16;
+    private static final long DEFAULT_RELEASE_CHECK_INTERVAL_IN_SECONDS = 5;
 
     private static final String TABLE_LOCK = "lock";
     private static final String TABLE_LOCK_PRIORITY = "lock_priority";
@@ -79,6 +95,9 @@ public class CASLockFactory implements LockFactory, Closeable
     private final UUID myUuid;
 
     private final ScheduledExecutorService myExecutor;
+    private final ScheduledExecutorService myReleaseCheckExecutor;
+    private final LockMetricHolder myLockMetricHolder;
+    private final LockRenewer myLockRenewer;
 
     private final StatementDecorator myStatementDecorator;
     private final HostStates myHostStates;
@@ -87,12 +106,19 @@ public class CASLockFactory implements LockFactory, Closeable
     private final String myKeyspaceName;
     private final PreparedStatement myCompeteStatement;
     private final PreparedStatement myGetPriorityStatement;
+    private final PreparedStatement myGetPrioritiesStatement;
     private final PreparedStatement myLockStatement;
     private final PreparedStatement myGetLockMetadataStatement;
+    private final PreparedStatement myGetLockLeaseStatement;
     private final PreparedStatement myRemoveLockStatement;
     private final PreparedStatement myUpdateLockStatement;
     private final PreparedStatement myRemoveLockPriorityStatement;
+    private final PreparedStatement myGetLocksStatement;
     private final LockCache myLockCache;
+    private final ConcurrentMap<LockCache.LockKey, Set<Host>> myReplicaCache = new ConcurrentHashMap<>();
+    private final TopologyListener myTopologyListener = new TopologyListener();
+    private final ConcurrentMap<LockCache.LockKey, Integer> myContendedLocks = new ConcurrentHashMap<>();
+    private final List<LockReleaseListener> myLockReleaseListeners = new CopyOnWriteArrayList<>();
 
     private CASLockFactory(Builder builder)
     {
@@ -101,6 +127,12 @@ public class CASLockFactory implements LockFactory, Closeable
         myKeyspaceName = builder.myKeyspaceName;
 
         myExecutor = Executors.newSingleThreadScheduledExecutor();
+        myReleaseCheckExecutor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("LockReleaseCheck-%d").setDaemon(true).build());
+        myLockMetricHolder = new LockMetricHolder(builder.myMetricRegistry);
+        myLockRenewer = new LockRenewer(myExecutor, myLockMetricHolder,
+                TimeUnit.SECONDS.toMillis(LOCK_UPDATE_TIME_IN_SECONDS), TimeUnit.SECONDS.toMillis(LOCK_TIME_IN_SECONDS),
+                MAX_IN_FLIGHT_RENEWALS);
 
         mySession = builder.myNativeConnectionProvider.getSession();
 
@@ -116,6 +148,10 @@ public class CASLockFactory implements LockFactory, Closeable
                 .from(myKeyspaceName, TABLE_LOCK)
                 .where(eq(COLUMN_RESOURCE, bindMarker()));
 
+        Select.Where getLockLeaseStatement = QueryBuilder.select().ttl(COLUMN_NODE).column(COLUMN_METADATA)
+                .from(myKeyspaceName, TABLE_LOCK)
+                .where(eq(COLUMN_RESOURCE, bindMarker()));
+
         Delete.Conditions removeLockStatement = QueryBuilder.delete()
                 .from(myKeyspaceName, TABLE_LOCK)
                 .where(eq(COLUMN_RESOURCE, bindMarker()))
@@ -136,6 +172,14 @@ public class CASLockFactory implements LockFactory, Closeable
                 .from(myKeyspaceName, TABLE_LOCK_PRIORITY)
                 .where(eq(COLUMN_RESOURCE, bindMarker()));
 
+        Select.Where getPrioritiesStatement = QueryBuilder.select(COLUMN_RESOURCE, COLUMN_PRIORITY, COLUMN_NODE)
+                .from(myKeyspaceName, TABLE_LOCK_PRIORITY)
+                .where(in(COLUMN_RESOURCE, bindMarker()));
+
+        Select.Where getLocksStatement = QueryBuilder.select(COLUMN_RESOURCE)
+                .from(myKeyspaceName, TABLE_LOCK)
+                .where(in(COLUMN_RESOURCE, bindMarker()));
+
         Delete.Where removeLockPriorityStatement = QueryBuilder.delete()
                 .from(myKeyspaceName, TABLE_LOCK_PRIORITY)
                 .where(eq(COLUMN_RESOURCE, bindMarker()))
@@ -148,6 +192,9 @@ public class CASLockFactory implements LockFactory, Closeable
         myGetLockMetadataStatement = mySession.prepare(getLockMetadataStatement)
                 .setConsistencyLevel(ConsistencyLevel.LOCAL_SERIAL);
 
+        myGetLockLeaseStatement = mySession.prepare(getLockLeaseStatement)
+                .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+
         myRemoveLockStatement = mySession.prepare(removeLockStatement)
                 .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM)
                 .setSerialConsistencyLevel(ConsistencyLevel.LOCAL_SERIAL);
@@ -162,9 +209,15 @@ public class CASLockFactory implements LockFactory, Closeable
         myGetPriorityStatement = mySession.prepare(getPriorityStatement)
                 .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
 
+        myGetPrioritiesStatement = mySession.prepare(getPrioritiesStatement)
+                .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+
         myRemoveLockPriorityStatement = mySession.prepare(removeLockPriorityStatement)
                 .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
 
+        myGetLocksStatement = mySession.prepare(getLocksStatement)
+                .setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+
         UUID hostId = builder.myNativeConnectionProvider.getLocalHost().getHostId();
 
         if (hostId == null)
@@ -175,7 +228,16 @@ public class CASLockFactory implements LockFactory, Closeable
 
         myUuid = hostId;
 
-        myLockCache = new LockCache(this::doTryLock);
+        myLockCache = new LockCache(this::doTryLock, this::doTryLockAsync, myLockMetricHolder);
+
+        Cluster cluster = mySession.getCluster();
+        cluster.register((Host.StateListener) myTopologyListener);
+        cluster.register((SchemaChangeListener) myTopologyListener);
+
+        // Locks released by the local node are handed off directly when closed, only locks of other nodes are polled.
+        // The polling has its own executor so that slow queries don't delay the renewals of the held locks.
+        myReleaseCheckExecutor.scheduleWithFixedDelay(this::checkReleasedLocks,
+                builder.myReleaseCheckIntervalInMs, builder.myReleaseCheckIntervalInMs, TimeUnit.MILLISECONDS);
     }
 
     @Override
@@ -184,6 +246,47 @@ public class CASLockFactory implements LockFactory, Closeable
         return myLockCache.getLock(dataCenter, resource, priority, metadata);
     }
 
+    @Override
+    public ListenableFuture<DistributedLock> tryLockAsync(String dataCenter, String resource, int priority, Map<String, String> metadata)
+    {
+        return myLockCache.getLockAsync(dataCenter, resource, priority, metadata);
+    }
+
+    /**
+     * Try to lock multiple resources in a data center asynchronously.
+     * <p>
+     * The priorities of all resources without a cached failure are read with one query
+     * and shared by the lock attempts.
+     */
+    @Override
+    public Map<String, ListenableFuture<DistributedLock>> tryLocksAsync(String dataCenter, Collection<String> resources, int priority, Map<String, String> metadata)
+    {
+        List<String> resourcesToLock = new ArrayList<>();
+        for (String resource : resources)
+        {
+            if (!myLockCache.getCachedFailure(dataCenter, resource).isPresent())
+            {
+                resourcesToLock.add(resource);
+            }
+        }
+
+        ListenableFuture<Map<String, List<NodePriority>>> priorities = resourcesToLock.isEmpty()
+                ? Futures.immediateFuture(Collections.emptyMap())
+                : measureAsync(LockMetricHolder.AcquirePhase.PRIORITY_READ, () -> getPrioritiesAsync(dataCenter, resourcesToLock));
+
+        Map<String, ListenableFuture<DistributedLock>> locks = new LinkedHashMap<>();
+        for (String resource : resources)
+        {
+            Supplier<ListenableFuture<List<NodePriority>>> prioritySupplier = () -> Futures.transform(priorities,
+                    (Function<Map<String, List<NodePriority>>, List<NodePriority>>) p -> p.getOrDefault(resource, Collections.emptyList()));
+
+            locks.put(resource, myLockCache.getLockAsync(dataCenter, resource, priority, metadata,
+                    (dc, r, p, m) -> doTryLockAsync(dc, r, p, m, prioritySupplier)));
+        }
+
+        return locks;
+    }
+
     @Override
     public Map<String, String> getLockMetadata(String dataCenter, String resource)
     {
@@ -211,7 +314,12 @@ public class CASLockFactory implements LockFactory, Closeable
     {
         try
         {
-            Set<Host> hosts = getHostsForResource(dataCenter, resource);
+            Set<Host> hosts = myReplicaCache.get(new LockCache.LockKey(dataCenter, resource));
+            if (hosts == null)
+            {
+                hosts = getHostsForResource(dataCenter, resource);
+                myReplicaCache.put(new LockCache.LockKey(dataCenter, resource), hosts);
+            }
 
             int quorum = hosts.size() / 2 + 1;
             int liveNodes = liveNodes(hosts);
@@ -234,13 +342,37 @@ public class CASLockFactory implements LockFactory, Closeable
         return myLockCache.getCachedFailure(dataCenter, resource);
     }
 
+    @Override
+    public void addLockReleaseListener(LockReleaseListener listener)
+    {
+        myLockReleaseListeners.add(listener);
+    }
+
+    @Override
+    public void removeLockReleaseListener(LockReleaseListener listener)
+    {
+        myLockReleaseListeners.remove(listener);
+    }
+
     @Override
     public void close()
     {
-        myExecutor.shutdown();
+        Cluster cluster = mySession.getCluster();
+        cluster.unregister((Host.StateListener) myTopologyListener);
+        cluster.unregister((SchemaChangeListener) myTopologyListener);
+
+        shutdown(myReleaseCheckExecutor);
+        shutdown(myExecutor);
+
+        myLockMetricHolder.close();
+    }
+
+    private static void shutdown(ScheduledExecutorService executor)
+    {
+        executor.shutdown();
         try
         {
-            if (!myExecutor.awaitTermination(1, TimeUnit.SECONDS))
+            if (!executor.awaitTermination(1, TimeUnit.SECONDS))
             {
                 LOG.warn("Executing tasks did not finish within one second");
             }
@@ -248,6 +380,7 @@ public class CASLockFactory implements LockFactory, Closeable
         catch (InterruptedException e)
         {
             LOG.warn("Interrupted while waiting for executor to shut down", e);
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -270,6 +403,8 @@ public class CASLockFactory implements LockFactory, Closeable
         private HostStates myHostStates;
         private StatementDecorator myStatementDecorator;
         private String myKeyspaceName = DEFAULT_KEYSPACE_NAME;
+        private MetricRegistry myMetricRegistry = new MetricRegistry();
+        private long myReleaseCheckIntervalInMs = TimeUnit.SECONDS.toMillis(DEFAULT_RELEASE_CHECK_INTERVAL_IN_SECONDS);
 
         public Builder withNativeConnectionProvider(NativeConnectionProvider nativeConnectionProvider)
         {
@@ -295,6 +430,25 @@ public class CASLockFactory implements LockFactory, Closeable
             return this;
         }
 
+        public Builder withMetricRegistry(MetricRegistry metricRegistry)
+        {
+            myMetricRegistry = metricRegistry;
+            return this;
+        }
+
+        /**
+         * Set how often locks that could not be acquired due to contention are checked for being released.
+         *
+         * @param releaseCheckInterval The interval.
+         * @param timeUnit The time unit of the interval.
+         * @return The builder
+         */
+        public Builder withReleaseCheckInterval(long releaseCheckInterval, TimeUnit timeUnit)
+        {
+            myReleaseCheckIntervalInMs = timeUnit.toMillis(releaseCheckInterval);
+            return this;
+        }
+
         public CASLockFactory build()
         {
             if (myNativeConnectionProvider == null)
@@ -312,6 +466,16 @@ public class CASLockFactory implements LockFactory, Closeable
                 throw new IllegalArgumentException("Statement decorator cannot be null");
             }
 
+            if (myMetricRegistry == null)
+            {
+                throw new IllegalArgumentException("Metric registry cannot be null");
+            }
+
+            if (myReleaseCheckIntervalInMs <= 0)
+            {
+                throw new IllegalArgumentException("Release check interval must be positive");
+            }
+
             return new CASLockFactory(this);
         }
     }
@@ -323,9 +487,10 @@ public class CASLockFactory implements LockFactory, Closeable
         if (!sufficientNodesForLocking(dataCenter, resource))
         {
             LOG.warn("Not sufficient nodes to lock resource {} in datacenter {}", resource, dataCenter);
-            throw new LockException("Not sufficient nodes to lock");
+            throw new InsufficientNodesException("Not sufficient nodes to lock");
         }
 
+        LockContendedException contendedException;
         try
         {
             CASLock casLock = new CASLock(dataCenter, resource, priority, metadata); // NOSONAR
@@ -333,6 +498,8 @@ public class CASLockFactory implements LockFactory, Closeable
             {
                 return casLock;
             }
+
+            contendedException = casLock.contended();
         }
         catch (Exception e)
         {
@@ -340,7 +507,140 @@ public class CASLockFactory implements LockFactory, Closeable
             throw new LockException(e);
         }
 
-        throw new LockException(String.format("Unable to lock resource %s in datacenter %s", resource, dataCenter));
+        throw contendedException;
+    }
+
+    private ListenableFuture<DistributedLock> doTryLockAsync(String dataCenter, String resource, int priority, Map<String, String> metadata)
+    {
+        return doTryLockAsync(dataCenter, resource, priority, metadata,
+                () -> measureAsync(LockMetricHolder.AcquirePhase.PRIORITY_READ,
+                        () -> Futures.transform(executeAsync(dataCenter, myGetPriorityStatement.bind(resource)), (Function<ResultSet, List<NodePriority>>) this::toNodePriorities)));
+    }
+
+    private ListenableFuture<DistributedLock> doTryLockAsync(String dataCenter, String resource, int priority, Map<String, String> metadata,
+            Supplier<ListenableFuture<List<NodePriority>>> prioritySupplier)
+    {
+        LOG.trace("Trying lock asynchronously for {} - {}", dataCenter, resource);
+
+        if (!sufficientNodesForLocking(dataCenter, resource))
+        {
+            LOG.warn("Not sufficient nodes to lock resource {} in datacenter {}", resource, dataCenter);
+            return Futures.immediateFailedFuture(new InsufficientNodesException("Not sufficient nodes to lock"));
+        }
+
+        ListenableFuture<DistributedLock> future;
+        try
+        {
+            ListenableFuture<List<NodePriority>> priorities = prioritySupplier.get();
+
+            future = Futures.transform(priorities, (AsyncFunction<List<NodePriority>, DistributedLock>) nodePriorities ->
+                    new CASLock(dataCenter, resource, priority, metadata, nodePriorities).lockAsync()); // NOSONAR
+        }
+        catch (Exception e)
+        {
+            future = Futures.immediateFailedFuture(e);
+        }
+
+        return Futures.withFallback(future, t ->
+        {
+            if (t instanceof LockException)
+            {
+                return Futures.immediateFailedFuture(t);
+            }
+
+            LOG.warn("Unable to lock resource {} in datacenter {} - {}", resource, dataCenter, t.getMessage());
+            return Futures.immediateFailedFuture(new LockException(t));
+        });
+    }
+
+    /**
+     * Read the priorities of multiple resources with one query.
+     *
+     * @param dataCenter The data center of the resources or null for global resources.
+     * @param resources The resources to read the priorities for.
+     * @return A future completed with the priorities of each resource.
+     */
+    private ListenableFuture<Map<String, List<NodePriority>>> getPrioritiesAsync(String dataCenter, List<String> resources)
+    {
+        if (resources.isEmpty())
+        {
+            return Futures.immediateFuture(Collections.emptyMap());
+        }
+
+        ListenableFuture<ResultSet> future;
+        try
+        {
+            future = executeAsync(dataCenter, myGetPrioritiesStatement.bind(resources));
+        }
+        catch (Exception e)
+        {
+            future = Futures.immediateFailedFuture(e);
+        }
+
+        return Futures.transform(future, (Function<ResultSet, Map<String, List<NodePriority>>>) resultSet ->
+        {
+            Map<String, List<NodePriority>> priorities = new HashMap<>();
+
+            for (Row row : resultSet)
+            {
+                String resource = row.getString(COLUMN_RESOURCE);
+                NodePriority nodePriority = new NodePriority(row.getUUID(COLUMN_NODE), row.getInt(COLUMN_PRIORITY));
+
+                priorities.computeIfAbsent(resource, k -> new ArrayList<>()).add(nodePriority);
+            }
+
+            return priorities;
+        });
+    }
+
+    private List<NodePriority> computePriorities(String dataCenter, String resource)
+    {
+        return measure(LockMetricHolder.AcquirePhase.PRIORITY_READ, () -> toNodePriorities(execute(dataCenter, myGetPriorityStatement.bind(resource))));
+    }
+
+    /**
+     * Run a phase of acquiring a lock and record the time it took.
+     */
+    private <T> T measure(LockMetricHolder.AcquirePhase phase, Supplier<T> operation)
+    {
+        long start = System.nanoTime();
+        try
+        {
+            return operation.get();
+        }
+        finally
+        {
+            myLockMetricHolder.acquirePhase(phase, System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Start an asynchronous phase of acquiring a lock and record the time it took when it completes.
+     */
+    private <T> ListenableFuture<T> measureAsync(LockMetricHolder.AcquirePhase phase, Supplier<ListenableFuture<T>> operation)
+    {
+        long start = System.nanoTime();
+        ListenableFuture<T> future = operation.get();
+
+        future.addListener(() -> myLockMetricHolder.acquirePhase(phase, System.nanoTime() - start, TimeUnit.NANOSECONDS),
+                MoreExecutors.directExecutor());
+
+        return future;
+    }
+
+    private List<NodePriority> toNodePriorities(ResultSet resultSet)
+    {
+        List<NodePriority> nodePriorities = new ArrayList<>();
+
+        for (Row row : resultSet)
+        {
+            int priority = row.getInt(COLUMN_PRIORITY);
+            UUID hostId = row.getUUID(COLUMN_NODE);
+
+            nodePriorities.add(new NodePriority(hostId, priority));
+        }
+
+        return nodePriorities;
     }
 
     private Set<Host> getHostsForResource(String dataCenter, String resource) throws UnsupportedEncodingException
@@ -363,10 +663,10 @@ public class CASLockFactory implements LockFactory, Closeable
                 }
             }
 
-            return dataCenterHosts;
+            return Collections.unmodifiableSet(dataCenterHosts);
         }
 
-        return hosts;
+        return Collections.unmodifiableSet(new HashSet<>(hosts));
     }
 
     private int liveNodes(Collection<Host> hosts)
@@ -374,7 +674,7 @@ public class CASLockFactory implements LockFactory, Closeable
         int live = 0;
         for (Host host : hosts)
         {
-            if (myHostStates.isUp(host))
+            if (myHostStates.isUpNonBlocking(host))
             {
                 live++;
             }
@@ -398,6 +698,208 @@ public class CASLockFactory implements LockFactory, Closeable
         return mySession.execute(myStatementDecorator.apply(executeStatement));
     }
 
+    private ListenableFuture<ResultSet> executeAsync(String dataCenter, Statement statement)
+    {
+        Statement executeStatement;
+
+        if (dataCenter != null)
+        {
+            executeStatement = new DataCenterAwareStatement(statement, dataCenter);
+        }
+        else
+        {
+            executeStatement = statement;
+        }
+
+        return mySession.executeAsync(myStatementDecorator.apply(executeStatement));
+    }
+
+    /**
+     * Read the time left of the lease for a lock held by another node.
+     *
+     * @return A future completed with the time left in milliseconds, 0 if the lock is not held or -1 if unknown.
+     */
+    private ListenableFuture<Long> getLeaseTimeLeftAsync(String dataCenter, String resource)
+    {
+        ListenableFuture<ResultSet> future;
+        try
+        {
+            future = executeAsync(dataCenter, myGetLockLeaseStatement.bind(resource));
+        }
+        catch (Exception e)
+        {
+            future = Futures.immediateFailedFuture(e);
+        }
+
+        ListenableFuture<Long> leaseTimeLeft = Futures.transform(future, (Function<ResultSet, Long>) resultSet ->
+        {
+            Row row = resultSet.one();
+            if (row == null)
+            {
+                return 0L;
+            }
+
+            if (row.isNull(0))
+            {
+                return -1L;
+            }
+
+            LOG.debug("Lock for resource {} in datacenter {} held by {} for another {} seconds", resource, dataCenter,
+                    row.getMap(COLUMN_METADATA, String.class, String.class), row.getInt(0));
+            return TimeUnit.SECONDS.toMillis(row.getInt(0));
+        });
+
+        return Futures.withFallback(leaseTimeLeft, t ->
+        {
+            LOG.debug("Unable to read lease for resource {} in datacenter {}", resource, dataCenter, t);
+            return Futures.immediateFuture(-1L);
+        });
+    }
+
+    /**
+     * Keep track of a lock that is held or wanted by another node so that the local node can retry as soon as
+     * the lock has been released.
+     */
+    private void contended(String dataCenter, String resource, int priority)
+    {
+        myContendedLocks.merge(new LockCache.LockKey(dataCenter, resource), priority, Math::max);
+        myLockMetricHolder.contended(dataCenter, resource);
+    }
+
+    /**
+     * Check if any of the contended locks have been released.
+     * <p>
+     * The locks are read with one query per data center.
+     * A released lock is only handed off to the local node if no other node has announced a higher priority for it,
+     * otherwise the cached failure is kept and the lock is checked again.
+     * Locks without a cached failure are no longer checked since they will be retried anyway.
+     */
+    @VisibleForTesting
+    void checkReleasedLocks()
+    {
+        Map<String, List<String>> dataCenterResources = new HashMap<>();
+
+        for (LockCache.LockKey lockKey : myContendedLocks.keySet())
+        {
+            if (!myLockCache.getCachedFailure(lockKey.getDataCenter(), lockKey.getResourceName()).isPresent())
+            {
+                myContendedLocks.remove(lockKey);
+                continue;
+            }
+
+            dataCenterResources.computeIfAbsent(lockKey.getDataCenter(), dc -> new ArrayList<>()).add(lockKey.getResourceName());
+        }
+
+        for (Map.Entry<String, List<String>> entry : dataCenterResources.entrySet())
+        {
+            checkReleasedLocks(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void checkReleasedLocks(String dataCenter, List<String> resources)
+    {
+        ListenableFuture<ResultSet> future;
+        try
+        {
+            future = executeAsync(dataCenter, myGetLocksStatement.bind(resources));
+        }
+        catch (Exception e)
+        {
+            future = Futures.immediateFailedFuture(e);
+        }
+
+        ListenableFuture<Map<String, List<NodePriority>>> releasedLocks = Futures.transform(future, (AsyncFunction<ResultSet, Map<String, List<NodePriority>>>) resultSet ->
+        {
+            List<String> released = new ArrayList<>(resources);
+
+            for (Row row : resultSet)
+            {
+                released.remove(row.getString(COLUMN_RESOURCE));
+            }
+
+            return Futures.transform(getPrioritiesAsync(dataCenter, released), (Function<Map<String, List<NodePriority>>, Map<String, List<NodePriority>>>) priorities ->
+            {
+                Map<String, List<NodePriority>> releasedPriorities = new HashMap<>();
+                for (String resource : released)
+                {
+                    releasedPriorities.put(resource, priorities.getOrDefault(resource, Collections.emptyList()));
+                }
+                return releasedPriorities;
+            });
+        });
+
+        Futures.addCallback(releasedLocks, new FutureCallback<Map<String, List<NodePriority>>>()
+        {
+            @Override
+            public void onSuccess(Map<String, List<NodePriority>> priorities)
+            {
+                for (Map.Entry<String, List<NodePriority>> released : priorities.entrySet())
+                {
+                    handOff(dataCenter, released.getKey(), released.getValue());
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t)
+            {
+                LOG.debug("Unable to check if locks {} in datacenter {} have been released", resources, dataCenter, t);
+            }
+        });
+    }
+
+    private void handOff(String dataCenter, String resource, List<NodePriority> nodePriorities)
+    {
+        Integer priority = myContendedLocks.get(new LockCache.LockKey(dataCenter, resource));
+        if (priority == null)
+        {
+            return;
+        }
+
+        int highestPriority = nodePriorities.stream()
+                .filter(n -> !n.getUuid().equals(myUuid))
+                .mapToInt(NodePriority::getPriority)
+                .max()
+                .orElse(priority);
+
+        if (priority >= highestPriority)
+        {
+            LOG.debug("Lock {} in datacenter {} has been released", resource, dataCenter);
+            released(dataCenter, resource);
+        }
+        else
+        {
+            LOG.trace("Lock {} in datacenter {} has been released but another node has a higher priority ({} > {})",
+                    resource, dataCenter, highestPriority, priority);
+        }
+    }
+
+    /**
+     * Remove the cached failure of the released lock and notify the listeners.
+     */
+    private void released(String dataCenter, String resource)
+    {
+        myContendedLocks.remove(new LockCache.LockKey(dataCenter, resource));
+        myLockCache.invalidate(dataCenter, resource);
+
+        for (LockReleaseListener listener : myLockReleaseListeners)
+        {
+            try
+            {
+                listener.onLockReleased(dataCenter, resource);
+            }
+            catch (Exception e)
+            {
+                LOG.warn("Unable to notify {} about released lock {} in datacenter {}", listener, resource, dataCenter, e);
+            }
+        }
+    }
+
+    @VisibleForTesting
+    int getContendedLocks()
+    {
+        return myContendedLocks.size();
+    }
+
     private void verifySchemasExists()
     {
         KeyspaceMetadata keyspaceMetadata = mySession.getCluster().getMetadata().getKeyspace(myKeyspaceName);
@@ -420,29 +922,85 @@ public class CASLockFactory implements LockFactory, Closeable
         }
     }
 
-    class CASLock implements DistributedLock, Runnable
+    @VisibleForTesting
+    int getCachedReplicaSets()
+    {
+        return myReplicaCache.size();
+    }
+
+    /**
+     * Clears the cached replicas of the lock resources when the cluster topology or the lock keyspace changes.
+     */
+    private class TopologyListener extends SchemaChangeListenerBase implements Host.StateListener
+    {
+        @Override
+        public void onAdd(Host host)
+        {
+            clearReplicaCache();
+        }
+
+        @Override
+        public void onRemove(Host host)
+        {
+            clearReplicaCache();
+        }
+
+        @Override
+        public void onUp(Host host)
+        {
+            // Replicas are not affected by host states
+        }
+
+        @Override
+        public void onDown(Host host)
+        {
+            // Replicas are not affected by host states
+        }
+
+        @Override
+        public void onKeyspaceChanged(KeyspaceMetadata current, KeyspaceMetadata previous)
+        {
+            if (myKeyspaceName.equals(current.getName()))
+            {
+                clearReplicaCache();
+            }
+        }
+
+        private void clearReplicaCache()
+        {
+            LOG.debug("Topology changed, clearing cached lock replicas");
+            myReplicaCache.clear();
+        }
+    }
+
+    class CASLock implements DistributedLock, Runnable, LockRenewer.Renewable
     {
         private final String myDataCenter;
         private final String myResource;
         private final int myPriority;
         private final Map<String, String> myMetadata;
 
-        private final AtomicReference<ScheduledFuture<?>> myUpdateFuture = new AtomicReference<>();
+        private final AtomicReference<LockRenewer.Lease> myLease = new AtomicReference<>();
 
         private final AtomicInteger myFailedUpdateAttempts = new AtomicInteger();
 
+        private volatile long myLockedAt;
+
         private final int myLocallyHighestPriority;
         private final int globalHighPriority;
 
         CASLock(String dataCenter, String resource, int priority, Map<String, String> metadata)
+        {
+            this(dataCenter, resource, priority, metadata, computePriorities(dataCenter, resource));
+        }
+
+        CASLock(String dataCenter, String resource, int priority, Map<String, String> metadata, List<NodePriority> nodePriorities)
         {
             myDataCenter = dataCenter;
             myResource = resource;
             myPriority = priority;
             myMetadata = metadata;
 
-            List<NodePriority> nodePriorities = computePriorities();
-
             myLocallyHighestPriority = nodePriorities.stream().filter(n -> n.getUuid().equals(myUuid)).map(NodePriority::getPriority).findFirst().orElse(myPriority);
             globalHighPriority = nodePriorities.stream().filter(n -> !n.getUuid().equals(myUuid)).map(NodePriority::getPriority).max(Integer::compare).orElse(myPriority);
         }
@@ -455,8 +1013,8 @@ public class CASLockFactory implements LockFactory, Closeable
                 if (tryLock())
                 {
                     LOG.trace("Lock for resource {} acquired", myResource);
-                    ScheduledFuture<?> future = myExecutor.scheduleAtFixedRate(this, LOCK_UPDATE_TIME_IN_SECONDS, LOCK_UPDATE_TIME_IN_SECONDS, TimeUnit.SECONDS);
-                    myUpdateFuture.set(future);
+                    myLockedAt = System.nanoTime();
+                    myLease.set(myLockRenewer.register(this));
 
                     return true;
                 }
@@ -465,36 +1023,91 @@ public class CASLockFactory implements LockFactory, Closeable
             return false;
         }
 
+        /**
+         * Try to acquire the lock asynchronously by first announcing the priority and then inserting the lock.
+         *
+         * @return A future completed with this lock when acquired, otherwise failed with a {@link LockException}.
+         */
+        ListenableFuture<DistributedLock> lockAsync()
+        {
+            ListenableFuture<?> announced = Futures.immediateFuture(null);
+
+            if (myLocallyHighestPriority <= myPriority)
+            {
+                announced = measureAsync(LockMetricHolder.AcquirePhase.COMPETE,
+                        () -> executeAsync(myDataCenter, myCompeteStatement.bind(myResource, myUuid, myPriority)));
+            }
+
+            return Futures.transform(announced, (AsyncFunction<Object, DistributedLock>) ignored ->
+            {
+                LOG.trace("Highest priority for resource {}: {}", myResource, globalHighPriority);
+                if (myPriority < globalHighPriority)
+                {
+                    return Futures.immediateFailedFuture(contended(-1L));
+                }
+
+                LOG.trace("Trying to acquire lock for resource {}", myResource);
+                ListenableFuture<ResultSet> inserted = measureAsync(LockMetricHolder.AcquirePhase.INSERT,
+                        () -> executeAsync(myDataCenter, myLockStatement.bind(myResource, myUuid, myMetadata)));
+                return Futures.transform(inserted, (AsyncFunction<ResultSet, DistributedLock>) this::locked);
+            });
+        }
+
+        private ListenableFuture<DistributedLock> locked(ResultSet resultSet)
+        {
+            if (!resultSet.wasApplied())
+            {
+                return Futures.transform(getLeaseTimeLeftAsync(myDataCenter, myResource),
+                        (AsyncFunction<Long, DistributedLock>) leaseTimeLeft -> Futures.immediateFailedFuture(contended(leaseTimeLeft)));
+            }
+
+            LOG.trace("Lock for resource {} acquired", myResource);
+            myLockedAt = System.nanoTime();
+            myLease.set(myLockRenewer.register(this));
+            return Futures.immediateFuture(this);
+        }
+
+        /**
+         * Renew the lock synchronously.
+         */
         @Override
         public void run()
         {
+            Futures.getUnchecked(renew());
+        }
+
+        @Override
+        public ListenableFuture<LockRenewer.RenewalResult> renew()
+        {
+            ListenableFuture<ResultSet> future;
             try
             {
-                updateLock();
-                myFailedUpdateAttempts.set(0);
+                future = executeAsync(myDataCenter, myUpdateLockStatement.bind(myUuid, myMetadata, myResource, myUuid));
             }
             catch (Exception e)
             {
-                int failedAttempts = myFailedUpdateAttempts.incrementAndGet();
-
-                if (failedAttempts >= FAILED_LOCK_RETRY_ATTEMPTS)
-                {
-                    LOG.error("Unable to re-lock resource '{}' after {} failed attempts", myResource, failedAttempts);
-                }
-                else
-                {
-                    LOG.warn("Unable to re-lock resource '{}', {} failed attempts", myResource, failedAttempts, e);
-                }
+                future = Futures.immediateFailedFuture(e);
             }
+
+            ListenableFuture<LockRenewer.RenewalResult> renewed = Futures.transform(future,
+                    (Function<ResultSet, LockRenewer.RenewalResult>) this::updated);
+
+            return Futures.withFallback(renewed, t ->
+            {
+                failed(t);
+                return Futures.immediateFuture(LockRenewer.RenewalResult.FAILED);
+            });
         }
 
         @Override
         public void close()
         {
-            ScheduledFuture<?> future = myUpdateFuture.get();
-            if (future != null)
+            LockRenewer.Lease lease = myLease.get();
+            if (lease != null)
             {
-                future.cancel(true);
+                lease.cancel();
+                failedAttemptsEnded();
+                myLockMetricHolder.lockHeld(System.nanoTime() - myLockedAt, TimeUnit.NANOSECONDS);
                 execute(myDataCenter, myRemoveLockStatement.bind(myResource, myUuid));
 
                 if (myLocallyHighestPriority <= myPriority)
@@ -505,16 +1118,68 @@ public class CASLockFactory implements LockFactory, Closeable
                 {
                     LOG.debug("Locally highest priority ({}) is higher than current ({}), will not remove", myLocallyHighestPriority, myPriority);
                 }
+
+                released(myDataCenter, myResource);
             }
         }
 
-        private void updateLock() throws LockException
+        /**
+         * Create the failure for a lock that is held or wanted by another node.
+         * The lease of the other node is only read if the lock is held, since a node with higher priority
+         * is expected to take the lock as soon as possible.
+         */
+        LockContendedException contended()
         {
-            ResultSet resultSet = execute(myDataCenter, myUpdateLockStatement.bind(myUuid, myMetadata, myResource, myUuid));
+            if (myPriority < globalHighPriority)
+            {
+                return contended(-1L);
+            }
 
+            return contended(Futures.getUnchecked(getLeaseTimeLeftAsync(myDataCenter, myResource)));
+        }
+
+        private LockContendedException contended(long leaseTimeLeftInMs)
+        {
+            CASLockFactory.this.contended(myDataCenter, myResource, myPriority);
+            return new LockContendedException(String.format("Unable to lock resource %s in datacenter %s", myResource, myDataCenter),
+                    leaseTimeLeftInMs);
+        }
+
+        /**
+         * The update is only applied if this node holds the lock, so a failed update means that the lock is lost.
+         */
+        private LockRenewer.RenewalResult updated(ResultSet resultSet)
+        {
             if (!resultSet.wasApplied())
             {
-                throw new LockException("CAS query failed");
+                failed(new LockException("CAS query failed"));
+                return LockRenewer.RenewalResult.LOST;
+            }
+
+            failedAttemptsEnded();
+            return LockRenewer.RenewalResult.RENEWED;
+        }
+
+        private void failed(Throwable t)
+        {
+            int failedAttempts = myFailedUpdateAttempts.incrementAndGet();
+
+            if (failedAttempts >= FAILED_LOCK_RETRY_ATTEMPTS)
+            {
+                LOG.error("Unable to re-lock resource '{}' after {} failed attempts", myResource, failedAttempts);
+            }
+            else
+            {
+                LOG.warn("Unable to re-lock resource '{}', {} failed attempts", myResource, failedAttempts, t);
+            }
+        }
+
+        private void failedAttemptsEnded()
+        {
+            int failedAttempts = myFailedUpdateAttempts.getAndSet(0);
+            if (failedAttempts > 0)
+            {
+                myLockMetricHolder.renewalFailedAttempts(failedAttempts);
             }
         }
 
@@ -531,34 +1196,23 @@ public class CASLockFactory implements LockFactory, Closeable
 
         private void insertPriority()
         {
-            execute(myDataCenter, myCompeteStatement.bind(myResource, myUuid, myPriority));
+            measure(LockMetricHolder.AcquirePhase.COMPETE, () -> execute(myDataCenter, myCompeteStatement.bind(myResource, myUuid, myPriority)));
         }
 
         private boolean tryLock()
         {
-            return execute(myDataCenter, myLockStatement.bind(myResource, myUuid, myMetadata)).wasApplied();
+            return measure(LockMetricHolder.AcquirePhase.INSERT, () -> execute(myDataCenter, myLockStatement.bind(myResource, myUuid, myMetadata))).wasApplied();
         }
 
-        private List<NodePriority> computePriorities()
+        int getFailedAttempts()
         {
-            List<NodePriority> nodePriorities = new ArrayList<>();
-
-            ResultSet resultSet = execute(myDataCenter, myGetPriorityStatement.bind(myResource));
-
-            for (Row row : resultSet)
-            {
-                int priority = row.getInt(COLUMN_PRIORITY);
-                UUID hostId = row.getUUID(COLUMN_NODE);
-
-                nodePriorities.add(new NodePriority(hostId, priority));
-            }
-
-            return nodePriorities;
+            return myFailedUpdateAttempts.get();
         }
 
-        int getFailedAttempts()
+        @Override
+        public String toString()
         {
-            return myFailedUpdateAttempts.get();
+            return String.format("lock %s in %s", myResource, myDataCenter);
         }
     }
 
@@ -49,4 +49,19 @@ public interface HostStates
      * @return True if the node is up. False will be returned if the state is unknown or if the node is down.
      */
     boolean isUp(Node node);
+
+    /**
+     * Check if a host is up without waiting for the host states to be refreshed.
+     * <p>
+     * The returned state might be outdated.
+     * The default implementation delegates to {@link #isUp(Host)}.
+     *
+     * @param host
+     *            The host.
+     * @return True if the host is up. False will be returned if the state is unknown or if the host is down.
+     */
+    default boolean isUpNonBlocking(Host host)
+    {
+        return isUp(host);
+    }
 }
@@ -18,9 +18,14 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.ericsson.bss.cassandra.ecchronos.core.utils.Node;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,6 +42,9 @@ public class HostStatesImpl implements HostStates, Closeable
 
     private final ConcurrentHashMap<InetAddress, Boolean> myHostStates = new ConcurrentHashMap<>();
     private final Object myRefreshLock = new Object();
+    private final AtomicBoolean myBackgroundRefreshPending = new AtomicBoolean(false);
+    private final ExecutorService myRefreshExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("HostStatesRefresh-%d").setDaemon(true).build());
     private final long myRefreshIntervalInMs;
 
     private volatile long myLastRefresh = -1;
@@ -70,12 +78,65 @@ public class HostStatesImpl implements HostStates, Closeable
         return isUp(node.getPublicAddress());
     }
 
+    /**
+     * Check if a host is up using the current host states.
+     * <p>
+     * If the host states are outdated they are refreshed in the background.
+     * The first call will block until the host states have been retrieved.
+     *
+     * @param host The host.
+     * @return True if the host is up. False will be returned if the state is unknown or if the host is down.
+     */
+    @Override
+    public boolean isUpNonBlocking(Host host)
+    {
+        if (myLastRefresh == -1)
+        {
+            return isUp(host);
+        }
+
+        if (shouldRefreshNodeStatus())
+        {
+            refreshNodeStatusInBackground();
+        }
+
+        Boolean status = myHostStates.get(host.getBroadcastAddress());
+        return status != null && status;
+    }
+
     @Override
     public void close()
     {
+        myRefreshExecutor.shutdown();
         myHostStates.clear();
     }
 
+    private void refreshNodeStatusInBackground()
+    {
+        if (myBackgroundRefreshPending.compareAndSet(false, true))
+        {
+            try
+            {
+                myRefreshExecutor.execute(() ->
+                {
+                    try
+                    {
+                        refreshNodeStatus();
+                    }
+                    finally
+                    {
+                        myBackgroundRefreshPending.set(false);
+                    }
+                });
+            }
+            catch (RejectedExecutionException e)
+            {
+                myBackgroundRefreshPending.set(false);
+                LOG.debug("Unable to refresh host states in the background", e);
+            }
+        }
+    }
+
     private void refreshNodeStatus()
     {
         if (shouldRefreshNodeStatus())
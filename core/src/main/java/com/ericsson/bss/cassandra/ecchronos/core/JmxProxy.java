@@ -15,6 +15,7 @@
 package com.ericsson.bss.cassandra.ecchronos.core;
 
 import java.io.Closeable;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
@@ -33,9 +34,20 @@ public interface JmxProxy extends Closeable
      *
      * @param listener
      *            The listener to add.
+     * @throws IOException
+     *             Thrown if the listener could not be added.
      * @see #removeStorageServiceListener(NotificationListener)
      */
-    void addStorageServiceListener(NotificationListener listener);
+    void addStorageServiceListener(NotificationListener listener) throws IOException;
+
+    /**
+     * Get the identity of the JMX connection used by this proxy.
+     * <p>
+     * Proxies using the same connection return the same identity.
+     *
+     * @return The identity of the connection.
+     */
+    Object getConnectionIdentity();
 
     /**
      * Get a list of textual representations of IP addresses of the current live nodes.
@@ -93,19 +93,38 @@ public class JmxProxyFactoryImpl implements JmxProxyFactory
         }
 
         @Override
-        public void addStorageServiceListener(NotificationListener listener)
+        public void addStorageServiceListener(NotificationListener listener) throws IOException
         {
+            myJmxConnector.addConnectionNotificationListener(listener, null, null);
             try
             {
-                myJmxConnector.addConnectionNotificationListener(listener, null, null);
                 myMbeanServerConnection.addNotificationListener(myStorageServiceObject, listener, null, null);
             }
             catch (InstanceNotFoundException | IOException e)
             {
-                LOG.error("Unable to add StorageService listener", e);
+                removeConnectionListener(listener);
+                throw new IOException("Unable to add StorageService listener", e);
             }
         }
 
+        private void removeConnectionListener(NotificationListener listener)
+        {
+            try
+            {
+                myJmxConnector.removeConnectionNotificationListener(listener);
+            }
+            catch (ListenerNotFoundException e)
+            {
+                LOG.debug("Connection listener already removed", e);
+            }
+        }
+
+        @Override
+        public Object getConnectionIdentity()
+        {
+            return myJmxConnector;
+        }
+
         @SuppressWarnings ("unchecked")
         @Override
         public List<String> getLiveNodes()
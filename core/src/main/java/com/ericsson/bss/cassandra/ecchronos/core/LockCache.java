@@ -14,10 +14,15 @@
  */
 package com.ericsson.bss.cassandra.ecchronos.core;
 
+import com.codahale.metrics.MetricRegistry;
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockContendedException;
 import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
+import com.ericsson.bss.cassandra.ecchronos.core.metrics.LockMetricHolder;
 import com.ericsson.bss.cassandra.ecchronos.core.scheduling.LockFactory.DistributedLock;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,26 +33,76 @@ import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+/**
+ * A cache of locking failures used to avoid trying to acquire locks that are likely to fail.
+ * <p>
+ * The time a failure is cached depends on the failure:
+ * <ul>
+ * <li>A lock held by another node is not retried until the lease of the other node expires, if known,
+ * as the lock factory is expected to {@link #invalidate(String, String) invalidate} the failure when the lock is released.</li>
+ * <li>Failures caused by errors, e.g. timeouts, are retried sooner.</li>
+ * <li>Other failures are cached for the default expire time.</li>
+ * </ul>
+ */
 public class LockCache
 {
     private static final Logger LOG = LoggerFactory.getLogger(LockCache.class);
 
     private static final long DEFAULT_EXPIRE_TIME_IN_SECONDS = 30;
+    private static final long TRANSIENT_EXPIRE_TIME_IN_SECONDS = 5;
+    private static final long MAX_EXPIRE_TIME_IN_SECONDS = 600;
 
-    private final Cache<LockKey, LockException> myFailureCache;
+    private final Cache<LockKey, CachedFailure> myFailureCache;
+    private final long myExpireTimeInNanos;
+    private final long myTransientExpireTimeInNanos;
+    private final long myMaxExpireTimeInNanos;
     private final LockSupplier myLockSupplier;
+    private final AsyncLockSupplier myAsyncLockSupplier;
+    private final LockMetricHolder myLockMetricHolder;
 
     public LockCache(LockSupplier lockSupplier)
     {
-        this(lockSupplier, DEFAULT_EXPIRE_TIME_IN_SECONDS, TimeUnit.SECONDS);
+        this(lockSupplier, synchronous(lockSupplier));
+    }
+
+    public LockCache(LockSupplier lockSupplier, AsyncLockSupplier asyncLockSupplier)
+    {
+        this(lockSupplier, asyncLockSupplier, new LockMetricHolder(new MetricRegistry()));
+    }
+
+    public LockCache(LockSupplier lockSupplier, AsyncLockSupplier asyncLockSupplier, LockMetricHolder lockMetricHolder)
+    {
+        this(lockSupplier, asyncLockSupplier, lockMetricHolder, DEFAULT_EXPIRE_TIME_IN_SECONDS, TimeUnit.SECONDS);
     }
 
     LockCache(LockSupplier lockSupplier, long expireTime, TimeUnit expireTimeUnit)
+    {
+        this(lockSupplier, synchronous(lockSupplier), new LockMetricHolder(new MetricRegistry()), expireTime, expireTimeUnit);
+    }
+
+    LockCache(LockSupplier lockSupplier, long expireTime, long transientExpireTime, TimeUnit expireTimeUnit)
+    {
+        this(lockSupplier, synchronous(lockSupplier), new LockMetricHolder(new MetricRegistry()), expireTime, transientExpireTime, expireTimeUnit);
+    }
+
+    LockCache(LockSupplier lockSupplier, AsyncLockSupplier asyncLockSupplier, LockMetricHolder lockMetricHolder, long expireTime, TimeUnit expireTimeUnit)
+    {
+        this(lockSupplier, asyncLockSupplier, lockMetricHolder, expireTime,
+                Math.min(expireTime, expireTimeUnit.convert(TRANSIENT_EXPIRE_TIME_IN_SECONDS, TimeUnit.SECONDS)), expireTimeUnit);
+    }
+
+    LockCache(LockSupplier lockSupplier, AsyncLockSupplier asyncLockSupplier, LockMetricHolder lockMetricHolder, long expireTime,
+            long transientExpireTime, TimeUnit expireTimeUnit)
     {
         myLockSupplier = lockSupplier;
+        myAsyncLockSupplier = asyncLockSupplier;
+        myLockMetricHolder = lockMetricHolder;
+        myExpireTimeInNanos = expireTimeUnit.toNanos(expireTime);
+        myTransientExpireTimeInNanos = expireTimeUnit.toNanos(transientExpireTime);
+        myMaxExpireTimeInNanos = Math.max(myExpireTimeInNanos, TimeUnit.SECONDS.toNanos(MAX_EXPIRE_TIME_IN_SECONDS));
 
         myFailureCache = CacheBuilder.newBuilder()
-                .expireAfterWrite(expireTime, expireTimeUnit)
+                .expireAfterWrite(myMaxExpireTimeInNanos, TimeUnit.NANOSECONDS)
                 .build();
     }
 
@@ -56,11 +111,23 @@ public class LockCache
         return getCachedFailure(new LockKey(dataCenter, resource));
     }
 
+    /**
+     * Remove a cached locking failure, e.g. when the resource is known to be released.
+     *
+     * @param dataCenter The data center of the lock or null if it's a global lock.
+     * @param resource The resource of the lock.
+     */
+    public void invalidate(String dataCenter, String resource)
+    {
+        myFailureCache.invalidate(new LockKey(dataCenter, resource));
+    }
+
     public DistributedLock getLock(String dataCenter, String resource, int priority, Map<String, String> metadata) throws LockException
     {
         LockKey lockKey = new LockKey(dataCenter, resource);
 
         Optional<LockException> cachedFailure = getCachedFailure(lockKey);
+        myLockMetricHolder.cacheLookup(cachedFailure.isPresent());
 
         if (cachedFailure.isPresent())
         {
@@ -73,11 +140,75 @@ public class LockCache
         }
         catch (LockException e)
         {
-            myFailureCache.put(lockKey, e);
+            cacheFailure(lockKey, e);
             throw e;
         }
     }
 
+    public ListenableFuture<DistributedLock> getLockAsync(String dataCenter, String resource, int priority, Map<String, String> metadata)
+    {
+        return getLockAsync(dataCenter, resource, priority, metadata, myAsyncLockSupplier);
+    }
+
+    /**
+     * Get a lock asynchronously using the provided supplier unless there is a cached failure for the resource.
+     *
+     * @param dataCenter The data center of the lock or null if it's a global lock.
+     * @param resource The resource to lock.
+     * @param priority The priority of the lock.
+     * @param metadata The metadata of the lock.
+     * @param asyncLockSupplier The supplier to use for this lock.
+     * @return A future completed with the lock.
+     */
+    public ListenableFuture<DistributedLock> getLockAsync(String dataCenter, String resource, int priority, Map<String, String> metadata,
+            AsyncLockSupplier asyncLockSupplier)
+    {
+        LockKey lockKey = new LockKey(dataCenter, resource);
+
+        Optional<LockException> cachedFailure = getCachedFailure(lockKey);
+        myLockMetricHolder.cacheLookup(cachedFailure.isPresent());
+
+        if (cachedFailure.isPresent())
+        {
+            LOG.debug("Encountered cached locking failure, failing lock attempt", cachedFailure.get());
+            return Futures.immediateFailedFuture(cachedFailure.get());
+        }
+
+        ListenableFuture<DistributedLock> future;
+        try
+        {
+            future = asyncLockSupplier.getLockAsync(dataCenter, resource, priority, metadata);
+        }
+        catch (Exception e)
+        {
+            future = Futures.immediateFailedFuture(e);
+        }
+
+        return Futures.withFallback(future, t ->
+        {
+            if (t instanceof LockException)
+            {
+                cacheFailure(lockKey, (LockException) t);
+            }
+            return Futures.immediateFailedFuture(t);
+        });
+    }
+
+    private static AsyncLockSupplier synchronous(LockSupplier lockSupplier)
+    {
+        return (dataCenter, resource, priority, metadata) ->
+        {
+            try
+            {
+                return Futures.immediateFuture(lockSupplier.getLock(dataCenter, resource, priority, metadata));
+            }
+            catch (LockException e)
+            {
+                return Futures.immediateFailedFuture(e);
+            }
+        };
+    }
+
     private void throwCachedLockException(LockException e) throws LockException
     {
         LOG.debug("Encountered cached locking failure, throwing exception", e);
@@ -86,7 +217,61 @@ public class LockCache
 
     private Optional<LockException> getCachedFailure(LockKey lockKey)
     {
-        return Optional.ofNullable(myFailureCache.getIfPresent(lockKey));
+        CachedFailure cachedFailure = myFailureCache.getIfPresent(lockKey);
+
+        if (cachedFailure == null)
+        {
+            return Optional.empty();
+        }
+
+        if (cachedFailure.hasExpired(System.nanoTime()))
+        {
+            myFailureCache.asMap().remove(lockKey, cachedFailure);
+            return Optional.empty();
+        }
+
+        return Optional.of(cachedFailure.myException);
+    }
+
+    private void cacheFailure(LockKey lockKey, LockException e)
+    {
+        long expireTimeInNanos = getExpireTimeInNanos(e);
+
+        LOG.trace("Caching locking failure for {} ms", TimeUnit.NANOSECONDS.toMillis(expireTimeInNanos));
+        myFailureCache.put(lockKey, new CachedFailure(e, System.nanoTime() + expireTimeInNanos));
+    }
+
+    private long getExpireTimeInNanos(LockException e)
+    {
+        if (e instanceof LockContendedException && ((LockContendedException) e).getLeaseTimeLeftInMs() >= 0)
+        {
+            long leaseTimeLeftInNanos = TimeUnit.MILLISECONDS.toNanos(((LockContendedException) e).getLeaseTimeLeftInMs());
+            return Math.min(Math.max(leaseTimeLeftInNanos, myTransientExpireTimeInNanos), myMaxExpireTimeInNanos);
+        }
+
+        if (e.getCause() != null)
+        {
+            return myTransientExpireTimeInNanos;
+        }
+
+        return myExpireTimeInNanos;
+    }
+
+    private static final class CachedFailure
+    {
+        private final LockException myException;
+        private final long myExpiresAtInNanos;
+
+        CachedFailure(LockException exception, long expiresAtInNanos)
+        {
+            myException = exception;
+            myExpiresAtInNanos = expiresAtInNanos;
+        }
+
+        boolean hasExpired(long nowInNanos)
+        {
+            return nowInNanos - myExpiresAtInNanos >= 0;
+        }
     }
 
     @FunctionalInterface
@@ -95,6 +280,12 @@ public class LockCache
         DistributedLock getLock(String dataCenter, String resource, int priority, Map<String, String> metadata) throws LockException;
     }
 
+    @FunctionalInterface
+    public interface AsyncLockSupplier
+    {
+        ListenableFuture<DistributedLock> getLockAsync(String dataCenter, String resource, int priority, Map<String, String> metadata);
+    }
+
     static final class LockKey
     {
         private final String myDataCenter;
@@ -106,6 +297,16 @@ public class LockCache
             myResourceName = checkNotNull(resourceName);
         }
 
+        String getDataCenter()
+        {
+            return myDataCenter;
+        }
+
+        String getResourceName()
+        {
+            return myResourceName;
+        }
+
         @Override
         public boolean equals(Object o)
         {
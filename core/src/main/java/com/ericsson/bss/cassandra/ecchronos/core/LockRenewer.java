@@ -0,0 +1,311 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core;
+
+import java.util.Comparator;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.ericsson.bss.cassandra.ecchronos.core.metrics.LockMetricHolder;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Renews the leases of all locks held by a lock factory.
+ * <p>
+ * The renewal of a lease is triggered from the shared executor but runs asynchronously
+ * so that a slow renewal does not delay the renewal of other leases.
+ * The number of renewals in flight is limited and when the limit is reached
+ * the lease that expires first is renewed first.
+ * <p>
+ * The lease is renewed with the configured interval as long as the renewals succeed.
+ * When a renewal fails it is retried sooner, based on the time left until the lease expires.
+ * Once the lease has expired the renewal is retried with the configured interval and
+ * when the lock is lost to another node the lease is no longer renewed.
+ * A renewal is also started early enough to complete before the lease expires based on the recent renewal times.
+ */
+final class LockRenewer
+{
+    private static final Logger LOG = LoggerFactory.getLogger(LockRenewer.class);
+
+    static final long MIN_RETRY_DELAY_IN_MS = TimeUnit.SECONDS.toMillis(1);
+    static final int LATENCY_MARGIN_FACTOR = 4;
+    static final double SMOOTHING_FACTOR = 0.2d;
+
+    private final PriorityBlockingQueue<Lease> myPendingRenewals =
+            new PriorityBlockingQueue<>(11, Comparator.comparingLong(Lease::getExpiryTime));
+
+    private final ScheduledExecutorService myExecutor;
+    private final LockMetricHolder myLockMetricHolder;
+    private final Semaphore myInFlightRenewals;
+    private final long myRenewalIntervalInMs;
+    private final long myLeaseTimeInMs;
+
+    private volatile double myAverageRenewalTimeInMs = 0.0d;
+
+    LockRenewer(ScheduledExecutorService executor, LockMetricHolder lockMetricHolder, long renewalIntervalInMs,
+            long leaseTimeInMs, int maxInFlightRenewals)
+    {
+        myExecutor = executor;
+        myLockMetricHolder = lockMetricHolder;
+        myRenewalIntervalInMs = renewalIntervalInMs;
+        myLeaseTimeInMs = leaseTimeInMs;
+        myInFlightRenewals = new Semaphore(maxInFlightRenewals);
+    }
+
+    /**
+     * Start renewing a lease that was just acquired.
+     *
+     * @param renewable The renewable lease.
+     * @return The lease that should be cancelled when the lock is released.
+     */
+    Lease register(Renewable renewable)
+    {
+        Lease lease = new Lease(renewable, System.currentTimeMillis() + myLeaseTimeInMs);
+        lease.scheduleRenewal(myRenewalIntervalInMs);
+        return lease;
+    }
+
+    int getPendingRenewals()
+    {
+        return myPendingRenewals.size();
+    }
+
+    private void drain()
+    {
+        while (!myPendingRenewals.isEmpty() && myInFlightRenewals.tryAcquire())
+        {
+            Lease lease = myPendingRenewals.poll();
+
+            if (lease == null || lease.isCancelled())
+            {
+                myInFlightRenewals.release();
+                continue;
+            }
+
+            lease.renew();
+        }
+    }
+
+    /**
+     * Calculate when the next renewal of a lease should start.
+     * <p>
+     * A failed renewal is retried after half of the time left of the lease
+     * or with the renewal interval if the lease has already expired.
+     * The renewal is started early enough to complete before the lease expires, based on the average renewal time.
+     *
+     * @param expiryTime The time the lease expires.
+     * @param successful If the last renewal was successful.
+     * @param now The current time.
+     * @return The delay in milliseconds until the next renewal.
+     */
+    @VisibleForTesting
+    long nextRenewalDelay(long expiryTime, boolean successful, long now)
+    {
+        long timeLeft = expiryTime - now;
+
+        if (!successful && timeLeft <= 0)
+        {
+            return myRenewalIntervalInMs;
+        }
+
+        long margin = (long) (myAverageRenewalTimeInMs * LATENCY_MARGIN_FACTOR);
+
+        long delay = successful ? myRenewalIntervalInMs : Math.min(timeLeft / 2, myRenewalIntervalInMs);
+        delay = Math.min(delay, timeLeft - margin);
+
+        return Math.max(delay, Math.min(MIN_RETRY_DELAY_IN_MS, myRenewalIntervalInMs));
+    }
+
+    @VisibleForTesting
+    void updateAverageRenewalTime(long renewalTimeInMs)
+    {
+        myAverageRenewalTimeInMs = myAverageRenewalTimeInMs * (1.0d - SMOOTHING_FACTOR)
+                + renewalTimeInMs * SMOOTHING_FACTOR;
+    }
+
+    /**
+     * The result of renewing a lease.
+     */
+    enum RenewalResult
+    {
+        /**
+         * The lease was renewed.
+         */
+        RENEWED,
+
+        /**
+         * The lease could not be renewed, e.g. due to a timeout, and the renewal should be retried.
+         */
+        FAILED,
+
+        /**
+         * The lock is no longer held by this node and the lease should not be renewed again.
+         */
+        LOST
+    }
+
+    /**
+     * A lease that can be renewed asynchronously.
+     */
+    @FunctionalInterface
+    interface Renewable
+    {
+        /**
+         * Start renewing the lease.
+         *
+         * @return A future that completes with the result of the renewal.
+         */
+        ListenableFuture<RenewalResult> renew();
+    }
+
+    /**
+     * A lease of a lock that is renewed by the {@link LockRenewer}.
+     */
+    final class Lease implements FutureCallback<RenewalResult>
+    {
+        private final Renewable myRenewable;
+
+        private volatile long myExpiryTime;
+        private volatile long myRenewalStartTime;
+        private volatile boolean myCancelled = false;
+        private volatile boolean myExpired = false;
+        private volatile ScheduledFuture<?> myScheduledRenewal;
+
+        private Lease(Renewable renewable, long expiryTime)
+        {
+            myRenewable = renewable;
+            myExpiryTime = expiryTime;
+        }
+
+        /**
+         * Get the time when the lease expires unless it is renewed.
+         *
+         * @return The expiry time in milliseconds since epoch.
+         */
+        long getExpiryTime()
+        {
+            return myExpiryTime;
+        }
+
+        boolean isCancelled()
+        {
+            return myCancelled;
+        }
+
+        /**
+         * Stop renewing the lease.
+         */
+        void cancel()
+        {
+            myCancelled = true;
+
+            ScheduledFuture<?> scheduledRenewal = myScheduledRenewal;
+            if (scheduledRenewal != null)
+            {
+                scheduledRenewal.cancel(false);
+            }
+
+            myPendingRenewals.remove(this);
+        }
+
+        private void scheduleRenewal(long delayInMs)
+        {
+            if (!myCancelled && !myExecutor.isShutdown())
+            {
+                myScheduledRenewal = myExecutor.schedule(this::enqueue, delayInMs, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void enqueue()
+        {
+            if (!myCancelled)
+            {
+                myPendingRenewals.add(this);
+                drain();
+            }
+        }
+
+        private void renew()
+        {
+            myRenewalStartTime = System.currentTimeMillis();
+
+            ListenableFuture<RenewalResult> future;
+            try
+            {
+                future = myRenewable.renew();
+            }
+            catch (Exception e)
+            {
+                future = Futures.immediateFailedFuture(e);
+            }
+
+            Futures.addCallback(future, this);
+        }
+
+        @Override
+        public void onSuccess(RenewalResult result)
+        {
+            renewed(result == null ? RenewalResult.FAILED : result);
+        }
+
+        @Override
+        public void onFailure(Throwable t)
+        {
+            LOG.debug("Unable to renew lease", t);
+            renewed(RenewalResult.FAILED);
+        }
+
+        private void renewed(RenewalResult result)
+        {
+            boolean successful = result == RenewalResult.RENEWED;
+
+            myInFlightRenewals.release();
+
+            long now = System.currentTimeMillis();
+            long renewalTime = now - myRenewalStartTime;
+            myLockMetricHolder.renewal(renewalTime, TimeUnit.MILLISECONDS, successful);
+
+            if (successful)
+            {
+                updateAverageRenewalTime(renewalTime);
+                myExpiryTime = myRenewalStartTime + myLeaseTimeInMs;
+                myExpired = false;
+            }
+            else if (result == RenewalResult.LOST)
+            {
+                myExpired = true;
+                LOG.error("Lease of {} was lost, no longer renewing", myRenewable);
+                drain();
+                return;
+            }
+            else if (now >= myExpiryTime && !myExpired)
+            {
+                myExpired = true;
+                LOG.error("Lease of {} has expired", myRenewable);
+            }
+
+            scheduleRenewal(nextRenewalDelay(myExpiryTime, successful, now));
+            drain();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.exceptions;
+
+/**
+ * Exception thrown when a lock could not be acquired since there are not sufficient nodes available to lock it.
+ */
+public class InsufficientNodesException extends LockException
+{
+    private static final long serialVersionUID = -2187413386104522931L;
+
+    public InsufficientNodesException(String message)
+    {
+        super(message);
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.exceptions;
+
+/**
+ * Exception thrown when a lock could not be acquired since it is held or wanted by another node.
+ */
+public class LockContendedException extends LockException
+{
+    private static final long serialVersionUID = 4296730931728815621L;
+
+    private final long myLeaseTimeLeftInMs;
+
+    /**
+     * @param message The message.
+     * @param leaseTimeLeftInMs The time left of the lease held by the other node or -1 if unknown.
+     */
+    public LockContendedException(String message, long leaseTimeLeftInMs)
+    {
+        super(message);
+        myLeaseTimeLeftInMs = leaseTimeLeftInMs;
+    }
+
+    /**
+     * Get the time left of the lease held by the other node, i.e. the latest time the lock can be acquired unless
+     * the lease is renewed.
+     *
+     * @return The time left in milliseconds or -1 if unknown, e.g. if the lock is wanted by a node with higher priority.
+     */
+    public long getLeaseTimeLeftInMs()
+    {
+        return myLeaseTimeLeftInMs;
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.metrics;
+
+import java.io.Closeable;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.codahale.metrics.Timer;
+
+/**
+ * Holder class for metrics related to the distributed locks.
+ * <p>
+ * Metrics related to a lock resource are prefixed by the {@link #lockResourceType(String, String) type} of it.
+ */
+public class LockMetricHolder implements Closeable
+{
+    static final String RENEWAL_TIME = "LockRenewalTime";
+    static final String RENEWAL_FAILURES = "LockRenewalFailures";
+    static final String RENEWAL_FAILED_ATTEMPTS = "LockRenewalFailedAttempts";
+    static final String HOLD_TIME = "LockHoldTime";
+    static final String CONTENTION = "LockContention";
+    static final String CACHE_HITS = "LockCacheHits";
+    static final String CACHE_MISSES = "LockCacheMisses";
+    static final String CACHE_HIT_RATIO = "LockCacheHitRatio";
+
+    /**
+     * The phases of acquiring a lock.
+     */
+    public enum AcquirePhase
+    {
+        /**
+         * Reading the priorities announced by all nodes.
+         */
+        PRIORITY_READ("LockPriorityReadTime"),
+        /**
+         * Announcing the priority of the local node.
+         */
+        COMPETE("LockCompeteTime"),
+        /**
+         * Inserting the lock using a lightweight transaction.
+         */
+        INSERT("LockInsertTime");
+
+        private final String myMetricName;
+
+        AcquirePhase(String metricName)
+        {
+            myMetricName = metricName;
+        }
+    }
+
+    private final Set<String> myMetricNames = ConcurrentHashMap.newKeySet();
+
+    private final MetricRegistry myMetricRegistry;
+
+    public LockMetricHolder(MetricRegistry metricRegistry)
+    {
+        myMetricRegistry = metricRegistry;
+
+        // Initialize metrics
+        timer(RENEWAL_TIME);
+        counter(RENEWAL_FAILURES);
+        histogram(RENEWAL_FAILED_ATTEMPTS);
+        timer(HOLD_TIME);
+
+        for (AcquirePhase phase : AcquirePhase.values())
+        {
+            timer(phase.myMetricName);
+        }
+
+        Meter cacheHits = meter(CACHE_HITS);
+        Meter cacheMisses = meter(CACHE_MISSES);
+
+        myMetricNames.add(CACHE_HIT_RATIO);
+        myMetricRegistry.gauge(CACHE_HIT_RATIO, () -> new RatioGauge()
+        {
+            @Override
+            protected Ratio getRatio()
+            {
+                double hits = cacheHits.getOneMinuteRate();
+                return Ratio.of(hits, hits + cacheMisses.getOneMinuteRate());
+            }
+        });
+    }
+
+    /**
+     * Record a phase of an attempt to acquire a lock.
+     *
+     * @param phase The phase.
+     * @param timeTaken The time the phase took.
+     * @param timeUnit The time unit of the time taken.
+     */
+    public void acquirePhase(AcquirePhase phase, long timeTaken, TimeUnit timeUnit)
+    {
+        timer(phase.myMetricName).update(timeTaken, timeUnit);
+    }
+
+    /**
+     * Record the time a lock was held.
+     *
+     * @param timeTaken The time the lock was held.
+     * @param timeUnit The time unit of the time held.
+     */
+    public void lockHeld(long timeTaken, TimeUnit timeUnit)
+    {
+        timer(HOLD_TIME).update(timeTaken, timeUnit);
+    }
+
+    /**
+     * Record that a lock resource could not be acquired since it is held or wanted by another node.
+     *
+     * @param dataCenter The data center of the lock resource or null if it's a global resource.
+     * @param resource The lock resource.
+     */
+    public void contended(String dataCenter, String resource)
+    {
+        counter(metricName(lockResourceType(dataCenter, resource), CONTENTION)).inc();
+    }
+
+    /**
+     * Record a lookup in the cache of locking failures before trying to acquire a lock.
+     *
+     * @param hit If a cached failure was found, in which case the lock is not tried.
+     */
+    public void cacheLookup(boolean hit)
+    {
+        meter(hit ? CACHE_HITS : CACHE_MISSES).mark();
+    }
+
+    /**
+     * Record an attempt to renew the lease of a lock.
+     *
+     * @param timeTaken The time the attempt took.
+     * @param timeUnit The time unit of the time taken.
+     * @param successful If the lease was renewed.
+     */
+    public void renewal(long timeTaken, TimeUnit timeUnit, boolean successful)
+    {
+        timer(RENEWAL_TIME).update(timeTaken, timeUnit);
+
+        if (!successful)
+        {
+            counter(RENEWAL_FAILURES).inc();
+        }
+    }
+
+    /**
+     * Record the length of a streak of consecutive failed attempts to renew the lease of a lock.
+     * The streak is recorded once when it ends, i.e. when the lease is renewed again or the lock is released.
+     *
+     * @param failedAttempts The number of consecutive failed attempts in the streak.
+     */
+    public void renewalFailedAttempts(int failedAttempts)
+    {
+        histogram(RENEWAL_FAILED_ATTEMPTS).update(failedAttempts);
+    }
+
+    /**
+     * Get the type of a lock resource, which is used as the prefix of the metrics related to the resource.
+     * <p>
+     * The type is the name of the resource up to the first dash followed by the data center,
+     * i.e. "RepairResource-DC1" for "RepairResource-DC1-1" or any vnode resource in "DC1".
+     * This keeps the number of metrics bounded while the resources are unique per replica or slot.
+     *
+     * @param dataCenter The data center of the resource or null if it's a global resource.
+     * @param resource The lock resource.
+     * @return The type of the lock resource.
+     */
+    static String lockResourceType(String dataCenter, String resource)
+    {
+        int separator = resource.indexOf('-');
+        String type = separator == -1 ? resource : resource.substring(0, separator);
+
+        return dataCenter == null ? type : metricName(type, dataCenter);
+    }
+
+    private static String metricName(String prefix, String name)
+    {
+        return prefix + "-" + name;
+    }
+
+    private Timer timer(String name)
+    {
+        myMetricNames.add(name);
+        return myMetricRegistry.timer(name, Timer::new);
+    }
+
+    private Counter counter(String name)
+    {
+        myMetricNames.add(name);
+        return myMetricRegistry.counter(name);
+    }
+
+    private Histogram histogram(String name)
+    {
+        myMetricNames.add(name);
+        return myMetricRegistry.histogram(name);
+    }
+
+    private Meter meter(String name)
+    {
+        myMetricNames.add(name);
+        return myMetricRegistry.meter(name);
+    }
+
+    @Override
+    public void close()
+    {
+        for (String name : myMetricNames)
+        {
+            myMetricRegistry.remove(name);
+        }
+    }
+}
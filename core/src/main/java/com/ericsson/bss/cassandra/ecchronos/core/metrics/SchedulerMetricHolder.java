@@ -0,0 +1,154 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.metrics;
+
+import java.io.Closeable;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * Holder class for metrics related to the scheduler.
+ *
+ * Metrics that are related to a priority or run policy are prefixed by the name of it.
+ * Metrics that are related to a lock resource are prefixed by the type of it,
+ * see {@link LockMetricHolder#lockResourceType(String, String)}.
+ */
+public class SchedulerMetricHolder implements Closeable
+{
+    static final String RUNNABLE_JOBS = "RunnableJobs";
+    static final String PARKED_JOBS = "ParkedJobs";
+    static final String JOB_START_DELAY = "JobStartDelay";
+    static final String RUN_TIME = "SchedulerRunTime";
+    static final String RUN_POLICY_REJECTIONS = "RunPolicyRejections";
+    static final String LOCK_ACQUIRE_TIME = "LockAcquireTime";
+    static final String LOCK_FAILURES = "LockFailures";
+
+    private final Set<String> myMetricNames = ConcurrentHashMap.newKeySet();
+
+    private final MetricRegistry myMetricRegistry;
+
+    public SchedulerMetricHolder(MetricRegistry metricRegistry)
+    {
+        myMetricRegistry = metricRegistry;
+
+        // Initialize metrics
+        timer(JOB_START_DELAY);
+        timer(RUN_TIME);
+    }
+
+    /**
+     * Register the gauges for the number of runnable and parked jobs with the provided priority.
+     *
+     * @param priority The name of the priority.
+     * @param runnableJobs Gauge for the number of jobs that are runnable now.
+     * @param parkedJobs Gauge for the number of jobs that are waiting to become runnable.
+     */
+    public void jobs(String priority, Gauge<Integer> runnableJobs, Gauge<Integer> parkedJobs)
+    {
+        register(metricName(priority, RUNNABLE_JOBS), runnableJobs);
+        register(metricName(priority, PARKED_JOBS), parkedJobs);
+    }
+
+    /**
+     * Record the time from when a job became runnable until it was started.
+     *
+     * @param delay The time the job was waiting.
+     * @param timeUnit The time unit of the delay.
+     */
+    public void jobStarted(long delay, TimeUnit timeUnit)
+    {
+        timer(JOB_START_DELAY).update(Math.max(delay, 0L), timeUnit);
+    }
+
+    /**
+     * Record the time taken for one pass of a scheduler worker.
+     *
+     * @param timeTaken The time the pass took.
+     * @param timeUnit The time unit of the time taken.
+     */
+    public void run(long timeTaken, TimeUnit timeUnit)
+    {
+        timer(RUN_TIME).update(timeTaken, timeUnit);
+    }
+
+    /**
+     * Record that a job was rejected by a run policy.
+     *
+     * @param runPolicy The name of the run policy.
+     */
+    public void runPolicyRejection(String runPolicy)
+    {
+        counter(metricName(runPolicy, RUN_POLICY_REJECTIONS)).inc();
+    }
+
+    /**
+     * Record an attempt to acquire a lock.
+     *
+     * @param dataCenter The data center of the locked resource or null if it's a global resource.
+     * @param resource The locked resource.
+     * @param timeTaken The time the attempt took.
+     * @param timeUnit The time unit of the time taken.
+     * @param successful If the lock was acquired.
+     */
+    public void lockAcquired(String dataCenter, String resource, long timeTaken, TimeUnit timeUnit, boolean successful)
+    {
+        String resourceType = LockMetricHolder.lockResourceType(dataCenter, resource);
+
+        timer(metricName(resourceType, LOCK_ACQUIRE_TIME)).update(timeTaken, timeUnit);
+
+        if (!successful)
+        {
+            counter(metricName(resourceType, LOCK_FAILURES)).inc();
+        }
+    }
+
+    private static String metricName(String prefix, String name)
+    {
+        return prefix + "-" + name;
+    }
+
+    private Timer timer(String name)
+    {
+        myMetricNames.add(name);
+        return myMetricRegistry.timer(name, Timer::new);
+    }
+
+    private Counter counter(String name)
+    {
+        myMetricNames.add(name);
+        return myMetricRegistry.counter(name);
+    }
+
+    private void register(String name, Gauge<Integer> gauge)
+    {
+        myMetricNames.add(name);
+        myMetricRegistry.register(name, gauge);
+    }
+
+    @Override
+    public void close()
+    {
+        for (String name : myMetricNames)
+        {
+            myMetricRegistry.remove(name);
+        }
+    }
+}
@@ -16,6 +16,7 @@ package com.ericsson.bss.cassandra.ecchronos.core.repair;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
@@ -32,6 +33,7 @@ import com.ericsson.bss.cassandra.ecchronos.core.utils.Node;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.MoreExecutors;
 
 /**
  * A Job that will schedule and run repair on one table once. It creates {@link RepairTask RepairTasks} to fully repair
@@ -42,13 +44,14 @@ public class OnDemandRepairJob extends ScheduledJob
 {
     private static final Logger LOG = LoggerFactory.getLogger(OnDemandRepairJob.class);
 
-    private static final RepairLockFactory repairLockFactory = new RepairLockFactoryImpl();
-
     private final JmxProxyFactory myJmxProxyFactory;
+    private final RepairNotificationDispatcher myRepairNotificationDispatcher;
     private final RepairConfiguration myRepairConfiguration;
     private final RepairLockType myRepairLockType;
+    private final RepairLockFactory myRepairLockFactory;
     private final Consumer<UUID> myOnFinishedHook;
     private final RepairHistory myRepairHistory;
+    private final ExecutorService mySessionExecutor;
 
     private final TableRepairMetrics myTableRepairMetrics;
 
@@ -66,11 +69,15 @@ public class OnDemandRepairJob extends ScheduledJob
 
         myOngoingJob = Preconditions.checkNotNull(builder.ongoingJob, "Ongoing job must be set");
         myJmxProxyFactory = Preconditions.checkNotNull(builder.jmxProxyFactory, "JMX Proxy Factory must be set");
+        myRepairNotificationDispatcher = Preconditions.checkNotNull(builder.repairNotificationDispatcher,
+                "Repair notification dispatcher must be set");
         myTableRepairMetrics = Preconditions.checkNotNull(builder.tableRepairMetrics, "Table repair metrics must be set");
         myRepairConfiguration = Preconditions.checkNotNull(builder.repairConfiguration, "Repair configuration must be set");
         myRepairLockType = Preconditions.checkNotNull(builder.repairLockType, "Repair lock type must be set");
+        myRepairLockFactory = Preconditions.checkNotNull(builder.repairLockFactory, "Repair lock factory must be set");
         myOnFinishedHook = Preconditions.checkNotNull(builder.onFinishedHook, "On finished hook must be set");
         myRepairHistory = Preconditions.checkNotNull(builder.repairHistory, "Repair history must be set");
+        mySessionExecutor = Preconditions.checkNotNull(builder.sessionExecutor, "Session executor must be set");
 
         myTasks = createRepairTasks(myOngoingJob.getTokens(), myOngoingJob.getRepairedTokens());
         myTotalTasks = myTasks.size();
@@ -112,10 +119,12 @@ public class OnDemandRepairJob extends ScheduledJob
                     .withRepairConfiguration(myRepairConfiguration)
                     .withReplicaRepairGroup(replicaRepairGroup)
                     .withJmxProxyFactory(myJmxProxyFactory)
+                    .withRepairNotificationDispatcher(myRepairNotificationDispatcher)
                     .withTableRepairMetrics(myTableRepairMetrics)
                     .withRepairResourceFactory(myRepairLockType.getLockFactory())
-                    .withRepairLockFactory(repairLockFactory)
+                    .withRepairLockFactory(myRepairLockFactory)
                     .withRepairHistory(myRepairHistory)
+                    .withSessionExecutor(mySessionExecutor)
                     .withJobId(getId())
                     .build(Priority.HIGHEST.getValue()), groupTokenRange);
         }
@@ -200,7 +209,11 @@ public class OnDemandRepairJob extends ScheduledJob
             failed = true;
             return State.FAILED;
         }
-        return myTasks.isEmpty() ? State.FINISHED : State.RUNNABLE;
+        if (myTasks.isEmpty())
+        {
+            return State.FINISHED;
+        }
+        return super.runnable() ? State.RUNNABLE : State.PARKED;
     }
 
     public double getProgress()
@@ -222,13 +235,16 @@ public class OnDemandRepairJob extends ScheduledJob
                 .withRunInterval(0, TimeUnit.DAYS)
                 .build();
         private JmxProxyFactory jmxProxyFactory;
+        private RepairNotificationDispatcher repairNotificationDispatcher;
         private TableRepairMetrics tableRepairMetrics = null;
         private RepairConfiguration repairConfiguration = RepairConfiguration.DEFAULT;
         private RepairLockType repairLockType;
+        private RepairLockFactory repairLockFactory = new RepairLockFactoryImpl();
         private Consumer<UUID> onFinishedHook = table -> {
         };
         private RepairHistory repairHistory;
         private OngoingJob ongoingJob;
+        private ExecutorService sessionExecutor = MoreExecutors.newDirectExecutorService();
 
         public Builder withJmxProxyFactory(JmxProxyFactory jmxProxyFactory)
         {
@@ -236,6 +252,12 @@ public class OnDemandRepairJob extends ScheduledJob
             return this;
         }
 
+        public Builder withRepairNotificationDispatcher(RepairNotificationDispatcher repairNotificationDispatcher)
+        {
+            this.repairNotificationDispatcher = repairNotificationDispatcher;
+            return this;
+        }
+
         public Builder withTableRepairMetrics(TableRepairMetrics tableRepairMetrics)
         {
             this.tableRepairMetrics = tableRepairMetrics;
@@ -248,6 +270,12 @@ public class OnDemandRepairJob extends ScheduledJob
             return this;
         }
 
+        public Builder withRepairLockFactory(RepairLockFactory repairLockFactory)
+        {
+            this.repairLockFactory = repairLockFactory;
+            return this;
+        }
+
         public Builder withOnFinished(Consumer<UUID> onFinishedHook)
         {
             this.onFinishedHook = onFinishedHook;
@@ -272,6 +300,12 @@ public class OnDemandRepairJob extends ScheduledJob
             return this;
         }
 
+        public Builder withSessionExecutor(ExecutorService sessionExecutor)
+        {
+            this.sessionExecutor = sessionExecutor;
+            return this;
+        }
+
         public OnDemandRepairJob build()
         {
             return new OnDemandRepairJob(this);
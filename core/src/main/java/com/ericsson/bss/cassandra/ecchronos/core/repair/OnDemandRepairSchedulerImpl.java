@@ -21,6 +21,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -40,6 +41,7 @@ import com.ericsson.bss.cassandra.ecchronos.core.repair.state.ReplicationState;
 import com.ericsson.bss.cassandra.ecchronos.core.scheduling.ScheduleManager;
 import com.ericsson.bss.cassandra.ecchronos.core.scheduling.ScheduledJob;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * A factory creating {@link OnDemandRepairJob}'s for tables.
@@ -55,23 +57,29 @@ public class OnDemandRepairSchedulerImpl implements OnDemandRepairScheduler, Clo
     private final Object myLock = new Object();
 
     private final JmxProxyFactory myJmxProxyFactory;
+    private final RepairNotificationDispatcher myRepairNotificationDispatcher;
     private final TableRepairMetrics myTableRepairMetrics;
     private final ScheduleManager myScheduleManager;
     private final ReplicationState myReplicationState;
     private final RepairLockType myRepairLockType;
+    private final RepairLockFactory myRepairLockFactory;
     private final Metadata myMetadata;
     private final RepairConfiguration myRepairConfiguration;
     private final RepairHistory myRepairHistory;
     private final ScheduledExecutorService myExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final ExecutorService mySessionExecutor = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("OnDemandRepairSession-%d").setDaemon(true).build());
     private final OnDemandStatus myOnDemandStatus;
 
     private OnDemandRepairSchedulerImpl(Builder builder)
     {
         myJmxProxyFactory = builder.myJmxProxyFactory;
+        myRepairNotificationDispatcher = builder.myRepairNotificationDispatcher;
         myTableRepairMetrics = builder.myTableRepairMetrics;
         myScheduleManager = builder.myScheduleManager;
         myReplicationState = builder.myReplicationState;
         myRepairLockType = builder.repairLockType;
+        myRepairLockFactory = builder.repairLockFactory;
         myMetadata = builder.metadata;
         myRepairConfiguration = builder.repairConfiguration;
         myRepairHistory = builder.repairHistory;
@@ -125,6 +133,7 @@ public class OnDemandRepairSchedulerImpl implements OnDemandRepairScheduler, Clo
 
             myScheduledJobs.clear();
             myExecutor.shutdown();
+            mySessionExecutor.shutdown();
         }
     }
 
@@ -205,12 +214,15 @@ public class OnDemandRepairSchedulerImpl implements OnDemandRepairScheduler, Clo
                 .build();
         OnDemandRepairJob job = new OnDemandRepairJob.Builder()
                 .withJmxProxyFactory(myJmxProxyFactory)
+                .withRepairNotificationDispatcher(myRepairNotificationDispatcher)
                 .withTableRepairMetrics(myTableRepairMetrics)
                 .withRepairLockType(myRepairLockType)
+                .withRepairLockFactory(myRepairLockFactory)
                 .withOnFinished(this::removeScheduledJob)
                 .withRepairConfiguration(myRepairConfiguration)
                 .withRepairHistory(myRepairHistory)
                 .withOngoingJob(ongoingJob)
+                .withSessionExecutor(mySessionExecutor)
                 .build();
         return job;
     }
@@ -219,12 +231,15 @@ public class OnDemandRepairSchedulerImpl implements OnDemandRepairScheduler, Clo
     {
         OnDemandRepairJob job = new OnDemandRepairJob.Builder()
                 .withJmxProxyFactory(myJmxProxyFactory)
+                .withRepairNotificationDispatcher(myRepairNotificationDispatcher)
                 .withTableRepairMetrics(myTableRepairMetrics)
                 .withRepairLockType(myRepairLockType)
+                .withRepairLockFactory(myRepairLockFactory)
                 .withOnFinished(this::removeScheduledJob)
                 .withRepairConfiguration(myRepairConfiguration)
                 .withRepairHistory(myRepairHistory)
                 .withOngoingJob(ongoingJob)
+                .withSessionExecutor(mySessionExecutor)
                 .build();
         return job;
     }
@@ -237,10 +252,12 @@ public class OnDemandRepairSchedulerImpl implements OnDemandRepairScheduler, Clo
     public static class Builder
     {
         private JmxProxyFactory myJmxProxyFactory;
+        private RepairNotificationDispatcher myRepairNotificationDispatcher;
         private TableRepairMetrics myTableRepairMetrics;
         private ScheduleManager myScheduleManager;
         private ReplicationState myReplicationState;
         private RepairLockType repairLockType;
+        private RepairLockFactory repairLockFactory = new RepairLockFactoryImpl();
         private Metadata metadata;
         private RepairConfiguration repairConfiguration;
         private RepairHistory repairHistory;
@@ -252,6 +269,12 @@ public class OnDemandRepairSchedulerImpl implements OnDemandRepairScheduler, Clo
             return this;
         }
 
+        public Builder withRepairNotificationDispatcher(RepairNotificationDispatcher repairNotificationDispatcher)
+        {
+            myRepairNotificationDispatcher = repairNotificationDispatcher;
+            return this;
+        }
+
         public Builder withTableRepairMetrics(TableRepairMetrics tableRepairMetrics)
         {
             myTableRepairMetrics = tableRepairMetrics;
@@ -276,6 +299,12 @@ public class OnDemandRepairSchedulerImpl implements OnDemandRepairScheduler, Clo
             return this;
         }
 
+        public Builder withRepairLockFactory(RepairLockFactory repairLockFactory)
+        {
+            this.repairLockFactory = repairLockFactory;
+            return this;
+        }
+
         public Builder withMetadata(Metadata metadata)
         {
             this.metadata = metadata;
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.repair;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.ReplicaRepairGroup;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.Node;
+
+/**
+ * Keeps track of failed repairs per group of replicas and when the replicas should be repaired again.
+ * <p>
+ * The backoff grows exponentially with the number of consecutive failures of the same {@link RepairFailureType type},
+ * up to the maximum backoff of the type.
+ * A random jitter of up to half the backoff is subtracted to avoid that replicas are retried at the same time.
+ * A successful repair of the replicas resets the backoff.
+ */
+public class RepairBackoff
+{
+    private final ConcurrentMap<Set<Node>, Backoff> myBackoffs = new ConcurrentHashMap<>();
+
+    /**
+     * Register a failed repair of the replicas.
+     *
+     * @param replicas The replicas that failed to be repaired.
+     * @param failureType The type of failure.
+     * @return The backoff in milliseconds until the replicas should be repaired again.
+     */
+    public long failed(Set<Node> replicas, RepairFailureType failureType)
+    {
+        long now = System.currentTimeMillis();
+        Backoff backoff = myBackoffs.compute(replicas, (k, v) -> new Backoff(v, failureType, now));
+
+        return backoff.myRetryTime - now;
+    }
+
+    /**
+     * Register a successful repair of the replicas, resetting the backoff.
+     *
+     * @param replicas The replicas that were repaired.
+     */
+    public void succeeded(Set<Node> replicas)
+    {
+        myBackoffs.remove(replicas);
+    }
+
+    /**
+     * Let the replicas be repaired again if they are backing off due to lock contention,
+     * e.g. when a lock needed by the replicas has been released.
+     * <p>
+     * The consecutive lock contention failures are reset while other types of failures are kept.
+     *
+     * @param replicas The replicas that were waiting for the lock.
+     * @return True if the backoff of the replicas was stopped.
+     */
+    public boolean lockReleased(Set<Node> replicas)
+    {
+        Backoff backoff = myBackoffs.get(replicas);
+
+        return backoff != null
+                && backoff.myLastFailureType == RepairFailureType.LOCK_CONTENTION
+                && myBackoffs.replace(replicas, backoff, backoff.withoutLockContention());
+    }
+
+    /**
+     * Check if the replicas should wait before being repaired again.
+     *
+     * @param replicas The replicas to check.
+     * @param now The current time in milliseconds since epoch.
+     * @return True if the replicas are backing off.
+     */
+    public boolean isBackingOff(Set<Node> replicas, long now)
+    {
+        return getRetryTime(replicas) > now;
+    }
+
+    /**
+     * Get the time to wait until any of the replica repair groups can be repaired.
+     *
+     * @param replicaRepairGroups The replica repair groups to check.
+     * @param now The current time in milliseconds since epoch.
+     * @return The time in milliseconds until a group can be repaired or 0 if a group can be repaired now.
+     */
+    public long getRetryDelayInMs(Collection<ReplicaRepairGroup> replicaRepairGroups, long now)
+    {
+        long retryTime = Long.MAX_VALUE;
+
+        for (ReplicaRepairGroup replicaRepairGroup : replicaRepairGroups)
+        {
+            retryTime = Math.min(retryTime, getRetryTime(replicaRepairGroup.getReplicas()));
+
+            if (retryTime <= now)
+            {
+                return 0L;
+            }
+        }
+
+        return retryTime == Long.MAX_VALUE ? 0L : retryTime - now;
+    }
+
+    private long getRetryTime(Set<Node> replicas)
+    {
+        Backoff backoff = myBackoffs.get(replicas);
+
+        return backoff == null ? -1L : backoff.myRetryTime;
+    }
+
+    private static final class Backoff
+    {
+        private final Map<RepairFailureType, Integer> myFailures;
+        private final RepairFailureType myLastFailureType;
+        private final long myRetryTime;
+
+        Backoff(Backoff previous, RepairFailureType failureType, long now)
+        {
+            myFailures = previous == null ? new EnumMap<>(RepairFailureType.class) : new EnumMap<>(previous.myFailures);
+            int failures = myFailures.merge(failureType, 1, Integer::sum);
+            myLastFailureType = failureType;
+
+            myRetryTime = now + withJitter(backoffInMs(failureType, failures));
+        }
+
+        private Backoff(Map<RepairFailureType, Integer> failures, RepairFailureType lastFailureType, long retryTime)
+        {
+            myFailures = failures;
+            myLastFailureType = lastFailureType;
+            myRetryTime = retryTime;
+        }
+
+        Backoff withoutLockContention()
+        {
+            Map<RepairFailureType, Integer> failures = new EnumMap<>(myFailures);
+            failures.remove(RepairFailureType.LOCK_CONTENTION);
+
+            return new Backoff(failures, null, -1L);
+        }
+
+        private static long backoffInMs(RepairFailureType failureType, int failures)
+        {
+            long backoff = failureType.getInitialBackoffInMs();
+
+            for (int i = 1; i < failures && backoff < failureType.getMaxBackoffInMs(); i++)
+            {
+                backoff *= 2;
+            }
+
+            return Math.min(backoff, failureType.getMaxBackoffInMs());
+        }
+
+        private static long withJitter(long backoffInMs)
+        {
+            long halfBackoff = backoffInMs / 2;
+
+            return backoffInMs - ThreadLocalRandom.current().nextLong(halfBackoff + 1);
+        }
+    }
+}
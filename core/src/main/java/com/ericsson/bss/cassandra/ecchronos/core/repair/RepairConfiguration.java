@@ -24,6 +24,7 @@ public class RepairConfiguration
 {
     public static final double NO_UNWIND = 0.0d;
     public static final long FULL_REPAIR_SIZE = Long.MAX_VALUE;
+    public static final long NO_COALESCING = 0L;
 
     private static final long DEFAULT_REPAIR_INTERVAL_IN_MS = TimeUnit.DAYS.toMillis(7);
     private static final long DEFAULT_REPAIR_WARNING_TIME_IN_MS = TimeUnit.DAYS.toMillis(8);
@@ -31,6 +32,10 @@ public class RepairConfiguration
     private static final RepairOptions.RepairParallelism DEFAULT_REPAIR_PARALLELISM = RepairOptions.RepairParallelism.PARALLEL;
     private static final double DEFAULT_UNWIND_RATIO = NO_UNWIND;
     private static final long DEFAULT_TARGET_REPAIR_SIZE_IN_BYTES = FULL_REPAIR_SIZE;
+    private static final int DEFAULT_REPAIR_SESSION_CONCURRENCY = 1;
+    private static final int DEFAULT_MAX_RANGES_PER_SESSION = 1;
+    private static final long DEFAULT_TARGET_SESSION_TIME_IN_MS = TimeUnit.MINUTES.toMillis(15);
+    private static final long DEFAULT_COALESCING_SIZE_IN_BYTES = NO_COALESCING;
 
     public static final RepairConfiguration DEFAULT = newBuilder().build();
     public static final RepairConfiguration DISABLED = newBuilder().withRepairInterval(0, TimeUnit.MILLISECONDS).build();
@@ -41,6 +46,10 @@ public class RepairConfiguration
     private final long myRepairErrorTimeInMs;
     private final double myRepairUnwindRatio;
     private final long myTargetRepairSizeInBytes;
+    private final int myRepairSessionConcurrency;
+    private final int myMaxRangesPerSession;
+    private final long myTargetSessionTimeInMs;
+    private final long myCoalescingSizeInBytes;
 
     private RepairConfiguration(Builder builder)
     {
@@ -50,6 +59,10 @@ public class RepairConfiguration
         myRepairErrorTimeInMs = builder.myRepairErrorTimeInMs;
         myRepairUnwindRatio = builder.myRepairUnwindRatio;
         myTargetRepairSizeInBytes = builder.myTargetRepairSizeInBytes;
+        myRepairSessionConcurrency = builder.myRepairSessionConcurrency;
+        myMaxRangesPerSession = builder.myMaxRangesPerSession;
+        myTargetSessionTimeInMs = builder.myTargetSessionTimeInMs;
+        myCoalescingSizeInBytes = builder.myCoalescingSizeInBytes;
     }
 
     public RepairOptions.RepairParallelism getRepairParallelism()
@@ -82,6 +95,26 @@ public class RepairConfiguration
         return myTargetRepairSizeInBytes;
     }
 
+    public int getRepairSessionConcurrency()
+    {
+        return myRepairSessionConcurrency;
+    }
+
+    public int getMaxRangesPerSession()
+    {
+        return myMaxRangesPerSession;
+    }
+
+    public long getTargetSessionTimeInMs()
+    {
+        return myTargetSessionTimeInMs;
+    }
+
+    public long getCoalescingSizeInBytes()
+    {
+        return myCoalescingSizeInBytes;
+    }
+
     public static Builder newBuilder(RepairConfiguration from)
     {
         return new Builder(from);
@@ -114,13 +147,18 @@ public class RepairConfiguration
                 myRepairErrorTimeInMs == that.myRepairErrorTimeInMs &&
                 Double.compare(that.myRepairUnwindRatio, myRepairUnwindRatio) == 0 &&
                 myTargetRepairSizeInBytes == that.myTargetRepairSizeInBytes &&
+                myRepairSessionConcurrency == that.myRepairSessionConcurrency &&
+                myMaxRangesPerSession == that.myMaxRangesPerSession &&
+                myTargetSessionTimeInMs == that.myTargetSessionTimeInMs &&
+                myCoalescingSizeInBytes == that.myCoalescingSizeInBytes &&
                 myRepairParallelism == that.myRepairParallelism;
     }
 
     @Override
     public int hashCode()
     {
-        return Objects.hash(myRepairParallelism, myRepairIntervalInMs, myRepairWarningTimeInMs, myRepairErrorTimeInMs, myRepairUnwindRatio, myTargetRepairSizeInBytes);
+        return Objects.hash(myRepairParallelism, myRepairIntervalInMs, myRepairWarningTimeInMs, myRepairErrorTimeInMs, myRepairUnwindRatio, myTargetRepairSizeInBytes,
+                myRepairSessionConcurrency, myMaxRangesPerSession, myTargetSessionTimeInMs, myCoalescingSizeInBytes);
     }
 
     public static class Builder
@@ -131,6 +169,10 @@ public class RepairConfiguration
         private long myRepairErrorTimeInMs = DEFAULT_REPAIR_ERROR_TIME_IN_MS;
         private double myRepairUnwindRatio = DEFAULT_UNWIND_RATIO;
         private long myTargetRepairSizeInBytes = DEFAULT_TARGET_REPAIR_SIZE_IN_BYTES;
+        private int myRepairSessionConcurrency = DEFAULT_REPAIR_SESSION_CONCURRENCY;
+        private int myMaxRangesPerSession = DEFAULT_MAX_RANGES_PER_SESSION;
+        private long myTargetSessionTimeInMs = DEFAULT_TARGET_SESSION_TIME_IN_MS;
+        private long myCoalescingSizeInBytes = DEFAULT_COALESCING_SIZE_IN_BYTES;
 
         public Builder()
         {
@@ -144,6 +186,10 @@ public class RepairConfiguration
             myRepairWarningTimeInMs = from.getRepairWarningTimeInMs();
             myRepairErrorTimeInMs = from.getRepairErrorTimeInMs();
             myRepairUnwindRatio = from.getRepairUnwindRatio();
+            myRepairSessionConcurrency = from.getRepairSessionConcurrency();
+            myMaxRangesPerSession = from.getMaxRangesPerSession();
+            myTargetSessionTimeInMs = from.getTargetSessionTimeInMs();
+            myCoalescingSizeInBytes = from.getCoalescingSizeInBytes();
         }
 
         /**
@@ -235,8 +281,85 @@ public class RepairConfiguration
             return this;
         }
 
+        /**
+         * Set the number of repair sessions to run concurrently for a group of token ranges with the same replicas.
+         *
+         * This is used together with the target repair size to run multiple sub range repairs at the same time
+         * while the locks for the replicas are held.
+         *
+         * @param repairSessionConcurrency The number of concurrent repair sessions
+         * @return The builder
+         */
+        public Builder withRepairSessionConcurrency(int repairSessionConcurrency)
+        {
+            myRepairSessionConcurrency = repairSessionConcurrency;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of token ranges to repair in one repair session.
+         *
+         * Ranges with the same replicas are combined into one session as long as they together are within the
+         * target repair size and are expected to be repaired within the target session time.
+         *
+         * @param maxRangesPerSession The maximum number of ranges per repair session
+         * @return The builder
+         * @see #withTargetSessionTime(long, TimeUnit)
+         */
+        public Builder withMaxRangesPerSession(int maxRangesPerSession)
+        {
+            myMaxRangesPerSession = maxRangesPerSession;
+            return this;
+        }
+
+        /**
+         * Set the time a repair session with multiple token ranges should aim to take.
+         *
+         * The number of ranges in a session is adapted based on the time previous sessions took.
+         *
+         * @param targetSessionTime The target time
+         * @param timeUnit The time unit
+         * @return The builder
+         * @see #withMaxRangesPerSession(int)
+         */
+        public Builder withTargetSessionTime(long targetSessionTime, TimeUnit timeUnit)
+        {
+            myTargetSessionTimeInMs = timeUnit.toMillis(targetSessionTime);
+            return this;
+        }
+
+        /**
+         * Set the size in bytes below which a table is repaired together with other small tables in the same keyspace.
+         *
+         * Tables with the same configuration and the same replicas that are due for repair at the same time are
+         * repaired in one repair session instead of one session per table.
+         *
+         * @param coalescingSizeInBytes The table size below which tables are coalesced or {@link #NO_COALESCING}
+         * @return The builder
+         */
+        public Builder withCoalescingSizeInBytes(long coalescingSizeInBytes)
+        {
+            myCoalescingSizeInBytes = coalescingSizeInBytes;
+            return this;
+        }
+
         public RepairConfiguration build()
         {
+            if (myRepairSessionConcurrency < 1)
+            {
+                throw new IllegalArgumentException("Repair session concurrency must be at least 1");
+            }
+
+            if (myMaxRangesPerSession < 1)
+            {
+                throw new IllegalArgumentException("Max ranges per session must be at least 1");
+            }
+
+            if (myCoalescingSizeInBytes < 0)
+            {
+                throw new IllegalArgumentException("Coalescing size cannot be negative");
+            }
+
             return new RepairConfiguration(this);
         }
     }
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.repair;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The types of failures that can occur when repairing a group of replicas.
+ * <p>
+ * Each type of failure has its own initial and maximum backoff, see {@link RepairBackoff}.
+ */
+public enum RepairFailureType
+{
+    /**
+     * The lock for the repair resources could not be acquired since it was held or wanted by another node.
+     */
+    LOCK_CONTENTION(TimeUnit.MINUTES.toMillis(1), TimeUnit.MINUTES.toMillis(10)),
+
+    /**
+     * The lock for the repair resources could not be acquired due to an error, e.g. a failed query.
+     */
+    LOCK_ERROR(TimeUnit.MINUTES.toMillis(5), TimeUnit.HOURS.toMillis(1)),
+
+    /**
+     * A replica was down during the repair or there were not sufficient nodes available to lock the repair resources.
+     */
+    HOST_DOWN(TimeUnit.MINUTES.toMillis(5), TimeUnit.HOURS.toMillis(1)),
+
+    /**
+     * The JMX connection failed or was closed during the repair.
+     */
+    JMX_ERROR(TimeUnit.MINUTES.toMillis(1), TimeUnit.MINUTES.toMillis(30)),
+
+    /**
+     * The repair session failed or some ranges have an unknown status.
+     */
+    SESSION_ERROR(TimeUnit.MINUTES.toMillis(5), TimeUnit.HOURS.toMillis(1)),
+
+    /**
+     * The repair did not make any progress and was terminated by the hang prevention.
+     */
+    HANG_PREVENTION(TimeUnit.MINUTES.toMillis(30), TimeUnit.HOURS.toMillis(4));
+
+    private final long myInitialBackoffInMs;
+    private final long myMaxBackoffInMs;
+
+    RepairFailureType(long initialBackoffInMs, long maxBackoffInMs)
+    {
+        myInitialBackoffInMs = initialBackoffInMs;
+        myMaxBackoffInMs = maxBackoffInMs;
+    }
+
+    /**
+     * Get the backoff after the first failure of this type.
+     *
+     * @return The initial backoff in milliseconds.
+     */
+    public long getInitialBackoffInMs()
+    {
+        return myInitialBackoffInMs;
+    }
+
+    /**
+     * Get the maximum backoff after consecutive failures of this type.
+     *
+     * @return The maximum backoff in milliseconds.
+     */
+    public long getMaxBackoffInMs()
+    {
+        return myMaxBackoffInMs;
+    }
+}
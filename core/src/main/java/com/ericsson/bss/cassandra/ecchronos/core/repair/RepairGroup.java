@@ -15,6 +15,8 @@
 package com.ericsson.bss.cassandra.ecchronos.core.repair;
 
 import com.ericsson.bss.cassandra.ecchronos.core.JmxProxyFactory;
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.InsufficientNodesException;
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockContendedException;
 import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
 import com.ericsson.bss.cassandra.ecchronos.core.exceptions.ScheduledJobException;
 import com.ericsson.bss.cassandra.ecchronos.core.metrics.TableRepairMetrics;
@@ -27,12 +29,49 @@ import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.TokenSubRangeUtil;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.math.BigInteger;
 import java.util.*;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A task that repairs a group of token ranges that have the same replicas.
+ * <p>
+ * When the repair unwind ratio is set the group stops after each repair session and asks the scheduler for a
+ * cooldown proportional to the time the session took.
+ * The locks are released during the cooldown and the remaining sessions are run when the group is run again.
+ * The group also stops between repair sessions when it is {@link #isPreempted() preempted} by a job with higher priority.
+ * The sessions that have been run are already recorded in the repair history.
+ * The ranges of the sessions that have been run are kept in the set of finished ranges, which can be shared by the
+ * job between the groups it creates for the same replicas, and are skipped until all ranges of the group have been run.
+ * <p>
+ * When the repair session concurrency is set the sub range sessions of the group are run concurrently,
+ * up to the configured number at a time, while the locks for the replicas are held.
+ * The concurrent sessions are run by the session executor shared by the jobs of a scheduler.
+ * If the group is interrupted the running sessions are cancelled and the group waits for them to stop before returning.
+ * The outcome of each session is recorded per range in the repair history.
+ * <p>
+ * The ranges of the group are packed into repair sessions by the {@link RepairRangeBatcher}.
+ * The group stops starting new sessions when stopped, preempted or unwinding and waits for the running sessions to finish.
+ * <p>
+ * Small tables in the same keyspace that are due for repair of the same ranges can be coalesced into the group,
+ * they are then repaired in the same repair sessions as the table of the group.
+ * <p>
+ * Failures are registered in the {@link RepairBackoff} for the replicas of the group
+ * so that only this group of replicas backs off while other groups can still be repaired.
+ */
 public class RepairGroup extends ScheduledTask
 {
     private static final Logger LOG = LoggerFactory.getLogger(RepairGroup.class);
@@ -41,9 +80,11 @@ public class RepairGroup extends ScheduledTask
     private static final String LOCK_METADATA_TABLE = "table";
 
     private final TableReference myTableReference;
+    private final List<TableReference> myCoalescedTables;
     private final RepairConfiguration myRepairConfiguration;
     private final ReplicaRepairGroup myReplicaRepairGroup;
     private final JmxProxyFactory myJmxProxyFactory;
+    private final RepairNotificationDispatcher myRepairNotificationDispatcher;
     private final TableRepairMetrics myTableRepairMetrics;
     private final RepairResourceFactory myRepairResourceFactory;
     private final RepairLockFactory myRepairLockFactory;
@@ -51,14 +92,28 @@ public class RepairGroup extends ScheduledTask
     private final List<TableRepairPolicy> myRepairPolicies;
     private final RepairHistory myRepairHistory;
     private final UUID myJobId;
+    private final RepairBackoff myRepairBackoff;
+    private final RepairRangeBatcher myRepairRangeBatcher;
+    private final ExecutorService mySessionExecutor;
+
+    private volatile Set<RepairResource> myRepairResources;
+
+    private final Set<LongTokenRange> myFinishedRanges;
+
+    private volatile boolean mySuccessful = true;
+    private volatile boolean myFinished = true;
+    private volatile long myCooldownInMs = 0L;
 
     public RepairGroup(int priority, Builder builder)
     {
         super(priority);
         myTableReference = Preconditions.checkNotNull(builder.tableReference, "Table reference must be set");
+        myCoalescedTables = new ArrayList<>(Preconditions.checkNotNull(builder.coalescedTables, "Coalesced tables must be set"));
         myRepairConfiguration = Preconditions.checkNotNull(builder.repairConfiguration, "Repair configuration must be set");
         myReplicaRepairGroup = Preconditions.checkNotNull(builder.replicaRepairGroup, "Replica repair group must be set");
         myJmxProxyFactory = Preconditions.checkNotNull(builder.jmxProxyFactory, "Jmx proxy factory must be set");
+        myRepairNotificationDispatcher = Preconditions.checkNotNull(builder.repairNotificationDispatcher,
+                "Repair notification dispatcher must be set");
         myTableRepairMetrics = Preconditions.checkNotNull(builder.tableRepairMetrics, "Table repair metrics must be set");
         myRepairResourceFactory = Preconditions.checkNotNull(builder.repairResourceFactory, "Repair resource factory must be set");
         myRepairLockFactory = Preconditions.checkNotNull(builder.repairLockFactory, "Repair lock factory must be set");
@@ -66,45 +121,206 @@ public class RepairGroup extends ScheduledTask
         myRepairPolicies = new ArrayList<>(Preconditions.checkNotNull(builder.repairPolicies, "Repair policies must be set"));
         myRepairHistory = Preconditions.checkNotNull(builder.repairHistory, "Repair history must be set");
         myJobId = Preconditions.checkNotNull(builder.jobId, "Job id must be set");
+        myRepairBackoff = Preconditions.checkNotNull(builder.repairBackoff, "Repair backoff must be set");
+        myRepairRangeBatcher = Preconditions.checkNotNull(builder.repairRangeBatcher, "Repair range batcher must be set");
+        myFinishedRanges = Preconditions.checkNotNull(builder.finishedRanges, "Finished ranges must be set");
+        mySessionExecutor = Preconditions.checkNotNull(builder.sessionExecutor, "Session executor must be set");
     }
 
     @Override
     public boolean execute()
     {
         LOG.info("Table {} running repair job {}", myTableReference, myReplicaRepairGroup);
-        boolean successful = true;
-
-        for (RepairTask repairTask : getRepairTasks())
+        Queue<RepairTask> repairTasks = new ArrayDeque<>(getRepairTasks());
+        mySuccessful = true;
+        myFinished = true;
+        myCooldownInMs = 0L;
+        RepairFailureType failureType = null;
+        boolean hasRun = false;
+        boolean stopped = false;
+        boolean preempted = false;
+        boolean unwinding = false;
+        boolean interrupted = false;
+
+        int concurrency = myRepairConfiguration.getRepairSessionConcurrency();
+        ExecutorService executor = concurrency <= 1 ? MoreExecutors.newDirectExecutorService() : mySessionExecutor;
+        CompletionService<CompletedRepairTask> completionService = new ExecutorCompletionService<>(executor);
+        Map<RepairTask, RunningSession> runningSessions = new HashMap<>();
+
+        try
         {
-            if (!shouldContinue())
-            {
-                LOG.info("Repair of {} was stopped by policy, will continue later", this);
-                successful = false;
-                break;
-            }
-
-            try
-            {
-                repairTask.execute();
-            }
-            catch (ScheduledJobException e)
+            while (true)
             {
-                LOG.warn("Encountered issue when running repair task {}", repairTask, e);
-                successful = false;
+                while (!stopped && runningSessions.size() < concurrency && !repairTasks.isEmpty())
+                {
+                    if (Thread.interrupted())
+                    {
+                        throw new InterruptedException();
+                    }
+
+                    if (!shouldContinue())
+                    {
+                        LOG.info("Repair of {} was stopped by policy, will continue later", this);
+                        mySuccessful = false;
+                        stopped = true;
+                    }
+                    else if (hasRun && isPreempted())
+                    {
+                        LOG.info("{} yielding to a job with higher priority, will continue later", this);
+                        myFinished = false;
+                        preempted = true;
+                        stopped = true;
+                    }
+                    else
+                    {
+                        RunningSession runningSession = new RunningSession(repairTasks.poll());
+                        hasRun = true;
+                        runningSessions.put(runningSession.myRepairTask, runningSession);
+                        completionService.submit(runningSession);
+                    }
+                }
 
-                if (e.getCause() instanceof InterruptedException)
+                if (runningSessions.isEmpty())
                 {
-                    LOG.info("{} thread was interrupted", this);
                     break;
                 }
+
+                CompletedRepairTask completedRepairTask = takeCompleted(completionService);
+                runningSessions.remove(completedRepairTask.myRepairTask);
+
+                ScheduledJobException e = completedRepairTask.myException;
+                boolean sessionInterrupted = isInterrupted(e);
+                if (!sessionInterrupted)
+                {
+                    myFinishedRanges.addAll(completedRepairTask.myRepairTask.getTokenRanges());
+                }
+
+                if (e == null)
+                {
+                    myCooldownInMs = Math.max(myCooldownInMs, getUnwindTimeInMs(completedRepairTask.myExecutionNanos));
+                }
+                else
+                {
+                    LOG.warn("Encountered issue when running repair task {}", completedRepairTask.myRepairTask, e);
+                    mySuccessful = false;
+
+                    if (sessionInterrupted)
+                    {
+                        LOG.info("{} thread was interrupted", this);
+                        interrupted = true;
+                        stopped = true;
+                        continue;
+                    }
+
+                    if (failureType == null)
+                    {
+                        failureType = completedRepairTask.myRepairTask.getFailureType() != null
+                                ? completedRepairTask.myRepairTask.getFailureType()
+                                : RepairFailureType.SESSION_ERROR;
+                        backOff(failureType);
+                    }
+                }
+
+                if (!stopped && myCooldownInMs > 0 && !repairTasks.isEmpty())
+                {
+                    LOG.debug("{} unwinding for {} ms, will continue later", this, myCooldownInMs);
+                    myFinished = false;
+                    unwinding = true;
+                    stopped = true;
+                }
             }
-            finally
-            {
-                repairTask.cleanup();
-            }
+        }
+        catch (InterruptedException e)
+        {
+            LOG.info("{} thread was interrupted, stopping {} running sessions", this, runningSessions.size());
+            runningSessions.values().forEach(RunningSession::cancel);
+            runningSessions.values().forEach(RunningSession::awaitStopped);
+            Thread.currentThread().interrupt();
+            mySuccessful = false;
+            return mySuccessful;
+        }
+
+        if (preempted || unwinding || interrupted)
+        {
+            return mySuccessful;
         }
 
-        return successful;
+        if (repairTasks.isEmpty())
+        {
+            myFinishedRanges.clear();
+        }
+
+        if (mySuccessful)
+        {
+            myRepairBackoff.succeeded(myReplicaRepairGroup.getReplicas());
+        }
+
+        return mySuccessful;
+    }
+
+    private CompletedRepairTask runRepairTask(RepairTask repairTask)
+    {
+        long start = System.nanoTime();
+
+        try
+        {
+            repairTask.execute();
+            long executionNanos = System.nanoTime() - start;
+            myRepairRangeBatcher.sessionFinished(repairTask.getTokenRanges(), executionNanos);
+            return new CompletedRepairTask(repairTask, executionNanos, null);
+        }
+        catch (ScheduledJobException e)
+        {
+            return new CompletedRepairTask(repairTask, System.nanoTime() - start, e);
+        }
+    }
+
+    private static boolean isInterrupted(ScheduledJobException e)
+    {
+        return e != null && Throwables.getCausalChain(e).stream().anyMatch(InterruptedException.class::isInstance);
+    }
+
+    private static CompletedRepairTask takeCompleted(CompletionService<CompletedRepairTask> completionService) throws InterruptedException
+    {
+        try
+        {
+            return completionService.take().get();
+        }
+        catch (ExecutionException e)
+        {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private void backOff(RepairFailureType failureType)
+    {
+        long backoffInMs = myRepairBackoff.failed(myReplicaRepairGroup.getReplicas(), failureType);
+        LOG.info("{} failed with {}, replicas {} will be retried in {} ms",
+                this, failureType, myReplicaRepairGroup.getReplicas(), backoffInMs);
+    }
+
+    @Override
+    public boolean isFinished()
+    {
+        return myFinished;
+    }
+
+    @Override
+    public long getCooldownInMs()
+    {
+        return myCooldownInMs;
+    }
+
+    private long getUnwindTimeInMs(long executionNanos)
+    {
+        if (myRepairConfiguration.getRepairUnwindRatio() == RepairConfiguration.NO_UNWIND)
+        {
+            return 0L;
+        }
+
+        double unwindNanos = executionNanos * myRepairConfiguration.getRepairUnwindRatio();
+
+        return Math.max(TimeUnit.NANOSECONDS.toMillis((long) unwindNanos), 1L);
     }
 
     private boolean shouldContinue()
@@ -119,14 +335,74 @@ public class RepairGroup extends ScheduledTask
         metadata.put(LOCK_METADATA_KEYSPACE, myTableReference.getKeyspace());
         metadata.put(LOCK_METADATA_TABLE, myTableReference.getTable());
 
-        Set<RepairResource> repairResources = myRepairResourceFactory.getRepairResources(myReplicaRepairGroup);
-        return myRepairLockFactory.getLock(lockFactory, repairResources, metadata, myPriority);
+        try
+        {
+            return myRepairLockFactory.getLock(lockFactory, getRepairResources(), metadata, myPriority);
+        }
+        catch (LockException e)
+        {
+            backOff(getLockFailureType(e));
+            throw e;
+        }
+    }
+
+    private static RepairFailureType getLockFailureType(LockException e)
+    {
+        if (e instanceof LockContendedException)
+        {
+            return RepairFailureType.LOCK_CONTENTION;
+        }
+
+        if (e instanceof InsufficientNodesException)
+        {
+            return RepairFailureType.HOST_DOWN;
+        }
+
+        return RepairFailureType.LOCK_ERROR;
+    }
+
+    @Override
+    public Set<RepairResource> getLockResources()
+    {
+        return getRepairResources();
+    }
+
+    @Override
+    public int getLockResourceSlots(Object resource)
+    {
+        if (resource instanceof RepairResource)
+        {
+            return myRepairLockFactory.getLocksPerResource((RepairResource) resource);
+        }
+
+        return super.getLockResourceSlots(resource);
+    }
+
+    private Set<RepairResource> getRepairResources()
+    {
+        Set<RepairResource> repairResources = myRepairResources;
+        if (repairResources == null)
+        {
+            repairResources = myRepairResourceFactory.getRepairResources(myReplicaRepairGroup);
+            myRepairResources = repairResources;
+        }
+        return repairResources;
     }
 
     @Override
     public String toString()
     {
-        return String.format("Repair job of %s", myTableReference);
+        if (myCoalescedTables.isEmpty())
+        {
+            return String.format("Repair job of %s", myTableReference);
+        }
+
+        return String.format("Repair job of %s with %s", myTableReference, myCoalescedTables);
+    }
+
+    List<TableReference> getCoalescedTables()
+    {
+        return Collections.unmodifiableList(myCoalescedTables);
     }
 
     @VisibleForTesting
@@ -136,23 +412,113 @@ public class RepairGroup extends ScheduledTask
 
         RepairTask.Builder builder = new RepairTask.Builder()
                 .withJMXProxyFactory(myJmxProxyFactory)
+                .withRepairNotificationDispatcher(myRepairNotificationDispatcher)
                 .withTableReference(myTableReference)
+                .withCoalescedTables(myCoalescedTables)
                 .withTableRepairMetrics(myTableRepairMetrics)
                 .withRepairConfiguration(myRepairConfiguration)
                 .withReplicas(myReplicaRepairGroup.getReplicas())
                 .withRepairHistory(myRepairHistory)
                 .withJobId(myJobId);
 
+        List<LongTokenRange> ranges = new ArrayList<>();
+
         for (LongTokenRange range : myReplicaRepairGroup)
         {
-            for (LongTokenRange subRange : new TokenSubRangeUtil(range).generateSubRanges(myTokensPerRepair))
+            ranges.addAll(new TokenSubRangeUtil(range).generateSubRanges(myTokensPerRepair));
+        }
+
+        ranges.removeIf(myFinishedRanges::contains);
+
+        for (List<LongTokenRange> batch : myRepairRangeBatcher.batch(ranges, myTokensPerRepair, myRepairConfiguration))
+        {
+            builder.withTokenRanges(batch);
+            tasks.add(builder.build());
+        }
+
+        return tasks;
+    }
+
+    /**
+     * A repair session of this group that has been submitted to the session executor.
+     * <p>
+     * Cancelling the session interrupts the thread running it, or prevents it from starting if it has not started yet.
+     */
+    private final class RunningSession implements Callable<CompletedRepairTask>
+    {
+        private final RepairTask myRepairTask;
+        private final CountDownLatch myStopped = new CountDownLatch(1);
+
+        private Thread myThread; // Guarded by this
+        private boolean myCancelled = false; // Guarded by this
+
+        RunningSession(RepairTask repairTask)
+        {
+            myRepairTask = repairTask;
+        }
+
+        @Override
+        public CompletedRepairTask call()
+        {
+            try
+            {
+                synchronized (this)
+                {
+                    if (myCancelled)
+                    {
+                        return new CompletedRepairTask(myRepairTask, 0L, new ScheduledJobException(new InterruptedException()));
+                    }
+                    myThread = Thread.currentThread();
+                }
+
+                try
+                {
+                    return runRepairTask(myRepairTask);
+                }
+                finally
+                {
+                    synchronized (this)
+                    {
+                        myThread = null;
+                    }
+                }
+            }
+            finally
+            {
+                myStopped.countDown();
+            }
+        }
+
+        synchronized void cancel()
+        {
+            myCancelled = true;
+            if (myThread != null)
             {
-                builder.withTokenRanges(Collections.singletonList(subRange));
-                tasks.add(builder.build());
+                myThread.interrupt();
             }
         }
 
-        return tasks;
+        void awaitStopped()
+        {
+            Uninterruptibles.awaitUninterruptibly(myStopped);
+        }
+    }
+
+    /**
+     * The result of a repair session of this group.
+     */
+    private static final class CompletedRepairTask
+    {
+        private final RepairTask myRepairTask;
+        private final long myExecutionNanos;
+        private final ScheduledJobException myException;
+
+        CompletedRepairTask(RepairTask repairTask, long executionNanos, ScheduledJobException exception)
+        {
+            myRepairTask = repairTask;
+            myExecutionNanos = executionNanos;
+            myException = exception;
+        }
     }
 
     public static Builder newBuilder()
@@ -166,14 +532,20 @@ public class RepairGroup extends ScheduledTask
         private BigInteger tokensPerRepair = LongTokenRange.FULL_RANGE;
 
         private TableReference tableReference;
+        private List<TableReference> coalescedTables = new ArrayList<>();
         private RepairConfiguration repairConfiguration;
         private ReplicaRepairGroup replicaRepairGroup;
         private JmxProxyFactory jmxProxyFactory;
+        private RepairNotificationDispatcher repairNotificationDispatcher;
         private TableRepairMetrics tableRepairMetrics;
         private RepairResourceFactory repairResourceFactory;
         private RepairLockFactory repairLockFactory;
         private RepairHistory repairHistory;
         private UUID jobId;
+        private RepairBackoff repairBackoff = new RepairBackoff();
+        private RepairRangeBatcher repairRangeBatcher = new RepairRangeBatcher();
+        private Set<LongTokenRange> finishedRanges = ConcurrentHashMap.newKeySet();
+        private ExecutorService sessionExecutor = MoreExecutors.newDirectExecutorService();
 
         public Builder withTableReference(TableReference tableReference)
         {
@@ -181,6 +553,12 @@ public class RepairGroup extends ScheduledTask
             return this;
         }
 
+        public Builder withCoalescedTables(List<TableReference> coalescedTables)
+        {
+            this.coalescedTables = coalescedTables;
+            return this;
+        }
+
         public Builder withRepairConfiguration(RepairConfiguration repairConfiguration)
         {
             this.repairConfiguration = repairConfiguration;
@@ -199,6 +577,12 @@ public class RepairGroup extends ScheduledTask
             return this;
         }
 
+        public Builder withRepairNotificationDispatcher(RepairNotificationDispatcher repairNotificationDispatcher)
+        {
+            this.repairNotificationDispatcher = repairNotificationDispatcher;
+            return this;
+        }
+
         public Builder withTableRepairMetrics(TableRepairMetrics tableRepairMetrics)
         {
             this.tableRepairMetrics = tableRepairMetrics;
@@ -241,6 +625,44 @@ public class RepairGroup extends ScheduledTask
             return this;
         }
 
+        public Builder withRepairBackoff(RepairBackoff repairBackoff)
+        {
+            this.repairBackoff = repairBackoff;
+            return this;
+        }
+
+        public Builder withRepairRangeBatcher(RepairRangeBatcher repairRangeBatcher)
+        {
+            this.repairRangeBatcher = repairRangeBatcher;
+            return this;
+        }
+
+        /**
+         * Set the ranges that have already been run in the current pass over the group.
+         * The set is updated by the group and cleared when all ranges of the group have been run.
+         *
+         * @param finishedRanges The finished ranges.
+         * @return The builder.
+         */
+        public Builder withFinishedRanges(Set<LongTokenRange> finishedRanges)
+        {
+            this.finishedRanges = finishedRanges;
+            return this;
+        }
+
+        /**
+         * Set the executor that runs the repair sessions when the repair session concurrency is set.
+         * The executor is owned by the caller and shared between the groups.
+         *
+         * @param sessionExecutor The session executor.
+         * @return The builder.
+         */
+        public Builder withSessionExecutor(ExecutorService sessionExecutor)
+        {
+            this.sessionExecutor = sessionExecutor;
+            return this;
+        }
+
         public RepairGroup build(int priority)
         {
             return new RepairGroup(priority, this);
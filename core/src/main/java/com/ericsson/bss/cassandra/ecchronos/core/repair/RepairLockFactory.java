@@ -36,4 +36,15 @@ public interface RepairLockFactory
      * @throws LockException Thrown in case there is an issue with taking the locks for the repair resources.
      */
     LockFactory.DistributedLock getLock(LockFactory lockFactory, Set<RepairResource> repairResources, Map<String, String> metadata, int priority) throws LockException;
+
+    /**
+     * Get the number of repairs that can hold the repair resource concurrently.
+     *
+     * @param repairResource The repair resource.
+     * @return The number of locks for the repair resource.
+     */
+    default int getLocksPerResource(RepairResource repairResource)
+    {
+        return 1;
+    }
 }
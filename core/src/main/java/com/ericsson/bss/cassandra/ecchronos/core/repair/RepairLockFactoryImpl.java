@@ -15,34 +15,68 @@
 package com.ericsson.bss.cassandra.ecchronos.core.repair;
 
 import com.ericsson.bss.cassandra.ecchronos.core.LockCollection;
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.InsufficientNodesException;
 import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
 import com.ericsson.bss.cassandra.ecchronos.core.scheduling.LockFactory;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 
+/**
+ * A repair lock factory that locks one of a number of slots for each repair resource.
+ * <p>
+ * The number of slots decides how many repairs can hold a repair resource at the same time.
+ * The slots are tried in order and slots with a cached locking failure are skipped.
+ */
 public class RepairLockFactoryImpl implements RepairLockFactory
 {
     private static final Logger LOG = LoggerFactory.getLogger(RepairLockFactoryImpl.class);
 
-    private static final int LOCKS_PER_RESOURCE = 1;
+    private static final int DEFAULT_LOCKS_PER_RESOURCE = 1;
+
+    private final int myLocksPerResource;
+    private final Map<String, Integer> myDataCenterLocksPerResource;
+
+    public RepairLockFactoryImpl()
+    {
+        this(builder());
+    }
+
+    private RepairLockFactoryImpl(Builder builder)
+    {
+        myLocksPerResource = builder.myLocksPerResource;
+        myDataCenterLocksPerResource = new HashMap<>(builder.myDataCenterLocksPerResource);
+    }
 
     @Override
-    public LockFactory.DistributedLock getLock(LockFactory lockFactory, Set<RepairResource> repairResources, Map<String, String> metadata, int priority) throws LockException
+    public int getLocksPerResource(RepairResource repairResource)
     {
-        for (RepairResource repairResource : repairResources)
+        Integer locksPerResource = null;
+
+        if (repairResource.getDataCenter() != null)
         {
-            if (!lockFactory.sufficientNodesForLocking(repairResource.getDataCenter(), repairResource.getResourceName(LOCKS_PER_RESOURCE)))
-            {
-                throw new LockException(repairResource + " not lockable. Repair will be retried later.");
-            }
+            locksPerResource = myDataCenterLocksPerResource.get(repairResource.getDataCenter());
         }
 
+        return locksPerResource != null ? locksPerResource : myLocksPerResource;
+    }
+
+    @Override
+    public LockFactory.DistributedLock getLock(LockFactory lockFactory, Set<RepairResource> repairResources, Map<String, String> metadata, int priority) throws LockException
+    {
         if (repairResources.isEmpty())
         {
             String msg = String.format("No datacenters to lock for %s", this);
@@ -50,48 +84,173 @@ public class RepairLockFactoryImpl implements RepairLockFactory
             throw new LockException(msg);
         }
 
-        validateNoCachedFailures(lockFactory, repairResources);
+        Map<RepairResource, Deque<Integer>> lockableSlots = new LinkedHashMap<>();
+
+        for (RepairResource repairResource : repairResources)
+        {
+            lockableSlots.put(repairResource, getLockableSlots(lockFactory, repairResource));
+        }
+
+        validateNoCachedFailures(lockFactory, lockableSlots);
 
-        Collection<LockFactory.DistributedLock> locks = getRepairResourceLocks(lockFactory, repairResources, metadata, priority);
+        Collection<LockFactory.DistributedLock> locks = getRepairResourceLocks(lockFactory, lockableSlots, metadata, priority);
 
         return new LockCollection(locks);
     }
 
-    private void validateNoCachedFailures(LockFactory lockFactory, Set<RepairResource> repairResources) throws LockException
+    private Deque<Integer> getLockableSlots(LockFactory lockFactory, RepairResource repairResource) throws LockException
     {
-        for (RepairResource repairResource : repairResources)
+        Deque<Integer> slots = new ArrayDeque<>();
+
+        for (int slot = 1; slot <= getLocksPerResource(repairResource); slot++)
         {
-            Optional<LockException> cachedException = lockFactory.getCachedFailure(repairResource.getDataCenter(), repairResource.getResourceName(LOCKS_PER_RESOURCE));
+            if (lockFactory.sufficientNodesForLocking(repairResource.getDataCenter(), repairResource.getResourceName(slot)))
+            {
+                slots.add(slot);
+            }
+        }
+
+        if (slots.isEmpty())
+        {
+            throw new InsufficientNodesException(repairResource + " not lockable. Repair will be retried later.");
+        }
+
+        return slots;
+    }
+
+    private void validateNoCachedFailures(LockFactory lockFactory, Map<RepairResource, Deque<Integer>> lockableSlots) throws LockException
+    {
+        for (Map.Entry<RepairResource, Deque<Integer>> entry : lockableSlots.entrySet())
+        {
+            RepairResource repairResource = entry.getKey();
+            Optional<LockException> cachedException = Optional.empty();
+
+            for (Integer slot : entry.getValue())
+            {
+                cachedException = lockFactory.getCachedFailure(repairResource.getDataCenter(), repairResource.getResourceName(slot));
+                if (!cachedException.isPresent())
+                {
+                    break;
+                }
+            }
+
             if (cachedException.isPresent())
             {
                 LockException e = cachedException.get();
                 LOG.debug("Found cached locking failure for {}, rethrowing", repairResource, e);
-                throw cachedException.get();
+                throw e;
             }
         }
     }
 
-    private Collection<LockFactory.DistributedLock> getRepairResourceLocks(LockFactory lockFactory, Collection<RepairResource> repairResources, Map<String, String> metadata, int priority) throws LockException
+    /**
+     * Acquire the locks for all repair resources concurrently.
+     * <p>
+     * The next slot of each repair resource is tried in rounds until all repair resources are locked
+     * or a repair resource has no more slots to try.
+     * <p>
+     * The resources are grouped per data center so that the lock factory can handle all resources of a data center together.
+     * <p>
+     * All lock attempts of a round are completed before continuing so that the acquired locks can be released if locking failed.
+     */
+    private Collection<LockFactory.DistributedLock> getRepairResourceLocks(LockFactory lockFactory, Map<RepairResource, Deque<Integer>> lockableSlots, Map<String, String> metadata, int priority) throws LockException
     {
+        Map<RepairResource, Deque<Integer>> remainingSlots = new LinkedHashMap<>(lockableSlots);
+        Map<RepairResource, LockException> failures = new HashMap<>();
+
         Collection<LockFactory.DistributedLock> locks = new ArrayList<>();
+        LockException lockException = null;
 
-        for (RepairResource repairResource : repairResources)
+        while (!remainingSlots.isEmpty() && lockException == null)
         {
-            try
+            Map<RepairResource, String> resources = new LinkedHashMap<>();
+
+            for (Map.Entry<RepairResource, Deque<Integer>> entry : remainingSlots.entrySet())
             {
-                locks.add(getLockForRepairResource(lockFactory, repairResource, metadata, priority));
+                RepairResource repairResource = entry.getKey();
+                Integer slot = nextSlot(lockFactory, repairResource, entry.getValue());
+
+                if (slot == null)
+                {
+                    lockException = failures.getOrDefault(repairResource, new LockException(String.format("Lock resources exhausted for %s", repairResource)));
+                    break;
+                }
+
+                resources.put(repairResource, repairResource.getResourceName(slot));
             }
-            catch (LockException e)
+
+            if (lockException == null)
             {
-                LOG.debug("{} - Unable to get lock for repair resource '{}', releasing previously acquired locks - {}", this, repairResource, e.getMessage());
-                releaseLocks(locks);
-                throw e;
+                Map<RepairResource, ListenableFuture<LockFactory.DistributedLock>> lockFutures = tryLocks(lockFactory, resources, metadata, priority);
+
+                for (Map.Entry<RepairResource, ListenableFuture<LockFactory.DistributedLock>> entry : lockFutures.entrySet())
+                {
+                    RepairResource repairResource = entry.getKey();
+                    try
+                    {
+                        locks.add(getLockForRepairResource(repairResource, resources.get(repairResource), entry.getValue()));
+                        remainingSlots.remove(repairResource);
+                    }
+                    catch (LockException e)
+                    {
+                        LOG.debug("{} - Unable to get lock for repair resource '{}' - {}", this, resources.get(repairResource), e.getMessage());
+                        failures.put(repairResource, e);
+                    }
+                }
             }
         }
 
+        if (lockException != null)
+        {
+            LOG.debug("{} - Releasing {} acquired locks", this, locks.size());
+            releaseLocks(locks);
+            throw lockException;
+        }
+
         return locks;
     }
 
+    /**
+     * Get the next slot to try for the repair resource, skipping slots with a cached locking failure.
+     */
+    private Integer nextSlot(LockFactory lockFactory, RepairResource repairResource, Deque<Integer> slots)
+    {
+        Integer slot = slots.poll();
+
+        while (slot != null && lockFactory.getCachedFailure(repairResource.getDataCenter(), repairResource.getResourceName(slot)).isPresent())
+        {
+            slot = slots.poll();
+        }
+
+        return slot;
+    }
+
+    private Map<RepairResource, ListenableFuture<LockFactory.DistributedLock>> tryLocks(LockFactory lockFactory, Map<RepairResource, String> resources, Map<String, String> metadata, int priority)
+    {
+        Map<String, Map<RepairResource, String>> dataCenterResources = new LinkedHashMap<>();
+
+        for (Map.Entry<RepairResource, String> entry : resources.entrySet())
+        {
+            dataCenterResources.computeIfAbsent(entry.getKey().getDataCenter(), dc -> new LinkedHashMap<>()).put(entry.getKey(), entry.getValue());
+        }
+
+        Map<RepairResource, ListenableFuture<LockFactory.DistributedLock>> lockFutures = new LinkedHashMap<>();
+
+        for (Map.Entry<String, Map<RepairResource, String>> entry : dataCenterResources.entrySet())
+        {
+            List<String> dataCenterResourceNames = new ArrayList<>(entry.getValue().values());
+
+            Map<String, ListenableFuture<LockFactory.DistributedLock>> dataCenterLocks = lockFactory.tryLocksAsync(entry.getKey(), dataCenterResourceNames, priority, metadata);
+
+            for (Map.Entry<RepairResource, String> resource : entry.getValue().entrySet())
+            {
+                lockFutures.put(resource.getKey(), dataCenterLocks.get(resource.getValue()));
+            }
+        }
+
+        return lockFutures;
+    }
+
     private void releaseLocks(Collection<LockFactory.DistributedLock> locks)
     {
         for (LockFactory.DistributedLock lock : locks)
@@ -107,16 +266,15 @@ public class RepairLockFactoryImpl implements RepairLockFactory
         }
     }
 
-    private LockFactory.DistributedLock getLockForRepairResource(LockFactory lockFactory, RepairResource repairResource, Map<String, String> metadata, int priority) throws LockException
+    private LockFactory.DistributedLock getLockForRepairResource(RepairResource repairResource, String resource, ListenableFuture<LockFactory.DistributedLock> lockFuture) throws LockException
     {
         LockFactory.DistributedLock myLock;
 
         String dataCenter = repairResource.getDataCenter();
 
-        String resource = repairResource.getResourceName(LOCKS_PER_RESOURCE);
         try
         {
-            myLock = lockFactory.tryLock(dataCenter, resource, priority, metadata);
+            myLock = Uninterruptibles.getUninterruptibly(lockFuture);
 
             if (myLock != null)
             {
@@ -127,10 +285,70 @@ public class RepairLockFactoryImpl implements RepairLockFactory
             LOG.warn(msg);
             throw new LockException(msg);
         }
-        catch (LockException e)
+        catch (ExecutionException e)
         {
-            LOG.debug("Lock ({} in datacenter {}) got error {}", resource, dataCenter, e.getMessage());
-            throw e;
+            LOG.debug("Lock ({} in datacenter {}) got error {}", resource, dataCenter, e.getCause().getMessage());
+
+            if (e.getCause() instanceof LockException)
+            {
+                throw (LockException) e.getCause();
+            }
+
+            throw new LockException(e.getCause());
+        }
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    public static class Builder
+    {
+        private int myLocksPerResource = DEFAULT_LOCKS_PER_RESOURCE;
+        private final Map<String, Integer> myDataCenterLocksPerResource = new HashMap<>();
+
+        /**
+         * Set the number of locks per repair resource.
+         *
+         * @param locksPerResource The number of locks.
+         * @return The builder
+         */
+        public Builder withLocksPerResource(int locksPerResource)
+        {
+            myLocksPerResource = locksPerResource;
+            return this;
+        }
+
+        /**
+         * Set the number of locks per repair resource in a data center.
+         *
+         * @param dataCenter The data center.
+         * @param locksPerResource The number of locks.
+         * @return The builder
+         */
+        public Builder withLocksPerResource(String dataCenter, int locksPerResource)
+        {
+            myDataCenterLocksPerResource.put(dataCenter, locksPerResource);
+            return this;
+        }
+
+        public RepairLockFactoryImpl build()
+        {
+            if (myLocksPerResource < 1)
+            {
+                throw new IllegalArgumentException("Locks per resource must be at least 1");
+            }
+
+            for (Map.Entry<String, Integer> entry : myDataCenterLocksPerResource.entrySet())
+            {
+                if (entry.getValue() < 1)
+                {
+                    throw new IllegalArgumentException(String.format("Locks per resource must be at least 1 in %s", entry.getKey()));
+                }
+            }
+
+            return new RepairLockFactoryImpl(this);
         }
     }
 }
@@ -0,0 +1,458 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.repair;
+
+import com.ericsson.bss.cassandra.ecchronos.core.JmxProxy;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.remote.JMXConnectionNotification;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Dispatches the repair notifications from a JMX connection to the repairs that are running.
+ * <p>
+ * One dispatcher should be shared by all repairs of the local node so that a single listener is added to the storage service.
+ * The listener is added to the connection of the repair being started, moved when the connection changes
+ * and removed when no repair is running.
+ * Progress notifications are routed to the repair based on the command of the repair
+ * while connection notifications are sent to all running repairs.
+ * Notifications received while a repair is being started are kept until the command of the repair is known.
+ * <p>
+ * A repair that has not received any progress within the hang prevention time is reported as hanging.
+ * <p>
+ * The node can only terminate all of its repair sessions at once,
+ * so the sessions of a failed or hanging repair are terminated when no other repair is registered with the dispatcher.
+ * New repairs are held back until a pending termination has been done.
+ */
+public class RepairNotificationDispatcher implements NotificationListener, Closeable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(RepairNotificationDispatcher.class);
+
+    private static final String PROGRESS_NOTIFICATION = "progress";
+    private static final String REPAIR_TAG_PREFIX = "repair:";
+
+    private static final long HANG_PREVENT_TIME_IN_MINUTES = 30;
+    private static final long HANG_CHECK_INTERVAL_IN_SECONDS = 60;
+
+    private final Object myLock = new Object();
+
+    private final Map<String, Registration> myRegistrations = new HashMap<>(); // Guarded by myLock
+    private final Map<String, List<Notification>> myPendingNotifications = new HashMap<>(); // Guarded by myLock
+    private int myStartingRepairs = 0; // Guarded by myLock
+    private JmxProxy myListeningProxy; // Guarded by myLock
+    private Object myListeningConnection; // Guarded by myLock
+    private JmxProxy myPendingTerminationProxy; // Guarded by myLock
+    private boolean myTerminating = false; // Guarded by myLock
+    private ScheduledFuture<?> myHangDetectionFuture; // Guarded by myLock
+
+    private final ScheduledExecutorService myExecutor;
+    private final long myHangPreventTimeInNanos;
+    private final long myHangCheckIntervalInNanos;
+
+    public RepairNotificationDispatcher()
+    {
+        this(Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("RepairHangDetection-%d").setDaemon(true).build()),
+                TimeUnit.MINUTES.toSeconds(HANG_PREVENT_TIME_IN_MINUTES), HANG_CHECK_INTERVAL_IN_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @VisibleForTesting
+    RepairNotificationDispatcher(ScheduledExecutorService executor, long hangPreventTime, long hangCheckInterval, TimeUnit timeUnit)
+    {
+        myExecutor = executor;
+        myHangPreventTimeInNanos = timeUnit.toNanos(hangPreventTime);
+        myHangCheckIntervalInNanos = timeUnit.toNanos(hangCheckInterval);
+    }
+
+    /**
+     * Start a repair and register the listener for the notifications of it.
+     * <p>
+     * The registration must be closed when the repair has finished.
+     * If the repair sessions of the node are about to be terminated the repair is started after the termination.
+     *
+     * @param proxy The proxy to start the repair with.
+     * @param keyspace The keyspace to repair.
+     * @param options The options of the repair.
+     * @param listener The listener to receive the progress and connection notifications of the repair.
+     * @param hangHandler Called with the registration if the repair does not receive any progress within the hang prevention time.
+     * @return The registration of the repair.
+     * @throws IOException Thrown if the listener could not be added to the connection of the proxy.
+     * @throws InterruptedException Thrown if interrupted while waiting for a termination of the repair sessions.
+     */
+    public Registration repairAsync(JmxProxy proxy, String keyspace, Map<String, String> options, NotificationListener listener,
+            Consumer<Registration> hangHandler) throws IOException, InterruptedException
+    {
+        synchronized (myLock)
+        {
+            while (myTerminating || myPendingTerminationProxy != null)
+            {
+                myLock.wait();
+            }
+
+            listen(proxy);
+            myStartingRepairs++;
+        }
+
+        Registration registration = null;
+        JmxProxy terminationProxy = null;
+        try
+        {
+            registration = new Registration(proxy.repairAsync(keyspace, options), listener, hangHandler);
+        }
+        finally
+        {
+            synchronized (myLock)
+            {
+                myStartingRepairs--;
+                if (registration != null && registration.myCommand > 0)
+                {
+                    register(registration);
+                }
+                if (myStartingRepairs == 0)
+                {
+                    myPendingNotifications.clear();
+                }
+                terminationProxy = idle();
+            }
+        }
+
+        terminate(terminationProxy);
+
+        return registration;
+    }
+
+    private void listen(JmxProxy proxy) throws IOException
+    {
+        Object connection = proxy.getConnectionIdentity();
+
+        if (myListeningProxy != null)
+        {
+            if (myListeningConnection == connection)
+            {
+                return;
+            }
+
+            LOG.debug("JMX connection changed, moving repair listener");
+            stopListening();
+        }
+
+        proxy.addStorageServiceListener(this);
+        myListeningProxy = proxy;
+        myListeningConnection = connection;
+    }
+
+    /**
+     * Stop listening when no repair is registered or being started.
+     *
+     * @return The proxy to terminate the repair sessions with if a termination is pending, otherwise null.
+     */
+    private JmxProxy idle()
+    {
+        if (!myRegistrations.isEmpty() || myStartingRepairs > 0)
+        {
+            return null;
+        }
+
+        if (myListeningProxy != null)
+        {
+            stopListening();
+        }
+
+        JmxProxy terminationProxy = myPendingTerminationProxy;
+        if (terminationProxy != null)
+        {
+            myPendingTerminationProxy = null;
+            myTerminating = true;
+        }
+        return terminationProxy;
+    }
+
+    private void terminate(JmxProxy proxy)
+    {
+        if (proxy == null)
+        {
+            return;
+        }
+
+        try
+        {
+            LOG.info("Terminating the repair sessions of failed repairs");
+            proxy.forceTerminateAllRepairSessions();
+        }
+        finally
+        {
+            synchronized (myLock)
+            {
+                myTerminating = false;
+                myLock.notifyAll();
+            }
+        }
+    }
+
+    private void stopListening()
+    {
+        myListeningProxy.removeStorageServiceListener(this);
+        myListeningProxy = null;
+        myListeningConnection = null;
+    }
+
+    private void register(Registration registration)
+    {
+        myRegistrations.put(registration.myTag, registration);
+
+        List<Notification> pendingNotifications = myPendingNotifications.remove(registration.myTag);
+        if (pendingNotifications != null)
+        {
+            pendingNotifications.forEach(registration::progress);
+        }
+
+        if (myHangDetectionFuture == null)
+        {
+            myHangDetectionFuture = myExecutor.scheduleWithFixedDelay(this::detectHangingRepairs,
+                    myHangCheckIntervalInNanos, myHangCheckIntervalInNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void unregister(Registration registration)
+    {
+        JmxProxy terminationProxy;
+
+        synchronized (myLock)
+        {
+            myRegistrations.remove(registration.myTag, registration);
+
+            if (myRegistrations.isEmpty() && myHangDetectionFuture != null)
+            {
+                myHangDetectionFuture.cancel(false);
+                myHangDetectionFuture = null;
+            }
+
+            terminationProxy = idle();
+        }
+
+        terminate(terminationProxy);
+    }
+
+    @Override
+    public void close()
+    {
+        synchronized (myLock)
+        {
+            if (myHangDetectionFuture != null)
+            {
+                myHangDetectionFuture.cancel(false);
+                myHangDetectionFuture = null;
+            }
+        }
+
+        myExecutor.shutdown();
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback)
+    {
+        switch (notification.getType())
+        {
+            case PROGRESS_NOTIFICATION:
+                dispatch(notification);
+                break;
+
+            case JMXConnectionNotification.NOTIFS_LOST:
+                broadcast(notification);
+                break;
+
+            case JMXConnectionNotification.FAILED: // NOPMD
+            case JMXConnectionNotification.CLOSED:
+                synchronized (myLock)
+                {
+                    myListeningProxy = null;
+                    myListeningConnection = null;
+                }
+                broadcast(notification);
+                break;
+
+            default:
+                LOG.debug("Unknown JMXConnectionNotification type: {}", notification.getType());
+                break;
+        }
+    }
+
+    private void dispatch(Notification notification)
+    {
+        String tag = String.valueOf(notification.getSource());
+        Registration registration;
+
+        synchronized (myLock)
+        {
+            registration = myRegistrations.get(tag);
+
+            if (registration == null)
+            {
+                if (myStartingRepairs > 0)
+                {
+                    myPendingNotifications.computeIfAbsent(tag, t -> new ArrayList<>()).add(notification);
+                }
+                return;
+            }
+        }
+
+        registration.progress(notification);
+    }
+
+    private void broadcast(Notification notification)
+    {
+        List<Registration> registrations;
+
+        synchronized (myLock)
+        {
+            registrations = new ArrayList<>(myRegistrations.values());
+        }
+
+        for (Registration registration : registrations)
+        {
+            registration.myListener.handleNotification(notification, null);
+        }
+    }
+
+    private void detectHangingRepairs()
+    {
+        long now = System.nanoTime();
+        List<Registration> hangingRepairs = new ArrayList<>();
+
+        synchronized (myLock)
+        {
+            for (Registration registration : myRegistrations.values())
+            {
+                if (registration.isHanging(now))
+                {
+                    hangingRepairs.add(registration);
+                }
+            }
+        }
+
+        for (Registration registration : hangingRepairs)
+        {
+            LOG.warn("No progress for repair {} in {} ms, preventing hang", registration.myTag,
+                    TimeUnit.NANOSECONDS.toMillis(myHangPreventTimeInNanos));
+            try
+            {
+                registration.myHangHandler.accept(registration);
+            }
+            catch (Exception e)
+            {
+                LOG.error("Unable to prevent hanging repair {}", registration.myTag, e);
+            }
+        }
+    }
+
+    /**
+     * The registration of a running repair.
+     */
+    public final class Registration implements AutoCloseable
+    {
+        private final int myCommand;
+        private final String myTag;
+        private final NotificationListener myListener;
+        private final Consumer<Registration> myHangHandler;
+
+        private volatile long myLastProgressInNanos = System.nanoTime();
+        private volatile boolean myHanging = false;
+
+        private Registration(int command, NotificationListener listener, Consumer<Registration> hangHandler)
+        {
+            myCommand = command;
+            myTag = REPAIR_TAG_PREFIX + command;
+            myListener = listener;
+            myHangHandler = hangHandler;
+        }
+
+        /**
+         * Get the command of the repair.
+         *
+         * @return The command or zero if the repair was not started.
+         */
+        public int getCommand()
+        {
+            return myCommand;
+        }
+
+        /**
+         * Terminate the repair sessions of the node if this is the only repair registered with the dispatcher.
+         * <p>
+         * When other repairs are registered or being started the termination is deferred until they have finished,
+         * since terminating the sessions now would fail those repairs as well.
+         *
+         * @param proxy The proxy to terminate the repair sessions with.
+         * @return True if the repair sessions were terminated, false if the termination was deferred.
+         */
+        public boolean forceTerminate(JmxProxy proxy)
+        {
+            synchronized (myLock)
+            {
+                if (myStartingRepairs > 0 || myRegistrations.size() != 1 || myRegistrations.get(myTag) != this)
+                {
+                    LOG.warn("Other repairs are running, terminating repair {} when they have finished", myTag);
+                    myPendingTerminationProxy = proxy;
+                    return false;
+                }
+
+                myPendingTerminationProxy = null;
+                myTerminating = true;
+            }
+
+            terminate(proxy);
+            return true;
+        }
+
+        private void progress(Notification notification)
+        {
+            myLastProgressInNanos = System.nanoTime();
+            myHanging = false;
+            myListener.handleNotification(notification, null);
+        }
+
+        private boolean isHanging(long nowInNanos)
+        {
+            if (!myHanging && nowInNanos - myLastProgressInNanos >= myHangPreventTimeInNanos)
+            {
+                myHanging = true;
+                return true;
+            }
+
+            return false;
+        }
+
+        @Override
+        public void close()
+        {
+            unregister(this);
+        }
+    }
+}
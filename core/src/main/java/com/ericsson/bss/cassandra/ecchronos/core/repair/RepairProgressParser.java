@@ -0,0 +1,190 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.repair;
+
+import java.util.Arrays;
+
+/**
+ * A parser of the progress messages sent by Cassandra when a repair session has finished, e.g.
+ * <pre>Repair session 2d0a8d40-1a2b-11ea-9a9f-0242ac110002 for range [(-100,0], (0,100]] finished</pre>
+ * <p>
+ * The token ranges are parsed into a buffer that is reused between messages so that
+ * parsing a message does not allocate any objects.
+ * The ranges are only passed on to the consumer if the whole message could be parsed.
+ * <p>
+ * This class is not thread safe.
+ */
+public final class RepairProgressParser
+{
+    private static final String SESSION_PREFIX = "Repair session ";
+    private static final String RANGE_PREFIX = " for range [";
+    private static final String RANGE_SEPARATOR = ", ";
+    private static final String SUFFIX = "] finished";
+
+    private static final int INITIAL_BUFFER_SIZE = 16;
+
+    private long[] myTokens = new long[INITIAL_BUFFER_SIZE];
+
+    // Result of the last call to parseToken
+    private long myToken;
+    private int myPosition;
+
+    /**
+     * Parse the message and pass the token ranges to the consumer.
+     *
+     * @param message The progress message.
+     * @param consumer The consumer of the token ranges.
+     * @return True if the message was a finished repair session message.
+     */
+    public boolean parse(String message, RangeConsumer consumer)
+    {
+        if (message == null || !message.startsWith(SESSION_PREFIX))
+        {
+            return false;
+        }
+
+        int position = SESSION_PREFIX.length();
+        while (position < message.length() && isSessionIdChar(message.charAt(position)))
+        {
+            position++;
+        }
+
+        if (position == SESSION_PREFIX.length() || !message.startsWith(RANGE_PREFIX, position))
+        {
+            return false;
+        }
+
+        position += RANGE_PREFIX.length();
+
+        int tokens = 0;
+
+        do
+        {
+            if (position >= message.length() || message.charAt(position) != '(')
+            {
+                return false;
+            }
+
+            if (!parseToken(message, position + 1, ','))
+            {
+                return false;
+            }
+            long start = myToken;
+
+            if (!parseToken(message, myPosition, ']'))
+            {
+                return false;
+            }
+            long end = myToken;
+
+            if (tokens + 2 > myTokens.length)
+            {
+                myTokens = Arrays.copyOf(myTokens, myTokens.length * 2);
+            }
+            myTokens[tokens++] = start;
+            myTokens[tokens++] = end;
+
+            position = myPosition;
+            if (message.startsWith(RANGE_SEPARATOR, position))
+            {
+                position += RANGE_SEPARATOR.length();
+            }
+        } while (position < message.length() && message.charAt(position) == '(');
+
+        if (message.length() - position != SUFFIX.length() || !message.startsWith(SUFFIX, position))
+        {
+            return false;
+        }
+
+        for (int i = 0; i < tokens; i += 2)
+        {
+            consumer.accept(myTokens[i], myTokens[i + 1]);
+        }
+
+        return true;
+    }
+
+    /**
+     * Parse a token starting at the position and ending with the terminator.
+     * The token is accumulated negatively, as in {@link Long#parseLong(String)}, to be able to parse {@link Long#MIN_VALUE}.
+     * <p>
+     * On success the token is stored in {@link #myToken} and the position after the terminator in {@link #myPosition}.
+     *
+     * @return True if a token was parsed.
+     */
+    private boolean parseToken(String message, int startPosition, char terminator)
+    {
+        int position = startPosition;
+        boolean negative = position < message.length() && message.charAt(position) == '-';
+        if (negative)
+        {
+            position++;
+        }
+
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long minBeforeMultiply = limit / 10;
+        long result = 0;
+        int digitsStart = position;
+
+        while (position < message.length())
+        {
+            char c = message.charAt(position);
+            if (c < '0' || c > '9')
+            {
+                break;
+            }
+
+            int digit = c - '0';
+            if (result < minBeforeMultiply)
+            {
+                return false;
+            }
+            result *= 10;
+            if (result < limit + digit)
+            {
+                return false;
+            }
+            result -= digit;
+            position++;
+        }
+
+        if (position == digitsStart || position >= message.length() || message.charAt(position) != terminator)
+        {
+            return false;
+        }
+
+        myToken = negative ? result : -result;
+        myPosition = position + 1;
+        return true;
+    }
+
+    private static boolean isSessionIdChar(char c)
+    {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '-';
+    }
+
+    /**
+     * A consumer of the token ranges of a repair session.
+     */
+    @FunctionalInterface
+    public interface RangeConsumer
+    {
+        /**
+         * @param start The start of the token range (exclusive).
+         * @param end The end of the token range (inclusive).
+         */
+        void accept(long start, long end);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.repair;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
+
+/**
+ * Packs the token ranges of a repair group into repair sessions.
+ * <p>
+ * A session contains up to the configured maximum number of ranges as long as the ranges together
+ * do not contain more tokens than a single repair should handle based on the target repair size.
+ * The time of finished sessions is tracked per token so that the ranges of a session are
+ * expected to be repaired within the target session time.
+ */
+public class RepairRangeBatcher
+{
+    private static final double SMOOTHING_FACTOR = 0.5d;
+
+    private double myNanosPerToken = -1.0d;
+
+    /**
+     * Pack the ranges into repair sessions, keeping the order of the ranges.
+     *
+     * @param ranges The ranges to repair.
+     * @param tokensPerRepair The maximum number of tokens to repair in one session.
+     * @param repairConfiguration The repair configuration.
+     * @return The ranges of each repair session.
+     */
+    public List<List<LongTokenRange>> batch(Collection<LongTokenRange> ranges, BigInteger tokensPerRepair, RepairConfiguration repairConfiguration)
+    {
+        int maxRanges = repairConfiguration.getMaxRangesPerSession();
+        BigInteger maxTokens = tokensPerRepair.min(getTokensWithinTargetTime(repairConfiguration));
+
+        List<List<LongTokenRange>> batches = new ArrayList<>();
+        List<LongTokenRange> batch = new ArrayList<>();
+        BigInteger batchTokens = BigInteger.ZERO;
+
+        for (LongTokenRange range : ranges)
+        {
+            BigInteger rangeSize = range.rangeSize();
+
+            if (!batch.isEmpty() && (batch.size() >= maxRanges || batchTokens.add(rangeSize).compareTo(maxTokens) > 0))
+            {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchTokens = BigInteger.ZERO;
+            }
+
+            batch.add(range);
+            batchTokens = batchTokens.add(rangeSize);
+        }
+
+        if (!batch.isEmpty())
+        {
+            batches.add(batch);
+        }
+
+        return batches;
+    }
+
+    /**
+     * Register a successful repair session.
+     *
+     * @param ranges The ranges that were repaired in the session.
+     * @param executionNanos The time the session took in nanoseconds.
+     */
+    public synchronized void sessionFinished(Collection<LongTokenRange> ranges, long executionNanos)
+    {
+        double tokens = ranges.stream()
+                .map(LongTokenRange::rangeSize)
+                .reduce(BigInteger.ZERO, BigInteger::add)
+                .doubleValue();
+
+        if (tokens <= 0.0d)
+        {
+            return;
+        }
+
+        double nanosPerToken = executionNanos / tokens;
+
+        if (myNanosPerToken < 0.0d)
+        {
+            myNanosPerToken = nanosPerToken;
+        }
+        else
+        {
+            myNanosPerToken = SMOOTHING_FACTOR * nanosPerToken + (1.0d - SMOOTHING_FACTOR) * myNanosPerToken;
+        }
+    }
+
+    private synchronized BigInteger getTokensWithinTargetTime(RepairConfiguration repairConfiguration)
+    {
+        if (myNanosPerToken <= 0.0d)
+        {
+            return LongTokenRange.FULL_RANGE;
+        }
+
+        double targetSessionNanos = TimeUnit.MILLISECONDS.toNanos(repairConfiguration.getTargetSessionTimeInMs());
+
+        return new BigDecimal(targetSessionNanos / myNanosPerToken).toBigInteger();
+    }
+}
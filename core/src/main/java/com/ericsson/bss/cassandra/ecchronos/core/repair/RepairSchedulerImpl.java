@@ -26,6 +26,7 @@ import com.ericsson.bss.cassandra.ecchronos.core.scheduling.ScheduledJob;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
 import com.ericsson.bss.cassandra.ecchronos.fm.RepairFaultReporter;
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,6 +39,8 @@ import java.util.stream.Collectors;
 
 /**
  * A factory creating {@link TableRepairJob}'s for tables based on the provided repair configuration.
+ * <p>
+ * The concurrent repair sessions of all jobs are run by one session executor owned by the scheduler.
  */
 public class RepairSchedulerImpl implements RepairScheduler, Closeable
 {
@@ -47,26 +50,34 @@ public class RepairSchedulerImpl implements RepairScheduler, Closeable
     private final Object myLock = new Object();
 
     private final ExecutorService myExecutor;
+    private final ExecutorService mySessionExecutor = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("RepairSession-%d").setDaemon(true).build());
 
     private final RepairFaultReporter myFaultReporter;
     private final JmxProxyFactory myJmxProxyFactory;
+    private final RepairNotificationDispatcher myRepairNotificationDispatcher;
     private final TableRepairMetrics myTableRepairMetrics;
     private final ScheduleManager myScheduleManager;
     private final RepairStateFactory myRepairStateFactory;
     private final RepairLockType myRepairLockType;
+    private final RepairLockFactory myRepairLockFactory;
     private final TableStorageStates myTableStorageStates;
     private final List<TableRepairPolicy> myRepairPolicies;
     private final RepairHistory myRepairHistory;
+    private final TableRepairCoalescer myTableRepairCoalescer = new TableRepairCoalescer();
 
     private RepairSchedulerImpl(Builder builder)
     {
         myExecutor = Executors.newSingleThreadScheduledExecutor();
         myFaultReporter = builder.myFaultReporter;
         myJmxProxyFactory = builder.myJmxProxyFactory;
+        myRepairNotificationDispatcher = Preconditions.checkNotNull(builder.myRepairNotificationDispatcher,
+                "Repair notification dispatcher must be set");
         myTableRepairMetrics = builder.myTableRepairMetrics;
         myScheduleManager = builder.myScheduleManager;
         myRepairStateFactory = builder.myRepairStateFactory;
         myRepairLockType = builder.myRepairLockType;
+        myRepairLockFactory = builder.myRepairLockFactory;
         myTableStorageStates = builder.myTableStorageStates;
         myRepairPolicies = new ArrayList<>(builder.myRepairPolicies);
         myRepairHistory = Preconditions.checkNotNull(builder.myRepairHistory, "Repair history must be set");
@@ -93,12 +104,14 @@ public class RepairSchedulerImpl implements RepairScheduler, Closeable
         {
             for (TableReference tableReference : myScheduledJobs.keySet())
             {
-                ScheduledJob job = myScheduledJobs.get(tableReference);
+                TableRepairJob job = myScheduledJobs.get(tableReference);
                 descheduleTableJob(job);
             }
 
             myScheduledJobs.clear();
         }
+
+        mySessionExecutor.shutdown();
     }
 
     @Override
@@ -150,6 +163,7 @@ public class RepairSchedulerImpl implements RepairScheduler, Closeable
 
         TableRepairJob job = getRepairJob(tableReference, repairConfiguration);
         myScheduledJobs.put(tableReference, job);
+        myTableRepairCoalescer.register(job);
         myScheduleManager.schedule(job);
     }
 
@@ -157,15 +171,16 @@ public class RepairSchedulerImpl implements RepairScheduler, Closeable
     {
         synchronized (myLock)
         {
-            ScheduledJob job = myScheduledJobs.remove(tableReference);
+            TableRepairJob job = myScheduledJobs.remove(tableReference);
             descheduleTableJob(job);
         }
     }
 
-    private void descheduleTableJob(ScheduledJob job)
+    private void descheduleTableJob(TableRepairJob job)
     {
         if (job != null)
         {
+            myTableRepairCoalescer.unregister(job);
             myScheduleManager.deschedule(job);
         }
     }
@@ -184,14 +199,18 @@ public class RepairSchedulerImpl implements RepairScheduler, Closeable
         TableRepairJob job = new TableRepairJob.Builder()
                 .withConfiguration(configuration)
                 .withJmxProxyFactory(myJmxProxyFactory)
+                .withRepairNotificationDispatcher(myRepairNotificationDispatcher)
                 .withTableReference(tableReference)
                 .withRepairState(repairState)
                 .withTableRepairMetrics(myTableRepairMetrics)
                 .withRepairConfiguration(repairConfiguration)
                 .withRepairLockType(myRepairLockType)
+                .withRepairLockFactory(myRepairLockFactory)
                 .withTableStorageStates(myTableStorageStates)
                 .withRepairPolices(myRepairPolicies)
                 .withRepairHistory(myRepairHistory)
+                .withTableRepairCoalescer(myTableRepairCoalescer)
+                .withSessionExecutor(mySessionExecutor)
                 .build();
 
         job.runnable();
@@ -208,10 +227,12 @@ public class RepairSchedulerImpl implements RepairScheduler, Closeable
     {
         private RepairFaultReporter myFaultReporter;
         private JmxProxyFactory myJmxProxyFactory;
+        private RepairNotificationDispatcher myRepairNotificationDispatcher;
         private TableRepairMetrics myTableRepairMetrics;
         private ScheduleManager myScheduleManager;
         private RepairStateFactory myRepairStateFactory;
         private RepairLockType myRepairLockType;
+        private RepairLockFactory myRepairLockFactory = new RepairLockFactoryImpl();
         private TableStorageStates myTableStorageStates;
         private RepairHistory myRepairHistory;
         private final List<TableRepairPolicy> myRepairPolicies = new ArrayList<>();
@@ -228,6 +249,12 @@ public class RepairSchedulerImpl implements RepairScheduler, Closeable
             return this;
         }
 
+        public Builder withRepairNotificationDispatcher(RepairNotificationDispatcher repairNotificationDispatcher)
+        {
+            myRepairNotificationDispatcher = repairNotificationDispatcher;
+            return this;
+        }
+
         public Builder withTableRepairMetrics(TableRepairMetrics tableRepairMetrics)
         {
             myTableRepairMetrics = tableRepairMetrics;
@@ -252,6 +279,12 @@ public class RepairSchedulerImpl implements RepairScheduler, Closeable
             return this;
         }
 
+        public Builder withRepairLockFactory(RepairLockFactory repairLockFactory)
+        {
+            myRepairLockFactory = repairLockFactory;
+            return this;
+        }
+
         public Builder withTableStorageStates(TableStorageStates tableStorageStates)
         {
             myTableStorageStates = tableStorageStates;
@@ -23,6 +23,7 @@ import com.ericsson.bss.cassandra.ecchronos.core.repair.state.RepairStatus;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.Node;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.TokenRangeIndex;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Sets;
@@ -35,43 +36,54 @@ import javax.management.remote.JMXConnectionNotification;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.regex.Matcher;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
  * A task that is run to repair a specific keyspace and table using the options from {@link RepairOptions}.
  * <p>
- * If the repair failed the {@link #getUnknownRanges()} can be used to retrieve the ranges that have an unknown status during the repair.
+ * Small tables in the same keyspace can be coalesced into the repair of the table.
+ * They are repaired in the same repair session while the repair history is recorded per table.
+ * <p>
+ * The notifications of the repair are received through the shared {@link RepairNotificationDispatcher},
+ * which also detects if the repair hangs.
+ * <p>
+ * The progress notifications are parsed by a {@link RepairProgressParser} and the finished ranges are looked up in a
+ * {@link TokenRangeIndex} to avoid allocations for each notification.
+ * <p>
+ * If the repair failed the {@link #getUnknownRanges()} can be used to retrieve the ranges that have an unknown status during the repair
+ * and {@link #getFailureType()} can be used to retrieve the type of failure.
  */
 public class RepairTask implements NotificationListener
 {
     private static final Logger LOG = LoggerFactory.getLogger(RepairTask.class);
 
-    private static final Pattern REPAIR_PATTERN = Pattern.compile("Repair session [0-9a-zA-Z-]+ for range \\[\\(([-]?[0-9]+),([-]?[0-9]+)(\\]){2} finished");
-
-    private static final long HANG_PREVENT_TIME_IN_MINUTES = 30;
+    private static final Pattern HOST_DOWN_PATTERN = Pattern.compile(".*(not alive|is dead|died).*", Pattern.CASE_INSENSITIVE);
 
-    private final ScheduledExecutorService myExecutor = Executors.newScheduledThreadPool(1);
+    private static final ProgressEventType[] PROGRESS_EVENT_TYPES = ProgressEventType.values();
 
-    private final Set<LongTokenRange> completedRanges = Collections.synchronizedSet(new HashSet<>());
     private final CountDownLatch myLatch = new CountDownLatch(1);
 
     private final Set<LongTokenRange> myTokenRanges;
     private final Set<Node> myReplicas;
     private final JmxProxyFactory myJmxProxyFactory;
+    private final RepairNotificationDispatcher myRepairNotificationDispatcher;
     private final TableReference myTableReference;
+    private final List<TableReference> myCoalescedTables;
     private final TableRepairMetrics myTableRepairMetrics;
     private final RepairConfiguration myRepairConfiguration;
 
     private volatile boolean hasLostNotification = false;
     private volatile ScheduledJobException myLastError;
     private volatile Collection<LongTokenRange> myUnknownRanges;
+    private volatile RepairFailureType myFailureType;
 
-    private volatile ScheduledFuture<?> myHangPreventFuture;
-    private volatile int myCommand;
+    private final TokenRangeIndex<PendingRange> myPendingRanges;
 
-    private final ConcurrentMap<LongTokenRange, RepairHistory.RepairSession> myRepairSessions = new ConcurrentHashMap<>();
+    // Guarded by myProgressParser
+    private final RepairProgressParser myProgressParser = new RepairProgressParser();
+    private final RepairProgressParser.RangeConsumer myRangeCompleted = this::rangeCompleted;
 
     RepairTask(Builder builder)
     {
@@ -79,30 +91,42 @@ public class RepairTask implements NotificationListener
         RepairHistory repairHistory = Preconditions.checkNotNull(builder.repairHistory, "Repair history must be set");
 
         myJmxProxyFactory = builder.jmxProxyFactory;
+        myRepairNotificationDispatcher = Preconditions.checkNotNull(builder.repairNotificationDispatcher,
+                "Repair notification dispatcher must be set");
         myTableReference = builder.tableReference;
+        myCoalescedTables = builder.coalescedTables;
         myTokenRanges = builder.tokenRanges;
         myReplicas = Preconditions.checkNotNull(builder.replicas, "Replicas must be set");
         myTableRepairMetrics = builder.tableRepairMetrics;
         myRepairConfiguration = builder.repairConfiguration;
 
+        Map<LongTokenRange, PendingRange> pendingRanges = new HashMap<>();
+
         for (LongTokenRange range : myTokenRanges)
         {
-            myRepairSessions.put(range, repairHistory.newSession(myTableReference, jobId, range, myReplicas));
+            List<RepairHistory.RepairSession> repairSessions = new ArrayList<>();
+            repairSessions.add(repairHistory.newSession(myTableReference, jobId, range, myReplicas));
+
+            for (TableReference coalescedTable : myCoalescedTables)
+            {
+                repairSessions.add(repairHistory.newSession(coalescedTable, jobId, range, myReplicas));
+            }
+
+            pendingRanges.put(range, new PendingRange(repairSessions));
         }
+
+        myPendingRanges = new TokenRangeIndex<>(pendingRanges);
     }
 
     public void execute() throws ScheduledJobException
     {
         long start = System.nanoTime();
-        long end;
-        long executionNanos;
         boolean successful = true;
 
-        myRepairSessions.values().forEach(RepairHistory.RepairSession::start);
+        myPendingRanges.values().forEach(PendingRange::start);
 
         try (JmxProxy proxy = myJmxProxyFactory.connect())
         {
-            rescheduleHangPrevention();
             repair(proxy);
             finish(RepairStatus.SUCCESS);
         }
@@ -110,69 +134,54 @@ public class RepairTask implements NotificationListener
         {
             finish(RepairStatus.FAILED);
             successful = false;
+            failed(e instanceof IOException ? RepairFailureType.JMX_ERROR : RepairFailureType.SESSION_ERROR);
             String msg = "Unable to repair " + this;
             LOG.warn(msg);
             throw new ScheduledJobException(msg, e);
         }
         finally
         {
-            if (myHangPreventFuture != null)
-            {
-                myHangPreventFuture.cancel(false);
-            }
-            end = System.nanoTime();
-            executionNanos = end - start;
+            long executionNanos = System.nanoTime() - start;
 
             myTableRepairMetrics.repairTiming(myTableReference, executionNanos, TimeUnit.NANOSECONDS, successful);
         }
-
-        lazySleep(executionNanos);
     }
 
     private void finish(RepairStatus repairStatus)
     {
-        myRepairSessions.values().forEach(rs -> rs.finish(repairStatus));
-        myRepairSessions.clear();
+        myPendingRanges.values().forEach(pendingRange -> pendingRange.finish(repairStatus));
     }
 
-    private void finish(LongTokenRange range, RepairStatus repairStatus)
+    private void rangeCompleted(long start, long end)
     {
-        RepairHistory.RepairSession repairSession = myRepairSessions.remove(range);
-        if (repairSession == null)
+        PendingRange pendingRange = myPendingRanges.get(start, end);
+        if (pendingRange == null)
         {
-            LOG.error("{}: Finished range {} - but it was not included in the known repair sessions {}, all ranges are {}",
-                    this, range, myRepairSessions.keySet(), myTokenRanges);
+            LOG.error("{}: Finished range {} - but it was not included in the known ranges {}",
+                    this, new LongTokenRange(start, end), myTokenRanges);
         }
         else
         {
-            repairSession.finish(repairStatus);
+            pendingRange.complete();
         }
     }
 
-    private void lazySleep(long executionNanos) throws ScheduledJobException
+    /**
+     * Get the type of failure of this repair.
+     *
+     * @return The type of the first failure that occurred or null if the repair has not failed.
+     */
+    public RepairFailureType getFailureType()
     {
-        if (myRepairConfiguration.getRepairUnwindRatio() != RepairConfiguration.NO_UNWIND)
-        {
-            double sleepDurationNanos = executionNanos * myRepairConfiguration.getRepairUnwindRatio();
-            long sleepDurationMs = TimeUnit.NANOSECONDS.toMillis((long) sleepDurationNanos);
-
-            sleepDurationMs = Math.max(sleepDurationMs, 1);
-
-            try
-            {
-                Thread.sleep(sleepDurationMs);
-            }
-            catch (InterruptedException e)
-            {
-                Thread.currentThread().interrupt();
-                throw new ScheduledJobException(e);
-            }
-        }
+        return myFailureType;
     }
 
-    public void cleanup()
+    private void failed(RepairFailureType failureType)
     {
-        myExecutor.shutdown();
+        if (myFailureType == null)
+        {
+            myFailureType = failureType;
+        }
     }
 
     /**
@@ -192,19 +201,14 @@ public class RepairTask implements NotificationListener
         switch (notification.getType())
         {
             case "progress":
-                rescheduleHangPrevention();
-                String tag = (String) notification.getSource();
-                if (tag.equals("repair:" + myCommand))
-                {
-                    Map<String, Integer> progress = (Map<String, Integer>) notification.getUserData();
+                Map<String, Integer> progress = (Map<String, Integer>) notification.getUserData();
 
-                    String message = notification.getMessage();
-                    ProgressEventType type = ProgressEventType.values()[progress.get("type")];
-                    int progressCount = progress.get("progressCount");
-                    int total = progress.get("total");
+                String message = notification.getMessage();
+                ProgressEventType type = PROGRESS_EVENT_TYPES[progress.get("type")];
+                int progressCount = progress.get("progressCount");
+                int total = progress.get("total");
 
-                    this.progress(type, progressCount, total, message);
-                }
+                this.progress(type, progressCount, total, message);
                 break;
 
             case JMXConnectionNotification.NOTIFS_LOST:
@@ -224,7 +228,12 @@ public class RepairTask implements NotificationListener
     @Override
     public String toString()
     {
-        return String.format("Repair of %s", myTableReference);
+        if (myCoalescedTables.isEmpty())
+        {
+            return String.format("Repair of %s", myTableReference);
+        }
+
+        return String.format("Repair of %s with %s", myTableReference, myCoalescedTables);
     }
 
     private Map<String, String> getOptions()
@@ -233,7 +242,7 @@ public class RepairTask implements NotificationListener
 
         options.put(RepairOptions.PARALLELISM_KEY, myRepairConfiguration.getRepairParallelism().getName());
         options.put(RepairOptions.PRIMARY_RANGE_KEY, Boolean.toString(false));
-        options.put(RepairOptions.COLUMNFAMILIES_KEY, myTableReference.getTable());
+        options.put(RepairOptions.COLUMNFAMILIES_KEY, getColumnFamilies());
         options.put(RepairOptions.INCREMENTAL_KEY, Boolean.toString(false));
 
         StringBuilder rangesStringBuilder = new StringBuilder();
@@ -254,37 +263,45 @@ public class RepairTask implements NotificationListener
         return options;
     }
 
-    private void repair(JmxProxy proxy) throws ScheduledJobException
+    private String getColumnFamilies()
     {
-        proxy.addStorageServiceListener(this);
-        myCommand = proxy.repairAsync(myTableReference.getKeyspace(), getOptions());
+        StringBuilder columnFamiliesStringBuilder = new StringBuilder(myTableReference.getTable());
+
+        for (TableReference coalescedTable : myCoalescedTables)
+        {
+            columnFamiliesStringBuilder.append(',').append(coalescedTable.getTable());
+        }
 
-        if (myCommand > 0)
+        return columnFamiliesStringBuilder.toString();
+    }
+
+    private void repair(JmxProxy proxy) throws ScheduledJobException, IOException
+    {
+        try (RepairNotificationDispatcher.Registration registration = myRepairNotificationDispatcher.repairAsync(proxy,
+                myTableReference.getKeyspace(), getOptions(), this, this::preventHang))
         {
-            try
+            if (registration.getCommand() > 0)
             {
                 myLatch.await();
 
-                proxy.removeStorageServiceListener(this);
-
-                verifyRepair(proxy);
+                verifyRepair(proxy, registration);
 
-                LOG.debug("{} - {} completed successfully", this, completedRanges);
-            }
-            catch (InterruptedException e)
-            {
-                LOG.warn("{} was interrupted", this, e);
-                Thread.currentThread().interrupt();
-                throw new ScheduledJobException(e);
+                LOG.debug("{} - {} completed successfully", this, myTokenRanges);
             }
         }
+        catch (InterruptedException e)
+        {
+            LOG.warn("{} was interrupted", this, e);
+            Thread.currentThread().interrupt();
+            throw new ScheduledJobException(e);
+        }
     }
 
-    private void verifyRepair(JmxProxy proxy) throws ScheduledJobException
+    private void verifyRepair(JmxProxy proxy, RepairNotificationDispatcher.Registration registration) throws ScheduledJobException
     {
         if (!validateRepairedRanges())
         {
-            proxy.forceTerminateAllRepairSessions();
+            registration.forceTerminate(proxy);
             String msg = String.format("Unknown status of some ranges for %s", this);
             LOG.warn(msg);
             throw new ScheduledJobException(msg);
@@ -305,12 +322,20 @@ public class RepairTask implements NotificationListener
 
     private boolean validateRepairedRanges()
     {
-        Set<LongTokenRange> unknownRanges = Sets.difference(myTokenRanges, completedRanges);
+        Set<LongTokenRange> unknownRanges = new HashSet<>();
+
+        for (LongTokenRange range : myTokenRanges)
+        {
+            if (!myPendingRanges.get(range.start, range.end).isCompleted())
+            {
+                unknownRanges.add(range);
+            }
+        }
 
         if (!unknownRanges.isEmpty())
         {
             LOG.debug("Failed ranges: {}", unknownRanges);
-            LOG.debug("Completed ranges: {}", completedRanges);
+            LOG.debug("Completed ranges: {}", getCompletedRanges());
             myUnknownRanges = Collections.unmodifiableSet(unknownRanges);
             return false;
         }
@@ -320,6 +345,7 @@ public class RepairTask implements NotificationListener
 
     private void handleConnectionFailed()
     {
+        failed(RepairFailureType.JMX_ERROR);
         myLastError = new ScheduledJobException(String.format("Unable to repair %s", myTableReference));
         myLatch.countDown();
     }
@@ -329,30 +355,30 @@ public class RepairTask implements NotificationListener
     {
         if (type == ProgressEventType.PROGRESS)
         {
-            Matcher matcher = REPAIR_PATTERN.matcher(message);
+            boolean parsed;
 
-            if (matcher.matches())
+            synchronized (myProgressParser)
             {
-                long start = Long.parseLong(matcher.group(1));
-                long end = Long.parseLong(matcher.group(2));
-
-                LongTokenRange completedRange = new LongTokenRange(start, end);
-                finish(completedRange, RepairStatus.SUCCESS);
-                completedRanges.add(completedRange);
+                parsed = myProgressParser.parse(message, myRangeCompleted);
             }
-            else
+
+            if (!parsed)
             {
                 LOG.warn("{} - Unknown progress message received: {}", this, message);
             }
 
-            int currentProgress = (int) calculateProgress(progressCount, total);
-
             if (LOG.isTraceEnabled())
             {
-                LOG.trace("{} (progress: {}%)", message, currentProgress);
+                LOG.trace("{} (progress: {}%)", message, (int) calculateProgress(progressCount, total));
             }
         }
 
+        if (type == ProgressEventType.ERROR && message != null && HOST_DOWN_PATTERN.matcher(message).matches())
+        {
+            LOG.warn("{} - Replica down: {}", this, message);
+            failed(RepairFailureType.HOST_DOWN);
+        }
+
         if (type == ProgressEventType.COMPLETE)
         {
             myLatch.countDown();
@@ -369,13 +395,58 @@ public class RepairTask implements NotificationListener
         return (progressCount * 100.0d) / total;
     }
 
-    private void rescheduleHangPrevention()
+    private void preventHang(RepairNotificationDispatcher.Registration registration)
     {
-        if (myHangPreventFuture != null)
+        failed(RepairFailureType.HANG_PREVENTION);
+        try (JmxProxy proxy = myJmxProxyFactory.connect())
+        {
+            registration.forceTerminate(proxy);
+        }
+        catch (IOException e)
         {
-            myHangPreventFuture.cancel(false);
+            LOG.error("Unable to prevent hanging repair task: {}", this, e);
+        }
+        myLatch.countDown();
+    }
+
+    /**
+     * The repair sessions of a token range that is part of this repair.
+     */
+    private static final class PendingRange
+    {
+        private final List<RepairHistory.RepairSession> myRepairSessions;
+        private final AtomicBoolean myFinished = new AtomicBoolean(false);
+
+        private volatile boolean myCompleted = false;
+
+        PendingRange(List<RepairHistory.RepairSession> repairSessions)
+        {
+            myRepairSessions = repairSessions;
+        }
+
+        void start()
+        {
+            myRepairSessions.forEach(RepairHistory.RepairSession::start);
+        }
+
+        void complete()
+        {
+            myCompleted = true;
+            finish(RepairStatus.SUCCESS);
+        }
+
+        boolean isCompleted()
+        {
+            return myCompleted;
+        }
+
+        void finish(RepairStatus repairStatus)
+        {
+            if (myFinished.compareAndSet(false, true))
+            {
+                myRepairSessions.forEach(repairSession -> repairSession.finish(repairStatus));
+            }
         }
-        myHangPreventFuture = myExecutor.schedule(new HangPreventingTask(), HANG_PREVENT_TIME_IN_MINUTES, TimeUnit.MINUTES);
     }
 
     /**
@@ -386,7 +457,9 @@ public class RepairTask implements NotificationListener
         private RepairHistory repairHistory;
         private UUID jobId;
         private JmxProxyFactory jmxProxyFactory;
+        private RepairNotificationDispatcher repairNotificationDispatcher;
         private TableReference tableReference;
+        private List<TableReference> coalescedTables = Collections.emptyList();
         private Set<LongTokenRange> tokenRanges;
         private Set<Node> replicas;
         private TableRepairMetrics tableRepairMetrics;
@@ -410,12 +483,31 @@ public class RepairTask implements NotificationListener
             return this;
         }
 
+        public Builder withRepairNotificationDispatcher(RepairNotificationDispatcher repairNotificationDispatcher)
+        {
+            this.repairNotificationDispatcher = repairNotificationDispatcher;
+            return this;
+        }
+
         public Builder withTableReference(TableReference tableReference)
         {
             this.tableReference = tableReference;
             return this;
         }
 
+        /**
+         * Set the tables to repair in the same repair session as the table.
+         * The tables must be in the same keyspace as the table.
+         *
+         * @param coalescedTables The other tables to repair.
+         * @return The builder
+         */
+        public Builder withCoalescedTables(Collection<TableReference> coalescedTables)
+        {
+            this.coalescedTables = new ArrayList<>(coalescedTables);
+            return this;
+        }
+
         public Builder withTokenRanges(Collection<LongTokenRange> tokenRanges)
         {
             this.tokenRanges = new HashSet<>(tokenRanges);
@@ -447,6 +539,14 @@ public class RepairTask implements NotificationListener
                 throw new IllegalArgumentException("Metric interface not set");
             }
 
+            for (TableReference coalescedTable : coalescedTables)
+            {
+                if (!coalescedTable.getKeyspace().equals(tableReference.getKeyspace()))
+                {
+                    throw new IllegalArgumentException("Coalesced table " + coalescedTable + " is not in the keyspace of " + tableReference);
+                }
+            }
+
             return new RepairTask(this);
         }
     }
@@ -490,47 +590,49 @@ public class RepairTask implements NotificationListener
         NOTIFICATION
     }
 
-    private class HangPreventingTask implements Runnable
+    Set<LongTokenRange> getTokenRanges()
     {
+        return Sets.newHashSet(myTokenRanges);
+    }
 
-        @Override
-        public void run()
+    @VisibleForTesting
+    Collection<LongTokenRange> getCompletedRanges()
+    {
+        Set<LongTokenRange> completedRanges = new HashSet<>();
+
+        for (LongTokenRange range : myTokenRanges)
         {
-            try (JmxProxy proxy = myJmxProxyFactory.connect())
+            if (myPendingRanges.get(range.start, range.end).isCompleted())
             {
-                proxy.forceTerminateAllRepairSessions();
+                completedRanges.add(range);
             }
-            catch (IOException e)
-            {
-                LOG.error("Unable to prevent hanging repair task: {}", this, e);
-            }
-            myLatch.countDown();
         }
 
+        return completedRanges;
     }
 
     @VisibleForTesting
-    Set<LongTokenRange> getTokenRanges()
+    Set<Node> getReplicas()
     {
-        return Sets.newHashSet(myTokenRanges);
+        return Sets.newHashSet(myReplicas);
     }
 
     @VisibleForTesting
-    Collection<LongTokenRange> getCompletedRanges()
+    TableReference getTableReference()
     {
-        return Sets.newHashSet(completedRanges);
+        return myTableReference;
     }
 
     @VisibleForTesting
-    Set<Node> getReplicas()
+    List<TableReference> getCoalescedTables()
     {
-        return Sets.newHashSet(myReplicas);
+        return new ArrayList<>(myCoalescedTables);
     }
 
     @VisibleForTesting
-    TableReference getTableReference()
+    TableRepairMetrics getTableRepairMetrics()
     {
-        return myTableReference;
+        return myTableRepairMetrics;
     }
 
     @VisibleForTesting
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.repair;
+
+import java.util.concurrent.TimeUnit;
+
+import com.ericsson.bss.cassandra.ecchronos.core.metrics.TableRepairMetrics;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
+
+/**
+ * Table repair metrics that keeps a moving average of the successful repair session times before reporting
+ * them to the delegate.
+ * <p>
+ * The average is used to estimate how long it takes to repair a table.
+ * <p>
+ * The average is only kept in memory and is not seeded from the repair history,
+ * since the {@link com.ericsson.bss.cassandra.ecchronos.core.repair.state.RepairEntry entries} of the history
+ * only contain the time the repair started.
+ * After a restart the estimate is 0 until the first repair session of the table has finished.
+ */
+class RepairTimeEstimator implements TableRepairMetrics
+{
+    static final double SMOOTHING_FACTOR = 0.2d;
+
+    private final TableRepairMetrics myDelegate;
+
+    private double myAverageSessionTimeInMs = -1; // Guarded by this
+
+    RepairTimeEstimator(TableRepairMetrics delegate)
+    {
+        myDelegate = delegate;
+    }
+
+    @Override
+    public void repairState(TableReference tableReference, int repairedRanges, int notRepairedRanges)
+    {
+        myDelegate.repairState(tableReference, repairedRanges, notRepairedRanges);
+    }
+
+    @Override
+    public void lastRepairedAt(TableReference tableReference, long lastRepairedAt)
+    {
+        myDelegate.lastRepairedAt(tableReference, lastRepairedAt);
+    }
+
+    @Override
+    public void repairTiming(TableReference tableReference, long timeTaken, TimeUnit timeUnit, boolean successful)
+    {
+        if (successful)
+        {
+            update(timeUnit.toMillis(timeTaken));
+        }
+
+        myDelegate.repairTiming(tableReference, timeTaken, timeUnit, successful);
+    }
+
+    /**
+     * Estimate the time it takes to run the provided number of repair sessions.
+     *
+     * @param repairSessions The number of repair sessions.
+     * @return The estimated time in milliseconds or 0 if no repair session has been recorded yet.
+     */
+    synchronized long estimate(long repairSessions)
+    {
+        if (myAverageSessionTimeInMs < 0)
+        {
+            return 0L;
+        }
+
+        return (long) (myAverageSessionTimeInMs * repairSessions);
+    }
+
+    private synchronized void update(long sessionTimeInMs)
+    {
+        if (myAverageSessionTimeInMs < 0)
+        {
+            myAverageSessionTimeInMs = sessionTimeInMs;
+        }
+        else
+        {
+            myAverageSessionTimeInMs += SMOOTHING_FACTOR * (sessionTimeInMs - myAverageSessionTimeInMs);
+        }
+    }
+}
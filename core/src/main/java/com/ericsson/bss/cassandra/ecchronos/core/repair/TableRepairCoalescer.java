@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.repair;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.ReplicaRepairGroup;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
+
+/**
+ * Keeps track of the scheduled table repair jobs in order to repair small tables of a keyspace together.
+ * <p>
+ * When a small table is repaired the other small tables of the keyspace with the same repair configuration,
+ * that are due for repair of the same group of replicas and ranges, are coalesced into the same repair sessions.
+ * The tables are considered small when their data size is below the configured coalescing size.
+ * <p>
+ * When the repair sessions have finished the repair state of the coalesced tables is updated,
+ * so that their own jobs do not repair the same ranges again.
+ */
+public class TableRepairCoalescer
+{
+    private final Map<TableReference, TableRepairJob> myRepairJobs = new ConcurrentHashMap<>();
+
+    public void register(TableRepairJob repairJob)
+    {
+        myRepairJobs.put(repairJob.getTableReference(), repairJob);
+    }
+
+    public void unregister(TableRepairJob repairJob)
+    {
+        myRepairJobs.remove(repairJob.getTableReference(), repairJob);
+    }
+
+    /**
+     * Get the tables to repair together with the provided group of the repair job.
+     *
+     * @param repairJob The repair job that is repairing the group.
+     * @param replicaRepairGroup The group of replicas and ranges to repair.
+     * @return The other tables to repair in the same repair sessions, ordered by name.
+     */
+    public List<TableReference> getCoalescedTables(TableRepairJob repairJob, ReplicaRepairGroup replicaRepairGroup)
+    {
+        if (!repairJob.isCoalescable())
+        {
+            return Collections.emptyList();
+        }
+
+        String keyspace = repairJob.getTableReference().getKeyspace();
+        long now = System.currentTimeMillis();
+
+        return myRepairJobs.values().stream()
+                .filter(job -> job != repairJob)
+                .filter(job -> keyspace.equals(job.getTableReference().getKeyspace()))
+                .filter(job -> repairJob.getRepairConfiguration().equals(job.getRepairConfiguration()))
+                .filter(job -> job.canCoalesce(replicaRepairGroup, now))
+                .map(TableRepairJob::getTableReference)
+                .sorted(Comparator.comparing(TableReference::getTable))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Update the repair state of the tables that have been repaired together with another table.
+     *
+     * @param coalescedTables The tables that were coalesced into the repair.
+     */
+    public void coalescedTablesRepaired(List<TableReference> coalescedTables)
+    {
+        for (TableReference coalescedTable : coalescedTables)
+        {
+            TableRepairJob repairJob = myRepairJobs.get(coalescedTable);
+            if (repairJob != null)
+            {
+                repairJob.updateRepairState();
+            }
+        }
+    }
+}
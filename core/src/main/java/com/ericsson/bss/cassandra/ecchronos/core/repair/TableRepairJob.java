@@ -21,38 +21,64 @@ import com.ericsson.bss.cassandra.ecchronos.core.repair.state.*;
 import com.ericsson.bss.cassandra.ecchronos.core.scheduling.ScheduledJob;
 import com.ericsson.bss.cassandra.ecchronos.core.scheduling.ScheduledTask;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.Node;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 /**
  * A scheduled job that keeps track of the repair status of a single table. The table is considered repaired for this node if all the ranges this node
  * is responsible for is repaired within the minimum run interval.
  * <p>
  * When run this job will create {@link RepairTask RepairTasks} that repairs the table.
+ * <p>
+ * The deadline of the job is when the repair error time has passed since the table was last repaired.
+ * The time it takes to repair the table is estimated from the repair sessions that have been run for the table.
+ * <p>
+ * The ranges of a group that have been run are kept per group of replicas so that a group that yields continues with
+ * the remaining ranges when the job is run again.
+ * <p>
+ * Failed repairs back off per group of replicas, see {@link RepairBackoff}.
+ * Groups that are backing off are skipped while the other groups of the table are repaired.
+ * <p>
+ * Tables smaller than the configured coalescing size are repaired together with other small tables of the keyspace
+ * that are due for repair of the same group, see {@link TableRepairCoalescer}.
  */
 public class TableRepairJob extends ScheduledJob
 {
     private static final Logger LOG = LoggerFactory.getLogger(TableRepairJob.class);
 
-    private static final RepairLockFactory repairLockFactory = new RepairLockFactoryImpl();
-
     private final TableReference myTableReference;
     private final JmxProxyFactory myJmxProxyFactory;
+    private final RepairNotificationDispatcher myRepairNotificationDispatcher;
     private final RepairState myRepairState;
     private final RepairConfiguration myRepairConfiguration;
     private final RepairLockType myRepairLockType;
+    private final RepairLockFactory myRepairLockFactory;
     private final List<TableRepairPolicy> myRepairPolicies;
 
-    private final TableRepairMetrics myTableRepairMetrics;
+    private final RepairTimeEstimator myRepairTimeEstimator;
+    private final RepairBackoff myRepairBackoff = new RepairBackoff();
+    private final RepairRangeBatcher myRepairRangeBatcher = new RepairRangeBatcher();
+    private final Map<Set<Node>, Set<LongTokenRange>> myFinishedRanges = new ConcurrentHashMap<>();
     private final TableStorageStates myTableStorageStates;
     private final RepairHistory myRepairHistory;
+    private final TableRepairCoalescer myTableRepairCoalescer;
+    private final ExecutorService mySessionExecutor;
+
+    private volatile TokensPerRepair myTokensPerRepair;
 
     TableRepairJob(Builder builder)
     {
@@ -60,16 +86,21 @@ public class TableRepairJob extends ScheduledJob
 
         myTableReference = builder.tableReference;
         myJmxProxyFactory = Preconditions.checkNotNull(builder.jmxProxyFactory, "JMX Proxy Factory must be set");
+        myRepairNotificationDispatcher = Preconditions.checkNotNull(builder.repairNotificationDispatcher,
+                "Repair notification dispatcher must be set");
         myRepairState = Preconditions.checkNotNull(builder.repairState, "Repair state must be set");
-        myTableRepairMetrics = Preconditions
-                .checkNotNull(builder.tableRepairMetrics, "Table repair metrics must be set");
+        myRepairTimeEstimator = new RepairTimeEstimator(Preconditions
+                .checkNotNull(builder.tableRepairMetrics, "Table repair metrics must be set"));
         myRepairConfiguration = Preconditions
                 .checkNotNull(builder.repairConfiguration, "Repair configuration must be set");
         myRepairLockType = Preconditions.checkNotNull(builder.repairLockType, "Repair lock type must be set");
+        myRepairLockFactory = Preconditions.checkNotNull(builder.repairLockFactory, "Repair lock factory must be set");
         myTableStorageStates = Preconditions
                 .checkNotNull(builder.tableStorageStates, "Table storage states must be set");
         myRepairPolicies = Preconditions.checkNotNull(builder.repairPolicies, "Repair policies cannot be null");
         myRepairHistory = Preconditions.checkNotNull(builder.repairHistory, "Repair history must be set");
+        myTableRepairCoalescer = Preconditions.checkNotNull(builder.tableRepairCoalescer, "Table repair coalescer must be set");
+        mySessionExecutor = Preconditions.checkNotNull(builder.sessionExecutor, "Session executor must be set");
     }
 
     public TableReference getTableReference()
@@ -134,29 +165,20 @@ public class TableRepairJob extends ScheduledJob
         RepairStateSnapshot repairStateSnapshot = myRepairState.getSnapshot();
         if (repairStateSnapshot.canRepair())
         {
-            List<ScheduledTask> taskList = new ArrayList<>();
+            BigInteger tokensPerRepair = getTokensPerRepair(repairStateSnapshot);
+            int priority = getRealPriority();
+            long now = System.currentTimeMillis();
 
-            BigInteger tokensPerRepair = getTokensPerRepair(repairStateSnapshot.getVnodeRepairStates());
+            Set<Set<Node>> dueReplicas = repairStateSnapshot.getRepairGroups().stream()
+                    .map(ReplicaRepairGroup::getReplicas)
+                    .collect(Collectors.toSet());
+            myFinishedRanges.keySet().retainAll(dueReplicas);
 
-            for (ReplicaRepairGroup replicaRepairGroup : repairStateSnapshot.getRepairGroups())
-            {
-                RepairGroup.Builder builder = RepairGroup.newBuilder()
-                        .withTableReference(myTableReference)
-                        .withRepairConfiguration(myRepairConfiguration)
-                        .withReplicaRepairGroup(replicaRepairGroup)
-                        .withJmxProxyFactory(myJmxProxyFactory)
-                        .withTableRepairMetrics(myTableRepairMetrics)
-                        .withRepairResourceFactory(myRepairLockType.getLockFactory())
-                        .withRepairLockFactory(repairLockFactory)
-                        .withTokensPerRepair(tokensPerRepair)
-                        .withRepairPolicies(myRepairPolicies)
-                        .withRepairHistory(myRepairHistory)
-                        .withJobId(getId());
-
-                taskList.add(builder.build(getRealPriority()));
-            }
+            Iterator<ReplicaRepairGroup> replicaRepairGroups = Iterators.filter(repairStateSnapshot.getRepairGroups().iterator(),
+                    replicaRepairGroup -> !myRepairBackoff.isBackingOff(replicaRepairGroup.getReplicas(), now));
 
-            return taskList.iterator();
+            return Iterators.transform(replicaRepairGroups,
+                    replicaRepairGroup -> createRepairGroup(replicaRepairGroup, tokensPerRepair, priority));
         }
         else
         {
@@ -164,6 +186,68 @@ public class TableRepairJob extends ScheduledJob
         }
     }
 
+    private ScheduledTask createRepairGroup(ReplicaRepairGroup replicaRepairGroup, BigInteger tokensPerRepair, int priority)
+    {
+        RepairGroup.Builder builder = RepairGroup.newBuilder()
+                .withTableReference(myTableReference)
+                .withCoalescedTables(myTableRepairCoalescer.getCoalescedTables(this, replicaRepairGroup))
+                .withRepairConfiguration(myRepairConfiguration)
+                .withReplicaRepairGroup(replicaRepairGroup)
+                .withJmxProxyFactory(myJmxProxyFactory)
+                .withRepairNotificationDispatcher(myRepairNotificationDispatcher)
+                .withTableRepairMetrics(myRepairTimeEstimator)
+                .withRepairResourceFactory(myRepairLockType.getLockFactory())
+                .withRepairLockFactory(myRepairLockFactory)
+                .withTokensPerRepair(tokensPerRepair)
+                .withRepairPolicies(myRepairPolicies)
+                .withRepairHistory(myRepairHistory)
+                .withRepairBackoff(myRepairBackoff)
+                .withRepairRangeBatcher(myRepairRangeBatcher)
+                .withSessionExecutor(mySessionExecutor)
+                .withFinishedRanges(myFinishedRanges.computeIfAbsent(replicaRepairGroup.getReplicas(),
+                        replicas -> ConcurrentHashMap.newKeySet()))
+                .withJobId(getId());
+
+        return builder.build(priority);
+    }
+
+    /**
+     * Check if this table is small enough to be repaired together with other tables of the keyspace.
+     *
+     * @return True if the data size of the table is below the coalescing size.
+     */
+    boolean isCoalescable()
+    {
+        long coalescingSizeInBytes = myRepairConfiguration.getCoalescingSizeInBytes();
+
+        return coalescingSizeInBytes != RepairConfiguration.NO_COALESCING
+                && myTableStorageStates.getDataSize(myTableReference) < coalescingSizeInBytes;
+    }
+
+    /**
+     * Check if this table can be repaired together with the provided group of another table.
+     * The table must be due for repair of the same replicas and ranges and allowed to run by the repair policies.
+     *
+     * @param replicaRepairGroup The group of replicas and ranges that is repaired.
+     * @param now The current time in milliseconds.
+     * @return True if this table should be repaired in the same repair sessions as the group.
+     */
+    boolean canCoalesce(ReplicaRepairGroup replicaRepairGroup, long now)
+    {
+        if (!isCoalescable()
+                || myRepairBackoff.isBackingOff(replicaRepairGroup.getReplicas(), now)
+                || !myRepairPolicies.stream().allMatch(repairPolicy -> repairPolicy.shouldRun(myTableReference)))
+        {
+            return false;
+        }
+
+        RepairStateSnapshot repairStateSnapshot = myRepairState.getSnapshot();
+
+        return repairStateSnapshot.canRepair() && repairStateSnapshot.getRepairGroups().stream()
+                .anyMatch(repairGroup -> repairGroup.getReplicas().equals(replicaRepairGroup.getReplicas())
+                        && Iterables.elementsEqual(repairGroup, replicaRepairGroup));
+    }
+
     @Override
     public void postExecute(boolean successful, ScheduledTask task)
     {
@@ -176,30 +260,147 @@ public class TableRepairJob extends ScheduledJob
             LOG.warn("Unable to check repair history, {}", this, e);
         }
 
+        if (task instanceof RepairGroup)
+        {
+            myTableRepairCoalescer.coalescedTablesRepaired(((RepairGroup) task).getCoalescedTables());
+        }
+
         super.postExecute(successful, task);
     }
 
+    /**
+     * Get the time until any of the groups of replicas that are not repaired can be retried.
+     *
+     * @param task The task that failed.
+     * @return The time to wait in milliseconds or 0 if a group can be repaired now.
+     */
+    @Override
+    protected long getRetryDelayInMs(ScheduledTask task)
+    {
+        return getBackoffInMs(System.currentTimeMillis());
+    }
+
+    private long getBackoffInMs(long now)
+    {
+        return myRepairBackoff.getRetryDelayInMs(myRepairState.getSnapshot().getRepairGroups(), now);
+    }
+
+    @Override
+    public long getNextRunnableTime()
+    {
+        long now = System.currentTimeMillis();
+        long backoffInMs = getBackoffInMs(now);
+
+        if (backoffInMs > 0)
+        {
+            return Math.max(super.getNextRunnableTime(), now + backoffInMs);
+        }
+
+        return super.getNextRunnableTime();
+    }
+
+    /**
+     * Stop the backoff of the groups of replicas that are waiting for the released lock.
+     */
+    @Override
+    public void onLockReleased(String dataCenter, String resource)
+    {
+        long now = System.currentTimeMillis();
+        boolean backoffStopped = false;
+
+        for (ReplicaRepairGroup replicaRepairGroup : myRepairState.getSnapshot().getRepairGroups())
+        {
+            Set<Node> replicas = replicaRepairGroup.getReplicas();
+
+            if (myRepairBackoff.isBackingOff(replicas, now)
+                    && usesLock(myRepairLockType.getLockFactory().getRepairResources(replicaRepairGroup), dataCenter, resource)
+                    && myRepairBackoff.lockReleased(replicas))
+            {
+                LOG.debug("{} lock {} released, replicas {} will be retried", this, resource, replicas);
+                backoffStopped = true;
+            }
+        }
+
+        if (backoffStopped)
+        {
+            changed();
+        }
+    }
+
+    private boolean usesLock(Set<RepairResource> repairResources, String dataCenter, String resource)
+    {
+        for (RepairResource repairResource : repairResources)
+        {
+            if (Objects.equals(dataCenter, repairResource.getDataCenter()))
+            {
+                for (int slot = 1; slot <= myRepairLockFactory.getLocksPerResource(repairResource); slot++)
+                {
+                    if (repairResource.getResourceName(slot).equals(resource))
+                    {
+                        return true;
+                    }
+                }
+            }
+        }
+
+        return false;
+    }
+
     @Override
     public long getLastSuccessfulRun()
     {
         return myRepairState.getSnapshot().lastRepairedAt();
     }
 
+    /**
+     * Get the latest time the repair should be started in order to finish before the repair error time has passed.
+     * <p>
+     * Until a repair session of the table has finished after a restart the estimated repair time is 0,
+     * so the latest start time is the deadline itself.
+     *
+     * @return The latest start time in milliseconds since epoch.
+     */
+    @Override
+    public long getLatestStartTime()
+    {
+        RepairStateSnapshot repairStateSnapshot = myRepairState.getSnapshot();
+        long deadline = repairStateSnapshot.lastRepairedAt() + myRepairConfiguration.getRepairErrorTimeInMs();
+
+        return deadline - myRepairTimeEstimator.estimate(getSequentialRepairSessions(repairStateSnapshot));
+    }
+
     @Override
     public boolean runnable()
     {
         if (super.runnable())
         {
-            try
-            {
-                myRepairState.update();
-            } catch (Exception e)
-            {
-                LOG.warn("Unable to check repair history, {}", this, e);
-            }
+            updateRepairState();
+        }
+
+        return myRepairState.getSnapshot().canRepair() && super.runnable()
+                && getBackoffInMs(System.currentTimeMillis()) == 0;
+    }
+
+    /**
+     * Update the repair state and let the queue know if the last repaired time or the groups to repair changed.
+     */
+    void updateRepairState()
+    {
+        RepairStateSnapshot previousSnapshot = myRepairState.getSnapshot();
+
+        try
+        {
+            myRepairState.update();
+        }
+        catch (Exception e)
+        {
+            LOG.warn("Unable to check repair history, {}", this, e);
         }
 
-        return myRepairState.getSnapshot().canRepair() && super.runnable();
+        if (myRepairState.getSnapshot() != previousSnapshot)
+        {
+            changed();
+        }
     }
 
     @Override
@@ -208,7 +409,39 @@ public class TableRepairJob extends ScheduledJob
         return String.format("Repair job of %s", myTableReference);
     }
 
-    private BigInteger getTokensPerRepair(VnodeRepairStates vnodeRepairStates)
+    /**
+     * Get the number of tokens to repair in each repair session, calculated once per repair state snapshot.
+     */
+    private BigInteger getTokensPerRepair(RepairStateSnapshot repairStateSnapshot)
+    {
+        return getCachedTokensPerRepair(repairStateSnapshot).myTokensPerRepair;
+    }
+
+    /**
+     * Get the number of repair sessions that has to run after each other to repair the vnodes that are due,
+     * calculated once per repair state snapshot.
+     */
+    private long getSequentialRepairSessions(RepairStateSnapshot repairStateSnapshot)
+    {
+        return getCachedTokensPerRepair(repairStateSnapshot).mySequentialRepairSessions;
+    }
+
+    private TokensPerRepair getCachedTokensPerRepair(RepairStateSnapshot repairStateSnapshot)
+    {
+        TokensPerRepair cached = myTokensPerRepair;
+
+        if (cached == null || cached.myRepairStateSnapshot != repairStateSnapshot)
+        {
+            BigInteger tokensPerRepair = calculateTokensPerRepair(repairStateSnapshot.getVnodeRepairStates());
+            cached = new TokensPerRepair(repairStateSnapshot, tokensPerRepair,
+                    calculateSequentialRepairSessions(repairStateSnapshot, tokensPerRepair));
+            myTokensPerRepair = cached;
+        }
+
+        return cached;
+    }
+
+    private BigInteger calculateTokensPerRepair(VnodeRepairStates vnodeRepairStates)
     {
         BigInteger tokensPerRepair = LongTokenRange.FULL_RANGE;
 
@@ -233,6 +466,80 @@ public class TableRepairJob extends ScheduledJob
         return tokensPerRepair;
     }
 
+    /**
+     * Calculate the number of repair sessions that has to run after each other to repair the vnodes that are due
+     * before the deadline.
+     * <p>
+     * Vnodes that were repaired recently enough to not be due before the deadline are not counted.
+     * The vnodes of each group of replicas are packed into sessions of at most the configured number of ranges
+     * and tokens, and up to the configured session concurrency of those sessions run at the same time.
+     */
+    private long calculateSequentialRepairSessions(RepairStateSnapshot repairStateSnapshot, BigInteger tokensPerRepair)
+    {
+        long deadline = repairStateSnapshot.lastRepairedAt() + myRepairConfiguration.getRepairErrorTimeInMs();
+        long repairIntervalInMs = myRepairConfiguration.getRepairIntervalInMs();
+
+        Map<Set<Node>, List<VnodeRepairState>> vnodesToRepair = new HashMap<>();
+
+        for (VnodeRepairState vnodeRepairState : repairStateSnapshot.getVnodeRepairStates().getVnodeRepairStates())
+        {
+            if (vnodeRepairState.lastRepairedAt() + repairIntervalInMs < deadline)
+            {
+                vnodesToRepair.computeIfAbsent(vnodeRepairState.getReplicas(), r -> new ArrayList<>()).add(vnodeRepairState);
+            }
+        }
+
+        long concurrency = Math.max(myRepairConfiguration.getRepairSessionConcurrency(), 1);
+        long sequentialSessions = 0;
+
+        for (List<VnodeRepairState> vnodeRepairStates : vnodesToRepair.values())
+        {
+            long sessions = calculateRepairSessions(vnodeRepairStates, tokensPerRepair);
+            sequentialSessions += (sessions + concurrency - 1) / concurrency;
+        }
+
+        return sequentialSessions;
+    }
+
+    private long calculateRepairSessions(List<VnodeRepairState> vnodeRepairStates, BigInteger tokensPerRepair)
+    {
+        if (tokensPerRepair.signum() <= 0)
+        {
+            return vnodeRepairStates.size();
+        }
+
+        long ranges = 0;
+        BigInteger tokens = BigInteger.ZERO;
+
+        for (VnodeRepairState vnodeRepairState : vnodeRepairStates)
+        {
+            BigInteger rangeSize = vnodeRepairState.getTokenRange().rangeSize();
+            BigInteger[] subRanges = rangeSize.divideAndRemainder(tokensPerRepair);
+            ranges += Math.max(subRanges[0].longValue() + (BigInteger.ZERO.equals(subRanges[1]) ? 0 : 1), 1);
+            tokens = tokens.add(rangeSize);
+        }
+
+        long maxRanges = Math.max(myRepairConfiguration.getMaxRangesPerSession(), 1);
+        BigInteger[] tokenSessions = tokens.divideAndRemainder(tokensPerRepair);
+        long sessionsByTokens = tokenSessions[0].longValue() + (BigInteger.ZERO.equals(tokenSessions[1]) ? 0 : 1);
+
+        return Math.max((ranges + maxRanges - 1) / maxRanges, sessionsByTokens);
+    }
+
+    private static final class TokensPerRepair
+    {
+        private final RepairStateSnapshot myRepairStateSnapshot;
+        private final BigInteger myTokensPerRepair;
+        private final long mySequentialRepairSessions;
+
+        TokensPerRepair(RepairStateSnapshot repairStateSnapshot, BigInteger tokensPerRepair, long sequentialRepairSessions)
+        {
+            myRepairStateSnapshot = repairStateSnapshot;
+            myTokensPerRepair = tokensPerRepair;
+            mySequentialRepairSessions = sequentialRepairSessions;
+        }
+    }
+
     public static class Builder
     {
         Configuration configuration = new ConfigurationBuilder()
@@ -241,13 +548,17 @@ public class TableRepairJob extends ScheduledJob
                 .build();
         private TableReference tableReference;
         private JmxProxyFactory jmxProxyFactory;
+        private RepairNotificationDispatcher repairNotificationDispatcher;
         private RepairState repairState;
         private TableRepairMetrics tableRepairMetrics = null;
         private RepairConfiguration repairConfiguration = RepairConfiguration.DEFAULT;
         private RepairLockType repairLockType;
+        private RepairLockFactory repairLockFactory = new RepairLockFactoryImpl();
         private TableStorageStates tableStorageStates;
         private final List<TableRepairPolicy> repairPolicies = new ArrayList<>();
         private RepairHistory repairHistory;
+        private TableRepairCoalescer tableRepairCoalescer = new TableRepairCoalescer();
+        private ExecutorService sessionExecutor = MoreExecutors.newDirectExecutorService();
 
         public Builder withConfiguration(Configuration configuration)
         {
@@ -267,6 +578,12 @@ public class TableRepairJob extends ScheduledJob
             return this;
         }
 
+        public Builder withRepairNotificationDispatcher(RepairNotificationDispatcher repairNotificationDispatcher)
+        {
+            this.repairNotificationDispatcher = repairNotificationDispatcher;
+            return this;
+        }
+
         public Builder withRepairState(RepairState repairState)
         {
             this.repairState = repairState;
@@ -291,6 +608,12 @@ public class TableRepairJob extends ScheduledJob
             return this;
         }
 
+        public Builder withRepairLockFactory(RepairLockFactory repairLockFactory)
+        {
+            this.repairLockFactory = repairLockFactory;
+            return this;
+        }
+
         public Builder withTableStorageStates(TableStorageStates tableStorageStates)
         {
             this.tableStorageStates = tableStorageStates;
@@ -309,6 +632,24 @@ public class TableRepairJob extends ScheduledJob
             return this;
         }
 
+        public Builder withTableRepairCoalescer(TableRepairCoalescer tableRepairCoalescer)
+        {
+            this.tableRepairCoalescer = tableRepairCoalescer;
+            return this;
+        }
+
+        /**
+         * Set the executor that runs concurrent repair sessions, see {@link RepairGroup.Builder#withSessionExecutor(ExecutorService)}.
+         *
+         * @param sessionExecutor The session executor.
+         * @return The builder.
+         */
+        public Builder withSessionExecutor(ExecutorService sessionExecutor)
+        {
+            this.sessionExecutor = sessionExecutor;
+            return this;
+        }
+
         public TableRepairJob build()
         {
             Preconditions.checkNotNull(tableReference, "Table reference must be set");
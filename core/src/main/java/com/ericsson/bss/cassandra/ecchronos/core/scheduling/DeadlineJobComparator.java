@@ -0,0 +1,44 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.scheduling;
+
+import java.io.Serializable;
+import java.util.Comparator;
+
+/**
+ * A job comparator that orders jobs by the earliest deadline.
+ * <p>
+ * This comparator compares jobs based on their {@link ScheduledJob#getLatestStartTime() latest start time} if equal,
+ * their {@link ScheduledJob#getPriority() configured priority}.
+ * The job with the least slack before its deadline is run first regardless of how the priorities of the jobs
+ * are configured.
+ */
+public class DeadlineJobComparator implements Comparator<ScheduledJob>, Serializable
+{
+    private static final long serialVersionUID = -2263349925392226432L;
+
+    @Override
+    public int compare(ScheduledJob j1, ScheduledJob j2)
+    {
+        int result = Long.compare(j1.getLatestStartTime(), j2.getLatestStartTime());
+
+        if (result == 0)
+        {
+            result = Integer.compare(j2.getPriority().getValue(), j1.getPriority().getValue());
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.scheduling;
+
+/**
+ * The order in which the {@link ScheduleManagerImpl} runs jobs.
+ */
+public enum JobOrdering
+{
+    /**
+     * Run the job with the highest {@link ScheduledJob#getRealPriority() current priority} first.
+     *
+     * @see DefaultJobComparator
+     */
+    PRIORITY,
+
+    /**
+     * Run the job with the earliest {@link ScheduledJob#getLatestStartTime() latest start time} first.
+     *
+     * @see DeadlineJobComparator
+     */
+    DEADLINE;
+
+    ScheduledJobQueue createQueue()
+    {
+        if (this == DEADLINE)
+        {
+            return new ScheduledJobQueue(new DeadlineJobComparator(), ScheduledJob::getLatestStartTime);
+        }
+
+        return new ScheduledJobQueue(new DefaultJobComparator());
+    }
+}
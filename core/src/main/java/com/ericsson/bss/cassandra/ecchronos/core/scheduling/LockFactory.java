@@ -15,10 +15,14 @@
 package com.ericsson.bss.cassandra.ecchronos.core.scheduling;
 
 import java.io.Closeable;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
 
 import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 
 /**
  * Interface for distributed lock factories.
@@ -43,6 +47,61 @@ public interface LockFactory
      */
     DistributedLock tryLock(String dataCenter, String resource, int priority, Map<String, String> metadata) throws LockException;
 
+    /**
+     * Try to lock a distributed resource asynchronously using the provided priority.
+     * <p>
+     * The default implementation locks the resource synchronously using {@link #tryLock(String, String, int, Map)}.
+     *
+     * @param dataCenter
+     *            The data center the lock belongs to or null if it's a global lock.
+     * @param resource
+     *            The resource to lock.
+     * @param priority
+     *            The priority of the lock.
+     * @param metadata
+     *            The metadata of the lock.
+     * @return A future completed with the lock if able to lock the resource,
+     *          otherwise failed with a {@link LockException}.
+     */
+    default ListenableFuture<DistributedLock> tryLockAsync(String dataCenter, String resource, int priority, Map<String, String> metadata)
+    {
+        try
+        {
+            return Futures.immediateFuture(tryLock(dataCenter, resource, priority, metadata));
+        }
+        catch (LockException e)
+        {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    /**
+     * Try to lock multiple distributed resources in a data center asynchronously using the provided priority.
+     * <p>
+     * The default implementation locks each resource using {@link #tryLockAsync(String, String, int, Map)}.
+     *
+     * @param dataCenter
+     *            The data center the locks belong to or null if they are global locks.
+     * @param resources
+     *            The resources to lock.
+     * @param priority
+     *            The priority of the locks.
+     * @param metadata
+     *            The metadata of the locks.
+     * @return The future of the lock for each resource.
+     */
+    default Map<String, ListenableFuture<DistributedLock>> tryLocksAsync(String dataCenter, Collection<String> resources, int priority, Map<String, String> metadata)
+    {
+        Map<String, ListenableFuture<DistributedLock>> locks = new LinkedHashMap<>();
+
+        for (String resource : resources)
+        {
+            locks.put(resource, tryLockAsync(dataCenter, resource, priority, metadata));
+        }
+
+        return locks;
+    }
+
     /**
      * Get the metadata of a resource lock.
      *
@@ -81,6 +140,45 @@ public interface LockFactory
         return Optional.empty();
     }
 
+    /**
+     * Add a listener that is notified when a lock resource is released.
+     * <p>
+     * The listener is notified both when a lock held by the local node is released and, if supported by the
+     * implementation, when a lock held by another node is released.
+     * The default implementation never notifies the listener.
+     *
+     * @param listener The listener to add.
+     */
+    default void addLockReleaseListener(LockReleaseListener listener)
+    {
+        // Lock releases are not tracked by default
+    }
+
+    /**
+     * Remove a listener previously added by {@link #addLockReleaseListener(LockReleaseListener)}.
+     *
+     * @param listener The listener to remove.
+     */
+    default void removeLockReleaseListener(LockReleaseListener listener)
+    {
+        // Lock releases are not tracked by default
+    }
+
+    /**
+     * Listener for released lock resources.
+     */
+    @FunctionalInterface
+    interface LockReleaseListener
+    {
+        /**
+         * Called when a lock resource has been released and can be locked again.
+         *
+         * @param dataCenter The data center the lock belongs to or null if it's a global lock.
+         * @param resource The released resource.
+         */
+        void onLockReleased(String dataCenter, String resource);
+    }
+
     /**
      * A locked resource that gets released by the call of the {@link DistributedLock#close() close()} method.
      */
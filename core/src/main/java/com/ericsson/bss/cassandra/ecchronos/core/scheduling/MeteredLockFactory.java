@@ -0,0 +1,131 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.scheduling;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
+import com.ericsson.bss.cassandra.ecchronos.core.metrics.SchedulerMetricHolder;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * A lock factory that records the latency and failures of lock attempts before delegating to another lock factory.
+ */
+final class MeteredLockFactory implements LockFactory
+{
+    private final LockFactory myDelegate;
+    private final SchedulerMetricHolder mySchedulerMetricHolder;
+
+    MeteredLockFactory(LockFactory delegate, SchedulerMetricHolder schedulerMetricHolder)
+    {
+        myDelegate = delegate;
+        mySchedulerMetricHolder = schedulerMetricHolder;
+    }
+
+    @Override
+    public DistributedLock tryLock(String dataCenter, String resource, int priority, Map<String, String> metadata) throws LockException
+    {
+        long start = System.nanoTime();
+        DistributedLock lock = null;
+
+        try
+        {
+            lock = myDelegate.tryLock(dataCenter, resource, priority, metadata);
+            return lock;
+        }
+        finally
+        {
+            mySchedulerMetricHolder.lockAcquired(dataCenter, resource, System.nanoTime() - start, TimeUnit.NANOSECONDS, lock != null);
+        }
+    }
+
+    @Override
+    public ListenableFuture<DistributedLock> tryLockAsync(String dataCenter, String resource, int priority, Map<String, String> metadata)
+    {
+        long start = System.nanoTime();
+
+        return metered(dataCenter, resource, start, myDelegate.tryLockAsync(dataCenter, resource, priority, metadata));
+    }
+
+    @Override
+    public Map<String, ListenableFuture<DistributedLock>> tryLocksAsync(String dataCenter, Collection<String> resources, int priority, Map<String, String> metadata)
+    {
+        long start = System.nanoTime();
+
+        Map<String, ListenableFuture<DistributedLock>> locks = myDelegate.tryLocksAsync(dataCenter, resources, priority, metadata);
+
+        for (Map.Entry<String, ListenableFuture<DistributedLock>> entry : locks.entrySet())
+        {
+            metered(dataCenter, entry.getKey(), start, entry.getValue());
+        }
+
+        return locks;
+    }
+
+    @Override
+    public Map<String, String> getLockMetadata(String dataCenter, String resource)
+    {
+        return myDelegate.getLockMetadata(dataCenter, resource);
+    }
+
+    @Override
+    public boolean sufficientNodesForLocking(String dataCenter, String resource)
+    {
+        return myDelegate.sufficientNodesForLocking(dataCenter, resource);
+    }
+
+    @Override
+    public void addLockReleaseListener(LockReleaseListener listener)
+    {
+        myDelegate.addLockReleaseListener(listener);
+    }
+
+    @Override
+    public void removeLockReleaseListener(LockReleaseListener listener)
+    {
+        myDelegate.removeLockReleaseListener(listener);
+    }
+
+    private ListenableFuture<DistributedLock> metered(String dataCenter, String resource, long start, ListenableFuture<DistributedLock> future)
+    {
+        Futures.addCallback(future, new FutureCallback<DistributedLock>()
+        {
+            @Override
+            public void onSuccess(DistributedLock lock)
+            {
+                mySchedulerMetricHolder.lockAcquired(dataCenter, resource, System.nanoTime() - start, TimeUnit.NANOSECONDS, lock != null);
+            }
+
+            @Override
+            public void onFailure(Throwable t)
+            {
+                mySchedulerMetricHolder.lockAcquired(dataCenter, resource, System.nanoTime() - start, TimeUnit.NANOSECONDS, false);
+            }
+        });
+
+        return future;
+    }
+
+    @Override
+    public Optional<LockException> getCachedFailure(String dataCenter, String resource)
+    {
+        return myDelegate.getCachedFailure(dataCenter, resource);
+    }
+}
@@ -15,13 +15,21 @@
 package com.ericsson.bss.cassandra.ecchronos.core.scheduling;
 
 import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
+import com.codahale.metrics.MetricRegistry;
 import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
+import com.ericsson.bss.cassandra.ecchronos.core.metrics.SchedulerMetricHolder;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Sets;
 import org.slf4j.Logger;
@@ -29,25 +37,83 @@ import org.slf4j.LoggerFactory;
 
 /**
  * ScheduleManager handles the run scheduler and update scheduler.
+ * <p>
+ * Jobs are run by a configurable number of workers.
+ * A job is only run by one worker at a time and tasks that share lock resources are never run concurrently.
+ * <p>
+ * Instead of polling the queue with a fixed interval the workers are woken up when the next job becomes runnable.
+ * The queue keeps the jobs indexed by the time they become runnable and the wake up is moved earlier
+ * when a job is changed to become runnable before the scheduled wake up.
+ * The run interval is used as the initial delay and as the retry delay for runnable jobs that could not be run,
+ * e.g. due to locking.
+ * <p>
+ * Jobs are by default ordered by their current priority, see {@link JobOrdering} for alternatives.
+ * <p>
+ * A lock can be reused by up to a configured number of tasks when the next runnable job has a task that
+ * {@link ScheduledTask#canReuseLock(ScheduledTask) can reuse the lock}, as long as the lock has not been held for
+ * longer than the configured hold time.
+ * <p>
+ * Tasks of jobs with lower priority are {@link ScheduledTask#isPreempted() preempted} when a job with
+ * {@link ScheduledJob.Priority#HIGHEST highest} priority is waiting to run.
+ * <p>
+ * Metrics for the scheduler are registered in the provided {@link MetricRegistry}.
  */
 public class ScheduleManagerImpl implements ScheduleManager, Closeable
 {
     private static final Logger LOG = LoggerFactory.getLogger(ScheduleManagerImpl.class);
 
     static final long DEFAULT_RUN_DELAY_IN_MS = TimeUnit.SECONDS.toMillis(30);
+    static final long MAX_WAKE_UP_DELAY_IN_MS = TimeUnit.HOURS.toMillis(1);
+    static final int DEFAULT_WORKERS = 1;
+    static final int DEFAULT_MAX_TASKS_PER_LOCK = 1;
+    static final long DEFAULT_MAX_LOCK_HOLD_TIME_IN_MS = TimeUnit.MINUTES.toMillis(5);
+    static final ScheduledJob.Priority PREEMPTING_PRIORITY = ScheduledJob.Priority.HIGHEST;
 
-    private final ScheduledJobQueue myQueue = new ScheduledJobQueue(new DefaultJobComparator());
+    private final ScheduledJobQueue myQueue;
     private final Set<RunPolicy> myRunPolicies = Sets.newConcurrentHashSet();
-    private final ScheduledFuture<?> myRunFuture;
+
+    private final Set<ScheduledJob> myRunningJobs = ConcurrentHashMap.newKeySet();
+    private final Predicate<ScheduledJob> myNotRunning = job -> !myRunningJobs.contains(job);
+    private final Map<Object, Integer> myLockedResources = new HashMap<>();
+    private final Semaphore myWorkerPermits;
+
+    private final Object myWakeUpLock = new Object();
+    private ScheduledFuture<?> myWakeUpFuture; // Guarded by myWakeUpLock
+    private long myWakeUpTime = Long.MAX_VALUE; // Guarded by myWakeUpLock
 
     private final JobRunTask myRunTask = new JobRunTask();
     private final LockFactory myLockFactory;
-    private final ScheduledExecutorService myExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final LockFactory.LockReleaseListener myLockReleaseListener = this::lockReleased;
+    private final SchedulerMetricHolder mySchedulerMetricHolder;
+    private final ScheduledExecutorService myExecutor;
+    private final long myRunIntervalInMs;
+    private final long myFirstWakeUpTime;
+    private final int myMaxTasksPerLock;
+    private final long myMaxLockHoldTimeInNanos;
 
     private ScheduleManagerImpl(Builder builder)
     {
-        myLockFactory = builder.myLockFactory;
-        myRunFuture = myExecutor.scheduleWithFixedDelay(myRunTask, builder.myRunIntervalInMs, builder.myRunIntervalInMs, TimeUnit.MILLISECONDS);
+        myQueue = builder.myJobOrdering.createQueue();
+        mySchedulerMetricHolder = new SchedulerMetricHolder(builder.myMetricRegistry);
+        myLockFactory = new MeteredLockFactory(builder.myLockFactory, mySchedulerMetricHolder);
+        myRunIntervalInMs = builder.myRunIntervalInMs;
+        myWorkerPermits = new Semaphore(builder.myWorkers);
+        myMaxTasksPerLock = builder.myMaxTasksPerLock;
+        myMaxLockHoldTimeInNanos = TimeUnit.MILLISECONDS.toNanos(builder.myMaxLockHoldTimeInMs);
+        myExecutor = Executors.newScheduledThreadPool(builder.myWorkers);
+
+        for (ScheduledJob.Priority priority : ScheduledJob.Priority.values())
+        {
+            mySchedulerMetricHolder.jobs(priority.name(),
+                    () -> myQueue.getRunnableJobCount(priority, System.currentTimeMillis()),
+                    () -> myQueue.size(priority) - myQueue.getRunnableJobCount(priority, System.currentTimeMillis()));
+        }
+
+        myFirstWakeUpTime = System.currentTimeMillis() + myRunIntervalInMs;
+        wakeUpAt(myFirstWakeUpTime);
+        myQueue.setRunnableTimeListener(this::wakeUpAt);
+
+        myLockFactory.addLockReleaseListener(myLockReleaseListener);
     }
 
     public boolean addRunPolicy(RunPolicy runPolicy)
@@ -66,6 +132,7 @@ public class ScheduleManagerImpl implements ScheduleManager, Closeable
     public void schedule(ScheduledJob job)
     {
         myQueue.add(job);
+        wakeUpAt(job.getNextRunnableTime());
     }
 
     @Override
@@ -77,13 +144,19 @@ public class ScheduleManagerImpl implements ScheduleManager, Closeable
     @Override
     public void close()
     {
-        if (myRunFuture != null)
+        myLockFactory.removeLockReleaseListener(myLockReleaseListener);
+
+        synchronized (myWakeUpLock)
         {
-            myRunFuture.cancel(false);
+            if (myWakeUpFuture != null)
+            {
+                myWakeUpFuture.cancel(false);
+            }
         }
 
         myExecutor.shutdown();
         myRunPolicies.clear();
+        mySchedulerMetricHolder.close();
     }
 
     @VisibleForTesting
@@ -95,6 +168,102 @@ public class ScheduleManagerImpl implements ScheduleManager, Closeable
     @VisibleForTesting
     public int getQueueSize() { return myQueue.size(); }
 
+    @VisibleForTesting
+    long getNextWakeUpTime()
+    {
+        synchronized (myWakeUpLock)
+        {
+            return myWakeUpTime;
+        }
+    }
+
+    /**
+     * Make sure that the workers are woken up no later than the provided time.
+     * <p>
+     * An already scheduled wake up is only replaced if the new time is earlier.
+     *
+     * @param wakeUpTime The time to wake up the workers.
+     */
+    private void wakeUpAt(long wakeUpTime)
+    {
+        long time = Math.max(wakeUpTime, myFirstWakeUpTime);
+
+        synchronized (myWakeUpLock)
+        {
+            if (time >= myWakeUpTime || myExecutor.isShutdown())
+            {
+                return;
+            }
+
+            if (myWakeUpFuture != null)
+            {
+                myWakeUpFuture.cancel(false);
+            }
+
+            long delay = Math.max(time - System.currentTimeMillis(), 0);
+            LOG.trace("Waking up in {} ms", delay);
+
+            myWakeUpTime = time;
+            myWakeUpFuture = myExecutor.schedule(() -> wakeUp(time), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void wakeUp(long time)
+    {
+        synchronized (myWakeUpLock)
+        {
+            if (myWakeUpTime == time)
+            {
+                myWakeUpTime = Long.MAX_VALUE;
+                myWakeUpFuture = null;
+            }
+        }
+
+        int idleWorkers = myWorkerPermits.availablePermits();
+
+        for (int i = 0; i < idleWorkers; i++)
+        {
+            myExecutor.execute(myRunTask);
+        }
+    }
+
+    /**
+     * Let the jobs know that the lock resource has been released and wake up the workers,
+     * so that jobs waiting for the lock can run without waiting for the next scheduled wake up.
+     */
+    private void lockReleased(String dataCenter, String resource)
+    {
+        LOG.debug("Lock {} in {} released, waking up workers", resource, dataCenter);
+
+        for (ScheduledJob job : myQueue.getJobs())
+        {
+            job.onLockReleased(dataCenter, resource);
+        }
+
+        wakeUpAt(System.currentTimeMillis());
+    }
+
+    private void scheduleNextWakeUp(boolean hasRun)
+    {
+        long now = System.currentTimeMillis();
+
+        if (hasRun)
+        {
+            wakeUpAt(now);
+            return;
+        }
+
+        long nextRunnableTime = myQueue.getNextRunnableTime();
+
+        if (nextRunnableTime <= now)
+        {
+            nextRunnableTime = now + myRunIntervalInMs;
+        }
+
+        // The job priorities change every hour and the runnable time is only an estimate
+        wakeUpAt(Math.min(nextRunnableTime, now + MAX_WAKE_UP_DELAY_IN_MS));
+    }
+
     private Long validateJob(ScheduledJob job)
     {
         for (RunPolicy runPolicy : myRunPolicies)
@@ -103,6 +272,7 @@ public class ScheduleManagerImpl implements ScheduleManager, Closeable
             if (nextRun != -1)
             {
                 LOG.debug("Job {} rejected for {} ms by {}", job, nextRun, runPolicy);
+                mySchedulerMetricHolder.runPolicyRejection(runPolicy.getClass().getSimpleName());
                 return nextRun;
             }
         }
@@ -110,36 +280,106 @@ public class ScheduleManagerImpl implements ScheduleManager, Closeable
         return -1L;
     }
 
+    /**
+     * Check if the job should yield to a waiting job with {@link #PREEMPTING_PRIORITY preempting priority}.
+     */
+    private boolean isPreempted(ScheduledJob job)
+    {
+        return job.getPriority() != PREEMPTING_PRIORITY
+                && myQueue.hasRunnableJob(PREEMPTING_PRIORITY, System.currentTimeMillis(), myNotRunning);
+    }
+
+    private boolean tryLockResources(ScheduledTask task, Set<?> resources)
+    {
+        synchronized (myLockedResources)
+        {
+            for (Object resource : resources)
+            {
+                if (myLockedResources.getOrDefault(resource, 0) >= task.getLockResourceSlots(resource))
+                {
+                    return false;
+                }
+            }
+
+            for (Object resource : resources)
+            {
+                myLockedResources.merge(resource, 1, Integer::sum);
+            }
+            return true;
+        }
+    }
+
+    private void releaseResources(Set<?> resources)
+    {
+        synchronized (myLockedResources)
+        {
+            for (Object resource : resources)
+            {
+                myLockedResources.computeIfPresent(resource, (r, count) -> count > 1 ? count - 1 : null);
+            }
+        }
+    }
 
     /**
      * Internal run task that is scheduled by the {@link ScheduleManagerImpl}.
      * <p>
      * Retrieves a job from the queue and tries to run it provided that it's possible to get the required locks.
+     * Jobs that are already being run by another worker are skipped.
      */
     private class JobRunTask implements Runnable
     {
         @Override
         public void run()
         {
+            if (!myWorkerPermits.tryAcquire())
+            {
+                LOG.trace("All workers are busy");
+                return;
+            }
+
+            boolean hasRun = false;
+            long start = System.nanoTime();
+
             try
             {
-                tryRunNext();
+                hasRun = tryRunNext();
             }
             catch (Exception e)
             {
                 LOG.error("Unexpected exception while running job", e);
             }
+            finally
+            {
+                mySchedulerMetricHolder.run(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                myWorkerPermits.release();
+                scheduleNextWakeUp(hasRun);
+            }
         }
 
-        private void tryRunNext()
+        private boolean tryRunNext()
         {
             for (ScheduledJob next : myQueue)
             {
-                if (validate(next) && tryRunTasks(next))
+                if (!myRunningJobs.add(next))
                 {
-                    break;
+                    LOG.trace("Job {} is already running", next);
+                    continue;
+                }
+
+                try
+                {
+                    if (validate(next) && tryRunTasks(next))
+                    {
+                        return true;
+                    }
+                }
+                finally
+                {
+                    myRunningJobs.remove(next);
                 }
             }
+
+            return false;
         }
 
         private boolean validate(ScheduledJob job)
@@ -159,6 +399,7 @@ public class ScheduleManagerImpl implements ScheduleManager, Closeable
         private boolean tryRunTasks(ScheduledJob next)
         {
             boolean hasRun = false;
+            long runnableTime = next.getNextRunnableTime();
 
             for (ScheduledTask task : next)
             {
@@ -167,19 +408,60 @@ public class ScheduleManagerImpl implements ScheduleManager, Closeable
                     LOG.info("Job {} was stopped, will continue later", next);
                     break;
                 }
-                hasRun |= tryRunTask(next, task);
+
+                if (tryRunTask(next, task, hasRun ? -1L : runnableTime))
+                {
+                    hasRun = true;
+
+                    if (task.getCooldownInMs() > 0 || !task.isFinished())
+                    {
+                        LOG.debug("Job {} yielded, will continue later", next);
+                        break;
+                    }
+                }
             }
 
             return hasRun;
         }
 
-        private boolean tryRunTask(ScheduledJob job, ScheduledTask task)
+        /**
+         * Try to run a task of the job.
+         *
+         * @param job The job of the task.
+         * @param task The task to run.
+         * @param runnableTime The time the job became runnable or -1 if the job has already been started.
+         * @return True if the task was run.
+         */
+        private boolean tryRunTask(ScheduledJob job, ScheduledTask task, long runnableTime)
+        {
+            Set<?> resources = task.getLockResources();
+
+            if (!tryLockResources(task, resources))
+            {
+                LOG.debug("Resources for {} are used by another running task", task);
+                return false;
+            }
+
+            try
+            {
+                return tryRunLockedTask(job, task, runnableTime);
+            }
+            finally
+            {
+                releaseResources(resources);
+            }
+        }
+
+        private boolean tryRunLockedTask(ScheduledJob job, ScheduledTask task, long runnableTime)
         {
             LOG.debug("Trying to acquire lock for {}", task);
             try (LockFactory.DistributedLock lock = task.getLock(myLockFactory))
             {
-                boolean successful = runTask(task);
-                job.postExecute(successful, task);
+                LOG.trace("Acquired lock {} for {}", lock, task);
+                long lockedAt = System.nanoTime();
+
+                runLockedTask(job, task, runnableTime);
+                reuseLock(task, lockedAt);
                 return true;
             }
             catch (LockException e)
@@ -192,6 +474,125 @@ public class ScheduleManagerImpl implements ScheduleManager, Closeable
             }
         }
 
+        private void runLockedTask(ScheduledJob job, ScheduledTask task, long runnableTime)
+        {
+            if (runnableTime != -1L)
+            {
+                mySchedulerMetricHolder.jobStarted(System.currentTimeMillis() - runnableTime, TimeUnit.MILLISECONDS);
+            }
+
+            task.setPreemptionSignal(() -> isPreempted(job));
+            boolean successful = runTask(task);
+
+            if (task.isFinished())
+            {
+                job.postExecute(successful, task);
+            }
+
+            deferJob(job, task.getCooldownInMs());
+        }
+
+        /**
+         * Run tasks of other jobs under the lock acquired by the task instead of releasing and acquiring it again.
+         * <p>
+         * Only the next runnable job in the queue is considered so that the jobs are still run in order.
+         * The lock is released when the next job cannot reuse it, when the maximum number of tasks or the maximum
+         * hold time is reached or when a job with {@link #PREEMPTING_PRIORITY preempting priority} is waiting,
+         * so that other jobs and nodes get a chance to acquire it.
+         *
+         * @param lockedTask The task that acquired the lock.
+         * @param lockedAt The time the lock was acquired in nanoseconds.
+         */
+        private void reuseLock(ScheduledTask lockedTask, long lockedAt)
+        {
+            ScheduledTask previous = lockedTask;
+            int tasks = 1;
+
+            while (tasks < myMaxTasksPerLock && canReuseLock(previous, lockedAt))
+            {
+                previous = runNextTaskWithLock(lockedTask);
+                if (previous == null)
+                {
+                    break;
+                }
+                tasks++;
+            }
+
+            if (tasks > 1)
+            {
+                LOG.debug("Lock of {} was used by {} tasks", lockedTask, tasks);
+            }
+        }
+
+        private boolean canReuseLock(ScheduledTask previous, long lockedAt)
+        {
+            return previous.isFinished()
+                    && previous.getCooldownInMs() == 0
+                    && System.nanoTime() - lockedAt < myMaxLockHoldTimeInNanos
+                    && !myQueue.hasRunnableJob(PREEMPTING_PRIORITY, System.currentTimeMillis(), myNotRunning);
+        }
+
+        /**
+         * Run the first task of the next runnable job if it can reuse the lock of the locked task.
+         *
+         * @param lockedTask The task that acquired the lock.
+         * @return The task that was run or null if the next job could not reuse the lock.
+         */
+        private ScheduledTask runNextTaskWithLock(ScheduledTask lockedTask)
+        {
+            for (ScheduledJob next : myQueue)
+            {
+                if (!myRunningJobs.add(next))
+                {
+                    continue;
+                }
+
+                try
+                {
+                    if (!validate(next))
+                    {
+                        LOG.trace("Job {} was rejected by a run policy, releasing the lock of {}", next, lockedTask);
+                        return null;
+                    }
+
+                    Iterator<ScheduledTask> iterator = next.iterator();
+                    if (!iterator.hasNext())
+                    {
+                        continue;
+                    }
+
+                    ScheduledTask task = iterator.next();
+                    if (!task.canReuseLock(lockedTask))
+                    {
+                        LOG.trace("Task {} cannot reuse the lock of {}", task, lockedTask);
+                        return null;
+                    }
+
+                    LOG.debug("Running {} with the lock of {}", task, lockedTask);
+                    runLockedTask(next, task, next.getNextRunnableTime());
+                    return task;
+                }
+                finally
+                {
+                    myRunningJobs.remove(next);
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * Make sure that the job is not run again until the cooldown of the task has passed.
+         * The lock of the task is released during the cooldown so that other jobs can run.
+         */
+        private void deferJob(ScheduledJob job, long cooldownInMs)
+        {
+            if (cooldownInMs > 0 && System.currentTimeMillis() + cooldownInMs > job.getNextRunnableTime())
+            {
+                job.setRunnableIn(cooldownInMs);
+            }
+        }
+
         private boolean runTask(ScheduledTask task)
         {
             try
@@ -217,6 +618,11 @@ public class ScheduleManagerImpl implements ScheduleManager, Closeable
     {
         private LockFactory myLockFactory;
         private long myRunIntervalInMs = DEFAULT_RUN_DELAY_IN_MS;
+        private int myWorkers = DEFAULT_WORKERS;
+        private MetricRegistry myMetricRegistry = new MetricRegistry();
+        private JobOrdering myJobOrdering = JobOrdering.PRIORITY;
+        private int myMaxTasksPerLock = DEFAULT_MAX_TASKS_PER_LOCK;
+        private long myMaxLockHoldTimeInMs = DEFAULT_MAX_LOCK_HOLD_TIME_IN_MS;
 
         public Builder withLockFactory(LockFactory lockFactory)
         {
@@ -230,9 +636,78 @@ public class ScheduleManagerImpl implements ScheduleManager, Closeable
             return this;
         }
 
+        public Builder withWorkers(int workers)
+        {
+            myWorkers = workers;
+            return this;
+        }
+
+        public Builder withMetricRegistry(MetricRegistry metricRegistry)
+        {
+            myMetricRegistry = metricRegistry;
+            return this;
+        }
+
+        public Builder withJobOrdering(JobOrdering jobOrdering)
+        {
+            myJobOrdering = jobOrdering;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of tasks that can run under one lock before it is released.
+         * <p>
+         * With a value of one each task acquires and releases its own lock.
+         *
+         * @param maxTasksPerLock The maximum number of tasks per lock.
+         * @return The builder
+         */
+        public Builder withMaxTasksPerLock(int maxTasksPerLock)
+        {
+            myMaxTasksPerLock = maxTasksPerLock;
+            return this;
+        }
+
+        /**
+         * Set the time after which a lock is not reused by more tasks.
+         *
+         * @param maxLockHoldTime The maximum hold time.
+         * @param timeUnit The time unit of the hold time.
+         * @return The builder
+         */
+        public Builder withMaxLockHoldTime(long maxLockHoldTime, TimeUnit timeUnit)
+        {
+            myMaxLockHoldTimeInMs = timeUnit.toMillis(maxLockHoldTime);
+            return this;
+        }
 
         public ScheduleManagerImpl build()
         {
+            if (myWorkers < 1)
+            {
+                throw new IllegalArgumentException("The number of workers must be at least one");
+            }
+
+            if (myMetricRegistry == null)
+            {
+                throw new IllegalArgumentException("Metric registry cannot be null");
+            }
+
+            if (myJobOrdering == null)
+            {
+                throw new IllegalArgumentException("Job ordering cannot be null");
+            }
+
+            if (myMaxTasksPerLock < 1)
+            {
+                throw new IllegalArgumentException("The maximum number of tasks per lock must be at least one");
+            }
+
+            if (myMaxLockHoldTimeInMs < 0)
+            {
+                throw new IllegalArgumentException("The maximum lock hold time cannot be negative");
+            }
+
             return new ScheduleManagerImpl(this);
         }
     }
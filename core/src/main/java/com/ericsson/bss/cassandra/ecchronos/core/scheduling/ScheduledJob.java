@@ -31,6 +31,8 @@ public abstract class ScheduledJob implements Iterable<ScheduledTask>
     private volatile long myNextRunTime = -1;
     private final UUID myId;
 
+    private volatile ChangeListener myChangeListener;
+
     public ScheduledJob(Configuration configuration)
     {
         this(configuration, UUID.randomUUID());
@@ -63,8 +65,24 @@ public abstract class ScheduledJob implements Iterable<ScheduledTask>
         }
         else
         {
-            myNextRunTime = System.currentTimeMillis() + DEFAULT_WAIT_BETWEEN_UNSUCCESSFUL_RUNS_IN_MILLISECONDS;
+            myNextRunTime = System.currentTimeMillis() + getRetryDelayInMs(task);
         }
+
+        changed();
+    }
+
+    /**
+     * Get the time to wait before the job is run again after a task has failed.
+     * <p>
+     * By default this is {@link #DEFAULT_WAIT_BETWEEN_UNSUCCESSFUL_RUNS_IN_MILLISECONDS}.
+     *
+     * @param task
+     *            The task that failed.
+     * @return The time to wait in milliseconds.
+     */
+    protected long getRetryDelayInMs(ScheduledTask task)
+    {
+        return DEFAULT_WAIT_BETWEEN_UNSUCCESSFUL_RUNS_IN_MILLISECONDS;
     }
 
     /**
@@ -76,6 +94,28 @@ public abstract class ScheduledJob implements Iterable<ScheduledTask>
     public final void setRunnableIn(long delay)
     {
         myNextRunTime = System.currentTimeMillis() + delay;
+        changed();
+    }
+
+    /**
+     * Let the queue of the job know that the time based values of the job have changed so that it's re-indexed.
+     * <p>
+     * Jobs that override {@link #getLastSuccessfulRun()}, {@link #getLatestStartTime()} or
+     * {@link #getNextRunnableTime()} should call this when the values change outside of {@link #postExecute(boolean, ScheduledTask)}.
+     */
+    protected final void changed()
+    {
+        ChangeListener changeListener = myChangeListener;
+
+        if (changeListener != null)
+        {
+            changeListener.jobChanged(this);
+        }
+    }
+
+    final void setChangeListener(ChangeListener changeListener)
+    {
+        myChangeListener = changeListener;
     }
 
     /**
@@ -88,6 +128,57 @@ public abstract class ScheduledJob implements Iterable<ScheduledTask>
         return myNextRunTime <= System.currentTimeMillis() && getRealPriority() > -1;
     }
 
+    /**
+     * Get the time when this job is expected to become runnable.
+     * <p>
+     * This is the latest of the time set by {@link #setRunnableIn(long)} or an unsuccessful run and the time when the
+     * run interval has passed since the {@link #getLastSuccessfulRun() last successful run}.
+     *
+     * @return The time in milliseconds since epoch.
+     */
+    public long getNextRunnableTime()
+    {
+        return Math.max(myNextRunTime, getDueTime());
+    }
+
+    /**
+     * Get the time from which the {@link #getRealPriority() current priority} of the job starts to increase.
+     *
+     * @return The last successful run plus the run interval in milliseconds since epoch.
+     */
+    final long getDueTime()
+    {
+        return getLastSuccessfulRun() + myRunIntervalInMs;
+    }
+
+    /**
+     * Get the latest time this job should be started in order to finish before its deadline.
+     * <p>
+     * This is used when ordering jobs by {@link JobOrdering#DEADLINE deadline}.
+     * By default this is the time when the run interval has passed since the
+     * {@link #getLastSuccessfulRun() last successful run}.
+     *
+     * @return The latest start time in milliseconds since epoch.
+     */
+    public long getLatestStartTime()
+    {
+        return getDueTime();
+    }
+
+    /**
+     * Called when a lock resource has been released, either by the local node or by another node.
+     * <p>
+     * Jobs that are waiting for the lock resource can use this to retry without delay.
+     * By default this does nothing.
+     *
+     * @param dataCenter The data center the lock belongs to or null if it's a global lock.
+     * @param resource The released resource.
+     */
+    public void onLockReleased(String dataCenter, String resource)
+    {
+        // NOOP
+    }
+
     /**
      * Get current State of the job.
      *
@@ -136,7 +227,7 @@ public abstract class ScheduledJob implements Iterable<ScheduledTask>
     {
         long now = System.currentTimeMillis();
 
-        long diff = now - (getLastSuccessfulRun() + myRunIntervalInMs);
+        long diff = now - getDueTime();
 
         if (diff < 0)
         {
@@ -156,6 +247,15 @@ public abstract class ScheduledJob implements Iterable<ScheduledTask>
         return myId;
     }
 
+    /**
+     * Listener for changes of the time based values of a job.
+     */
+    @FunctionalInterface
+    interface ChangeListener
+    {
+        void jobChanged(ScheduledJob job);
+    }
+
     /**
      * The different priorities a job can have.
      * <p>
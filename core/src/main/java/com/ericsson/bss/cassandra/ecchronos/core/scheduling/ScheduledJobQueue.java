@@ -15,48 +15,114 @@
 package com.ericsson.bss.cassandra.ecchronos.core.scheduling;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.EnumMap;
 import java.util.Iterator;
-import java.util.PriorityQueue;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
 
 import com.google.common.collect.AbstractIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.ericsson.bss.cassandra.ecchronos.core.utils.ManyToOneIterator;
 import com.google.common.annotations.VisibleForTesting;
 
 /**
  * Dynamic priority queue for scheduled jobs.
  * <p>
- * This queue is divided in several smaller queues, one for each {@link ScheduledJob.Priority priority type} and are then retrieved using a
- * {@link ManyToOneIterator}.
+ * The jobs are indexed by the time they are {@link ScheduledJob#getNextRunnableTime() expected to become runnable}
+ * so that the earliest time can be retrieved without checking all jobs.
+ * A listener can be registered to be notified when a job is re-indexed with a new runnable time.
+ * <p>
+ * When the runnable time of a job has passed it's moved to one of several smaller queues,
+ * one for each {@link ScheduledJob.Priority priority type}.
+ * The jobs in each queue are sorted by a time based sort key, by default the time their
+ * {@link ScheduledJob#getRealPriority() current priority} starts to increase, which gives the same order as the
+ * current priority of the jobs but doesn't change over time.
+ * The queues are then merged using the provided comparator when iterating,
+ * so that only the jobs that are expected to be runnable are visited.
+ * <p>
+ * Jobs are re-indexed when they notify the queue that their sort key or runnable time has changed.
+ * A job whose sort key has changed without notifying the queue is re-indexed when its runnable time has passed.
+ * The iterators are weakly consistent and can be used while the queue is modified,
+ * jobs that are added or re-indexed while the queue is iterated are not returned by the iterator.
  */
 public class ScheduledJobQueue implements Iterable<ScheduledJob>
 {
     private static final Logger LOG = LoggerFactory.getLogger(ScheduledJobQueue.class);
 
+    private static final ScheduledJob.Priority[] PRIORITIES = ScheduledJob.Priority.values();
+
     private final Comparator<ScheduledJob> myComparator;
+    private final ToLongFunction<ScheduledJob> mySortKey;
 
-    private final EnumMap<ScheduledJob.Priority, PriorityQueue<ScheduledJob>> myJobQueues = new EnumMap<>(ScheduledJob.Priority.class);
+    private final EnumMap<ScheduledJob.Priority, NavigableSet<QueueEntry>> myRunnableJobs = new EnumMap<>(ScheduledJob.Priority.class);
+    private final int[] myJobCounts = new int[PRIORITIES.length]; // Guarded by this
+    private final int[] myRunnableJobCounts = new int[PRIORITIES.length]; // Guarded by this
+
+    private final Map<ScheduledJob, QueueEntry> myEntries = new ConcurrentHashMap<>();
+    private final NavigableSet<QueueEntry> myRunnableTimes = new TreeSet<>(QueueEntry::compareRunnableTime);
+    private final ScheduledJob.ChangeListener myChangeListener = this::jobChanged;
+    private QueueEntry myLastRunnableEntry; // Guarded by this
+    private long mySequence = 0L; // Guarded by this
+
+    private volatile LongConsumer myRunnableTimeListener = time -> { };
 
     /**
      * Construct a new job queue that prioritizes the jobs based on the provided comparator.
+     * <p>
+     * The comparator must order jobs with the same {@link ScheduledJob#getPriority() configured priority} by the time
+     * their current priority starts to increase.
      *
      * @param comparator
      *            The comparator used to determine the job with the highest priority.
      */
     public ScheduledJobQueue(Comparator<ScheduledJob> comparator)
+    {
+        this(comparator, ScheduledJob::getDueTime);
+    }
+
+    /**
+     * Construct a new job queue that prioritizes the jobs based on the provided comparator.
+     * <p>
+     * The comparator must order jobs with the same {@link ScheduledJob#getPriority() configured priority} by the
+     * provided sort key, lowest first.
+     *
+     * @param comparator
+     *            The comparator used to determine the job with the highest priority.
+     * @param sortKey
+     *            The time based sort key of the jobs.
+     */
+    public ScheduledJobQueue(Comparator<ScheduledJob> comparator, ToLongFunction<ScheduledJob> sortKey)
     {
         this.myComparator = comparator;
+        this.mySortKey = sortKey;
 
-        for (ScheduledJob.Priority priority : ScheduledJob.Priority.values())
+        for (ScheduledJob.Priority priority : PRIORITIES)
         {
-            myJobQueues.put(priority, new PriorityQueue<>(1, comparator));
+            myRunnableJobs.put(priority, new ConcurrentSkipListSet<>());
         }
     }
 
+    /**
+     * Set the listener that is notified with the new runnable time when the runnable time of a job in the queue changes.
+     * <p>
+     * The listener is called while holding the lock of the queue and must not use the queue.
+     *
+     * @param runnableTimeListener The listener.
+     */
+    void setRunnableTimeListener(LongConsumer runnableTimeListener)
+    {
+        myRunnableTimeListener = runnableTimeListener;
+    }
+
     /**
      * Add a job to the queue.
      *
@@ -91,63 +157,322 @@ public class ScheduledJobQueue implements Iterable<ScheduledJob>
     public synchronized void remove(ScheduledJob job)
     {
         LOG.debug("Removing job: {}", job);
-        myJobQueues.get(job.getPriority()).remove(job);
+        QueueEntry entry = myEntries.remove(job);
+
+        if (entry != null)
+        {
+            removeEntry(entry);
+            job.setChangeListener(null);
+        }
     }
 
-    private void addJobInternal(ScheduledJob job)
+    private QueueEntry addJobInternal(ScheduledJob job)
     {
         LOG.debug("Adding job: {}, Priority: {}", job, job.getPriority());
-        myJobQueues.get(job.getPriority()).add(job);
+        QueueEntry entry = new QueueEntry(job, mySortKey.applyAsLong(job), job.getNextRunnableTime(), mySequence++);
+        QueueEntry oldEntry = myEntries.put(job, entry);
+
+        if (oldEntry != null)
+        {
+            removeEntry(oldEntry);
+        }
+
+        myRunnableTimes.add(entry);
+        myJobCounts[job.getPriority().ordinal()]++;
+
+        if (myLastRunnableEntry != null && entry.compareRunnableTime(myLastRunnableEntry) < 0)
+        {
+            setRunnable(entry);
+        }
+
+        job.setChangeListener(myChangeListener);
+        return entry;
     }
 
-    @VisibleForTesting
-    int size()
+    private void removeEntry(QueueEntry entry)
+    {
+        myRunnableTimes.remove(entry);
+        myJobCounts[entry.myJob.getPriority().ordinal()]--;
+
+        if (entry.myRunnable)
+        {
+            myRunnableJobs.get(entry.myJob.getPriority()).remove(entry);
+            myRunnableJobCounts[entry.myJob.getPriority().ordinal()]--;
+        }
+    }
+
+    private void setRunnable(QueueEntry entry)
+    {
+        if (!entry.myRunnable)
+        {
+            entry.myRunnable = true;
+            myRunnableJobs.get(entry.myJob.getPriority()).add(entry);
+            myRunnableJobCounts[entry.myJob.getPriority().ordinal()]++;
+        }
+    }
+
+    private synchronized void jobChanged(ScheduledJob job)
     {
-        int size = 0;
+        QueueEntry entry = myEntries.get(job);
 
-        for (PriorityQueue<ScheduledJob> queue : myJobQueues.values())
+        if (entry != null)
         {
-            size += queue.size();
+            QueueEntry newEntry = reindexIfChanged(entry);
+
+            if (newEntry.myNextRunnableTime != entry.myNextRunnableTime)
+            {
+                myRunnableTimeListener.accept(newEntry.myNextRunnableTime);
+            }
         }
+    }
 
-        return size;
+    private QueueEntry reindexIfChanged(QueueEntry entry)
+    {
+        ScheduledJob job = entry.myJob;
+
+        if (entry.mySortKey != mySortKey.applyAsLong(job) || entry.myNextRunnableTime != job.getNextRunnableTime())
+        {
+            LOG.trace("Re-indexing job: {}", job);
+            return addJobInternal(job);
+        }
+
+        return entry;
+    }
+
+    /**
+     * Move the jobs whose runnable time has passed to the queues of runnable jobs.
+     * <p>
+     * The jobs are walked in runnable time order starting after the last job that was moved,
+     * so only the jobs that have become runnable since the last call are visited.
+     *
+     * @param now The current time in milliseconds since epoch.
+     */
+    private void updateRunnableJobs(long now)
+    {
+        QueueEntry next = nextRunnableTimeEntry();
+
+        while (next != null && next.myNextRunnableTime <= now)
+        {
+            if (!next.myRunnable)
+            {
+                QueueEntry entry = reindexIfChanged(next);
+
+                if (entry.myNextRunnableTime <= now)
+                {
+                    setRunnable(entry);
+                }
+            }
+
+            myLastRunnableEntry = next;
+            next = nextRunnableTimeEntry();
+        }
+    }
+
+    private QueueEntry nextRunnableTimeEntry()
+    {
+        if (myLastRunnableEntry == null)
+        {
+            return myRunnableTimes.isEmpty() ? null : myRunnableTimes.first();
+        }
+
+        return myRunnableTimes.higher(myLastRunnableEntry);
+    }
+
+    /**
+     * Get the earliest time any of the jobs in the queue is expected to become runnable.
+     *
+     * @return The earliest time in milliseconds since epoch or {@link Long#MAX_VALUE} if the queue is empty.
+     */
+    public synchronized long getNextRunnableTime()
+    {
+        if (myRunnableTimes.isEmpty())
+        {
+            return Long.MAX_VALUE;
+        }
+
+        return myRunnableTimes.first().myNextRunnableTime;
+    }
+
+    /**
+     * Get the number of jobs with the provided priority.
+     *
+     * @param priority The configured priority of the jobs.
+     * @return The number of jobs.
+     */
+    public synchronized int size(ScheduledJob.Priority priority)
+    {
+        return myJobCounts[priority.ordinal()];
+    }
+
+    /**
+     * Get the number of jobs with the provided priority that are expected to be runnable at the provided time.
+     * <p>
+     * This does not check the state of the jobs so it can be used without side effects.
+     * The provided time should not be earlier than the time used in previous calls to the queue.
+     *
+     * @param priority The configured priority of the jobs.
+     * @param time The time in milliseconds since epoch.
+     * @return The number of runnable jobs.
+     */
+    public synchronized int getRunnableJobCount(ScheduledJob.Priority priority, long time)
+    {
+        updateRunnableJobs(time);
+
+        return myRunnableJobCounts[priority.ordinal()];
+    }
+
+    /**
+     * Check if any job with the provided priority that is accepted by the filter is expected to be runnable at the
+     * provided time.
+     * <p>
+     * This does not check the state of the jobs so it can be used without side effects.
+     * The provided time should not be earlier than the time used in previous calls to the queue.
+     *
+     * @param priority The configured priority of the jobs.
+     * @param time The time in milliseconds since epoch.
+     * @param filter The filter for the jobs.
+     * @return True if there is a runnable job.
+     */
+    public synchronized boolean hasRunnableJob(ScheduledJob.Priority priority, long time, Predicate<ScheduledJob> filter)
+    {
+        updateRunnableJobs(time);
+
+        NavigableSet<QueueEntry> runnableJobs = myRunnableJobs.get(priority);
+        QueueEntry entry = runnableJobs.isEmpty() ? null : runnableJobs.first();
+
+        while (entry != null)
+        {
+            if (filter.test(entry.myJob))
+            {
+                return true;
+            }
+
+            entry = runnableJobs.higher(entry);
+        }
+
+        return false;
+    }
+
+    /**
+     * Get all jobs in the queue, runnable or not.
+     *
+     * @return An unmodifiable and weakly consistent view of the jobs in the queue.
+     */
+    public Collection<ScheduledJob> getJobs()
+    {
+        return Collections.unmodifiableSet(myEntries.keySet());
+    }
+
+    @VisibleForTesting
+    int size()
+    {
+        return myEntries.size();
     }
 
     @Override
     public synchronized Iterator<ScheduledJob> iterator()
     {
-        Iterator<ScheduledJob> baseIterator = new ManyToOneIterator<>(myJobQueues.values(), myComparator);
+        updateRunnableJobs(System.currentTimeMillis());
 
-        return new RunnableJobIterator(baseIterator);
+        return new RunnableJobIterator();
     }
 
+    private static final class QueueEntry implements Comparable<QueueEntry>
+    {
+        private final ScheduledJob myJob;
+        private final long mySortKey;
+        private final long myNextRunnableTime;
+        private final long mySequence;
+        private boolean myRunnable = false; // Guarded by the queue
+
+        QueueEntry(ScheduledJob job, long sortKey, long nextRunnableTime, long sequence)
+        {
+            myJob = job;
+            mySortKey = sortKey;
+            myNextRunnableTime = nextRunnableTime;
+            mySequence = sequence;
+        }
+
+        int compareRunnableTime(QueueEntry other)
+        {
+            int result = Long.compare(myNextRunnableTime, other.myNextRunnableTime);
+
+            if (result == 0)
+            {
+                result = Long.compare(mySequence, other.mySequence);
+            }
+
+            return result;
+        }
+
+        @Override
+        public int compareTo(QueueEntry other)
+        {
+            int result = Long.compare(mySortKey, other.mySortKey);
+
+            if (result == 0)
+            {
+                result = Long.compare(mySequence, other.mySequence);
+            }
+
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return this == o;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Long.hashCode(mySequence);
+        }
+    }
+
+    /**
+     * Merges the sorted per priority queues of runnable jobs by comparing the first job of each queue.
+     * <p>
+     * Entries that are added after the iterator was created are skipped,
+     * so a job that is re-indexed during the iteration is only returned once.
+     * Must be created while holding the lock of the queue.
+     */
     private class RunnableJobIterator extends AbstractIterator<ScheduledJob>
     {
-        private final Iterator<ScheduledJob> myBaseIterator;
+        private final QueueEntry[] myHeads = new QueueEntry[PRIORITIES.length];
+        private final long myEndSequence = mySequence;
 
-        public RunnableJobIterator(Iterator<ScheduledJob> baseIterator)
+        RunnableJobIterator()
         {
-            myBaseIterator = baseIterator;
+            for (int i = 0; i < PRIORITIES.length; i++)
+            {
+                NavigableSet<QueueEntry> runnableJobs = myRunnableJobs.get(PRIORITIES[i]);
+                myHeads[i] = runnableJobs.isEmpty() ? null : runnableJobs.first();
+            }
         }
 
         @Override
         protected ScheduledJob computeNext()
         {
-            while(myBaseIterator.hasNext())
+            QueueEntry entry;
+
+            while ((entry = nextEntry()) != null)
             {
-                ScheduledJob job = myBaseIterator.next();
+                ScheduledJob job = entry.myJob;
+                ScheduledJob.State state = job.getState();
 
-                if (job.getState() == ScheduledJob.State.FAILED)
+                if (state == ScheduledJob.State.FAILED)
                 {
                     LOG.error("{} failed, descheduling", job);
                     ScheduledJobQueue.this.remove(job);
                 }
-                else if (job.getState() == ScheduledJob.State.FINISHED)
+                else if (state == ScheduledJob.State.FINISHED)
                 {
                     LOG.debug("{} completed, descheduling", job);
                     ScheduledJobQueue.this.remove(job);
                 }
-                else if (job.getState() != ScheduledJob.State.PARKED)
+                else if (state != ScheduledJob.State.PARKED)
                 {
                     LOG.debug("Retrieving job: {}, Priority: {}", job, job.getPriority());
                     return job;
@@ -156,5 +481,35 @@ public class ScheduledJobQueue implements Iterable<ScheduledJob>
 
             return endOfData();
         }
+
+        private QueueEntry nextEntry()
+        {
+            int next = -1;
+
+            for (int i = 0; i < myHeads.length; i++)
+            {
+                if (myHeads[i] != null && (next == -1 || myComparator.compare(myHeads[i].myJob, myHeads[next].myJob) < 0))
+                {
+                    next = i;
+                }
+            }
+
+            if (next == -1)
+            {
+                return null;
+            }
+
+            QueueEntry entry = myHeads[next];
+            NavigableSet<QueueEntry> runnableJobs = myRunnableJobs.get(PRIORITIES[next]);
+            QueueEntry head = runnableJobs.higher(entry);
+
+            while (head != null && head.mySequence >= myEndSequence)
+            {
+                head = runnableJobs.higher(head);
+            }
+
+            myHeads[next] = head;
+            return entry;
+        }
     }
 }
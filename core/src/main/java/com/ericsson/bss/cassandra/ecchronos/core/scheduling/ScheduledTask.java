@@ -17,7 +17,10 @@ package com.ericsson.bss.cassandra.ecchronos.core.scheduling;
 import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
 import com.ericsson.bss.cassandra.ecchronos.core.exceptions.ScheduledJobException;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
 
 /**
  * A scheduled task run by the scheduled job.
@@ -28,6 +31,8 @@ public abstract class ScheduledTask
 
     protected final int myPriority;
 
+    private volatile BooleanSupplier myPreemptionSignal = () -> false;
+
     protected ScheduledTask()
     {
         this(1);
@@ -52,6 +57,58 @@ public abstract class ScheduledTask
      */
     public abstract boolean execute() throws ScheduledJobException;
 
+    /**
+     * Check if the task has finished.
+     * <p>
+     * A task can stop before all of its work is done, e.g. to let the system recover during a
+     * {@link #getCooldownInMs() cooldown}. The task is then run again later and the job is not notified until the
+     * task has finished.
+     *
+     * @return True if the task has finished.
+     */
+    public boolean isFinished()
+    {
+        return true;
+    }
+
+    /**
+     * Get the time to wait after the task was executed before the job is allowed to run again.
+     * <p>
+     * The lock is released during the cooldown so that other jobs can run.
+     *
+     * @return The cooldown in milliseconds or 0 if the job can run again directly.
+     */
+    public long getCooldownInMs()
+    {
+        return 0L;
+    }
+
+    /**
+     * Set the signal used to check if the task should yield to a job with higher priority.
+     * <p>
+     * This is set by the scheduler before the task is run.
+     *
+     * @param preemptionSignal The signal that returns true when the task should yield.
+     */
+    public final void setPreemptionSignal(BooleanSupplier preemptionSignal)
+    {
+        myPreemptionSignal = preemptionSignal;
+    }
+
+    /**
+     * Check if a job with higher priority is waiting to run.
+     * <p>
+     * Tasks that run in several steps should check this between the steps and stop without being
+     * {@link #isFinished() finished} when it returns true.
+     * The lock is then released so that the other job can run and the task continues when it's run again.
+     *
+     * @return True if the task should yield.
+     */
+    protected final boolean isPreempted()
+    {
+        return myPreemptionSignal.getAsBoolean();
+    }
+
     /**
      * Cleanup of the task that should be run after the task has been executed.
      */
@@ -72,4 +129,43 @@ public abstract class ScheduledTask
     {
         return lockFactory.tryLock(null, DEFAULT_SCHEDULE_RESOURCE, myPriority, new HashMap<>());
     }
+
+    /**
+     * Get the resources this task needs exclusive access to while running.
+     * <p>
+     * Tasks with overlapping resources are never run concurrently by the local scheduler.
+     * This check is performed before trying to acquire the distributed lock.
+     *
+     * @return The resources used by this task.
+     */
+    public Set<?> getLockResources()
+    {
+        return Collections.singleton(DEFAULT_SCHEDULE_RESOURCE);
+    }
+
+    /**
+     * Check if this task can run under a lock that was acquired by another task.
+     * <p>
+     * The scheduler can keep a lock after a task has finished and run a task of another job under it,
+     * instead of releasing the lock and acquiring it again.
+     * By default this is allowed when both tasks use the same {@link #getLockResources() lock resources}.
+     *
+     * @param lockedTask The task that acquired the lock.
+     * @return True if this task can run under the lock of the other task.
+     */
+    public boolean canReuseLock(ScheduledTask lockedTask)
+    {
+        return getLockResources().equals(lockedTask.getLockResources());
+    }
+
+    /**
+     * Get the number of tasks that can use a resource returned by {@link #getLockResources()} concurrently.
+     *
+     * @param resource The resource.
+     * @return The number of tasks that can use the resource concurrently.
+     */
+    public int getLockResourceSlots(Object resource)
+    {
+        return 1;
+    }
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable index of values per token range.
+ * <p>
+ * The values are looked up using the start and end of the token range so that no {@link LongTokenRange}
+ * needs to be created for the lookup, e.g. when the token ranges are parsed from a message.
+ * The index uses open addressing with linear probing in a table of at least twice the number of ranges.
+ *
+ * @param <T> The type of the values.
+ */
+public final class TokenRangeIndex<T>
+{
+    private final long[] myStarts;
+    private final long[] myEnds;
+    private final Object[] myValues;
+    private final int myMask;
+    private final int mySize;
+
+    public TokenRangeIndex(Map<LongTokenRange, T> values)
+    {
+        int capacity = 2;
+        while (capacity < values.size() * 2)
+        {
+            capacity <<= 1;
+        }
+
+        myStarts = new long[capacity];
+        myEnds = new long[capacity];
+        myValues = new Object[capacity];
+        myMask = capacity - 1;
+        mySize = values.size();
+
+        for (Map.Entry<LongTokenRange, T> entry : values.entrySet())
+        {
+            LongTokenRange range = entry.getKey();
+            int slot = slot(range.start, range.end);
+
+            myStarts[slot] = range.start;
+            myEnds[slot] = range.end;
+            myValues[slot] = entry.getValue();
+        }
+    }
+
+    /**
+     * Get the value of the token range.
+     *
+     * @param start The start of the token range.
+     * @param end The end of the token range.
+     * @return The value or null if the token range is not in the index.
+     */
+    @SuppressWarnings("unchecked")
+    public T get(long start, long end)
+    {
+        return (T) myValues[slot(start, end)];
+    }
+
+    /**
+     * Get the values of all token ranges.
+     *
+     * @return The values.
+     */
+    @SuppressWarnings("unchecked")
+    public Collection<T> values()
+    {
+        List<T> values = new ArrayList<>(mySize);
+
+        for (Object value : myValues)
+        {
+            if (value != null)
+            {
+                values.add((T) value);
+            }
+        }
+
+        return values;
+    }
+
+    public int size()
+    {
+        return mySize;
+    }
+
+    /**
+     * Get the slot of the token range, which is either the slot holding the range or the first free slot.
+     */
+    private int slot(long start, long end)
+    {
+        int slot = hash(start, end) & myMask;
+
+        while (myValues[slot] != null && (myStarts[slot] != start || myEnds[slot] != end))
+        {
+            slot = (slot + 1) & myMask;
+        }
+
+        return slot;
+    }
+
+    private static int hash(long start, long end)
+    {
+        long hash = start * 0x9E3779B97F4A7C15L + end;
+        hash ^= hash >>> 32;
+        hash ^= hash >>> 16;
+        return (int) hash;
+    }
+}
@@ -0,0 +1,612 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core;
+
+import java.io.Closeable;
+import java.time.Clock;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockContendedException;
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.LockFactory;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * A lock factory that keeps the locks in memory, used to simulate and measure the locking without Cassandra.
+ * <p>
+ * The locks and the announced priorities are kept in a {@link LockTable} that is shared by the lock factories of all
+ * simulated nodes. The same protocol as in the {@link CASLockFactory} is used, the priority is announced before
+ * locking and a resource is only locked if no other node has announced a higher priority for it.
+ * Locks and priorities expire after the TTL of the lock table unless they are {@link #renewLocks() renewed},
+ * like the rows in the lock and lock_priority tables.
+ * <p>
+ * Latency and failures can be injected for each operation on the lock table.
+ * The failures are decided by a random generator that can be seeded to make simulations repeatable.
+ */
+public final class InMemoryLockFactory implements LockFactory, Closeable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(InMemoryLockFactory.class);
+
+    private static final long DEFAULT_FAILURE_CACHE_EXPIRY_IN_SECONDS = 30;
+
+    private final LockTable myLockTable;
+    private final UUID myHostId;
+    private final long myLatencyInNanos;
+    private final double myFailureRate;
+    private final Random myRandom;
+    private final LockCache myLockCache;
+    private final Set<InMemoryLock> myLocks = ConcurrentHashMap.newKeySet();
+    private final List<LockReleaseListener> myLockReleaseListeners = new CopyOnWriteArrayList<>();
+
+    private InMemoryLockFactory(Builder builder)
+    {
+        myLockTable = builder.myLockTable;
+        myHostId = builder.myHostId;
+        myLatencyInNanos = builder.myLatencyInNanos;
+        myFailureRate = builder.myFailureRate;
+        myRandom = builder.myRandom;
+        myLockCache = new LockCache(this::doTryLock, builder.myFailureCacheExpiryInMs, TimeUnit.MILLISECONDS);
+
+        myLockTable.register(this);
+    }
+
+    @Override
+    public DistributedLock tryLock(String dataCenter, String resource, int priority, Map<String, String> metadata) throws LockException
+    {
+        return myLockCache.getLock(dataCenter, resource, priority, metadata);
+    }
+
+    @Override
+    public Map<String, String> getLockMetadata(String dataCenter, String resource)
+    {
+        try
+        {
+            return execute(() -> myLockTable.getMetadata(new LockCache.LockKey(dataCenter, resource)));
+        }
+        catch (LockException e)
+        {
+            LOG.warn("Unable to retrieve metadata for resource {}", resource, e);
+        }
+
+        return null;
+    }
+
+    @Override
+    public boolean sufficientNodesForLocking(String dataCenter, String resource)
+    {
+        return true;
+    }
+
+    @Override
+    public Optional<LockException> getCachedFailure(String dataCenter, String resource)
+    {
+        return myLockCache.getCachedFailure(dataCenter, resource);
+    }
+
+    @Override
+    public void addLockReleaseListener(LockReleaseListener listener)
+    {
+        myLockReleaseListeners.add(listener);
+    }
+
+    @Override
+    public void removeLockReleaseListener(LockReleaseListener listener)
+    {
+        myLockReleaseListeners.remove(listener);
+    }
+
+    /**
+     * Renew the leases of all locks held by this lock factory.
+     * <p>
+     * Locks that could not be renewed are kept until they are closed, but they might have been acquired by another
+     * node if their lease has expired.
+     *
+     * @return The number of locks that could not be renewed.
+     */
+    public int renewLocks()
+    {
+        int failed = 0;
+
+        for (InMemoryLock lock : myLocks)
+        {
+            if (!lock.renew())
+            {
+                failed++;
+            }
+        }
+
+        return failed;
+    }
+
+    /**
+     * Get the number of locks held by this lock factory.
+     *
+     * @return The number of held locks.
+     */
+    public int getLockCount()
+    {
+        return myLocks.size();
+    }
+
+    @Override
+    public void close()
+    {
+        myLockTable.unregister(this);
+    }
+
+    private DistributedLock doTryLock(String dataCenter, String resource, int priority, Map<String, String> metadata) throws LockException
+    {
+        LockCache.LockKey key = new LockCache.LockKey(dataCenter, resource);
+        Map<UUID, Integer> priorities = execute(() -> myLockTable.getPriorities(key));
+
+        int locallyHighestPriority = priorities.getOrDefault(myHostId, priority);
+        int globalHighPriority = priorities.entrySet().stream()
+                .filter(e -> !e.getKey().equals(myHostId))
+                .map(Map.Entry::getValue)
+                .max(Integer::compare)
+                .orElse(priority);
+
+        if (locallyHighestPriority <= priority)
+        {
+            execute(() -> myLockTable.announce(key, myHostId, priority));
+        }
+
+        if (priority < globalHighPriority)
+        {
+            throw contended(key, -1L);
+        }
+
+        if (!execute(() -> myLockTable.insert(key, myHostId, metadata)))
+        {
+            throw contended(key, myLockTable.getLeaseTimeLeftInMs(key));
+        }
+
+        InMemoryLock lock = new InMemoryLock(key, priority, metadata, locallyHighestPriority);
+        myLocks.add(lock);
+        return lock;
+    }
+
+    private LockContendedException contended(LockCache.LockKey key, long leaseTimeLeftInMs)
+    {
+        return new LockContendedException(String.format("Unable to lock resource %s in datacenter %s",
+                key.getResourceName(), key.getDataCenter()), leaseTimeLeftInMs);
+    }
+
+    /**
+     * Called by the lock table when a lock has been released by any node.
+     * <p>
+     * Like the {@link CASLockFactory} a release by another node is only handed off to this node if it has a cached
+     * failure for the lock and no other node has announced a higher priority.
+     */
+    private void released(LockCache.LockKey key, UUID releasedBy)
+    {
+        if (!releasedBy.equals(myHostId))
+        {
+            if (!myLockCache.getCachedFailure(key.getDataCenter(), key.getResourceName()).isPresent())
+            {
+                return;
+            }
+
+            Map<UUID, Integer> priorities = myLockTable.getPriorities(key);
+            Integer localPriority = priorities.get(myHostId);
+            if (localPriority == null || priorities.values().stream().anyMatch(p -> p > localPriority))
+            {
+                return;
+            }
+        }
+
+        myLockCache.invalidate(key.getDataCenter(), key.getResourceName());
+
+        for (LockReleaseListener listener : myLockReleaseListeners)
+        {
+            listener.onLockReleased(key.getDataCenter(), key.getResourceName());
+        }
+    }
+
+    private <T> T execute(Supplier<T> operation) throws LockException
+    {
+        if (myLatencyInNanos > 0)
+        {
+            Uninterruptibles.sleepUninterruptibly(myLatencyInNanos, TimeUnit.NANOSECONDS);
+        }
+
+        if (myFailureRate > 0 && myRandom.nextDouble() < myFailureRate)
+        {
+            throw new LockException(new TimeoutException("Injected failure"));
+        }
+
+        return operation.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("InMemoryLockFactory(%s)", myHostId);
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    public static class Builder
+    {
+        private LockTable myLockTable;
+        private UUID myHostId = UUID.randomUUID();
+        private long myLatencyInNanos = 0;
+        private double myFailureRate = 0.0;
+        private Random myRandom = new Random();
+        private long myFailureCacheExpiryInMs = TimeUnit.SECONDS.toMillis(DEFAULT_FAILURE_CACHE_EXPIRY_IN_SECONDS);
+
+        /**
+         * Set the lock table shared by the simulated nodes.
+         *
+         * @param lockTable The lock table.
+         * @return The builder
+         */
+        public Builder withLockTable(LockTable lockTable)
+        {
+            myLockTable = lockTable;
+            return this;
+        }
+
+        public Builder withHostId(UUID hostId)
+        {
+            myHostId = hostId;
+            return this;
+        }
+
+        /**
+         * Set the latency that is added to each operation on the lock table.
+         *
+         * @param latency The latency.
+         * @param timeUnit The time unit of the latency.
+         * @return The builder
+         */
+        public Builder withLatency(long latency, TimeUnit timeUnit)
+        {
+            myLatencyInNanos = timeUnit.toNanos(latency);
+            return this;
+        }
+
+        /**
+         * Set the probability that an operation on the lock table fails.
+         *
+         * @param failureRate The failure rate between 0 and 1.
+         * @return The builder
+         */
+        public Builder withFailureRate(double failureRate)
+        {
+            myFailureRate = failureRate;
+            return this;
+        }
+
+        /**
+         * Set the random generator used to decide which operations fail.
+         *
+         * @param random The random generator.
+         * @return The builder
+         */
+        public Builder withRandom(Random random)
+        {
+            myRandom = random;
+            return this;
+        }
+
+        /**
+         * Set the time that a locking failure is cached before the resource is tried again.
+         *
+         * @param expiry The expiry time.
+         * @param timeUnit The time unit of the expiry time.
+         * @return The builder
+         */
+        public Builder withFailureCacheExpiry(long expiry, TimeUnit timeUnit)
+        {
+            myFailureCacheExpiryInMs = timeUnit.toMillis(expiry);
+            return this;
+        }
+
+        public InMemoryLockFactory build()
+        {
+            if (myLockTable == null)
+            {
+                throw new IllegalArgumentException("Lock table cannot be null");
+            }
+
+            if (myHostId == null)
+            {
+                throw new IllegalArgumentException("Host id cannot be null");
+            }
+
+            if (myFailureRate < 0.0 || myFailureRate > 1.0)
+            {
+                throw new IllegalArgumentException("Failure rate must be between 0 and 1");
+            }
+
+            if (myRandom == null)
+            {
+                throw new IllegalArgumentException("Random cannot be null");
+            }
+
+            return new InMemoryLockFactory(this);
+        }
+    }
+
+    /**
+     * The locks and announced priorities shared by the simulated nodes.
+     * <p>
+     * All entries expire after the TTL unless they are updated, using the provided clock.
+     * A clock that is controlled by the simulation can be used to make the expiry deterministic.
+     */
+    public static final class LockTable
+    {
+        private static final long DEFAULT_TTL_IN_SECONDS = 600;
+
+        private final Clock myClock;
+        private final long myTtlInMs;
+
+        private final Map<LockCache.LockKey, Lease> myLocks = new HashMap<>(); // Guarded by this
+        private final Map<LockCache.LockKey, Map<UUID, Lease>> myPriorities = new HashMap<>(); // Guarded by this
+        private final List<InMemoryLockFactory> myLockFactories = new CopyOnWriteArrayList<>();
+
+        public LockTable()
+        {
+            this(Clock.systemUTC(), DEFAULT_TTL_IN_SECONDS, TimeUnit.SECONDS);
+        }
+
+        public LockTable(Clock clock, long ttl, TimeUnit timeUnit)
+        {
+            myClock = clock;
+            myTtlInMs = timeUnit.toMillis(ttl);
+        }
+
+        /**
+         * Get the node holding the lock of a resource.
+         *
+         * @param dataCenter The data center of the resource.
+         * @param resource The resource.
+         * @return The host id of the node holding the lock or null if the resource is not locked.
+         */
+        public synchronized UUID getHolder(String dataCenter, String resource)
+        {
+            Lease lease = getLease(new LockCache.LockKey(dataCenter, resource));
+            return lease != null ? lease.myHostId : null;
+        }
+
+        void register(InMemoryLockFactory lockFactory)
+        {
+            myLockFactories.add(lockFactory);
+        }
+
+        void unregister(InMemoryLockFactory lockFactory)
+        {
+            myLockFactories.remove(lockFactory);
+        }
+
+        synchronized Map<UUID, Integer> getPriorities(LockCache.LockKey key)
+        {
+            Map<UUID, Lease> priorities = myPriorities.get(key);
+            if (priorities == null)
+            {
+                return Collections.emptyMap();
+            }
+
+            long now = myClock.millis();
+            Map<UUID, Integer> result = new HashMap<>();
+            Iterator<Lease> iterator = priorities.values().iterator();
+
+            while (iterator.hasNext())
+            {
+                Lease lease = iterator.next();
+                if (lease.hasExpired(now))
+                {
+                    iterator.remove();
+                }
+                else
+                {
+                    result.put(lease.myHostId, lease.myPriority);
+                }
+            }
+
+            return result;
+        }
+
+        synchronized Boolean announce(LockCache.LockKey key, UUID hostId, int priority)
+        {
+            myPriorities.computeIfAbsent(key, k -> new HashMap<>()).put(hostId, newLease(hostId, priority, null));
+            return true;
+        }
+
+        synchronized Boolean removePriority(LockCache.LockKey key, UUID hostId)
+        {
+            Map<UUID, Lease> priorities = myPriorities.get(key);
+            return priorities != null && priorities.remove(hostId) != null;
+        }
+
+        synchronized Boolean insert(LockCache.LockKey key, UUID hostId, Map<String, String> metadata)
+        {
+            if (getLease(key) != null)
+            {
+                return false;
+            }
+
+            myLocks.put(key, newLease(hostId, 0, metadata));
+            return true;
+        }
+
+        synchronized Boolean update(LockCache.LockKey key, UUID hostId, Map<String, String> metadata)
+        {
+            Lease lease = getLease(key);
+            if (lease == null || !lease.myHostId.equals(hostId))
+            {
+                return false;
+            }
+
+            myLocks.put(key, newLease(hostId, 0, metadata));
+            return true;
+        }
+
+        Boolean delete(LockCache.LockKey key, UUID hostId)
+        {
+            synchronized (this)
+            {
+                Lease lease = getLease(key);
+                if (lease == null || !lease.myHostId.equals(hostId))
+                {
+                    return false;
+                }
+
+                myLocks.remove(key);
+            }
+
+            for (InMemoryLockFactory lockFactory : myLockFactories)
+            {
+                lockFactory.released(key, hostId);
+            }
+
+            return true;
+        }
+
+        synchronized Map<String, String> getMetadata(LockCache.LockKey key)
+        {
+            Lease lease = getLease(key);
+            return lease != null ? lease.myMetadata : null;
+        }
+
+        synchronized long getLeaseTimeLeftInMs(LockCache.LockKey key)
+        {
+            Lease lease = getLease(key);
+            return lease != null ? lease.myExpiresAt - myClock.millis() : 0L;
+        }
+
+        private Lease getLease(LockCache.LockKey key)
+        {
+            Lease lease = myLocks.get(key);
+            if (lease != null && lease.hasExpired(myClock.millis()))
+            {
+                myLocks.remove(key);
+                return null;
+            }
+
+            return lease;
+        }
+
+        private Lease newLease(UUID hostId, int priority, Map<String, String> metadata)
+        {
+            return new Lease(hostId, priority, metadata, myClock.millis() + myTtlInMs);
+        }
+    }
+
+    private static final class Lease
+    {
+        private final UUID myHostId;
+        private final int myPriority;
+        private final Map<String, String> myMetadata;
+        private final long myExpiresAt;
+
+        Lease(UUID hostId, int priority, Map<String, String> metadata, long expiresAt)
+        {
+            myHostId = hostId;
+            myPriority = priority;
+            myMetadata = metadata;
+            myExpiresAt = expiresAt;
+        }
+
+        boolean hasExpired(long now)
+        {
+            return now >= myExpiresAt;
+        }
+    }
+
+    private final class InMemoryLock implements DistributedLock
+    {
+        private final LockCache.LockKey myKey;
+        private final int myPriority;
+        private final Map<String, String> myMetadata;
+        private final int myLocallyHighestPriority;
+
+        InMemoryLock(LockCache.LockKey key, int priority, Map<String, String> metadata, int locallyHighestPriority)
+        {
+            myKey = key;
+            myPriority = priority;
+            myMetadata = metadata;
+            myLocallyHighestPriority = locallyHighestPriority;
+        }
+
+        boolean renew()
+        {
+            try
+            {
+                if (execute(() -> myLockTable.update(myKey, myHostId, myMetadata)))
+                {
+                    return true;
+                }
+
+                LOG.warn("Unable to re-lock resource '{}', the lease has expired", myKey.getResourceName());
+            }
+            catch (LockException e)
+            {
+                LOG.warn("Unable to re-lock resource '{}'", myKey.getResourceName(), e);
+            }
+
+            return false;
+        }
+
+        @Override
+        public void close()
+        {
+            if (!myLocks.remove(this))
+            {
+                return;
+            }
+
+            try
+            {
+                execute(() -> myLockTable.delete(myKey, myHostId));
+
+                if (myLocallyHighestPriority <= myPriority)
+                {
+                    execute(() -> myLockTable.removePriority(myKey, myHostId));
+                }
+            }
+            catch (LockException e)
+            {
+                LOG.warn("Unable to release {}, it will expire after the TTL", this, e);
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("lock %s in %s", myKey.getResourceName(), myKey.getDataCenter());
+        }
+    }
+}
@@ -16,6 +16,7 @@ package com.ericsson.bss.cassandra.ecchronos.core;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.awaitility.Awaitility.await;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
@@ -29,12 +30,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import com.codahale.metrics.MetricRegistry;
 import com.datastax.driver.core.Row;
 import com.ericsson.bss.cassandra.ecchronos.connection.NativeConnectionProvider;
 import org.apache.cassandra.db.Keyspace;
@@ -52,8 +56,11 @@ import com.datastax.driver.core.Session;
 import com.datastax.driver.core.SimpleStatement;
 import com.datastax.driver.core.Statement;
 import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.InsufficientNodesException;
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockContendedException;
 import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
 import com.ericsson.bss.cassandra.ecchronos.core.scheduling.LockFactory.DistributedLock;
+import com.google.common.util.concurrent.ListenableFuture;
 
 import net.jcip.annotations.NotThreadSafe;
 import org.junit.runner.RunWith;
@@ -79,6 +86,7 @@ public class TestCASLockFactory extends AbstractCassandraTest
     private static PreparedStatement myGetPrioritiesStatement;
 
     private static HostStates hostStates;
+    private static MetricRegistry myMetricRegistry;
 
     @Parameterized.Parameter
     public String myKeyspaceName;
@@ -92,11 +100,15 @@ public class TestCASLockFactory extends AbstractCassandraTest
 
         hostStates = mock(HostStates.class);
         when(hostStates.isUp(any(Host.class))).thenReturn(true);
+        when(hostStates.isUpNonBlocking(any(Host.class))).thenReturn(true);
+        myMetricRegistry = new MetricRegistry();
         myLockFactory = new CASLockFactory.Builder()
                 .withNativeConnectionProvider(getNativeConnectionProvider())
                 .withHostStates(hostStates)
                 .withStatementDecorator(s -> s)
                 .withKeyspaceName(myKeyspaceName)
+                .withReleaseCheckInterval(1, TimeUnit.HOURS)
+                .withMetricRegistry(myMetricRegistry)
                 .build();
 
         myLockStatement = mySession.prepare(String.format("INSERT INTO %s.%s (resource, node, metadata) VALUES (?, ?, ?) IF NOT EXISTS", myKeyspaceName, TABLE_LOCK))
@@ -111,7 +123,9 @@ public class TestCASLockFactory extends AbstractCassandraTest
     public void testCleanup()
     {
         execute(new SimpleStatement(String.format("DELETE FROM %s.%s WHERE resource='%s'", myKeyspaceName, TABLE_LOCK_PRIORITY, "lock")));
+        execute(new SimpleStatement(String.format("DELETE FROM %s.%s WHERE resource='%s'", myKeyspaceName, TABLE_LOCK_PRIORITY, "lock2")));
         execute(myRemoveLockStatement.bind("lock"));
+        execute(myRemoveLockStatement.bind("lock2"));
         myLockFactory.close();
     }
 
@@ -151,7 +165,7 @@ public class TestCASLockFactory extends AbstractCassandraTest
     {
         execute(myLockStatement.bind("lock", UUID.randomUUID(), new HashMap<>()));
 
-        long expectedLockReadCount = getReadCount(TABLE_LOCK) + 1; // We do a read due to CAS
+        long expectedLockReadCount = getReadCount(TABLE_LOCK) + 2; // We do a read due to CAS and read the lease of the other node
         long expectedLockWriteCount = getWriteCount(TABLE_LOCK); // No writes as the lock is already held
         long expectedLockPriorityReadCount = getReadCount(TABLE_LOCK_PRIORITY) + 1; // We read the priorities
         long expectedLockPriorityWriteCount = getWriteCount(TABLE_LOCK_PRIORITY) + 1; // We update our local priority once
@@ -179,6 +193,34 @@ public class TestCASLockFactory extends AbstractCassandraTest
         assertThat(myLockFactory.getCachedFailure(DATA_CENTER, "lock")).isNotEmpty();
     }
 
+    @Test
+    public void testLockMetrics() throws LockException
+    {
+        try (DistributedLock lock = myLockFactory.tryLock(DATA_CENTER, "lock", 1, new HashMap<>()))
+        {
+        }
+
+        assertThat(myMetricRegistry.getTimers().get("LockPriorityReadTime").getCount()).isEqualTo(1);
+        assertThat(myMetricRegistry.getTimers().get("LockCompeteTime").getCount()).isEqualTo(1);
+        assertThat(myMetricRegistry.getTimers().get("LockInsertTime").getCount()).isEqualTo(1);
+        assertThat(myMetricRegistry.getTimers().get("LockHoldTime").getCount()).isEqualTo(1);
+        assertThat(myMetricRegistry.getMeters().get("LockCacheMisses").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testContendedLockMetrics()
+    {
+        execute(myLockStatement.bind("lock", UUID.randomUUID(), new HashMap<>()));
+
+        assertThatExceptionOfType(LockException.class).isThrownBy(() -> myLockFactory.tryLock(DATA_CENTER, "lock", 1, new HashMap<>()));
+        assertThatExceptionOfType(LockException.class).isThrownBy(() -> myLockFactory.tryLock(DATA_CENTER, "lock", 1, new HashMap<>()));
+
+        assertThat(myMetricRegistry.getCounters().get("lock-" + DATA_CENTER + "-LockContention").getCount()).isEqualTo(1);
+        assertThat(myMetricRegistry.getMeters().get("LockCacheMisses").getCount()).isEqualTo(1);
+        assertThat(myMetricRegistry.getMeters().get("LockCacheHits").getCount()).isEqualTo(1);
+        assertThat(myMetricRegistry.getTimers().get("LockHoldTime").getCount()).isEqualTo(0);
+    }
+
     @Test
     public void testGetAlreadyTakenLock()
     {
@@ -189,6 +231,26 @@ public class TestCASLockFactory extends AbstractCassandraTest
         assertThat(myLockFactory.getCachedFailure(DATA_CENTER, "lock")).isNotEmpty();
     }
 
+    @Test
+    public void testGetAlreadyTakenLockHasLeaseTimeLeft()
+    {
+        execute(myLockStatement.bind("lock", UUID.randomUUID(), new HashMap<>()));
+
+        assertThatExceptionOfType(LockContendedException.class)
+                .isThrownBy(() -> myLockFactory.tryLock(DATA_CENTER, "lock", 1, new HashMap<>()))
+                .satisfies(e -> assertThat(e.getLeaseTimeLeftInMs()).isBetween(1L, TimeUnit.SECONDS.toMillis(600)));
+    }
+
+    @Test
+    public void testGetLockWithLowerPriorityHasUnknownLeaseTimeLeft()
+    {
+        execute(myCompeteStatement.bind("lock", UUID.randomUUID(), 2));
+
+        assertThatExceptionOfType(LockContendedException.class)
+                .isThrownBy(() -> myLockFactory.tryLock(DATA_CENTER, "lock", 1, new HashMap<>()))
+                .satisfies(e -> assertThat(e.getLeaseTimeLeftInMs()).isEqualTo(-1L));
+    }
+
     @Test
     public void testGetLockWithLocallyHigherPriority() throws LockException
     {
@@ -217,6 +279,130 @@ public class TestCASLockFactory extends AbstractCassandraTest
         assertThat(myLockFactory.getCachedFailure(DATA_CENTER, "lock")).isEmpty();
     }
 
+    @Test
+    public void testGetLocksAsync() throws Exception
+    {
+        Map<String, ListenableFuture<DistributedLock>> locks = myLockFactory.tryLocksAsync(DATA_CENTER, Arrays.asList("lock", "lock2"), 1, new HashMap<>());
+
+        assertThat(locks).containsOnlyKeys("lock", "lock2");
+
+        try (DistributedLock lock = locks.get("lock").get(); DistributedLock lock2 = locks.get("lock2").get())
+        {
+            assertThat(lock).isNotNull();
+            assertThat(lock2).isNotNull();
+        }
+
+        assertPriorityListEmpty("lock");
+        assertPriorityListEmpty("lock2");
+        assertThat(myLockFactory.getCachedFailure(DATA_CENTER, "lock")).isEmpty();
+        assertThat(myLockFactory.getCachedFailure(DATA_CENTER, "lock2")).isEmpty();
+    }
+
+    @Test
+    public void testGetLocksAsyncWithLowerPriorityForOneResource() throws Exception
+    {
+        execute(myCompeteStatement.bind("lock2", UUID.randomUUID(), 2));
+
+        Map<String, ListenableFuture<DistributedLock>> locks = myLockFactory.tryLocksAsync(DATA_CENTER, Arrays.asList("lock", "lock2"), 1, new HashMap<>());
+
+        try (DistributedLock lock = locks.get("lock").get())
+        {
+            assertThat(lock).isNotNull();
+        }
+
+        assertThatExceptionOfType(ExecutionException.class).isThrownBy(() -> locks.get("lock2").get())
+                .withCauseInstanceOf(LockException.class);
+
+        assertPriorityListEmpty("lock");
+        assertPrioritiesInList("lock2", 1, 2);
+        assertThat(myLockFactory.getCachedFailure(DATA_CENTER, "lock")).isEmpty();
+        assertThat(myLockFactory.getCachedFailure(DATA_CENTER, "lock2")).isNotEmpty();
+    }
+
+    @Test
+    public void testReleasedLockNotifiesListeners() throws LockException
+    {
+        List<String> releasedResources = new CopyOnWriteArrayList<>();
+        myLockFactory.addLockReleaseListener((dataCenter, resource) -> releasedResources.add(resource));
+
+        try (DistributedLock lock = myLockFactory.tryLock(DATA_CENTER, "lock", 1, new HashMap<>()))
+        {
+            assertThat(releasedResources).isEmpty();
+        }
+
+        assertThat(releasedResources).containsExactly("lock");
+    }
+
+    @Test
+    public void testLocallyReleasedLockIsHandedOffWithoutPolling() throws LockException
+    {
+        List<String> releasedResources = new CopyOnWriteArrayList<>();
+        myLockFactory.addLockReleaseListener((dataCenter, resource) -> releasedResources.add(resource));
+
+        try (DistributedLock lock = myLockFactory.tryLock(DATA_CENTER, "lock", 1, new HashMap<>()))
+        {
+            assertThatExceptionOfType(LockException.class).isThrownBy(() -> myLockFactory.tryLock(DATA_CENTER, "lock", 1, new HashMap<>()));
+            assertThat(myLockFactory.getCachedFailure(DATA_CENTER, "lock")).isNotEmpty();
+            assertThat(myLockFactory.getContendedLocks()).isEqualTo(1);
+        }
+
+        assertThat(myLockFactory.getCachedFailure(DATA_CENTER, "lock")).isEmpty();
+        assertThat(myLockFactory.getContendedLocks()).isEqualTo(0);
+        assertThat(releasedResources).containsExactly("lock");
+    }
+
+    @Test
+    public void testReleasedLockOfOtherNodeIsHandedOff()
+    {
+        List<String> releasedResources = new CopyOnWriteArrayList<>();
+        myLockFactory.addLockReleaseListener((dataCenter, resource) -> releasedResources.add(resource));
+        execute(myLockStatement.bind("lock", UUID.randomUUID(), new HashMap<>()));
+
+        assertThatExceptionOfType(LockException.class).isThrownBy(() -> myLockFactory.tryLock(DATA_CENTER, "lock", 1, new HashMap<>()));
+        assertThat(myLockFactory.getContendedLocks()).isEqualTo(1);
+
+        myLockFactory.checkReleasedLocks();
+        assertThat(myLockFactory.getCachedFailure(DATA_CENTER, "lock")).isNotEmpty();
+
+        execute(myRemoveLockStatement.bind("lock"));
+        myLockFactory.checkReleasedLocks();
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> !myLockFactory.getCachedFailure(DATA_CENTER, "lock").isPresent());
+        assertThat(releasedResources).containsExactly("lock");
+        assertThat(myLockFactory.getContendedLocks()).isEqualTo(0);
+    }
+
+    @Test
+    public void testReleasedLockIsNotHandedOffWhenOtherNodeHasHigherPriority() throws InterruptedException
+    {
+        UUID otherNode = UUID.randomUUID();
+        execute(myLockStatement.bind("lock", otherNode, new HashMap<>()));
+
+        assertThatExceptionOfType(LockException.class).isThrownBy(() -> myLockFactory.tryLock(DATA_CENTER, "lock", 1, new HashMap<>()));
+
+        execute(myCompeteStatement.bind("lock", UUID.randomUUID(), 2));
+        execute(myRemoveLockStatement.bind("lock"));
+        myLockFactory.checkReleasedLocks();
+        Thread.sleep(500);
+
+        assertThat(myLockFactory.getCachedFailure(DATA_CENTER, "lock")).isNotEmpty();
+        assertThat(myLockFactory.getContendedLocks()).isEqualTo(1);
+    }
+
+    @Test
+    public void testSufficientNodesForLockingCachesReplicas()
+    {
+        int cachedReplicaSets = myLockFactory.getCachedReplicaSets();
+
+        assertThat(myLockFactory.sufficientNodesForLocking(DATA_CENTER, "lock")).isTrue();
+        assertThat(myLockFactory.sufficientNodesForLocking(DATA_CENTER, "lock")).isTrue();
+        assertThat(myLockFactory.getCachedReplicaSets()).isEqualTo(cachedReplicaSets + 1);
+
+        when(hostStates.isUpNonBlocking(any(Host.class))).thenReturn(false);
+        assertThat(myLockFactory.sufficientNodesForLocking(DATA_CENTER, "lock")).isFalse();
+        assertThatExceptionOfType(InsufficientNodesException.class).isThrownBy(() -> myLockFactory.tryLock(DATA_CENTER, "lock", 1, new HashMap<>()));
+    }
+
     @Test
     public void testReadMetadata() throws LockException
     {
@@ -265,6 +451,7 @@ public class TestCASLockFactory extends AbstractCassandraTest
     public void testFailedLockRetryAttempts()
     {
         Map<String, String> metadata = new HashMap<>();
+        long failedAttemptStreaks = myMetricRegistry.histogram("LockRenewalFailedAttempts").getCount();
         try (CASLockFactory.CASLock lockUpdateTask = myLockFactory.new CASLock(DATA_CENTER, "lock", 1, metadata))
         {
             for (int i = 0; i < 10; i++)
@@ -278,6 +465,8 @@ public class TestCASLockFactory extends AbstractCassandraTest
             assertThat(lockUpdateTask.getFailedAttempts()).isEqualTo(0);
         }
 
+        assertThat(myMetricRegistry.histogram("LockRenewalFailedAttempts").getCount()).isEqualTo(failedAttemptStreaks + 1);
+
         assertThat(myLockFactory.getCachedFailure(DATA_CENTER, "lock")).isEmpty();
     }
 
@@ -25,6 +25,7 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
@@ -205,4 +206,65 @@ public class TestHostStatesImpl
 
         await().pollInterval(10, TimeUnit.MILLISECONDS).atMost(1, TimeUnit.SECONDS).until(() -> hostStates.isUp(expectedAddress));
     }
+
+    @Test
+    public void testIsHostUpNonBlocking() throws UnknownHostException
+    {
+        InetAddress expectedAddress = InetAddress.getLocalHost();
+        Host expectedHost = mock(Host.class);
+
+        when(myJmxProxy.getLiveNodes()).thenReturn(Collections.singletonList(expectedAddress.getHostAddress()));
+        when(myJmxProxy.getUnreachableNodes()).thenReturn(Collections.emptyList());
+
+        when(expectedHost.getBroadcastAddress()).thenReturn(expectedAddress);
+
+        assertThat(myHostStates.isUpNonBlocking(expectedHost)).isTrue();
+    }
+
+    @Test
+    public void testNodeIsRefreshedInBackground() throws IOException, InterruptedException
+    {
+        final InetAddress expectedAddress = InetAddress.getLocalHost();
+        Host expectedHost = mock(Host.class);
+        when(expectedHost.getBroadcastAddress()).thenReturn(expectedAddress);
+
+        HostStatesImpl hostStates = HostStatesImpl.builder()
+                .withJmxProxyFactory(myJmxProxyFactory)
+                .withRefreshIntervalInMs(1)
+                .build();
+
+        when(myJmxProxy.getLiveNodes()).thenReturn(Collections.emptyList());
+        when(myJmxProxy.getUnreachableNodes()).thenReturn(Collections.singletonList(expectedAddress.getHostAddress()));
+
+        try
+        {
+            assertThat(hostStates.isUpNonBlocking(expectedHost)).isFalse();
+
+            CountDownLatch refreshStarted = new CountDownLatch(1);
+            CountDownLatch continueRefresh = new CountDownLatch(1);
+            when(myJmxProxyFactory.connect()).thenAnswer(invocation ->
+            {
+                refreshStarted.countDown();
+                continueRefresh.await();
+                return myJmxProxy;
+            });
+            when(myJmxProxy.getLiveNodes()).thenReturn(Collections.singletonList(expectedAddress.getHostAddress()));
+            when(myJmxProxy.getUnreachableNodes()).thenReturn(Collections.emptyList());
+
+            Thread.sleep(2);
+
+            // The outdated state is returned while the refresh is ongoing
+            assertThat(hostStates.isUpNonBlocking(expectedHost)).isFalse();
+            assertThat(refreshStarted.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(hostStates.isUpNonBlocking(expectedHost)).isFalse();
+
+            continueRefresh.countDown();
+
+            await().atMost(5, TimeUnit.SECONDS).until(() -> hostStates.isUpNonBlocking(expectedHost));
+        }
+        finally
+        {
+            hostStates.close();
+        }
+    }
 }
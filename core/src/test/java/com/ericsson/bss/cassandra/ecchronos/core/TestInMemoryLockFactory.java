@@ -0,0 +1,214 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core;
+
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockContendedException;
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.LockFactory;
+import com.ericsson.bss.cassandra.ecchronos.core.scheduling.LockFactory.DistributedLock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.time.Clock;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TestInMemoryLockFactory
+{
+    private static final String DATA_CENTER = "DC1";
+    private static final String RESOURCE = "RepairResource-DC1-1";
+    private static final UUID HOST_ID = UUID.randomUUID();
+    private static final UUID OTHER_HOST_ID = UUID.randomUUID();
+
+    @Mock
+    private Clock myClock;
+
+    @Mock
+    private LockFactory.LockReleaseListener myLockReleaseListener;
+
+    private InMemoryLockFactory.LockTable myLockTable;
+    private InMemoryLockFactory myLockFactory;
+    private InMemoryLockFactory myOtherLockFactory;
+
+    @Before
+    public void setup()
+    {
+        when(myClock.millis()).thenReturn(0L);
+
+        myLockTable = new InMemoryLockFactory.LockTable(myClock, 600, TimeUnit.SECONDS);
+        myLockFactory = InMemoryLockFactory.builder()
+                .withLockTable(myLockTable)
+                .withHostId(HOST_ID)
+                .build();
+        myOtherLockFactory = InMemoryLockFactory.builder()
+                .withLockTable(myLockTable)
+                .withHostId(OTHER_HOST_ID)
+                .build();
+    }
+
+    @After
+    public void cleanup()
+    {
+        myLockFactory.close();
+        myOtherLockFactory.close();
+    }
+
+    @Test
+    public void testLockAndRelease() throws LockException
+    {
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("keyspace", "ks");
+
+        try (DistributedLock lock = myLockFactory.tryLock(DATA_CENTER, RESOURCE, 1, metadata))
+        {
+            assertThat(myLockTable.getHolder(DATA_CENTER, RESOURCE)).isEqualTo(HOST_ID);
+            assertThat(myOtherLockFactory.getLockMetadata(DATA_CENTER, RESOURCE)).isEqualTo(metadata);
+            assertThat(myLockFactory.getLockCount()).isEqualTo(1);
+        }
+
+        assertThat(myLockTable.getHolder(DATA_CENTER, RESOURCE)).isNull();
+        assertThat(myLockFactory.getLockCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testLockHeldByOtherNode() throws LockException
+    {
+        try (DistributedLock lock = myOtherLockFactory.tryLock(DATA_CENTER, RESOURCE, 1, new HashMap<>()))
+        {
+            assertThatExceptionOfType(LockException.class)
+                    .isThrownBy(() -> myLockFactory.tryLock(DATA_CENTER, RESOURCE, 1, new HashMap<>()));
+            assertThat(myLockFactory.getCachedFailure(DATA_CENTER, RESOURCE)).isPresent();
+        }
+    }
+
+    @Test
+    public void testLockHeldByOtherNodeHasLeaseTimeLeft() throws LockException
+    {
+        try (DistributedLock lock = myOtherLockFactory.tryLock(DATA_CENTER, RESOURCE, 1, new HashMap<>()))
+        {
+            when(myClock.millis()).thenReturn(TimeUnit.SECONDS.toMillis(100));
+
+            assertThatExceptionOfType(LockContendedException.class)
+                    .isThrownBy(() -> myLockFactory.tryLock(DATA_CENTER, RESOURCE, 1, new HashMap<>()))
+                    .satisfies(e -> assertThat(e.getLeaseTimeLeftInMs()).isEqualTo(TimeUnit.SECONDS.toMillis(500)));
+        }
+    }
+
+    @Test
+    public void testLockWithLowerPriorityThanAnnounced() throws LockException
+    {
+        try (DistributedLock lock = myOtherLockFactory.tryLock(DATA_CENTER, RESOURCE, 1, new HashMap<>()))
+        {
+            assertThatExceptionOfType(LockException.class)
+                    .isThrownBy(() -> myLockFactory.tryLock(DATA_CENTER, RESOURCE, 2, new HashMap<>()));
+        }
+
+        // The higher priority announced by this node prevents the other node from locking
+        assertThatExceptionOfType(LockException.class)
+                .isThrownBy(() -> myOtherLockFactory.tryLock(DATA_CENTER, RESOURCE, 1, new HashMap<>()));
+        assertThat(myLockTable.getHolder(DATA_CENTER, RESOURCE)).isNull();
+    }
+
+    @Test
+    public void testExpiredLockCanBeLocked() throws LockException
+    {
+        DistributedLock expiredLock = myOtherLockFactory.tryLock(DATA_CENTER, RESOURCE, 1, new HashMap<>());
+
+        when(myClock.millis()).thenReturn(TimeUnit.SECONDS.toMillis(600));
+
+        try (DistributedLock lock = myLockFactory.tryLock(DATA_CENTER, RESOURCE, 1, new HashMap<>()))
+        {
+            assertThat(myLockTable.getHolder(DATA_CENTER, RESOURCE)).isEqualTo(HOST_ID);
+            assertThat(myOtherLockFactory.renewLocks()).isEqualTo(1);
+
+            expiredLock.close();
+
+            assertThat(myLockTable.getHolder(DATA_CENTER, RESOURCE)).isEqualTo(HOST_ID);
+        }
+    }
+
+    @Test
+    public void testRenewedLockDoesNotExpire() throws LockException
+    {
+        try (DistributedLock lock = myOtherLockFactory.tryLock(DATA_CENTER, RESOURCE, 1, new HashMap<>()))
+        {
+            when(myClock.millis()).thenReturn(TimeUnit.SECONDS.toMillis(300));
+            assertThat(myOtherLockFactory.renewLocks()).isEqualTo(0);
+
+            when(myClock.millis()).thenReturn(TimeUnit.SECONDS.toMillis(600));
+            assertThat(myLockTable.getHolder(DATA_CENTER, RESOURCE)).isEqualTo(OTHER_HOST_ID);
+        }
+    }
+
+    @Test
+    public void testInjectedFailure()
+    {
+        try (InMemoryLockFactory failingLockFactory = InMemoryLockFactory.builder()
+                .withLockTable(myLockTable)
+                .withFailureRate(1.0)
+                .build())
+        {
+            assertThatExceptionOfType(LockException.class)
+                    .isThrownBy(() -> failingLockFactory.tryLock(DATA_CENTER, RESOURCE, 1, new HashMap<>()));
+        }
+
+        assertThat(myLockTable.getHolder(DATA_CENTER, RESOURCE)).isNull();
+    }
+
+    @Test
+    public void testReleaseIsHandedOffToWaitingNode() throws LockException
+    {
+        myLockFactory.addLockReleaseListener(myLockReleaseListener);
+
+        DistributedLock otherLock = myOtherLockFactory.tryLock(DATA_CENTER, RESOURCE, 1, new HashMap<>());
+        assertThatExceptionOfType(LockException.class)
+                .isThrownBy(() -> myLockFactory.tryLock(DATA_CENTER, RESOURCE, 1, new HashMap<>()));
+
+        otherLock.close();
+
+        verify(myLockReleaseListener).onLockReleased(DATA_CENTER, RESOURCE);
+        assertThat(myLockFactory.getCachedFailure(DATA_CENTER, RESOURCE)).isNotPresent();
+    }
+
+    @Test
+    public void testReleaseIsNotHandedOffToNodeWithoutFailure() throws LockException
+    {
+        myLockFactory.addLockReleaseListener(myLockReleaseListener);
+
+        myOtherLockFactory.tryLock(DATA_CENTER, RESOURCE, 1, new HashMap<>()).close();
+
+        verify(myLockReleaseListener, never()).onLockReleased(DATA_CENTER, RESOURCE);
+    }
+
+    @Test
+    public void testBuildWithoutLockTable()
+    {
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> InMemoryLockFactory.builder().build());
+    }
+}
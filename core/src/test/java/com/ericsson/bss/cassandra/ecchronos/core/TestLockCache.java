@@ -14,8 +14,13 @@
  */
 package com.ericsson.bss.cassandra.ecchronos.core;
 
+import com.codahale.metrics.MetricRegistry;
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockContendedException;
 import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
+import com.ericsson.bss.cassandra.ecchronos.core.metrics.LockMetricHolder;
 import com.ericsson.bss.cassandra.ecchronos.core.scheduling.LockFactory.DistributedLock;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import nl.jqno.equalsverifier.EqualsVerifier;
 import org.junit.Before;
 import org.junit.Test;
@@ -25,12 +30,17 @@ import org.mockito.runners.MockitoJUnitRunner;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -97,6 +107,19 @@ public class TestLockCache
         assertGetLockRetrievesExpectedLock(otherResource, expectedOtherLock);
     }
 
+    @Test
+    public void testGetLockAfterCachedExceptionIsInvalidated() throws LockException
+    {
+        LockException expectedException = doThrowOnGetLock();
+        assertGetLockThrowsException(expectedException);
+
+        myLockCache.invalidate(DATA_CENTER, RESOURCE);
+        assertThat(myLockCache.getCachedFailure(DATA_CENTER, RESOURCE)).isEmpty();
+
+        DistributedLock expectedLock = doReturnLockOnGetLock();
+        assertGetLockRetrievesExpectedLock(expectedLock);
+    }
+
     @Test
     public void testGetLockAfterCachedExceptionHasExpired() throws LockException, InterruptedException
     {
@@ -111,6 +134,119 @@ public class TestLockCache
         assertGetLockRetrievesExpectedLock(expectedLock);
     }
 
+    @Test
+    public void testContendedFailureIsCachedUntilLeaseExpires() throws LockException, InterruptedException
+    {
+        myLockCache = new LockCache(mockedLockSupplier, 20, TimeUnit.MILLISECONDS);
+
+        LockException expectedException = doThrowOnGetLock(new LockContendedException("", TimeUnit.SECONDS.toMillis(10)));
+        assertGetLockThrowsException(expectedException);
+
+        Thread.sleep(20);
+
+        doReturnLockOnGetLock();
+        assertGetLockThrowsException(expectedException);
+    }
+
+    @Test
+    public void testContendedFailureWithExpiredLeaseIsRetriedSooner() throws LockException, InterruptedException
+    {
+        myLockCache = new LockCache(mockedLockSupplier, 10000, 20, TimeUnit.MILLISECONDS);
+
+        LockException expectedException = doThrowOnGetLock(new LockContendedException("", 0));
+        assertGetLockThrowsException(expectedException);
+
+        Thread.sleep(20);
+
+        DistributedLock expectedLock = doReturnLockOnGetLock();
+        assertGetLockRetrievesExpectedLock(expectedLock);
+    }
+
+    @Test
+    public void testTransientFailureIsRetriedSooner() throws LockException, InterruptedException
+    {
+        myLockCache = new LockCache(mockedLockSupplier, 10000, 20, TimeUnit.MILLISECONDS);
+
+        LockException expectedException = doThrowOnGetLock(new LockException(new TimeoutException()));
+        assertGetLockThrowsException(expectedException);
+
+        Thread.sleep(20);
+
+        DistributedLock expectedLock = doReturnLockOnGetLock();
+        assertGetLockRetrievesExpectedLock(expectedLock);
+    }
+
+    @Test
+    public void testGetLockAsync() throws Exception
+    {
+        DistributedLock expectedLock = doReturnLockOnGetLock();
+
+        assertThat(myLockCache.getLockAsync(DATA_CENTER, RESOURCE, PRIORITY, METADATA).get()).isSameAs(expectedLock);
+        assertThat(myLockCache.getCachedFailure(DATA_CENTER, RESOURCE)).isEmpty();
+    }
+
+    @Test
+    public void testGetThrowingLockAsyncIsCached() throws LockException
+    {
+        LockException expectedException = new LockException("");
+        LockCache.AsyncLockSupplier asyncLockSupplier = mock(LockCache.AsyncLockSupplier.class);
+        when(asyncLockSupplier.getLockAsync(eq(DATA_CENTER), eq(RESOURCE), eq(PRIORITY), eq(METADATA)))
+                .thenReturn(Futures.immediateFailedFuture(expectedException));
+
+        myLockCache = new LockCache(mockedLockSupplier, asyncLockSupplier);
+
+        assertGetLockAsyncFailsWithException(expectedException);
+
+        // The cached failure is used by both synchronous and asynchronous locking
+        doReturnLockOnGetLock();
+        assertGetLockThrowsException(expectedException);
+        assertGetLockAsyncFailsWithException(expectedException);
+
+        verify(asyncLockSupplier, times(1)).getLockAsync(eq(DATA_CENTER), eq(RESOURCE), eq(PRIORITY), eq(METADATA));
+        verify(mockedLockSupplier, never()).getLock(eq(DATA_CENTER), eq(RESOURCE), eq(PRIORITY), eq(METADATA));
+    }
+
+    @Test
+    public void testCacheLookupsAreRecorded() throws LockException
+    {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        myLockCache = new LockCache(mockedLockSupplier, (dc, resource, priority, metadata) -> Futures.immediateFailedFuture(new LockException("")),
+                new LockMetricHolder(metricRegistry));
+        doThrowOnGetLock();
+
+        assertThatThrownBy(() -> myLockCache.getLock(DATA_CENTER, RESOURCE, PRIORITY, METADATA)).isInstanceOf(LockException.class);
+        assertThatThrownBy(() -> myLockCache.getLock(DATA_CENTER, RESOURCE, PRIORITY, METADATA)).isInstanceOf(LockException.class);
+        assertThat(myLockCache.getLockAsync(DATA_CENTER, RESOURCE, PRIORITY, METADATA).isDone()).isTrue();
+
+        assertThat(metricRegistry.getMeters().get("LockCacheMisses").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.getMeters().get("LockCacheHits").getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testGetLockAsyncWithSupplier() throws Exception
+    {
+        DistributedLock expectedLock = mock(DistributedLock.class);
+
+        ListenableFuture<DistributedLock> future = myLockCache.getLockAsync(DATA_CENTER, RESOURCE, PRIORITY, METADATA,
+                (dataCenter, resource, priority, metadata) -> Futures.immediateFuture(expectedLock));
+
+        assertThat(future.get()).isSameAs(expectedLock);
+        verify(mockedLockSupplier, never()).getLock(eq(DATA_CENTER), eq(RESOURCE), eq(PRIORITY), eq(METADATA));
+    }
+
+    @Test
+    public void testGetLockAsyncWithSupplierUsesCachedFailure() throws LockException
+    {
+        LockException expectedException = doThrowOnGetLock();
+        assertGetLockThrowsException(expectedException);
+
+        LockCache.AsyncLockSupplier asyncLockSupplier = mock(LockCache.AsyncLockSupplier.class);
+
+        assertThatThrownBy(() -> myLockCache.getLockAsync(DATA_CENTER, RESOURCE, PRIORITY, METADATA, asyncLockSupplier).get())
+                .hasCause(expectedException);
+        verify(asyncLockSupplier, never()).getLockAsync(eq(DATA_CENTER), eq(RESOURCE), eq(PRIORITY), eq(METADATA));
+    }
+
     @Test
     public void testEqualsContract()
     {
@@ -128,6 +264,14 @@ public class TestLockCache
         assertThat(myLockCache.getCachedFailure(DATA_CENTER, resource)).isEmpty();
     }
 
+    private void assertGetLockAsyncFailsWithException(LockException expectedException)
+    {
+        assertThatThrownBy(() -> myLockCache.getLockAsync(DATA_CENTER, RESOURCE, PRIORITY, METADATA).get())
+                .isInstanceOf(ExecutionException.class)
+                .hasCause(expectedException);
+        assertThat(myLockCache.getCachedFailure(DATA_CENTER, RESOURCE)).isNotEmpty();
+    }
+
     private void assertGetLockThrowsException(LockException expectedException)
     {
         assertGetLockThrowsException(RESOURCE, expectedException);
@@ -162,4 +306,10 @@ public class TestLockCache
         when(mockedLockSupplier.getLock(eq(DATA_CENTER), eq(resource), eq(PRIORITY), eq(METADATA))).thenThrow(expectedException);
         return expectedException;
     }
+
+    private LockException doThrowOnGetLock(LockException expectedException) throws LockException
+    {
+        when(mockedLockSupplier.getLock(eq(DATA_CENTER), eq(RESOURCE), eq(PRIORITY), eq(METADATA))).thenThrow(expectedException);
+        return expectedException;
+    }
 }
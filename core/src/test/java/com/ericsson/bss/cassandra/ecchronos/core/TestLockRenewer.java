@@ -0,0 +1,239 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core;
+
+import com.codahale.metrics.MetricRegistry;
+import com.ericsson.bss.cassandra.ecchronos.core.metrics.LockMetricHolder;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+public class TestLockRenewer
+{
+    private static final long RENEWAL_INTERVAL_IN_MS = 50;
+    private static final long LEASE_TIME_IN_MS = TimeUnit.SECONDS.toMillis(10);
+
+    private final MetricRegistry myMetricRegistry = new MetricRegistry();
+    private final LockMetricHolder myLockMetricHolder = new LockMetricHolder(myMetricRegistry);
+
+    private ScheduledExecutorService myExecutor;
+    private LockRenewer myLockRenewer;
+
+    @Before
+    public void init()
+    {
+        myExecutor = Executors.newSingleThreadScheduledExecutor();
+        myLockRenewer = new LockRenewer(myExecutor, myLockMetricHolder, RENEWAL_INTERVAL_IN_MS, LEASE_TIME_IN_MS, 1);
+    }
+
+    @After
+    public void cleanup()
+    {
+        myExecutor.shutdownNow();
+        myLockMetricHolder.close();
+    }
+
+    @Test
+    public void testLeaseIsRenewed()
+    {
+        AtomicInteger renewals = new AtomicInteger();
+
+        myLockRenewer.register(() ->
+        {
+            renewals.incrementAndGet();
+            return Futures.immediateFuture(LockRenewer.RenewalResult.RENEWED);
+        });
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> renewals.get() >= 3);
+
+        assertThat(myMetricRegistry.getTimers().get("LockRenewalTime").getCount()).isGreaterThanOrEqualTo(2);
+        assertThat(myMetricRegistry.getCounters().get("LockRenewalFailures").getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testSuccessfulRenewalExtendsLease()
+    {
+        AtomicInteger renewals = new AtomicInteger();
+
+        LockRenewer.Lease lease = myLockRenewer.register(() ->
+        {
+            renewals.incrementAndGet();
+            return Futures.immediateFuture(LockRenewer.RenewalResult.RENEWED);
+        });
+        long initialExpiryTime = lease.getExpiryTime();
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> lease.getExpiryTime() > initialExpiryTime);
+    }
+
+    @Test
+    public void testFailedRenewalDoesNotExtendLease()
+    {
+        AtomicInteger renewals = new AtomicInteger();
+
+        LockRenewer.Lease lease = myLockRenewer.register(() ->
+        {
+            renewals.incrementAndGet();
+            return Futures.immediateFuture(LockRenewer.RenewalResult.FAILED);
+        });
+        long initialExpiryTime = lease.getExpiryTime();
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> renewals.get() >= 2);
+
+        assertThat(lease.getExpiryTime()).isEqualTo(initialExpiryTime);
+        assertThat(myMetricRegistry.getCounters().get("LockRenewalFailures").getCount()).isGreaterThanOrEqualTo(1);
+    }
+
+    @Test
+    public void testExceptionFromRenewalIsRetried()
+    {
+        AtomicInteger renewals = new AtomicInteger();
+
+        myLockRenewer.register(() ->
+        {
+            if (renewals.incrementAndGet() == 1)
+            {
+                throw new IllegalStateException("Expected exception");
+            }
+            return Futures.immediateFailedFuture(new IllegalStateException("Expected exception"));
+        });
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> renewals.get() >= 3);
+    }
+
+    @Test
+    public void testSlowRenewalDoesNotBlockOtherLeases()
+    {
+        myLockRenewer = new LockRenewer(myExecutor, myLockMetricHolder, RENEWAL_INTERVAL_IN_MS, LEASE_TIME_IN_MS, 2);
+
+        SettableFuture<LockRenewer.RenewalResult> slowRenewal = SettableFuture.create();
+        AtomicInteger slowRenewals = new AtomicInteger();
+        AtomicInteger renewals = new AtomicInteger();
+
+        myLockRenewer.register(() ->
+        {
+            slowRenewals.incrementAndGet();
+            return slowRenewal;
+        });
+        myLockRenewer.register(() ->
+        {
+            renewals.incrementAndGet();
+            return Futures.immediateFuture(LockRenewer.RenewalResult.RENEWED);
+        });
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> renewals.get() >= 3);
+        assertThat(slowRenewals.get()).isEqualTo(1);
+
+        slowRenewal.set(LockRenewer.RenewalResult.RENEWED);
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> slowRenewals.get() >= 2);
+    }
+
+    @Test
+    public void testCancelledLeaseIsNotRenewed() throws InterruptedException
+    {
+        AtomicInteger renewals = new AtomicInteger();
+
+        LockRenewer.Lease lease = myLockRenewer.register(() ->
+        {
+            renewals.incrementAndGet();
+            return Futures.immediateFuture(LockRenewer.RenewalResult.RENEWED);
+        });
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> renewals.get() >= 1);
+
+        lease.cancel();
+        int renewalsAfterCancel = renewals.get();
+
+        Thread.sleep(RENEWAL_INTERVAL_IN_MS * 4);
+
+        assertThat(renewals.get()).isLessThanOrEqualTo(renewalsAfterCancel + 1);
+        assertThat(lease.isCancelled()).isTrue();
+        assertThat(myLockRenewer.getPendingRenewals()).isEqualTo(0);
+    }
+
+    @Test
+    public void testNextRenewalDelayAfterSuccess()
+    {
+        LockRenewer lockRenewer = new LockRenewer(myExecutor, myLockMetricHolder, 60000, 600000, 1);
+        long now = System.currentTimeMillis();
+
+        assertThat(lockRenewer.nextRenewalDelay(now + 600000, true, now)).isEqualTo(60000);
+    }
+
+    @Test
+    public void testNextRenewalDelayAfterFailure()
+    {
+        LockRenewer lockRenewer = new LockRenewer(myExecutor, myLockMetricHolder, 60000, 600000, 1);
+        long now = System.currentTimeMillis();
+
+        assertThat(lockRenewer.nextRenewalDelay(now + 600000, false, now)).isEqualTo(60000);
+        assertThat(lockRenewer.nextRenewalDelay(now + 60000, false, now)).isEqualTo(30000);
+        assertThat(lockRenewer.nextRenewalDelay(now + 100, false, now)).isEqualTo(LockRenewer.MIN_RETRY_DELAY_IN_MS);
+    }
+
+    @Test
+    public void testLostLeaseIsNotRenewed() throws InterruptedException
+    {
+        AtomicInteger renewals = new AtomicInteger();
+
+        myLockRenewer.register(() ->
+        {
+            renewals.incrementAndGet();
+            return Futures.immediateFuture(LockRenewer.RenewalResult.LOST);
+        });
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> renewals.get() >= 1);
+
+        Thread.sleep(RENEWAL_INTERVAL_IN_MS * 4);
+
+        assertThat(renewals.get()).isEqualTo(1);
+        assertThat(myLockRenewer.getPendingRenewals()).isEqualTo(0);
+    }
+
+    @Test
+    public void testNextRenewalDelayAfterExpiry()
+    {
+        LockRenewer lockRenewer = new LockRenewer(myExecutor, myLockMetricHolder, 60000, 600000, 1);
+        long now = System.currentTimeMillis();
+
+        assertThat(lockRenewer.nextRenewalDelay(now, false, now)).isEqualTo(60000);
+        assertThat(lockRenewer.nextRenewalDelay(now - 1000, false, now)).isEqualTo(60000);
+        assertThat(lockRenewer.nextRenewalDelay(now - 600000, false, now)).isEqualTo(60000);
+    }
+
+    @Test
+    public void testNextRenewalDelayWithSlowRenewals()
+    {
+        LockRenewer lockRenewer = new LockRenewer(myExecutor, myLockMetricHolder, 60000, 600000, 1);
+        long now = System.currentTimeMillis();
+
+        for (int i = 0; i < 100; i++)
+        {
+            lockRenewer.updateAverageRenewalTime(10000);
+        }
+
+        assertThat(lockRenewer.nextRenewalDelay(now + 60000, true, now)).isBetween(19000L, 21000L);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestLockMetricHolder
+{
+    private MetricRegistry myMetricRegistry = new MetricRegistry();
+
+    private LockMetricHolder myLockMetricHolder;
+
+    @Before
+    public void init()
+    {
+        myLockMetricHolder = new LockMetricHolder(myMetricRegistry);
+    }
+
+    @After
+    public void cleanup()
+    {
+        myLockMetricHolder.close();
+    }
+
+    @Test
+    public void testDefaultMetrics()
+    {
+        assertThat(getTimer(LockMetricHolder.RENEWAL_TIME).getCount()).isEqualTo(0);
+        assertThat(getCounter(LockMetricHolder.RENEWAL_FAILURES).getCount()).isEqualTo(0);
+        assertThat(myMetricRegistry.getHistograms().get(LockMetricHolder.RENEWAL_FAILED_ATTEMPTS).getCount()).isEqualTo(0);
+        assertThat(getTimer(LockMetricHolder.HOLD_TIME).getCount()).isEqualTo(0);
+        assertThat(getTimer("LockPriorityReadTime").getCount()).isEqualTo(0);
+        assertThat(getTimer("LockCompeteTime").getCount()).isEqualTo(0);
+        assertThat(getTimer("LockInsertTime").getCount()).isEqualTo(0);
+        assertThat(myMetricRegistry.getMeters().get(LockMetricHolder.CACHE_HITS).getCount()).isEqualTo(0);
+        assertThat(myMetricRegistry.getMeters().get(LockMetricHolder.CACHE_MISSES).getCount()).isEqualTo(0);
+        assertThat(myMetricRegistry.getGauges()).containsKey(LockMetricHolder.CACHE_HIT_RATIO);
+    }
+
+    @Test
+    public void testAcquirePhase()
+    {
+        myLockMetricHolder.acquirePhase(LockMetricHolder.AcquirePhase.PRIORITY_READ, 10, TimeUnit.MILLISECONDS);
+        myLockMetricHolder.acquirePhase(LockMetricHolder.AcquirePhase.INSERT, 20, TimeUnit.MILLISECONDS);
+
+        assertThat(getTimer("LockPriorityReadTime").getSnapshot().getMax()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(10));
+        assertThat(getTimer("LockCompeteTime").getCount()).isEqualTo(0);
+        assertThat(getTimer("LockInsertTime").getSnapshot().getMax()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    public void testLockHeld()
+    {
+        myLockMetricHolder.lockHeld(5, TimeUnit.SECONDS);
+
+        Timer timer = getTimer(LockMetricHolder.HOLD_TIME);
+        assertThat(timer.getCount()).isEqualTo(1);
+        assertThat(timer.getSnapshot().getMax()).isEqualTo(TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    public void testContended()
+    {
+        myLockMetricHolder.contended("DC1", "RepairResource-DC1-1");
+        myLockMetricHolder.contended("DC1", "RepairResource-DC1-1");
+        myLockMetricHolder.contended("DC1", "RepairResource-DC1-2");
+        myLockMetricHolder.contended("DC2", "RepairResource-DC2-1");
+        myLockMetricHolder.contended(null, "SCHEDULE_LOCK");
+
+        assertThat(getCounter("RepairResource-DC1-" + LockMetricHolder.CONTENTION).getCount()).isEqualTo(3);
+        assertThat(getCounter("RepairResource-DC2-" + LockMetricHolder.CONTENTION).getCount()).isEqualTo(1);
+        assertThat(getCounter("SCHEDULE_LOCK-" + LockMetricHolder.CONTENTION).getCount()).isEqualTo(1);
+        assertThat(myMetricRegistry.getCounters()).hasSize(4);
+    }
+
+    @Test
+    public void testCacheLookup()
+    {
+        myLockMetricHolder.cacheLookup(true);
+        myLockMetricHolder.cacheLookup(false);
+        myLockMetricHolder.cacheLookup(false);
+
+        assertThat(myMetricRegistry.getMeters().get(LockMetricHolder.CACHE_HITS).getCount()).isEqualTo(1);
+        assertThat(myMetricRegistry.getMeters().get(LockMetricHolder.CACHE_MISSES).getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testRenewalFailedAttempts()
+    {
+        myLockMetricHolder.renewalFailedAttempts(1);
+        myLockMetricHolder.renewalFailedAttempts(3);
+
+        Histogram histogram = myMetricRegistry.getHistograms().get(LockMetricHolder.RENEWAL_FAILED_ATTEMPTS);
+        assertThat(histogram.getCount()).isEqualTo(2);
+        assertThat(histogram.getSnapshot().getMin()).isEqualTo(1);
+        assertThat(histogram.getSnapshot().getMax()).isEqualTo(3);
+    }
+
+    @Test
+    public void testRenewal()
+    {
+        myLockMetricHolder.renewal(10, TimeUnit.MILLISECONDS, true);
+        myLockMetricHolder.renewal(20, TimeUnit.MILLISECONDS, false);
+
+        Timer timer = getTimer(LockMetricHolder.RENEWAL_TIME);
+        assertThat(timer.getCount()).isEqualTo(2);
+        assertThat(timer.getSnapshot().getMax()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(20));
+        assertThat(getCounter(LockMetricHolder.RENEWAL_FAILURES).getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testClose()
+    {
+        myLockMetricHolder.contended("DC1", "RepairResource-DC1-1");
+        myLockMetricHolder.close();
+
+        assertThat(myMetricRegistry.getMetrics()).isEmpty();
+    }
+
+    private Timer getTimer(String name)
+    {
+        return myMetricRegistry.getTimers().get(name);
+    }
+
+    private Counter getCounter(String name)
+    {
+        return myMetricRegistry.getCounters().get(name);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestSchedulerMetricHolder
+{
+    private MetricRegistry myMetricRegistry = new MetricRegistry();
+
+    private SchedulerMetricHolder mySchedulerMetricHolder;
+
+    @Before
+    public void init()
+    {
+        mySchedulerMetricHolder = new SchedulerMetricHolder(myMetricRegistry);
+    }
+
+    @After
+    public void cleanup()
+    {
+        mySchedulerMetricHolder.close();
+    }
+
+    @Test
+    public void testDefaultMetrics()
+    {
+        assertThat(getTimer(SchedulerMetricHolder.JOB_START_DELAY).getCount()).isEqualTo(0);
+        assertThat(getTimer(SchedulerMetricHolder.RUN_TIME).getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testJobs()
+    {
+        mySchedulerMetricHolder.jobs("HIGH", () -> 2, () -> 3);
+
+        assertThat(getGauge("HIGH-" + SchedulerMetricHolder.RUNNABLE_JOBS).getValue()).isEqualTo(2);
+        assertThat(getGauge("HIGH-" + SchedulerMetricHolder.PARKED_JOBS).getValue()).isEqualTo(3);
+    }
+
+    @Test
+    public void testJobStarted()
+    {
+        mySchedulerMetricHolder.jobStarted(5, TimeUnit.SECONDS);
+        mySchedulerMetricHolder.jobStarted(-5, TimeUnit.SECONDS);
+
+        Timer timer = getTimer(SchedulerMetricHolder.JOB_START_DELAY);
+        assertThat(timer.getCount()).isEqualTo(2);
+        assertThat(timer.getSnapshot().getMax()).isEqualTo(TimeUnit.SECONDS.toNanos(5));
+        assertThat(timer.getSnapshot().getMin()).isEqualTo(0);
+    }
+
+    @Test
+    public void testRun()
+    {
+        mySchedulerMetricHolder.run(10, TimeUnit.MILLISECONDS);
+
+        Timer timer = getTimer(SchedulerMetricHolder.RUN_TIME);
+        assertThat(timer.getCount()).isEqualTo(1);
+        assertThat(timer.getSnapshot().getMean()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(10));
+    }
+
+    @Test
+    public void testRunPolicyRejection()
+    {
+        mySchedulerMetricHolder.runPolicyRejection("TimeBasedRunPolicy");
+        mySchedulerMetricHolder.runPolicyRejection("TimeBasedRunPolicy");
+
+        assertThat(getCounter("TimeBasedRunPolicy-" + SchedulerMetricHolder.RUN_POLICY_REJECTIONS).getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testLockAcquired()
+    {
+        mySchedulerMetricHolder.lockAcquired("dc1", "RepairResource-dc1-1", 10, TimeUnit.MILLISECONDS, true);
+        mySchedulerMetricHolder.lockAcquired("dc1", "RepairResource-dc1-2", 20, TimeUnit.MILLISECONDS, false);
+        mySchedulerMetricHolder.lockAcquired("dc2", "RepairResource-dc2-1", 20, TimeUnit.MILLISECONDS, false);
+
+        assertThat(getTimer("RepairResource-dc1-" + SchedulerMetricHolder.LOCK_ACQUIRE_TIME).getCount()).isEqualTo(2);
+        assertThat(getCounter("RepairResource-dc1-" + SchedulerMetricHolder.LOCK_FAILURES).getCount()).isEqualTo(1);
+        assertThat(getTimer("RepairResource-dc2-" + SchedulerMetricHolder.LOCK_ACQUIRE_TIME).getCount()).isEqualTo(1);
+        assertThat(getCounter("RepairResource-dc2-" + SchedulerMetricHolder.LOCK_FAILURES).getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testLockAcquiredForVnodeResources()
+    {
+        mySchedulerMetricHolder.lockAcquired("dc1", "RepairResource-1e2f3a4b-0000-0000-0000-000000000001-1", 10, TimeUnit.MILLISECONDS, true);
+        mySchedulerMetricHolder.lockAcquired("dc1", "RepairResource-1e2f3a4b-0000-0000-0000-000000000002-1", 10, TimeUnit.MILLISECONDS, true);
+
+        assertThat(getTimer("RepairResource-dc1-" + SchedulerMetricHolder.LOCK_ACQUIRE_TIME).getCount()).isEqualTo(2);
+        assertThat(myMetricRegistry.getTimers().keySet()).filteredOn(name -> name.endsWith(SchedulerMetricHolder.LOCK_ACQUIRE_TIME))
+                .containsExactly("RepairResource-dc1-" + SchedulerMetricHolder.LOCK_ACQUIRE_TIME);
+    }
+
+    @Test
+    public void testLockAcquiredForGlobalResource()
+    {
+        mySchedulerMetricHolder.lockAcquired(null, "SCHEDULE_LOCK", 10, TimeUnit.MILLISECONDS, false);
+
+        assertThat(getTimer("SCHEDULE_LOCK-" + SchedulerMetricHolder.LOCK_ACQUIRE_TIME).getCount()).isEqualTo(1);
+        assertThat(getCounter("SCHEDULE_LOCK-" + SchedulerMetricHolder.LOCK_FAILURES).getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testClose()
+    {
+        mySchedulerMetricHolder.jobs("HIGH", () -> 2, () -> 3);
+        mySchedulerMetricHolder.runPolicyRejection("TimeBasedRunPolicy");
+        mySchedulerMetricHolder.lockAcquired("dc1", "RepairResource-dc1-1", 20, TimeUnit.MILLISECONDS, false);
+
+        mySchedulerMetricHolder.close();
+
+        assertThat(myMetricRegistry.getMetrics()).isEmpty();
+    }
+
+    private Timer getTimer(String name)
+    {
+        return myMetricRegistry.getTimers().get(name);
+    }
+
+    private Counter getCounter(String name)
+    {
+        return myMetricRegistry.getCounters().get(name);
+    }
+
+    private Gauge getGauge(String name)
+    {
+        return myMetricRegistry.getGauges().get(name);
+    }
+}
@@ -52,6 +52,9 @@ public class TestOnDemandRepairJob
     @Mock
     private JmxProxyFactory myJmxProxyFactory;
 
+    @Mock
+    private RepairNotificationDispatcher myRepairNotificationDispatcher;
+
     @Mock
     private TableRepairMetrics myTableRepairMetrics;
 
@@ -187,6 +190,7 @@ public class TestOnDemandRepairJob
 
         return new OnDemandRepairJob.Builder()
                 .withJmxProxyFactory(myJmxProxyFactory)
+                .withRepairNotificationDispatcher(myRepairNotificationDispatcher)
                 .withTableRepairMetrics(myTableRepairMetrics)
                 .withRepairLockType(RepairLockType.VNODE)
                 .withRepairHistory(myRepairHistory)
@@ -211,6 +215,7 @@ public class TestOnDemandRepairJob
 
         return new OnDemandRepairJob.Builder()
                 .withJmxProxyFactory(myJmxProxyFactory)
+                .withRepairNotificationDispatcher(myRepairNotificationDispatcher)
                 .withTableRepairMetrics(myTableRepairMetrics)
                 .withRepairLockType(RepairLockType.VNODE)
                 .withRepairHistory(myRepairHistory)
@@ -53,6 +53,9 @@ public class TestOnDemandRepairSchedulerImpl
     @Mock
     private JmxProxyFactory jmxProxyFactory;
 
+    @Mock
+    private RepairNotificationDispatcher repairNotificationDispatcher;
+
     @Mock
     private ScheduleManager scheduleManager;
 
@@ -189,6 +192,7 @@ public class TestOnDemandRepairSchedulerImpl
     {
         return OnDemandRepairSchedulerImpl.builder()
                 .withJmxProxyFactory(jmxProxyFactory)
+                .withRepairNotificationDispatcher(repairNotificationDispatcher)
                 .withTableRepairMetrics(myTableRepairMetrics)
                 .withScheduleManager(scheduleManager)
                 .withReplicationState(replicationState)
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.repair;
+
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.ReplicaRepairGroup;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.Node;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class TestRepairBackoff
+{
+    private final ImmutableSet<Node> myReplicas = ImmutableSet.of(mock(Node.class), mock(Node.class));
+    private final ImmutableSet<Node> myOtherReplicas = ImmutableSet.of(mock(Node.class), mock(Node.class));
+
+    private final RepairBackoff myRepairBackoff = new RepairBackoff();
+
+    @Test
+    public void testFirstFailureBacksOffWithJitter()
+    {
+        long backoff = myRepairBackoff.failed(myReplicas, RepairFailureType.SESSION_ERROR);
+
+        long initialBackoff = RepairFailureType.SESSION_ERROR.getInitialBackoffInMs();
+        assertThat(backoff).isBetween(initialBackoff / 2, initialBackoff);
+        assertThat(myRepairBackoff.isBackingOff(myReplicas, System.currentTimeMillis())).isTrue();
+        assertThat(myRepairBackoff.isBackingOff(myOtherReplicas, System.currentTimeMillis())).isFalse();
+    }
+
+    @Test
+    public void testConsecutiveFailuresBackOffExponentially()
+    {
+        myRepairBackoff.failed(myReplicas, RepairFailureType.JMX_ERROR);
+        long backoff = myRepairBackoff.failed(myReplicas, RepairFailureType.JMX_ERROR);
+
+        long expectedBackoff = RepairFailureType.JMX_ERROR.getInitialBackoffInMs() * 2;
+        assertThat(backoff).isBetween(expectedBackoff / 2, expectedBackoff);
+    }
+
+    @Test
+    public void testBackoffIsLimited()
+    {
+        long backoff = 0;
+        for (int i = 0; i < 100; i++)
+        {
+            backoff = myRepairBackoff.failed(myReplicas, RepairFailureType.LOCK_CONTENTION);
+        }
+
+        long maxBackoff = RepairFailureType.LOCK_CONTENTION.getMaxBackoffInMs();
+        assertThat(backoff).isBetween(maxBackoff / 2, maxBackoff);
+    }
+
+    @Test
+    public void testFailureTypesBackOffIndependently()
+    {
+        myRepairBackoff.failed(myReplicas, RepairFailureType.SESSION_ERROR);
+        myRepairBackoff.failed(myReplicas, RepairFailureType.SESSION_ERROR);
+        long backoff = myRepairBackoff.failed(myReplicas, RepairFailureType.LOCK_CONTENTION);
+
+        long initialBackoff = RepairFailureType.LOCK_CONTENTION.getInitialBackoffInMs();
+        assertThat(backoff).isBetween(initialBackoff / 2, initialBackoff);
+    }
+
+    @Test
+    public void testSuccessResetsBackoff()
+    {
+        myRepairBackoff.failed(myReplicas, RepairFailureType.HOST_DOWN);
+        myRepairBackoff.failed(myReplicas, RepairFailureType.HOST_DOWN);
+
+        myRepairBackoff.succeeded(myReplicas);
+
+        assertThat(myRepairBackoff.isBackingOff(myReplicas, System.currentTimeMillis())).isFalse();
+
+        long backoff = myRepairBackoff.failed(myReplicas, RepairFailureType.HOST_DOWN);
+        long initialBackoff = RepairFailureType.HOST_DOWN.getInitialBackoffInMs();
+        assertThat(backoff).isBetween(initialBackoff / 2, initialBackoff);
+    }
+
+    @Test
+    public void testLockReleasedStopsLockContentionBackoff()
+    {
+        myRepairBackoff.failed(myReplicas, RepairFailureType.LOCK_CONTENTION);
+        myRepairBackoff.failed(myReplicas, RepairFailureType.LOCK_CONTENTION);
+
+        assertThat(myRepairBackoff.lockReleased(myReplicas)).isTrue();
+        assertThat(myRepairBackoff.isBackingOff(myReplicas, System.currentTimeMillis())).isFalse();
+
+        long backoff = myRepairBackoff.failed(myReplicas, RepairFailureType.LOCK_CONTENTION);
+        long initialBackoff = RepairFailureType.LOCK_CONTENTION.getInitialBackoffInMs();
+        assertThat(backoff).isBetween(initialBackoff / 2, initialBackoff);
+    }
+
+    @Test
+    public void testLockReleasedKeepsOtherBackoff()
+    {
+        myRepairBackoff.failed(myReplicas, RepairFailureType.SESSION_ERROR);
+
+        assertThat(myRepairBackoff.lockReleased(myReplicas)).isFalse();
+        assertThat(myRepairBackoff.lockReleased(myOtherReplicas)).isFalse();
+        assertThat(myRepairBackoff.isBackingOff(myReplicas, System.currentTimeMillis())).isTrue();
+    }
+
+    @Test
+    public void testLockReleasedKeepsOtherFailureCount()
+    {
+        myRepairBackoff.failed(myReplicas, RepairFailureType.SESSION_ERROR);
+        myRepairBackoff.failed(myReplicas, RepairFailureType.LOCK_CONTENTION);
+
+        assertThat(myRepairBackoff.lockReleased(myReplicas)).isTrue();
+
+        long backoff = myRepairBackoff.failed(myReplicas, RepairFailureType.SESSION_ERROR);
+        long expectedBackoff = RepairFailureType.SESSION_ERROR.getInitialBackoffInMs() * 2;
+        assertThat(backoff).isBetween(expectedBackoff / 2, expectedBackoff);
+    }
+
+    @Test
+    public void testRetryDelayWithoutGroups()
+    {
+        assertThat(myRepairBackoff.getRetryDelayInMs(Collections.emptyList(), System.currentTimeMillis())).isEqualTo(0L);
+    }
+
+    @Test
+    public void testRetryDelayWhenOneGroupIsNotBackingOff()
+    {
+        myRepairBackoff.failed(myReplicas, RepairFailureType.SESSION_ERROR);
+
+        long retryDelay = myRepairBackoff.getRetryDelayInMs(Arrays.asList(group(myReplicas), group(myOtherReplicas)),
+                System.currentTimeMillis());
+
+        assertThat(retryDelay).isEqualTo(0L);
+    }
+
+    @Test
+    public void testRetryDelayWhenAllGroupsAreBackingOff()
+    {
+        long now = System.currentTimeMillis();
+        long backoff = myRepairBackoff.failed(myReplicas, RepairFailureType.LOCK_CONTENTION);
+        myRepairBackoff.failed(myOtherReplicas, RepairFailureType.HANG_PREVENTION);
+
+        long retryDelay = myRepairBackoff.getRetryDelayInMs(Arrays.asList(group(myReplicas), group(myOtherReplicas)), now);
+
+        assertThat(retryDelay).isBetween(backoff, backoff + TimeUnit.SECONDS.toMillis(1));
+    }
+
+    private ReplicaRepairGroup group(Set<Node> replicas)
+    {
+        return new ReplicaRepairGroup(ImmutableSet.copyOf(replicas), ImmutableList.of(new LongTokenRange(1, 2)));
+    }
+}
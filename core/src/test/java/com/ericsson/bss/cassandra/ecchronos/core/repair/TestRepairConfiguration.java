@@ -20,6 +20,7 @@ import org.junit.Test;
 import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 
 public class TestRepairConfiguration
 {
@@ -120,6 +121,65 @@ public class TestRepairConfiguration
         assertThat(repairConfiguration.getTargetRepairSizeInBytes()).isEqualTo(1024L);
     }
 
+    @Test
+    public void testSetRepairSessionConcurrency()
+    {
+        RepairConfiguration repairConfiguration = RepairConfiguration.newBuilder()
+                .withRepairSessionConcurrency(4)
+                .build();
+
+        assertThat(repairConfiguration.getRepairSessionConcurrency()).isEqualTo(4);
+        assertThat(RepairConfiguration.newBuilder(repairConfiguration).build().getRepairSessionConcurrency()).isEqualTo(4);
+        assertThat(RepairConfiguration.DEFAULT.getRepairSessionConcurrency()).isEqualTo(1);
+    }
+
+    @Test
+    public void testSetSessionBatching()
+    {
+        RepairConfiguration repairConfiguration = RepairConfiguration.newBuilder()
+                .withMaxRangesPerSession(8)
+                .withTargetSessionTime(5, TimeUnit.MINUTES)
+                .build();
+
+        assertThat(repairConfiguration.getMaxRangesPerSession()).isEqualTo(8);
+        assertThat(repairConfiguration.getTargetSessionTimeInMs()).isEqualTo(TimeUnit.MINUTES.toMillis(5));
+        assertThat(RepairConfiguration.newBuilder(repairConfiguration).build()).isEqualTo(repairConfiguration);
+        assertThat(RepairConfiguration.DEFAULT.getMaxRangesPerSession()).isEqualTo(1);
+    }
+
+    @Test
+    public void testSetInvalidMaxRangesPerSession()
+    {
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> RepairConfiguration.newBuilder().withMaxRangesPerSession(0).build());
+    }
+
+    @Test
+    public void testSetInvalidRepairSessionConcurrency()
+    {
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> RepairConfiguration.newBuilder().withRepairSessionConcurrency(0).build());
+    }
+
+    @Test
+    public void testSetCoalescingSize()
+    {
+        RepairConfiguration repairConfiguration = RepairConfiguration.newBuilder()
+                .withCoalescingSizeInBytes(1024)
+                .build();
+
+        assertThat(repairConfiguration.getCoalescingSizeInBytes()).isEqualTo(1024);
+        assertThat(RepairConfiguration.newBuilder(repairConfiguration).build()).isEqualTo(repairConfiguration);
+        assertThat(RepairConfiguration.DEFAULT.getCoalescingSizeInBytes()).isEqualTo(RepairConfiguration.NO_COALESCING);
+    }
+
+    @Test
+    public void testSetInvalidCoalescingSize()
+    {
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> RepairConfiguration.newBuilder().withCoalescingSizeInBytes(-1).build());
+    }
+
     @Test
     public void testEqualsContract()
     {
@@ -15,6 +15,8 @@
 package com.ericsson.bss.cassandra.ecchronos.core.repair;
 
 import com.ericsson.bss.cassandra.ecchronos.core.JmxProxyFactory;
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.InsufficientNodesException;
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockContendedException;
 import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
 import com.ericsson.bss.cassandra.ecchronos.core.metrics.TableRepairMetrics;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.state.RepairHistory;
@@ -37,6 +39,7 @@ import org.mockito.runners.MockitoJUnitRunner;
 import java.math.BigInteger;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static com.ericsson.bss.cassandra.ecchronos.core.MockTableReferenceFactory.tableReference;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -61,6 +64,9 @@ public class TestRepairGroup
     @Mock
     private JmxProxyFactory myJmxProxyFactory;
 
+    @Mock
+    private RepairNotificationDispatcher myRepairNotificationDispatcher;
+
     @Mock
     private TableRepairMetrics myTableRepairMetrics;
 
@@ -73,6 +79,9 @@ public class TestRepairGroup
     @Mock
     private RepairHistory myRepairHistory;
 
+    @Mock
+    private RepairBackoff myRepairBackoff;
+
     @Mock
     private RepairHistory.RepairSession myRepairSession;
 
@@ -140,6 +149,46 @@ public class TestRepairGroup
         verify(myRepairLockFactory).getLock(eq(myLockFactory), eq(repairResources), eq(metadata), eq(priority));
     }
 
+    @Test
+    public void testGetLockContendedBacksOffForLockContention() throws LockException
+    {
+        verifyLockFailureType(new LockContendedException("contended", -1L), RepairFailureType.LOCK_CONTENTION);
+    }
+
+    @Test
+    public void testGetLockWithInsufficientNodesBacksOffForHostDown() throws LockException
+    {
+        verifyLockFailureType(new InsufficientNodesException("Not sufficient nodes to lock"), RepairFailureType.HOST_DOWN);
+    }
+
+    @Test
+    public void testGetLockFailingBacksOffForLockError() throws LockException
+    {
+        verifyLockFailureType(new LockException(new TimeoutException("Injected failure")), RepairFailureType.LOCK_ERROR);
+    }
+
+    @Test
+    public void testGetLockResources() throws LockException
+    {
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("keyspace", keyspaceName);
+        metadata.put("table", tableName);
+        ReplicaRepairGroup replicaRepairGroup = new ReplicaRepairGroup(ImmutableSet.of(), ImmutableList.of());
+        Set<RepairResource> repairResources = Sets.newHashSet(new RepairResource("DC1", "my-resource"));
+
+        doReturn(repairResources).when(myRepairResourceFactory).getRepairResources(eq(replicaRepairGroup));
+        doReturn(new DummyLock()).when(myRepairLockFactory).getLock(eq(myLockFactory), eq(repairResources), eq(metadata), eq(priority));
+
+        RepairGroup repairGroup = builderFor(replicaRepairGroup).build(priority);
+
+        assertThat(repairGroup.getLockResources()).isEqualTo(repairResources);
+
+        repairGroup.getLock(myLockFactory);
+
+        verify(myRepairResourceFactory).getRepairResources(eq(replicaRepairGroup));
+        verify(myRepairLockFactory).getLock(eq(myLockFactory), eq(repairResources), eq(metadata), eq(priority));
+    }
+
     @Test
     public void testGetRepairTask()
     {
@@ -242,6 +291,46 @@ public class TestRepairGroup
         assertThat(repairTaskRanges).containsExactlyElementsOf(vnodes);
     }
 
+    @Test
+    public void testGetBatchedRepairTasks()
+    {
+        repairConfiguration = RepairConfiguration.newBuilder(repairConfiguration)
+                .withMaxRangesPerSession(2)
+                .build();
+
+        Node node = mockNode("DC1");
+
+        ImmutableList<LongTokenRange> vnodes = ImmutableList.of(
+                new LongTokenRange(1, 2),
+                new LongTokenRange(2, 3),
+                new LongTokenRange(4, 5));
+
+        ReplicaRepairGroup replicaRepairGroup = new ReplicaRepairGroup(ImmutableSet.of(node), vnodes);
+
+        RepairGroup repairGroup = builderFor(replicaRepairGroup).build(priority);
+
+        List<RepairTask> tasks = new ArrayList<>(repairGroup.getRepairTasks());
+
+        assertThat(tasks).hasSize(2);
+        assertThat(tasks.get(0).getTokenRanges()).containsExactlyInAnyOrder(new LongTokenRange(1, 2), new LongTokenRange(2, 3));
+        assertThat(tasks.get(1).getTokenRanges()).containsExactly(new LongTokenRange(4, 5));
+    }
+
+    private void verifyLockFailureType(LockException lockException, RepairFailureType expectedFailureType) throws LockException
+    {
+        ReplicaRepairGroup replicaRepairGroup = new ReplicaRepairGroup(ImmutableSet.of(), ImmutableList.of());
+        Set<RepairResource> repairResources = Sets.newHashSet(new RepairResource("DC1", "my-resource"));
+
+        doReturn(repairResources).when(myRepairResourceFactory).getRepairResources(eq(replicaRepairGroup));
+        doThrow(lockException).when(myRepairLockFactory).getLock(eq(myLockFactory), eq(repairResources), any(), eq(priority));
+
+        RepairGroup repairGroup = builderFor(replicaRepairGroup).withRepairBackoff(myRepairBackoff).build(priority);
+
+        assertThatExceptionOfType(LockException.class).isThrownBy(() -> repairGroup.getLock(myLockFactory)).isSameAs(lockException);
+
+        verify(myRepairBackoff).failed(eq(replicaRepairGroup.getReplicas()), eq(expectedFailureType));
+    }
+
     private RepairGroup.Builder builderFor(ReplicaRepairGroup replicaRepairGroup)
     {
         return RepairGroup.newBuilder()
@@ -249,6 +338,7 @@ public class TestRepairGroup
                 .withRepairConfiguration(repairConfiguration)
                 .withReplicaRepairGroup(replicaRepairGroup)
                 .withJmxProxyFactory(myJmxProxyFactory)
+                .withRepairNotificationDispatcher(myRepairNotificationDispatcher)
                 .withTableRepairMetrics(myTableRepairMetrics)
                 .withRepairResourceFactory(myRepairResourceFactory)
                 .withRepairLockFactory(myRepairLockFactory)
@@ -16,7 +16,9 @@ package com.ericsson.bss.cassandra.ecchronos.core.repair;
 
 import static com.ericsson.bss.cassandra.ecchronos.core.MockTableReferenceFactory.tableReference;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -24,7 +26,12 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -34,6 +41,7 @@ import java.util.function.BiConsumer;
 import javax.management.Notification;
 import javax.management.NotificationListener;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -42,6 +50,7 @@ import org.mockito.runners.MockitoJUnitRunner;
 
 import com.ericsson.bss.cassandra.ecchronos.core.JmxProxy;
 import com.ericsson.bss.cassandra.ecchronos.core.JmxProxyFactory;
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
 import com.ericsson.bss.cassandra.ecchronos.core.metrics.TableRepairMetrics;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.state.RepairHistory;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.state.RepairStatus;
@@ -90,6 +99,16 @@ public class TestRepairGroupTasks
 
     private final ConcurrentMap<LongTokenRange, RepairHistory.RepairSession> repairSessions = new ConcurrentHashMap<>();
 
+    private final RepairBackoff repairBackoff = new RepairBackoff();
+
+    private final ConcurrentMap<Integer, Map<String, String>> repairOptions = new ConcurrentHashMap<>();
+
+    private final ExecutorService sessionExecutor = Executors.newCachedThreadPool();
+
+    private final RepairNotificationDispatcher repairNotificationDispatcher = new RepairNotificationDispatcher();
+
+    private final AtomicInteger terminatedRepairs = new AtomicInteger();
+
     @Before
     public void init()
     {
@@ -107,6 +126,13 @@ public class TestRepairGroupTasks
         });
     }
 
+    @After
+    public void cleanup()
+    {
+        sessionExecutor.shutdownNow();
+        repairNotificationDispatcher.close();
+    }
+
     @Test
     public void testExecute() throws Exception
     {
@@ -117,7 +143,7 @@ public class TestRepairGroupTasks
                 ImmutableList.of(range(1, 2)));
         Set<RepairResource> repairResources = Sets.newHashSet(new RepairResource("DC1", "my-resource"));
 
-        when(mockJmxProxyFactory.connect()).thenReturn(new CustomJmxProxy((notificationListener, i) -> progressAndComplete(notificationListener, range(1, 2))));
+        when(mockJmxProxyFactory.connect()).thenReturn(new CustomJmxProxy((notificationListener, i) -> progressAndComplete(notificationListener, i, range(1, 2))));
 
         when(mockRepairResourceFactory.getRepairResources(eq(replicaRepairGroup))).thenReturn(repairResources);
         when(mockRepairLockFactory.getLock(eq(mockLockFactory), eq(repairResources), eq(metadata), eq(priority))).thenReturn(new DummyLock());
@@ -148,7 +174,7 @@ public class TestRepairGroupTasks
         when(mockJmxProxyFactory.connect()).thenReturn(new CustomJmxProxy((notificationListener, i) -> {
             if (i == 1) // First repair
             {
-                progressAndComplete(notificationListener, range(1, 2));
+                progressAndComplete(notificationListener, i, range(1, 2));
             }
             // After first repair task has completed we stop next task.
             // If this doesn't work a timeout will occur as the repair task
@@ -168,6 +194,481 @@ public class TestRepairGroupTasks
         verify(repairSessions.get(range(2, 3)), never()).finish(RepairStatus.FAILED);
     }
 
+    @Test (timeout = 1000L)
+    public void testExecuteWithUnwindContinuesLater() throws Exception
+    {
+        repairConfiguration = RepairConfiguration.newBuilder(repairConfiguration)
+                .withRepairUnwindRatio(1.0d)
+                .build();
+        ReplicaRepairGroup replicaRepairGroup = new ReplicaRepairGroup(ImmutableSet.of(withNode("127.0.0.1")),
+                ImmutableList.of(range(1, 2), range(2, 3)));
+
+        when(mockJmxProxyFactory.connect()).thenReturn(new CustomJmxProxy((notificationListener, i) -> {
+            if (i == 1)
+            {
+                progressAndComplete(notificationListener, i, range(1, 2));
+            }
+            else
+            {
+                progressAndComplete(notificationListener, i, range(2, 3));
+            }
+        }));
+
+        RepairGroup repairGroup = builderFor(replicaRepairGroup).build(priority);
+
+        assertThat(repairGroup.execute()).isTrue();
+        assertThat(repairGroup.isFinished()).isFalse();
+        assertThat(repairGroup.getCooldownInMs()).isGreaterThanOrEqualTo(1L);
+
+        verify(repairSessions.get(range(1, 2))).finish(RepairStatus.SUCCESS);
+        verify(repairSessions.get(range(2, 3)), never()).start();
+
+        assertThat(repairGroup.execute()).isTrue();
+        assertThat(repairGroup.isFinished()).isTrue();
+        assertThat(repairGroup.getCooldownInMs()).isGreaterThanOrEqualTo(1L);
+
+        verify(repairSessions.get(range(2, 3))).start();
+        verify(repairSessions.get(range(2, 3))).finish(RepairStatus.SUCCESS);
+    }
+
+    @Test (timeout = 1000L)
+    public void testExecuteYieldsWhenPreempted() throws Exception
+    {
+        ReplicaRepairGroup replicaRepairGroup = new ReplicaRepairGroup(ImmutableSet.of(withNode("127.0.0.1")),
+                ImmutableList.of(range(1, 2), range(2, 3)));
+
+        when(mockJmxProxyFactory.connect()).thenReturn(new CustomJmxProxy((notificationListener, i) -> {
+            if (i == 1)
+            {
+                progressAndComplete(notificationListener, i, range(1, 2));
+            }
+            else
+            {
+                progressAndComplete(notificationListener, i, range(2, 3));
+            }
+        }));
+
+        AtomicBoolean preempted = new AtomicBoolean(true);
+        RepairGroup repairGroup = builderFor(replicaRepairGroup).build(priority);
+        repairGroup.setPreemptionSignal(preempted::get);
+
+        assertThat(repairGroup.execute()).isTrue();
+        assertThat(repairGroup.isFinished()).isFalse();
+        assertThat(repairGroup.getCooldownInMs()).isEqualTo(0L);
+
+        verify(repairSessions.get(range(1, 2))).finish(RepairStatus.SUCCESS);
+        verify(repairSessions.get(range(2, 3)), never()).start();
+
+        preempted.set(false);
+
+        assertThat(repairGroup.execute()).isTrue();
+        assertThat(repairGroup.isFinished()).isTrue();
+
+        verify(repairSessions.get(range(2, 3))).start();
+        verify(repairSessions.get(range(2, 3))).finish(RepairStatus.SUCCESS);
+    }
+
+    @Test (timeout = 5000L)
+    public void testExecuteWithSessionConcurrency() throws Exception
+    {
+        repairConfiguration = RepairConfiguration.newBuilder(repairConfiguration)
+                .withRepairSessionConcurrency(2)
+                .build();
+        ReplicaRepairGroup replicaRepairGroup = new ReplicaRepairGroup(ImmutableSet.of(withNode("127.0.0.1")),
+                ImmutableList.of(range(1, 2), range(2, 3), range(3, 4)));
+
+        CountDownLatch started = new CountDownLatch(2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        when(mockJmxProxyFactory.connect()).thenReturn(new CustomJmxProxy((notificationListener, i) -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            started.countDown();
+            awaitUninterruptibly(started);
+            running.decrementAndGet();
+            progressAndComplete(notificationListener, i, rangeOf(i));
+        }));
+
+        RepairGroup repairGroup = builderFor(replicaRepairGroup).build(priority);
+
+        assertThat(repairGroup.execute()).isTrue();
+        assertThat(repairGroup.isFinished()).isTrue();
+        assertThat(maxRunning.get()).isEqualTo(2);
+
+        verify(repairSessions.get(range(1, 2))).finish(RepairStatus.SUCCESS);
+        verify(repairSessions.get(range(2, 3))).finish(RepairStatus.SUCCESS);
+        verify(repairSessions.get(range(3, 4))).finish(RepairStatus.SUCCESS);
+    }
+
+    @Test (timeout = 5000L)
+    public void testExecuteWithSessionConcurrencyTracksFailurePerRange() throws Exception
+    {
+        repairConfiguration = RepairConfiguration.newBuilder(repairConfiguration)
+                .withRepairSessionConcurrency(2)
+                .build();
+        ReplicaRepairGroup replicaRepairGroup = new ReplicaRepairGroup(ImmutableSet.of(withNode("127.0.0.1")),
+                ImmutableList.of(range(1, 2), range(2, 3)));
+
+        when(mockJmxProxyFactory.connect()).thenReturn(new CustomJmxProxy((notificationListener, i) -> {
+            LongTokenRange range = rangeOf(i);
+            if (range.equals(range(1, 2)))
+            {
+                complete(notificationListener, i);
+            }
+            else
+            {
+                progressAndComplete(notificationListener, i, range);
+            }
+        }));
+
+        RepairGroup repairGroup = builderFor(replicaRepairGroup).build(priority);
+
+        assertThat(repairGroup.execute()).isFalse();
+        assertThat(repairGroup.isFinished()).isTrue();
+        assertThat(repairBackoff.isBackingOff(replicaRepairGroup.getReplicas(), System.currentTimeMillis())).isTrue();
+
+        verify(repairSessions.get(range(1, 2))).finish(RepairStatus.FAILED);
+        verify(repairSessions.get(range(2, 3))).finish(RepairStatus.SUCCESS);
+    }
+
+    @Test (timeout = 5000L)
+    public void testFailedSessionDoesNotTerminateConcurrentSession() throws Exception
+    {
+        repairConfiguration = RepairConfiguration.newBuilder(repairConfiguration)
+                .withRepairSessionConcurrency(2)
+                .build();
+        ReplicaRepairGroup replicaRepairGroup = new ReplicaRepairGroup(ImmutableSet.of(withNode("127.0.0.1")),
+                ImmutableList.of(range(1, 2), range(2, 3)));
+
+        CountDownLatch otherStarted = new CountDownLatch(1);
+        AtomicReference<Runnable> completeOther = new AtomicReference<>();
+
+        when(mockJmxProxyFactory.connect()).thenReturn(new CustomJmxProxy((notificationListener, i) -> {
+            LongTokenRange range = rangeOf(i);
+            if (range.equals(range(1, 2)))
+            {
+                awaitUninterruptibly(otherStarted);
+                complete(notificationListener, i);
+            }
+            else
+            {
+                completeOther.set(() -> progressAndComplete(notificationListener, i, range));
+                otherStarted.countDown();
+            }
+        }));
+        AtomicInteger terminatedBeforeOtherFinished = new AtomicInteger(-1);
+        doAnswer(invocation -> {
+            terminatedBeforeOtherFinished.set(terminatedRepairs.get());
+            completeOther.get().run();
+            return null;
+        }).when(mockTableRepairMetrics).repairTiming(eq(tableReference), anyLong(), any(TimeUnit.class), eq(false));
+
+        RepairGroup repairGroup = builderFor(replicaRepairGroup).build(priority);
+
+        assertThat(repairGroup.execute()).isFalse();
+        assertThat(terminatedBeforeOtherFinished.get()).isEqualTo(0);
+        // The sessions of the failed repair are terminated when the concurrent session has finished
+        assertThat(terminatedRepairs.get()).isEqualTo(1);
+
+        verify(repairSessions.get(range(1, 2))).finish(RepairStatus.FAILED);
+        verify(repairSessions.get(range(2, 3))).finish(RepairStatus.SUCCESS);
+    }
+
+    @Test (timeout = 5000L)
+    public void testFailedSessionTerminatesWhenRunningAlone() throws Exception
+    {
+        ReplicaRepairGroup replicaRepairGroup = new ReplicaRepairGroup(ImmutableSet.of(withNode("127.0.0.1")),
+                ImmutableList.of(range(1, 2)));
+
+        when(mockJmxProxyFactory.connect()).thenReturn(new CustomJmxProxy((notificationListener, i) -> complete(notificationListener, i)));
+
+        RepairGroup repairGroup = builderFor(replicaRepairGroup).build(priority);
+
+        assertThat(repairGroup.execute()).isFalse();
+        assertThat(terminatedRepairs.get()).isEqualTo(1);
+    }
+
+    @Test (timeout = 5000L)
+    public void testInterruptedGroupStopsRunningSessions() throws Exception
+    {
+        repairConfiguration = RepairConfiguration.newBuilder(repairConfiguration)
+                .withRepairSessionConcurrency(2)
+                .build();
+        ReplicaRepairGroup replicaRepairGroup = new ReplicaRepairGroup(ImmutableSet.of(withNode("127.0.0.1")),
+                ImmutableList.of(range(1, 2), range(2, 3), range(3, 4)));
+
+        CountDownLatch started = new CountDownLatch(2);
+        when(mockJmxProxyFactory.connect()).thenReturn(new CustomJmxProxy((notificationListener, i) -> started.countDown()));
+
+        RepairGroup repairGroup = builderFor(replicaRepairGroup).build(priority);
+        AtomicBoolean result = new AtomicBoolean(true);
+        Thread thread = new Thread(() -> result.set(repairGroup.execute()));
+        thread.start();
+
+        started.await();
+        thread.interrupt();
+        thread.join();
+
+        assertThat(result.get()).isFalse();
+        verify(repairSessions.get(range(1, 2))).finish(RepairStatus.FAILED);
+        verify(repairSessions.get(range(2, 3))).finish(RepairStatus.FAILED);
+        verify(repairSessions.get(range(3, 4)), never()).start();
+    }
+
+    @Test (timeout = 5000L)
+    public void testInterruptedSessionStopsGroup() throws Exception
+    {
+        repairConfiguration = RepairConfiguration.newBuilder(repairConfiguration)
+                .withRepairSessionConcurrency(2)
+                .build();
+        ReplicaRepairGroup replicaRepairGroup = new ReplicaRepairGroup(ImmutableSet.of(withNode("127.0.0.1")),
+                ImmutableList.of(range(1, 2), range(2, 3), range(3, 4), range(4, 5)));
+        Set<LongTokenRange> finishedRanges = ConcurrentHashMap.newKeySet();
+
+        CountDownLatch otherStarted = new CountDownLatch(1);
+        AtomicReference<Runnable> completeOther = new AtomicReference<>();
+        AtomicReference<Thread> interruptedThread = new AtomicReference<>();
+
+        // The other session is completed after the result of the interrupted session has been queued
+        ExecutorService executor = new ThreadPoolExecutor(2, 2, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>())
+        {
+            @Override
+            protected void afterExecute(Runnable r, Throwable t)
+            {
+                if (Thread.currentThread() == interruptedThread.get())
+                {
+                    completeOther.get().run();
+                }
+            }
+        };
+
+        when(mockJmxProxyFactory.connect()).thenReturn(new CustomJmxProxy((notificationListener, i) -> {
+            LongTokenRange range = rangeOf(i);
+            if (range.equals(range(1, 2)))
+            {
+                awaitUninterruptibly(otherStarted);
+                interruptedThread.set(Thread.currentThread());
+                Thread.currentThread().interrupt();
+            }
+            else if (range.equals(range(2, 3)))
+            {
+                completeOther.set(() -> progressAndComplete(notificationListener, i, range));
+                otherStarted.countDown();
+            }
+            else
+            {
+                progressAndComplete(notificationListener, i, range);
+            }
+        }));
+
+        RepairGroup repairGroup = builderFor(replicaRepairGroup)
+                .withFinishedRanges(finishedRanges)
+                .withSessionExecutor(executor)
+                .build(priority);
+
+        try
+        {
+            assertThat(repairGroup.execute()).isFalse();
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        assertThat(finishedRanges).containsExactly(range(2, 3));
+        assertThat(repairBackoff.isBackingOff(replicaRepairGroup.getReplicas(), System.currentTimeMillis())).isFalse();
+
+        verify(repairSessions.get(range(1, 2))).finish(RepairStatus.FAILED);
+        verify(repairSessions.get(range(2, 3))).finish(RepairStatus.SUCCESS);
+        verify(repairSessions.get(range(3, 4)), never()).start();
+        verify(repairSessions.get(range(4, 5)), never()).start();
+    }
+
+    @Test (timeout = 5000L)
+    public void testInterruptedRangeIsRepairedWhenRunAgain() throws Exception
+    {
+        ReplicaRepairGroup replicaRepairGroup = new ReplicaRepairGroup(ImmutableSet.of(withNode("127.0.0.1")),
+                ImmutableList.of(range(1, 2), range(2, 3)));
+        Set<LongTokenRange> finishedRanges = ConcurrentHashMap.newKeySet();
+
+        when(mockJmxProxyFactory.connect()).thenReturn(new CustomJmxProxy((notificationListener, i) -> {
+            if (i == 1)
+            {
+                Thread.currentThread().interrupt();
+            }
+            else
+            {
+                progressAndComplete(notificationListener, i, rangeOf(i));
+            }
+        }));
+
+        RepairGroup repairGroup = builderFor(replicaRepairGroup)
+                .withFinishedRanges(finishedRanges)
+                .build(priority);
+
+        assertThat(repairGroup.execute()).isFalse();
+        assertThat(Thread.interrupted()).isTrue();
+        assertThat(finishedRanges).isEmpty();
+
+        RepairHistory.RepairSession interruptedSession = repairSessions.get(range(1, 2));
+        verify(interruptedSession).finish(RepairStatus.FAILED);
+        verify(repairSessions.get(range(2, 3)), never()).start();
+
+        assertThat(repairGroup.execute()).isTrue();
+        assertThat(repairGroup.isFinished()).isTrue();
+        assertThat(finishedRanges).isEmpty();
+
+        assertThat(repairSessions.get(range(1, 2))).isNotSameAs(interruptedSession);
+        verify(repairSessions.get(range(1, 2))).finish(RepairStatus.SUCCESS);
+        verify(repairSessions.get(range(2, 3))).finish(RepairStatus.SUCCESS);
+    }
+
+    @Test (timeout = 5000L)
+    public void testExecuteWithUnwindReportsFailureOfConcurrentSession() throws Exception
+    {
+        repairConfiguration = RepairConfiguration.newBuilder(repairConfiguration)
+                .withRepairSessionConcurrency(2)
+                .withRepairUnwindRatio(1.0d)
+                .build();
+        ReplicaRepairGroup replicaRepairGroup = new ReplicaRepairGroup(ImmutableSet.of(withNode("127.0.0.1")),
+                ImmutableList.of(range(1, 2), range(2, 3), range(3, 4), range(4, 5)));
+
+        when(mockJmxProxyFactory.connect()).thenReturn(new CustomJmxProxy((notificationListener, i) -> {
+            LongTokenRange range = rangeOf(i);
+            if (range.equals(range(1, 2)))
+            {
+                complete(notificationListener, i);
+            }
+            else
+            {
+                progressAndComplete(notificationListener, i, range);
+            }
+        }));
+
+        RepairGroup repairGroup = builderFor(replicaRepairGroup).build(priority);
+
+        assertThat(repairGroup.execute()).isFalse();
+        assertThat(repairGroup.isFinished()).isFalse();
+        assertThat(repairGroup.getCooldownInMs()).isGreaterThanOrEqualTo(1L);
+
+        verify(repairSessions.get(range(1, 2))).finish(RepairStatus.FAILED);
+        verify(repairSessions.get(range(4, 5)), never()).start();
+    }
+
+    @Test
+    public void testExecuteAfterFailureReportsSuccess() throws Exception
+    {
+        ReplicaRepairGroup replicaRepairGroup = new ReplicaRepairGroup(ImmutableSet.of(withNode("127.0.0.1")),
+                ImmutableList.of(range(1, 2)));
+
+        when(mockJmxProxyFactory.connect()).thenReturn(new CustomJmxProxy((notificationListener, i) -> {
+            if (i == 1)
+            {
+                complete(notificationListener, i);
+            }
+            else
+            {
+                progressAndComplete(notificationListener, i, range(1, 2));
+            }
+        }));
+
+        RepairGroup repairGroup = builderFor(replicaRepairGroup).build(priority);
+
+        assertThat(repairGroup.execute()).isFalse();
+        assertThat(repairGroup.isFinished()).isTrue();
+
+        assertThat(repairGroup.execute()).isTrue();
+        assertThat(repairGroup.isFinished()).isTrue();
+        assertThat(repairBackoff.isBackingOff(replicaRepairGroup.getReplicas(), System.currentTimeMillis())).isFalse();
+    }
+
+    @Test
+    public void testExecuteWithoutUnwindHasNoCooldown() throws Exception
+    {
+        ReplicaRepairGroup replicaRepairGroup = new ReplicaRepairGroup(ImmutableSet.of(withNode("127.0.0.1")),
+                ImmutableList.of(range(1, 2)));
+
+        when(mockJmxProxyFactory.connect()).thenReturn(new CustomJmxProxy((notificationListener, i) -> progressAndComplete(notificationListener, i, range(1, 2))));
+
+        RepairGroup repairGroup = builderFor(replicaRepairGroup).build(priority);
+
+        assertThat(repairGroup.execute()).isTrue();
+        assertThat(repairGroup.isFinished()).isTrue();
+        assertThat(repairGroup.getCooldownInMs()).isEqualTo(0L);
+    }
+
+    @Test
+    public void testExecuteFailureBacksOffReplicas() throws Exception
+    {
+        ReplicaRepairGroup replicaRepairGroup = new ReplicaRepairGroup(ImmutableSet.of(withNode("127.0.0.1")),
+                ImmutableList.of(range(1, 2)));
+
+        when(mockJmxProxyFactory.connect()).thenReturn(new CustomJmxProxy((notificationListener, i) -> complete(notificationListener, i)));
+
+        RepairGroup repairGroup = builderFor(replicaRepairGroup).build(priority);
+
+        assertThat(repairGroup.execute()).isFalse();
+        assertThat(repairBackoff.isBackingOff(replicaRepairGroup.getReplicas(), System.currentTimeMillis())).isTrue();
+
+        verify(repairSessions.get(range(1, 2))).finish(RepairStatus.FAILED);
+    }
+
+    @Test
+    public void testExecuteSuccessResetsBackoff() throws Exception
+    {
+        ReplicaRepairGroup replicaRepairGroup = new ReplicaRepairGroup(ImmutableSet.of(withNode("127.0.0.1")),
+                ImmutableList.of(range(1, 2)));
+        repairBackoff.failed(replicaRepairGroup.getReplicas(), RepairFailureType.SESSION_ERROR);
+
+        when(mockJmxProxyFactory.connect()).thenReturn(new CustomJmxProxy((notificationListener, i) -> progressAndComplete(notificationListener, i, range(1, 2))));
+
+        RepairGroup repairGroup = builderFor(replicaRepairGroup).build(priority);
+
+        assertThat(repairGroup.execute()).isTrue();
+        assertThat(repairBackoff.isBackingOff(replicaRepairGroup.getReplicas(), System.currentTimeMillis())).isFalse();
+    }
+
+    @Test
+    public void testGetLockFailureBacksOffReplicas() throws Exception
+    {
+        ReplicaRepairGroup replicaRepairGroup = new ReplicaRepairGroup(ImmutableSet.of(withNode("127.0.0.1")),
+                ImmutableList.of(range(1, 2)));
+        Set<RepairResource> repairResources = Sets.newHashSet(new RepairResource("DC1", "my-resource"));
+
+        when(mockRepairResourceFactory.getRepairResources(eq(replicaRepairGroup))).thenReturn(repairResources);
+        when(mockRepairLockFactory.getLock(eq(mockLockFactory), eq(repairResources), any(), eq(priority))).thenThrow(new LockException("Expected exception"));
+
+        RepairGroup repairGroup = builderFor(replicaRepairGroup).build(priority);
+
+        assertThatExceptionOfType(LockException.class).isThrownBy(() -> repairGroup.getLock(mockLockFactory));
+        assertThat(repairBackoff.isBackingOff(replicaRepairGroup.getReplicas(), System.currentTimeMillis())).isTrue();
+    }
+
+    private void complete(NotificationListener notificationListener, int repair)
+    {
+        Notification notification = new Notification("progress", "repair:" + repair, 0, "Done with repair");
+        notification.setUserData(getNotificationData(RepairTask.ProgressEventType.COMPLETE.ordinal(), 1, 1));
+        notificationListener.handleNotification(notification, null);
+    }
+
+    private LongTokenRange rangeOf(int repair)
+    {
+        String[] range = repairOptions.get(repair).get(RepairOptions.RANGES_KEY).split("[:,]");
+        return range(Long.parseLong(range[0]), Long.parseLong(range[1]));
+    }
+
+    private void awaitUninterruptibly(CountDownLatch latch)
+    {
+        try
+        {
+            latch.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private RepairGroup.Builder builderFor(ReplicaRepairGroup replicaRepairGroup)
     {
         return RepairGroup.newBuilder()
@@ -175,19 +676,21 @@ public class TestRepairGroupTasks
                 .withRepairConfiguration(repairConfiguration)
                 .withReplicaRepairGroup(replicaRepairGroup)
                 .withJmxProxyFactory(mockJmxProxyFactory)
+                .withRepairNotificationDispatcher(repairNotificationDispatcher)
                 .withTableRepairMetrics(mockTableRepairMetrics)
                 .withRepairResourceFactory(mockRepairResourceFactory)
                 .withRepairLockFactory(mockRepairLockFactory)
                 .withRepairHistory(mockRepairHistory)
+                .withRepairBackoff(repairBackoff)
+                .withSessionExecutor(sessionExecutor)
                 .withJobId(jobId);
     }
 
-    private void progressAndComplete(NotificationListener notificationListener, LongTokenRange range)
+    private void progressAndComplete(NotificationListener notificationListener, int repair, LongTokenRange range)
     {
-        // Normally the repair session id would be used here but
-        // since we run this before repairAsync has completed we
-        // have to use 0
-        String repairSession = "repair:0";
+        // The notifications are sent before repairAsync has completed,
+        // they are kept by the dispatcher until the repair is registered
+        String repairSession = "repair:" + repair;
 
         Notification notification = new Notification("progress", repairSession, 0, getRepairMessage(range));
         notification.setUserData(getNotificationData(RepairTask.ProgressEventType.PROGRESS.ordinal(), 1, 1));
@@ -256,10 +759,17 @@ public class TestRepairGroupTasks
             throw new UnsupportedOperationException();
         }
 
+        @Override
+        public Object getConnectionIdentity()
+        {
+            return this;
+        }
+
         @Override
         public int repairAsync(String keyspace, Map<String, String> options)
         {
             int repair = repairCount.incrementAndGet();
+            repairOptions.put(repair, options);
             onRepair.accept(notificationListener.get(), repair);
             return repair;
         }
@@ -267,7 +777,7 @@ public class TestRepairGroupTasks
         @Override
         public void forceTerminateAllRepairSessions()
         {
-            throw new UnsupportedOperationException();
+            terminatedRepairs.incrementAndGet();
         }
 
         @Override
@@ -14,25 +14,38 @@
  */
 package com.ericsson.bss.cassandra.ecchronos.core.repair;
 
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.InsufficientNodesException;
 import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
 import com.ericsson.bss.cassandra.ecchronos.core.scheduling.LockFactory;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.mockito.Matchers.anyCollectionOf;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyMapOf;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -51,6 +64,20 @@ public class TestRepairLockFactoryImpl
     public void setup()
     {
         when(mockLockFactory.getCachedFailure(anyString(), anyString())).thenReturn(Optional.empty());
+        when(mockLockFactory.tryLocksAsync(anyString(), anyCollectionOf(String.class), anyInt(), anyMapOf(String.class, String.class))).thenAnswer(invocation ->
+        {
+            String dataCenter = (String) invocation.getArguments()[0];
+            Collection<String> resources = (Collection<String>) invocation.getArguments()[1];
+            int priority = (int) invocation.getArguments()[2];
+            Map<String, String> metadata = (Map<String, String>) invocation.getArguments()[3];
+
+            Map<String, ListenableFuture<LockFactory.DistributedLock>> locks = new HashMap<>();
+            for (String resource : resources)
+            {
+                locks.put(resource, mockLockFactory.tryLockAsync(dataCenter, resource, priority, metadata));
+            }
+            return locks;
+        });
     }
 
     @Test
@@ -88,7 +115,8 @@ public class TestRepairLockFactoryImpl
         withoutSufficientNodesForLocking(repairResource);
         withSuccessfulLocking(repairResource, priority, metadata);
 
-        verifyExceptionIsThrownWhenGettingLock(repairLockFactory, priority, metadata, repairResource);
+        assertThatExceptionOfType(InsufficientNodesException.class)
+                .isThrownBy(() -> repairLockFactory.getLock(mockLockFactory, Sets.newHashSet(repairResource), metadata, priority));
     }
 
     @Test
@@ -198,9 +226,215 @@ public class TestRepairLockFactoryImpl
         verifyNoLockWasTried();
     }
 
+    @Test
+    public void testMultipleLocksOneFailingReleasesAcquiredLock() throws LockException
+    {
+        RepairResource repairResourceDc1 = new RepairResource("DC1", "my-resource-dc1");
+        RepairResource repairResourceDc2 = new RepairResource("DC2", "my-resource-dc2");
+        RepairLockFactoryImpl repairLockFactory = new RepairLockFactoryImpl();
+        Map<String, String> metadata = Collections.singletonMap("metadatakey", "metadatavalue");
+        int priority = 1;
+
+        withSufficientNodesForLocking(repairResourceDc1);
+        withUnsuccessfulLocking(repairResourceDc1, priority, metadata);
+
+        withSufficientNodesForLocking(repairResourceDc2);
+        withSuccessfulLocking(repairResourceDc2, priority, metadata);
+
+        verifyExceptionIsThrownWhenGettingLock(repairLockFactory, priority, metadata, repairResourceDc1, repairResourceDc2);
+
+        verify(mockLockFactory).tryLockAsync(eq(repairResourceDc2.getDataCenter()), eq(repairResourceDc2.getResourceName(LOCKS_PER_RESOURCE)), eq(priority), eq(metadata));
+        verify(mockLock).close();
+    }
+
+    @Test (timeout = 5000)
+    public void testMultipleLocksAreAcquiredConcurrently() throws LockException
+    {
+        RepairResource repairResourceDc1 = new RepairResource("DC1", "my-resource-dc1");
+        RepairResource repairResourceDc2 = new RepairResource("DC2", "my-resource-dc2");
+        RepairLockFactoryImpl repairLockFactory = new RepairLockFactoryImpl();
+        Map<String, String> metadata = Collections.singletonMap("metadatakey", "metadatavalue");
+        int priority = 1;
+
+        withSufficientNodesForLocking(repairResourceDc1);
+        withSufficientNodesForLocking(repairResourceDc2);
+
+        // The locks are only acquired when both have been requested
+        List<SettableFuture<LockFactory.DistributedLock>> lockFutures = new ArrayList<>();
+        doAnswer(invocation ->
+        {
+            SettableFuture<LockFactory.DistributedLock> lockFuture = SettableFuture.create();
+            lockFutures.add(lockFuture);
+            if (lockFutures.size() == 2)
+            {
+                lockFutures.forEach(f -> f.set(mockLock));
+            }
+            return lockFuture;
+        }).when(mockLockFactory).tryLockAsync(anyString(), anyString(), anyInt(), anyMapOf(String.class, String.class));
+
+        try (LockFactory.DistributedLock lock = repairLockFactory.getLock(mockLockFactory, Sets.newHashSet(repairResourceDc1, repairResourceDc2), metadata, priority))
+        {
+            assertThat(lock).isNotNull();
+        }
+
+        assertThat(lockFutures).hasSize(2);
+        verify(mockLock, times(2)).close();
+    }
+
+    @Test
+    public void testMultipleLocksInSameDataCenterAreLockedTogether() throws LockException
+    {
+        RepairResource repairResourceDc1 = new RepairResource("DC1", "my-resource-dc1");
+        RepairResource repairResourceVnodeDc1 = new RepairResource("DC1", "my-resource-vnode-dc1");
+        RepairResource repairResourceDc2 = new RepairResource("DC2", "my-resource-dc2");
+        RepairLockFactoryImpl repairLockFactory = new RepairLockFactoryImpl();
+        Map<String, String> metadata = Collections.singletonMap("metadatakey", "metadatavalue");
+        int priority = 1;
+
+        withSufficientNodesForLocking(repairResourceDc1);
+        withSufficientNodesForLocking(repairResourceVnodeDc1);
+        withSufficientNodesForLocking(repairResourceDc2);
+
+        withSuccessfulLocking(repairResourceDc1, priority, metadata);
+        withSuccessfulLocking(repairResourceVnodeDc1, priority, metadata);
+        withSuccessfulLocking(repairResourceDc2, priority, metadata);
+
+        verifyLocksAreTriedWhenGettingLock(repairLockFactory, priority, metadata, repairResourceDc1, repairResourceVnodeDc1, repairResourceDc2);
+
+        ArgumentCaptor<Collection> resourcesCaptor = ArgumentCaptor.forClass(Collection.class);
+        verify(mockLockFactory).tryLocksAsync(eq("DC1"), resourcesCaptor.capture(), eq(priority), eq(metadata));
+        assertThat(resourcesCaptor.getValue()).containsOnly(repairResourceDc1.getResourceName(LOCKS_PER_RESOURCE), repairResourceVnodeDc1.getResourceName(LOCKS_PER_RESOURCE));
+        verify(mockLockFactory).tryLocksAsync(eq("DC2"), eq(Collections.singletonList(repairResourceDc2.getResourceName(LOCKS_PER_RESOURCE))), eq(priority), eq(metadata));
+    }
+
+    @Test
+    public void testLockFactoryWithoutLockReturnsException() throws LockException
+    {
+        RepairResource repairResource = new RepairResource("DC1", "my-resource");
+        RepairLockFactoryImpl repairLockFactory = new RepairLockFactoryImpl();
+        Map<String, String> metadata = Collections.singletonMap("metadatakey", "metadatavalue");
+        int priority = 1;
+
+        withSufficientNodesForLocking(repairResource);
+        when(mockLockFactory.tryLockAsync(eq(repairResource.getDataCenter()), eq(repairResource.getResourceName(LOCKS_PER_RESOURCE)), eq(priority), eq(metadata)))
+                .thenReturn(Futures.immediateFuture(null));
+
+        verifyExceptionIsThrownWhenGettingLock(repairLockFactory, priority, metadata, repairResource);
+    }
+
+    @Test
+    public void testSecondSlotIsLockedWhenFirstSlotFails() throws LockException
+    {
+        RepairResource repairResource = new RepairResource("DC1", "my-resource");
+        RepairLockFactoryImpl repairLockFactory = RepairLockFactoryImpl.builder()
+                .withLocksPerResource(2)
+                .build();
+        Map<String, String> metadata = Collections.singletonMap("metadatakey", "metadatavalue");
+        int priority = 1;
+
+        withSufficientNodesForLocking(repairResource, 1);
+        withSufficientNodesForLocking(repairResource, 2);
+        withUnsuccessfulLocking(repairResource, 1, priority, metadata);
+        withSuccessfulLocking(repairResource, 2, priority, metadata);
+
+        try (LockFactory.DistributedLock lock = repairLockFactory.getLock(mockLockFactory, Sets.newHashSet(repairResource), metadata, priority))
+        {
+            assertThat(lock).isNotNull();
+        }
+
+        verify(mockLockFactory).tryLockAsync(eq(repairResource.getDataCenter()), eq(repairResource.getResourceName(1)), eq(priority), eq(metadata));
+        verify(mockLockFactory).tryLockAsync(eq(repairResource.getDataCenter()), eq(repairResource.getResourceName(2)), eq(priority), eq(metadata));
+        verify(mockLock).close();
+    }
+
+    @Test
+    public void testSlotWithCachedFailureIsNotTried() throws LockException
+    {
+        RepairResource repairResource = new RepairResource("DC1", "my-resource");
+        RepairLockFactoryImpl repairLockFactory = RepairLockFactoryImpl.builder()
+                .withLocksPerResource(2)
+                .build();
+        Map<String, String> metadata = Collections.singletonMap("metadatakey", "metadatavalue");
+        int priority = 1;
+
+        withSufficientNodesForLocking(repairResource, 1);
+        withSufficientNodesForLocking(repairResource, 2);
+        withUnsuccessfulCachedLock(repairResource, 1);
+        withSuccessfulLocking(repairResource, 2, priority, metadata);
+
+        try (LockFactory.DistributedLock lock = repairLockFactory.getLock(mockLockFactory, Sets.newHashSet(repairResource), metadata, priority))
+        {
+            assertThat(lock).isNotNull();
+        }
+
+        verify(mockLockFactory, never()).tryLockAsync(anyString(), eq(repairResource.getResourceName(1)), anyInt(), anyMapOf(String.class, String.class));
+        verify(mockLockFactory).tryLockAsync(eq(repairResource.getDataCenter()), eq(repairResource.getResourceName(2)), eq(priority), eq(metadata));
+    }
+
+    @Test
+    public void testAllSlotsWithCachedFailure()
+    {
+        RepairResource repairResource = new RepairResource("DC1", "my-resource");
+        RepairLockFactoryImpl repairLockFactory = RepairLockFactoryImpl.builder()
+                .withLocksPerResource(2)
+                .build();
+        Map<String, String> metadata = Collections.singletonMap("metadatakey", "metadatavalue");
+        int priority = 1;
+
+        withSufficientNodesForLocking(repairResource, 1);
+        withSufficientNodesForLocking(repairResource, 2);
+        withUnsuccessfulCachedLock(repairResource, 1);
+        withUnsuccessfulCachedLock(repairResource, 2);
+
+        verifyExceptionIsThrownWhenGettingLock(repairLockFactory, priority, metadata, repairResource);
+        verify(mockLockFactory, never()).tryLocksAsync(anyString(), anyCollectionOf(String.class), anyInt(), anyMapOf(String.class, String.class));
+    }
+
+    @Test
+    public void testAllSlotsFailing()
+    {
+        RepairResource repairResource = new RepairResource("DC1", "my-resource");
+        RepairLockFactoryImpl repairLockFactory = RepairLockFactoryImpl.builder()
+                .withLocksPerResource(2)
+                .build();
+        Map<String, String> metadata = Collections.singletonMap("metadatakey", "metadatavalue");
+        int priority = 1;
+
+        withSufficientNodesForLocking(repairResource, 1);
+        withSufficientNodesForLocking(repairResource, 2);
+        withUnsuccessfulLocking(repairResource, 1, priority, metadata);
+        withUnsuccessfulLocking(repairResource, 2, priority, metadata);
+
+        verifyExceptionIsThrownWhenGettingLock(repairLockFactory, priority, metadata, repairResource);
+    }
+
+    @Test
+    public void testLocksPerResourceInDataCenter()
+    {
+        RepairResource repairResourceDc1 = new RepairResource("DC1", "my-resource-dc1");
+        RepairResource repairResourceDc2 = new RepairResource("DC2", "my-resource-dc2");
+        RepairLockFactoryImpl repairLockFactory = RepairLockFactoryImpl.builder()
+                .withLocksPerResource(2)
+                .withLocksPerResource("DC2", 3)
+                .build();
+
+        assertThat(repairLockFactory.getLocksPerResource(repairResourceDc1)).isEqualTo(2);
+        assertThat(repairLockFactory.getLocksPerResource(repairResourceDc2)).isEqualTo(3);
+    }
+
+    @Test
+    public void testBuildWithInvalidLocksPerResource()
+    {
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> RepairLockFactoryImpl.builder().withLocksPerResource(0).build());
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> RepairLockFactoryImpl.builder().withLocksPerResource("DC1", 0).build());
+    }
+
     private void verifyNoLockWasTried() throws LockException
     {
         verify(mockLockFactory, never()).tryLock(anyString(), anyString(), anyInt(), anyMapOf(String.class, String.class));
+        verify(mockLockFactory, never()).tryLockAsync(anyString(), anyString(), anyInt(), anyMapOf(String.class, String.class));
     }
 
     private void verifyLocksAreTriedWhenGettingLock(RepairLockFactory repairLockFactory, int priority, Map<String, String> metadata, RepairResource... repairResources) throws LockException
@@ -212,7 +446,7 @@ public class TestRepairLockFactoryImpl
 
         for (RepairResource repairResource : repairResources)
         {
-            verify(mockLockFactory).tryLock(eq(repairResource.getDataCenter()), eq(repairResource.getResourceName(LOCKS_PER_RESOURCE)), eq(priority), eq(metadata));
+            verify(mockLockFactory).tryLockAsync(eq(repairResource.getDataCenter()), eq(repairResource.getResourceName(LOCKS_PER_RESOURCE)), eq(priority), eq(metadata));
         }
     }
 
@@ -227,14 +461,16 @@ public class TestRepairLockFactoryImpl
         when(mockLockFactory.getCachedFailure(eq(repairResource.getDataCenter()), eq(repairResource.getResourceName(LOCKS_PER_RESOURCE)))).thenReturn(Optional.of(new LockException("")));
     }
 
-    private void withSuccessfulLocking(RepairResource repairResource, int priority, Map<String, String> metadata) throws LockException
+    private void withSuccessfulLocking(RepairResource repairResource, int priority, Map<String, String> metadata)
     {
-        when(mockLockFactory.tryLock(eq(repairResource.getDataCenter()), eq(repairResource.getResourceName(LOCKS_PER_RESOURCE)), eq(priority), eq(metadata))).thenReturn(mockLock);
+        when(mockLockFactory.tryLockAsync(eq(repairResource.getDataCenter()), eq(repairResource.getResourceName(LOCKS_PER_RESOURCE)), eq(priority), eq(metadata)))
+                .thenReturn(Futures.immediateFuture(mockLock));
     }
 
-    private void withUnsuccessfulLocking(RepairResource repairResource, int priority, Map<String, String> metadata) throws LockException
+    private void withUnsuccessfulLocking(RepairResource repairResource, int priority, Map<String, String> metadata)
     {
-        when(mockLockFactory.tryLock(eq(repairResource.getDataCenter()), eq(repairResource.getResourceName(LOCKS_PER_RESOURCE)), eq(priority), eq(metadata))).thenThrow(new LockException(""));
+        when(mockLockFactory.tryLockAsync(eq(repairResource.getDataCenter()), eq(repairResource.getResourceName(LOCKS_PER_RESOURCE)), eq(priority), eq(metadata)))
+                .thenReturn(Futures.immediateFailedFuture(new LockException("")));
     }
 
     private void withSufficientNodesForLocking(RepairResource repairResource)
@@ -246,4 +482,26 @@ public class TestRepairLockFactoryImpl
     {
         when(mockLockFactory.sufficientNodesForLocking(eq(repairResource.getDataCenter()), eq(repairResource.getResourceName(LOCKS_PER_RESOURCE)))).thenReturn(false);
     }
+
+    private void withUnsuccessfulCachedLock(RepairResource repairResource, int slot)
+    {
+        when(mockLockFactory.getCachedFailure(eq(repairResource.getDataCenter()), eq(repairResource.getResourceName(slot)))).thenReturn(Optional.of(new LockException("")));
+    }
+
+    private void withSuccessfulLocking(RepairResource repairResource, int slot, int priority, Map<String, String> metadata)
+    {
+        when(mockLockFactory.tryLockAsync(eq(repairResource.getDataCenter()), eq(repairResource.getResourceName(slot)), eq(priority), eq(metadata)))
+                .thenReturn(Futures.immediateFuture(mockLock));
+    }
+
+    private void withUnsuccessfulLocking(RepairResource repairResource, int slot, int priority, Map<String, String> metadata)
+    {
+        when(mockLockFactory.tryLockAsync(eq(repairResource.getDataCenter()), eq(repairResource.getResourceName(slot)), eq(priority), eq(metadata)))
+                .thenReturn(Futures.immediateFailedFuture(new LockException("")));
+    }
+
+    private void withSufficientNodesForLocking(RepairResource repairResource, int slot)
+    {
+        when(mockLockFactory.sufficientNodesForLocking(eq(repairResource.getDataCenter()), eq(repairResource.getResourceName(slot)))).thenReturn(true);
+    }
 }
@@ -0,0 +1,370 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.repair;
+
+import com.ericsson.bss.cassandra.ecchronos.core.JmxProxy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.remote.JMXConnectionNotification;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TestRepairNotificationDispatcher
+{
+    private static final String KEYSPACE = "keyspace";
+
+    @Mock
+    private JmxProxy myJmxProxy;
+
+    @Mock
+    private NotificationListener myListener;
+
+    @Mock
+    private NotificationListener myOtherListener;
+
+    @Mock
+    private Consumer<RepairNotificationDispatcher.Registration> myHangHandler;
+
+    private final ScheduledExecutorService myExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    private RepairNotificationDispatcher myDispatcher;
+
+    @Before
+    public void setup()
+    {
+        myDispatcher = new RepairNotificationDispatcher(myExecutor, 1, 1, TimeUnit.HOURS);
+    }
+
+    @After
+    public void cleanup()
+    {
+        myExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testProgressIsDispatchedByCommand() throws Exception
+    {
+        when(myJmxProxy.repairAsync(eq(KEYSPACE), any())).thenReturn(1, 2);
+
+        RepairNotificationDispatcher.Registration registration = repairAsync(myListener);
+        RepairNotificationDispatcher.Registration otherRegistration = repairAsync(myOtherListener);
+
+        Notification notification = progress(1);
+        Notification otherNotification = progress(2);
+        myDispatcher.handleNotification(notification, null);
+        myDispatcher.handleNotification(otherNotification, null);
+        myDispatcher.handleNotification(progress(3), null);
+
+        assertThat(registration.getCommand()).isEqualTo(1);
+        assertThat(otherRegistration.getCommand()).isEqualTo(2);
+        verify(myListener).handleNotification(eq(notification), any());
+        verify(myOtherListener).handleNotification(eq(otherNotification), any());
+        verifyNoMoreInteractions(myListener, myOtherListener);
+        verify(myJmxProxy, times(1)).addStorageServiceListener(eq(myDispatcher));
+    }
+
+    @Test
+    public void testProgressBeforeRepairIsStartedIsDispatched() throws Exception
+    {
+        Notification notification = progress(1);
+        when(myJmxProxy.repairAsync(eq(KEYSPACE), any())).thenAnswer(invocation ->
+        {
+            myDispatcher.handleNotification(notification, null);
+            return 1;
+        });
+
+        repairAsync(myListener);
+
+        verify(myListener).handleNotification(eq(notification), any());
+    }
+
+    @Test
+    public void testProgressAfterRepairIsClosedIsNotDispatched() throws Exception
+    {
+        when(myJmxProxy.repairAsync(eq(KEYSPACE), any())).thenReturn(1);
+
+        repairAsync(myListener).close();
+        myDispatcher.handleNotification(progress(1), null);
+
+        verify(myListener, never()).handleNotification(any(), any());
+    }
+
+    @Test
+    public void testRepairNotStarted() throws Exception
+    {
+        when(myJmxProxy.repairAsync(eq(KEYSPACE), any())).thenAnswer(invocation ->
+        {
+            myDispatcher.handleNotification(progress(0), null);
+            return 0;
+        });
+
+        RepairNotificationDispatcher.Registration registration = repairAsync(myListener);
+
+        assertThat(registration.getCommand()).isEqualTo(0);
+        verify(myListener, never()).handleNotification(any(), any());
+    }
+
+    @Test
+    public void testConnectionNotificationIsSentToAllRepairs() throws Exception
+    {
+        when(myJmxProxy.repairAsync(eq(KEYSPACE), any())).thenReturn(1, 2, 3);
+
+        repairAsync(myListener);
+        repairAsync(myOtherListener);
+
+        Notification notification = new Notification(JMXConnectionNotification.FAILED, "connection", 0);
+        myDispatcher.handleNotification(notification, null);
+
+        verify(myListener).handleNotification(eq(notification), any());
+        verify(myOtherListener).handleNotification(eq(notification), any());
+
+        repairAsync(myListener);
+
+        verify(myJmxProxy, times(2)).addStorageServiceListener(eq(myDispatcher));
+    }
+
+    @Test
+    public void testHangingRepairIsDetected() throws Exception
+    {
+        myDispatcher = new RepairNotificationDispatcher(myExecutor, 100, 10, TimeUnit.MILLISECONDS);
+        AtomicInteger hangs = new AtomicInteger();
+        when(myJmxProxy.repairAsync(eq(KEYSPACE), any())).thenReturn(1, 2);
+
+        RepairNotificationDispatcher.Registration registration = myDispatcher.repairAsync(myJmxProxy, KEYSPACE,
+                Collections.emptyMap(), myListener, r -> hangs.incrementAndGet());
+        repairAsync(myOtherListener).close();
+
+        await().pollInterval(10, TimeUnit.MILLISECONDS).atMost(1, TimeUnit.SECONDS).until(() -> hangs.get() == 1);
+
+        myDispatcher.handleNotification(progress(1), null);
+        await().pollInterval(10, TimeUnit.MILLISECONDS).atMost(1, TimeUnit.SECONDS).until(() -> hangs.get() == 2);
+
+        registration.close();
+        verify(myHangHandler, never()).accept(any());
+    }
+
+    @Test
+    public void testForceTerminateWhenOnlyRepair() throws Exception
+    {
+        when(myJmxProxy.repairAsync(eq(KEYSPACE), any())).thenReturn(1);
+
+        RepairNotificationDispatcher.Registration registration = repairAsync(myListener);
+
+        assertThat(registration.forceTerminate(myJmxProxy)).isTrue();
+        verify(myJmxProxy).forceTerminateAllRepairSessions();
+    }
+
+    @Test
+    public void testForceTerminateWithOtherRepairRunning() throws Exception
+    {
+        when(myJmxProxy.repairAsync(eq(KEYSPACE), any())).thenReturn(1, 2);
+
+        RepairNotificationDispatcher.Registration registration = repairAsync(myListener);
+        RepairNotificationDispatcher.Registration otherRegistration = repairAsync(myOtherListener);
+
+        assertThat(registration.forceTerminate(myJmxProxy)).isFalse();
+        verify(myJmxProxy, never()).forceTerminateAllRepairSessions();
+
+        otherRegistration.close();
+
+        assertThat(registration.forceTerminate(myJmxProxy)).isTrue();
+        verify(myJmxProxy).forceTerminateAllRepairSessions();
+    }
+
+    @Test
+    public void testListenerIsRemovedWhenLastRepairIsClosed() throws Exception
+    {
+        when(myJmxProxy.repairAsync(eq(KEYSPACE), any())).thenReturn(1, 2);
+
+        RepairNotificationDispatcher.Registration registration = repairAsync(myListener);
+        RepairNotificationDispatcher.Registration otherRegistration = repairAsync(myOtherListener);
+
+        registration.close();
+        verify(myJmxProxy, never()).removeStorageServiceListener(any());
+
+        otherRegistration.close();
+        verify(myJmxProxy).removeStorageServiceListener(eq(myDispatcher));
+    }
+
+    @Test
+    public void testListenerIsRemovedWhenRepairIsNotStarted() throws Exception
+    {
+        when(myJmxProxy.repairAsync(eq(KEYSPACE), any())).thenReturn(0);
+
+        repairAsync(myListener);
+
+        verify(myJmxProxy).addStorageServiceListener(eq(myDispatcher));
+        verify(myJmxProxy).removeStorageServiceListener(eq(myDispatcher));
+    }
+
+    @Test
+    public void testListenerIsMovedWhenConnectionChanges() throws Exception
+    {
+        JmxProxy otherJmxProxy = mock(JmxProxy.class);
+        when(myJmxProxy.getConnectionIdentity()).thenReturn(new Object());
+        when(otherJmxProxy.getConnectionIdentity()).thenReturn(new Object());
+        when(myJmxProxy.repairAsync(eq(KEYSPACE), any())).thenReturn(1);
+        when(otherJmxProxy.repairAsync(eq(KEYSPACE), any())).thenReturn(2);
+
+        RepairNotificationDispatcher.Registration registration = repairAsync(myListener);
+        RepairNotificationDispatcher.Registration otherRegistration = myDispatcher.repairAsync(otherJmxProxy, KEYSPACE,
+                Collections.emptyMap(), myOtherListener, myHangHandler);
+
+        verify(myJmxProxy).addStorageServiceListener(eq(myDispatcher));
+        verify(myJmxProxy).removeStorageServiceListener(eq(myDispatcher));
+        verify(otherJmxProxy).addStorageServiceListener(eq(myDispatcher));
+
+        registration.close();
+        otherRegistration.close();
+
+        verify(myJmxProxy, times(1)).removeStorageServiceListener(eq(myDispatcher));
+        verify(otherJmxProxy).removeStorageServiceListener(eq(myDispatcher));
+    }
+
+    @Test
+    public void testFailureToAddListenerIsPropagated() throws Exception
+    {
+        doThrow(new IOException()).doNothing().when(myJmxProxy).addStorageServiceListener(eq(myDispatcher));
+        when(myJmxProxy.repairAsync(eq(KEYSPACE), any())).thenReturn(1);
+
+        assertThatExceptionOfType(IOException.class).isThrownBy(() -> repairAsync(myListener));
+        verify(myJmxProxy, never()).repairAsync(any(), any());
+
+        repairAsync(myListener);
+
+        verify(myJmxProxy, times(2)).addStorageServiceListener(eq(myDispatcher));
+        verify(myJmxProxy).repairAsync(eq(KEYSPACE), any());
+    }
+
+    @Test
+    public void testTerminationIsDeferredUntilOtherRepairsHaveFinished() throws Exception
+    {
+        when(myJmxProxy.repairAsync(eq(KEYSPACE), any())).thenReturn(1, 2);
+
+        RepairNotificationDispatcher.Registration registration = repairAsync(myListener);
+        RepairNotificationDispatcher.Registration otherRegistration = repairAsync(myOtherListener);
+
+        assertThat(registration.forceTerminate(myJmxProxy)).isFalse();
+        registration.close();
+        verify(myJmxProxy, never()).forceTerminateAllRepairSessions();
+
+        otherRegistration.close();
+        verify(myJmxProxy).forceTerminateAllRepairSessions();
+    }
+
+    @Test (timeout = 5000L)
+    public void testRepairIsStartedAfterPendingTermination() throws Exception
+    {
+        when(myJmxProxy.repairAsync(eq(KEYSPACE), any())).thenReturn(1, 2, 3);
+
+        RepairNotificationDispatcher.Registration registration = repairAsync(myListener);
+        RepairNotificationDispatcher.Registration otherRegistration = repairAsync(myOtherListener);
+        assertThat(registration.forceTerminate(myJmxProxy)).isFalse();
+        registration.close();
+
+        CompletableFuture<RepairNotificationDispatcher.Registration> nextRegistration = CompletableFuture.supplyAsync(() ->
+        {
+            try
+            {
+                return repairAsync(myListener);
+            }
+            catch (Exception e)
+            {
+                throw new CompletionException(e);
+            }
+        });
+
+        Thread.sleep(100);
+        assertThat(nextRegistration.isDone()).isFalse();
+        verify(myJmxProxy, times(2)).repairAsync(eq(KEYSPACE), any());
+
+        otherRegistration.close();
+
+        assertThat(nextRegistration.get().getCommand()).isEqualTo(3);
+        InOrder inOrder = inOrder(myJmxProxy);
+        inOrder.verify(myJmxProxy).forceTerminateAllRepairSessions();
+        inOrder.verify(myJmxProxy).repairAsync(eq(KEYSPACE), any());
+    }
+
+    @Test (timeout = 5000L)
+    public void testNotificationsAreDispatchedDuringTermination() throws Exception
+    {
+        CountDownLatch terminating = new CountDownLatch(1);
+        CountDownLatch terminated = new CountDownLatch(1);
+        when(myJmxProxy.repairAsync(eq(KEYSPACE), any())).thenReturn(1);
+        doAnswer(invocation ->
+        {
+            terminating.countDown();
+            terminated.await();
+            return null;
+        }).when(myJmxProxy).forceTerminateAllRepairSessions();
+
+        RepairNotificationDispatcher.Registration registration = repairAsync(myListener);
+        CompletableFuture<Boolean> forceTerminate = CompletableFuture.supplyAsync(() -> registration.forceTerminate(myJmxProxy));
+        terminating.await();
+
+        Notification notification = progress(1);
+        myDispatcher.handleNotification(notification, null);
+        verify(myListener).handleNotification(eq(notification), any());
+
+        terminated.countDown();
+        assertThat(forceTerminate.get()).isTrue();
+    }
+
+    @Test
+    public void testCloseStopsHangDetection() throws Exception
+    {
+        when(myJmxProxy.repairAsync(eq(KEYSPACE), any())).thenReturn(1);
+
+        repairAsync(myListener);
+        myDispatcher.close();
+
+        assertThat(myExecutor.isShutdown()).isTrue();
+    }
+
+    private RepairNotificationDispatcher.Registration repairAsync(NotificationListener listener) throws Exception
+    {
+        return myDispatcher.repairAsync(myJmxProxy, KEYSPACE, Collections.emptyMap(), listener, myHangHandler);
+    }
+
+    private Notification progress(int command)
+    {
+        return new Notification("progress", "repair:" + command, 0, "message");
+    }
+}
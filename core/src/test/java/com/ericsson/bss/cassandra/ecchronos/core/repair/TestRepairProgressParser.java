@@ -0,0 +1,126 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.repair;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestRepairProgressParser
+{
+    private final RepairProgressParser myParser = new RepairProgressParser();
+    private final List<LongTokenRange> myRanges = new ArrayList<>();
+
+    @Test
+    public void testParseSingleRange()
+    {
+        assertThat(parse("Repair session 2d0a8d40-1a2b-11ea-9a9f-0242ac110002 for range [(1,2]] finished")).isTrue();
+
+        assertThat(myRanges).containsExactly(new LongTokenRange(1, 2));
+    }
+
+    @Test
+    public void testParseMultipleRanges()
+    {
+        assertThat(parse("Repair session RepairSession for range [(-5,-3], (1,2], (5,6]] finished")).isTrue();
+
+        assertThat(myRanges).containsExactly(new LongTokenRange(-5, -3), new LongTokenRange(1, 2), new LongTokenRange(5, 6));
+    }
+
+    @Test
+    public void testParseMinAndMaxTokens()
+    {
+        String message = String.format("Repair session RepairSession for range [(%d,%d]] finished", Long.MAX_VALUE, Long.MIN_VALUE);
+
+        assertThat(parse(message)).isTrue();
+
+        assertThat(myRanges).containsExactly(new LongTokenRange(Long.MAX_VALUE, Long.MIN_VALUE));
+    }
+
+    @Test
+    public void testParseManyRangesReusesParser()
+    {
+        StringBuilder messageBuilder = new StringBuilder("Repair session RepairSession for range [");
+        List<LongTokenRange> expectedRanges = new ArrayList<>();
+
+        for (int i = 0; i < 100; i++)
+        {
+            LongTokenRange range = new LongTokenRange(i * 10, i * 10 + 5);
+            expectedRanges.add(range);
+            messageBuilder.append(i == 0 ? "" : ", ").append(range);
+        }
+        messageBuilder.append("] finished");
+
+        assertThat(parse(messageBuilder.toString())).isTrue();
+        assertThat(parse("Repair session RepairSession for range [(1,2]] finished")).isTrue();
+
+        expectedRanges.add(new LongTokenRange(1, 2));
+        assertThat(myRanges).containsExactlyElementsOf(expectedRanges);
+    }
+
+    @Test
+    public void testParseFailedSession()
+    {
+        assertThat(parse("Repair session RepairSession for range [(1,2]] failed with error ...")).isFalse();
+
+        assertThat(myRanges).isEmpty();
+    }
+
+    @Test
+    public void testParseInvalidMessages()
+    {
+        assertThat(parse(null)).isFalse();
+        assertThat(parse("")).isFalse();
+        assertThat(parse("Repair session  for range [(1,2]] finished")).isFalse();
+        assertThat(parse("Repair session Repair_Session for range [(1,2]] finished")).isFalse();
+        assertThat(parse("Repair session RepairSession for range [] finished")).isFalse();
+        assertThat(parse("Repair session RepairSession for range [(1,2]")).isFalse();
+        assertThat(parse("Repair session RepairSession for range [(1,2] finished")).isFalse();
+        assertThat(parse("Repair session RepairSession for range [(1,2]] finished.")).isFalse();
+        assertThat(parse("Repair session RepairSession for range [(1,]] finished")).isFalse();
+        assertThat(parse("Repair session RepairSession for range [(-,2]] finished")).isFalse();
+        assertThat(parse("Repair session RepairSession for range [(1,2a]] finished")).isFalse();
+        assertThat(parse("Repair session RepairSession for range [(1,2](3,4]] finished")).isTrue();
+
+        assertThat(myRanges).containsExactly(new LongTokenRange(1, 2), new LongTokenRange(3, 4));
+    }
+
+    @Test
+    public void testParseInvalidRangeAfterValidRange()
+    {
+        assertThat(parse("Repair session RepairSession for range [(1,2], (3,x]] finished")).isFalse();
+
+        assertThat(myRanges).isEmpty();
+    }
+
+    @Test
+    public void testParseTokenOverflow()
+    {
+        assertThat(parse("Repair session RepairSession for range [(9223372036854775808,2]] finished")).isFalse();
+        assertThat(parse("Repair session RepairSession for range [(1,-9223372036854775809]] finished")).isFalse();
+        assertThat(parse("Repair session RepairSession for range [(1,99999999999999999999]] finished")).isFalse();
+
+        assertThat(myRanges).isEmpty();
+    }
+
+    private boolean parse(String message)
+    {
+        return myParser.parse(message, (start, end) -> myRanges.add(new LongTokenRange(start, end)));
+    }
+}
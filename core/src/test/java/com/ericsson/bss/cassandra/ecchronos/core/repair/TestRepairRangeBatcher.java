@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.repair;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
+
+public class TestRepairRangeBatcher
+{
+    private static final List<LongTokenRange> RANGES = Arrays.asList(
+            new LongTokenRange(0, 10),
+            new LongTokenRange(10, 20),
+            new LongTokenRange(20, 30),
+            new LongTokenRange(30, 40),
+            new LongTokenRange(40, 50));
+
+    private final RepairRangeBatcher myRepairRangeBatcher = new RepairRangeBatcher();
+
+    @Test
+    public void testOneRangePerSessionByDefault()
+    {
+        List<List<LongTokenRange>> batches = myRepairRangeBatcher.batch(RANGES, LongTokenRange.FULL_RANGE, RepairConfiguration.DEFAULT);
+
+        assertThat(batches).hasSize(5);
+        for (int i = 0; i < RANGES.size(); i++)
+        {
+            assertThat(batches.get(i)).containsExactly(RANGES.get(i));
+        }
+    }
+
+    @Test
+    public void testBatchByMaxRangesPerSession()
+    {
+        List<List<LongTokenRange>> batches = myRepairRangeBatcher.batch(RANGES, LongTokenRange.FULL_RANGE, withMaxRanges(2));
+
+        assertThat(batches).containsExactly(
+                RANGES.subList(0, 2),
+                RANGES.subList(2, 4),
+                RANGES.subList(4, 5));
+    }
+
+    @Test
+    public void testBatchByTokensPerRepair()
+    {
+        List<List<LongTokenRange>> batches = myRepairRangeBatcher.batch(RANGES, BigInteger.valueOf(30), withMaxRanges(10));
+
+        assertThat(batches).containsExactly(
+                RANGES.subList(0, 3),
+                RANGES.subList(3, 5));
+    }
+
+    @Test
+    public void testRangeLargerThanTokensPerRepairIsRepairedAlone()
+    {
+        List<List<LongTokenRange>> batches = myRepairRangeBatcher.batch(RANGES, BigInteger.valueOf(5), withMaxRanges(10));
+
+        assertThat(batches).hasSize(5);
+    }
+
+    @Test
+    public void testBatchByTargetSessionTime()
+    {
+        // 20 tokens per second
+        myRepairRangeBatcher.sessionFinished(Collections.singletonList(new LongTokenRange(0, 20)), TimeUnit.SECONDS.toNanos(1));
+
+        RepairConfiguration repairConfiguration = RepairConfiguration.newBuilder()
+                .withMaxRangesPerSession(10)
+                .withTargetSessionTime(1, TimeUnit.SECONDS)
+                .build();
+
+        List<List<LongTokenRange>> batches = myRepairRangeBatcher.batch(RANGES, LongTokenRange.FULL_RANGE, repairConfiguration);
+
+        assertThat(batches).containsExactly(
+                RANGES.subList(0, 2),
+                RANGES.subList(2, 4),
+                RANGES.subList(4, 5));
+    }
+
+    @Test
+    public void testSessionTimeIsSmoothed()
+    {
+        // 20 tokens per second followed by 5 tokens per second gives 8 tokens per second
+        myRepairRangeBatcher.sessionFinished(Collections.singletonList(new LongTokenRange(0, 20)), TimeUnit.SECONDS.toNanos(1));
+        myRepairRangeBatcher.sessionFinished(Collections.singletonList(new LongTokenRange(0, 20)), TimeUnit.SECONDS.toNanos(4));
+
+        RepairConfiguration repairConfiguration = RepairConfiguration.newBuilder()
+                .withMaxRangesPerSession(10)
+                .withTargetSessionTime(5, TimeUnit.SECONDS)
+                .build();
+
+        List<List<LongTokenRange>> batches = myRepairRangeBatcher.batch(RANGES, LongTokenRange.FULL_RANGE, repairConfiguration);
+
+        assertThat(batches).containsExactly(
+                RANGES.subList(0, 4),
+                RANGES.subList(4, 5));
+    }
+
+    private RepairConfiguration withMaxRanges(int maxRanges)
+    {
+        return RepairConfiguration.newBuilder()
+                .withMaxRangesPerSession(maxRanges)
+                .build();
+    }
+}
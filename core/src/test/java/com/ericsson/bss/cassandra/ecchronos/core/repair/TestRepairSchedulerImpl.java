@@ -48,6 +48,9 @@ public class TestRepairSchedulerImpl
     @Mock
     private JmxProxyFactory jmxProxyFactory;
 
+    @Mock
+    private RepairNotificationDispatcher repairNotificationDispatcher;
+
     @Mock
     private ScheduleManager scheduleManager;
 
@@ -221,6 +224,7 @@ public class TestRepairSchedulerImpl
     {
         return RepairSchedulerImpl.builder()
                 .withJmxProxyFactory(jmxProxyFactory)
+                .withRepairNotificationDispatcher(repairNotificationDispatcher)
                 .withTableRepairMetrics(myTableRepairMetrics)
                 .withScheduleManager(scheduleManager)
                 .withRepairStateFactory(myRepairStateFactory)
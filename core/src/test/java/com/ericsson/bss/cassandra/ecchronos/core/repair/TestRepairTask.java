@@ -45,6 +45,7 @@ import java.util.concurrent.TimeUnit;
 
 import static com.ericsson.bss.cassandra.ecchronos.core.MockTableReferenceFactory.tableReference;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 import static org.awaitility.Awaitility.await;
 import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
@@ -60,6 +61,8 @@ public class TestRepairTask
     @Mock
     private JmxProxyFactory jmxProxyFactory;
 
+    private final RepairNotificationDispatcher repairNotificationDispatcher = new RepairNotificationDispatcher();
+
     @Mock
     private TableRepairMetrics myTableRepairMetrics;
 
@@ -93,6 +96,7 @@ public class TestRepairTask
     @After
     public void finalVerification()
     {
+        repairNotificationDispatcher.close();
         verifyNoMoreInteractions(ignoreStubs(myTableRepairMetrics));
     }
 
@@ -108,6 +112,7 @@ public class TestRepairTask
 
         final RepairTask repairTask = new RepairTask.Builder()
                 .withJMXProxyFactory(jmxProxyFactory)
+                .withRepairNotificationDispatcher(repairNotificationDispatcher)
                 .withTableReference(myTableReference)
                 .withTokenRanges(ranges)
                 .withTableRepairMetrics(myTableRepairMetrics)
@@ -133,6 +138,7 @@ public class TestRepairTask
         cdl.await();
 
         assertThat(repairTask.getUnknownRanges()).isNull();
+        assertThat(repairTask.getFailureType()).isNull();
         assertThat(repairTask.getCompletedRanges()).containsExactlyElementsOf(ranges);
         assertThat(proxy.myOptions.get(RepairOptions.RANGES_KEY)).isNotEmpty();
 
@@ -153,6 +159,7 @@ public class TestRepairTask
 
         final RepairTask repairTask = new RepairTask.Builder()
                 .withJMXProxyFactory(jmxProxyFactory)
+                .withRepairNotificationDispatcher(repairNotificationDispatcher)
                 .withTableReference(myTableReference)
                 .withTokenRanges(ranges)
                 .withTableRepairMetrics(myTableRepairMetrics)
@@ -174,6 +181,7 @@ public class TestRepairTask
         cdl.await();
 
         assertThat(repairTask.getUnknownRanges()).isNull();
+        assertThat(repairTask.getFailureType()).isNull();
         assertThat(repairTask.getCompletedRanges()).containsExactlyElementsOf(ranges);
         assertThat(proxy.myOptions.get(RepairOptions.RANGES_KEY)).isNotEmpty();
 
@@ -182,6 +190,66 @@ public class TestRepairTask
         verify(repairSessions.get(range)).finish(eq(RepairStatus.SUCCESS));
     }
 
+    @Test
+    public void testRepairWithCoalescedTables() throws InterruptedException
+    {
+        TableReference coalescedTableReference = tableReference(KEYSPACE_NAME, "table2");
+        RepairHistory.RepairSession coalescedRepairSession = mock(RepairHistory.RepairSession.class);
+        LongTokenRange range = new LongTokenRange(1, 2);
+        when(repairHistory.newSession(eq(coalescedTableReference), eq(jobId), eq(range), eq(participants))).thenReturn(coalescedRepairSession);
+
+        final RepairTask repairTask = new RepairTask.Builder()
+                .withJMXProxyFactory(jmxProxyFactory)
+                .withRepairNotificationDispatcher(repairNotificationDispatcher)
+                .withTableReference(myTableReference)
+                .withCoalescedTables(Collections.singletonList(coalescedTableReference))
+                .withTokenRanges(Collections.singletonList(range))
+                .withTableRepairMetrics(myTableRepairMetrics)
+                .withRepairHistory(repairHistory)
+                .withJobId(jobId)
+                .withReplicas(participants)
+                .build();
+
+        CountDownLatch cdl = startRepair(repairTask, false);
+
+        Notification notification = new Notification("progress", "repair:1", 0, getRepairMessage(range));
+        notification.setUserData(getNotificationData(RepairTask.ProgressEventType.PROGRESS.ordinal(), 1, 2));
+        proxy.notify(notification);
+
+        notification = new Notification("progress", "repair:1", 1, "Done with repair");
+        notification.setUserData(getNotificationData(RepairTask.ProgressEventType.COMPLETE.ordinal(), 2, 2));
+        proxy.notify(notification);
+
+        cdl.await();
+
+        assertThat(repairTask.getUnknownRanges()).isNull();
+        assertThat(repairTask.getCompletedRanges()).containsExactly(range);
+        assertThat(proxy.myOptions.get(RepairOptions.COLUMNFAMILIES_KEY)).isEqualTo(TABLE_NAME + ",table2");
+
+        verify(myTableRepairMetrics).repairTiming(eq(TABLE_REFERENCE), anyLong(), any(TimeUnit.class), eq(true));
+        verify(repairSessions.get(range)).start();
+        verify(repairSessions.get(range)).finish(eq(RepairStatus.SUCCESS));
+        verify(coalescedRepairSession).start();
+        verify(coalescedRepairSession).finish(eq(RepairStatus.SUCCESS));
+    }
+
+    @Test
+    public void testCoalescedTableInOtherKeyspace()
+    {
+        RepairTask.Builder builder = new RepairTask.Builder()
+                .withJMXProxyFactory(jmxProxyFactory)
+                .withRepairNotificationDispatcher(repairNotificationDispatcher)
+                .withTableReference(myTableReference)
+                .withCoalescedTables(Collections.singletonList(tableReference("keyspace2", TABLE_NAME)))
+                .withTokenRanges(Collections.singletonList(new LongTokenRange(1, 2)))
+                .withTableRepairMetrics(myTableRepairMetrics)
+                .withRepairHistory(repairHistory)
+                .withJobId(jobId)
+                .withReplicas(participants);
+
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(builder::build);
+    }
+
     @Test
     public void testRepairHalf() throws InterruptedException
     {
@@ -194,6 +262,7 @@ public class TestRepairTask
 
         final RepairTask repairTask = new RepairTask.Builder()
                 .withJMXProxyFactory(jmxProxyFactory)
+                .withRepairNotificationDispatcher(repairNotificationDispatcher)
                 .withTableReference(myTableReference)
                 .withTokenRanges(ranges)
                 .withTableRepairMetrics(myTableRepairMetrics)
@@ -214,6 +283,7 @@ public class TestRepairTask
         cdl.await();
 
         assertThat(repairTask.getUnknownRanges()).containsExactly(range2);
+        assertThat(repairTask.getFailureType()).isEqualTo(RepairFailureType.JMX_ERROR);
         assertThat(repairTask.getCompletedRanges()).containsExactly(range1);
         assertThat(proxy.myOptions.get(RepairOptions.RANGES_KEY)).isNotEmpty();
 
@@ -236,6 +306,7 @@ public class TestRepairTask
 
         final RepairTask repairTask = new RepairTask.Builder()
                 .withJMXProxyFactory(jmxProxyFactory)
+                .withRepairNotificationDispatcher(repairNotificationDispatcher)
                 .withTableReference(myTableReference)
                 .withTokenRanges(ranges)
                 .withTableRepairMetrics(myTableRepairMetrics)
@@ -261,6 +332,7 @@ public class TestRepairTask
         cdl.await();
 
         assertThat(repairTask.getUnknownRanges()).containsExactly(range2);
+        assertThat(repairTask.getFailureType()).isEqualTo(RepairFailureType.SESSION_ERROR);
         assertThat(repairTask.getCompletedRanges()).containsExactly(range1);
         assertThat(proxy.myOptions.get(RepairOptions.RANGES_KEY)).isNotEmpty();
 
@@ -283,6 +355,7 @@ public class TestRepairTask
 
         final RepairTask repairTask = new RepairTask.Builder()
                 .withJMXProxyFactory(jmxProxyFactory)
+                .withRepairNotificationDispatcher(repairNotificationDispatcher)
                 .withTableReference(myTableReference)
                 .withTokenRanges(ranges)
                 .withTableRepairMetrics(myTableRepairMetrics)
@@ -308,6 +381,7 @@ public class TestRepairTask
         cdl.await();
 
         assertThat(repairTask.getUnknownRanges()).isNull();
+        assertThat(repairTask.getFailureType()).isNull();
         assertThat(repairTask.getCompletedRanges()).containsExactlyElementsOf(ranges);
         assertThat(proxy.myOptions.get(RepairOptions.RANGES_KEY)).isNotEmpty();
 
@@ -325,6 +399,7 @@ public class TestRepairTask
 
         final RepairTask repairTask = new RepairTask.Builder()
                 .withJMXProxyFactory(jmxProxyFactory)
+                .withRepairNotificationDispatcher(repairNotificationDispatcher)
                 .withTableReference(myTableReference)
                 .withTokenRanges(Arrays.asList(range))
                 .withTableRepairMetrics(myTableRepairMetrics)
@@ -339,6 +414,53 @@ public class TestRepairTask
         verify(repairSessions.get(range)).finish(eq(RepairStatus.SUCCESS));
     }
 
+    @Test
+    public void testShouldMatchProgressNotificationPatternWithMultipleRanges()
+    {
+        LongTokenRange range1 = new LongTokenRange(1, 2);
+        LongTokenRange range2 = new LongTokenRange(-5, -3);
+        LongTokenRange range3 = new LongTokenRange(5, 6);
+
+        final RepairTask repairTask = new RepairTask.Builder()
+                .withJMXProxyFactory(jmxProxyFactory)
+                .withRepairNotificationDispatcher(repairNotificationDispatcher)
+                .withTableReference(myTableReference)
+                .withTokenRanges(Arrays.asList(range1, range2, range3))
+                .withTableRepairMetrics(myTableRepairMetrics)
+                .withRepairHistory(repairHistory)
+                .withJobId(jobId)
+                .withReplicas(participants)
+                .build();
+
+        repairTask.progress(ProgressEventType.PROGRESS, 1, 2, getRepairMessage(range1, range2));
+
+        assertThat(repairTask.getCompletedRanges()).containsOnly(range1, range2);
+        verify(repairSessions.get(range1)).finish(eq(RepairStatus.SUCCESS));
+        verify(repairSessions.get(range2)).finish(eq(RepairStatus.SUCCESS));
+        verify(repairSessions.get(range3), never()).finish(any(RepairStatus.class));
+    }
+
+    @Test
+    public void testShouldClassifyReplicaDownAsHostDown()
+    {
+        LongTokenRange range = new LongTokenRange(1, 2);
+
+        final RepairTask repairTask = new RepairTask.Builder()
+                .withJMXProxyFactory(jmxProxyFactory)
+                .withRepairNotificationDispatcher(repairNotificationDispatcher)
+                .withTableReference(myTableReference)
+                .withTokenRanges(Arrays.asList(range))
+                .withTableRepairMetrics(myTableRepairMetrics)
+                .withRepairHistory(repairHistory)
+                .withJobId(jobId)
+                .withReplicas(participants)
+                .build();
+
+        repairTask.progress(ProgressEventType.ERROR, 1, 1, "Repair session for range (1,2] failed with error Endpoint not alive: /127.0.0.2");
+
+        assertThat(repairTask.getFailureType()).isEqualTo(RepairFailureType.HOST_DOWN);
+    }
+
     private CountDownLatch startRepair(final RepairTask repairTask, final boolean assertFailed)
     {
         final CountDownLatch cdl = new CountDownLatch(1);
@@ -425,6 +547,12 @@ public class TestRepairTask
             myListener = listener;
         }
 
+        @Override
+        public Object getConnectionIdentity()
+        {
+            return this;
+        }
+
         @Override
         public int repairAsync(String keyspace, Map<String, String> options)
         {
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.repair;
+
+import com.ericsson.bss.cassandra.ecchronos.core.metrics.TableRepairMetrics;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.ericsson.bss.cassandra.ecchronos.core.MockTableReferenceFactory.tableReference;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TestRepairTimeEstimator
+{
+    private final TableReference myTableReference = tableReference("keyspace", "table");
+
+    @Mock
+    private TableRepairMetrics myTableRepairMetrics;
+
+    private RepairTimeEstimator myRepairTimeEstimator;
+
+    @Before
+    public void init()
+    {
+        myRepairTimeEstimator = new RepairTimeEstimator(myTableRepairMetrics);
+    }
+
+    @Test
+    public void testEstimateWithoutHistory()
+    {
+        assertThat(myRepairTimeEstimator.estimate(10)).isEqualTo(0L);
+    }
+
+    @Test
+    public void testEstimateWithOneSession()
+    {
+        myRepairTimeEstimator.repairTiming(myTableReference, 2, TimeUnit.SECONDS, true);
+
+        assertThat(myRepairTimeEstimator.estimate(10)).isEqualTo(TimeUnit.SECONDS.toMillis(20));
+        verify(myTableRepairMetrics).repairTiming(myTableReference, 2, TimeUnit.SECONDS, true);
+    }
+
+    @Test
+    public void testEstimateIsMovingAverage()
+    {
+        myRepairTimeEstimator.repairTiming(myTableReference, 1000, TimeUnit.MILLISECONDS, true);
+        myRepairTimeEstimator.repairTiming(myTableReference, 2000, TimeUnit.MILLISECONDS, true);
+
+        long expectedSessionTime = (long) (1000 + RepairTimeEstimator.SMOOTHING_FACTOR * 1000);
+
+        assertThat(myRepairTimeEstimator.estimate(1)).isEqualTo(expectedSessionTime);
+    }
+
+    @Test
+    public void testFailedSessionIsNotUsed()
+    {
+        myRepairTimeEstimator.repairTiming(myTableReference, 5, TimeUnit.SECONDS, false);
+
+        assertThat(myRepairTimeEstimator.estimate(10)).isEqualTo(0L);
+        verify(myTableRepairMetrics).repairTiming(myTableReference, 5, TimeUnit.SECONDS, false);
+    }
+
+    @Test
+    public void testOtherMetricsAreDelegated()
+    {
+        myRepairTimeEstimator.repairState(myTableReference, 1, 2);
+        myRepairTimeEstimator.lastRepairedAt(myTableReference, 1234L);
+
+        verify(myTableRepairMetrics).repairState(myTableReference, 1, 2);
+        verify(myTableRepairMetrics).lastRepairedAt(myTableReference, 1234L);
+    }
+}
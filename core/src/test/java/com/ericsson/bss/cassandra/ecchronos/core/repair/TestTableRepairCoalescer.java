@@ -0,0 +1,275 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.repair;
+
+import com.ericsson.bss.cassandra.ecchronos.core.JmxProxyFactory;
+import com.ericsson.bss.cassandra.ecchronos.core.TableStorageStates;
+import com.ericsson.bss.cassandra.ecchronos.core.metrics.TableRepairMetrics;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.state.*;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.LongTokenRange;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.Node;
+import com.ericsson.bss.cassandra.ecchronos.core.utils.TableReference;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.ericsson.bss.cassandra.ecchronos.core.MockTableReferenceFactory.tableReference;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith (MockitoJUnitRunner.class)
+public class TestTableRepairCoalescer
+{
+    private static final String KEYSPACE_NAME = "keyspace";
+    private static final long COALESCING_SIZE_IN_BYTES = 1024;
+
+    @Mock
+    private JmxProxyFactory myJmxProxyFactory;
+
+    @Mock
+    private RepairNotificationDispatcher myRepairNotificationDispatcher;
+
+    @Mock
+    private TableRepairMetrics myTableRepairMetrics;
+
+    @Mock
+    private TableStorageStates myTableStorageStates;
+
+    @Mock
+    private RepairHistory myRepairHistory;
+
+    private final RepairConfiguration myRepairConfiguration = RepairConfiguration.newBuilder()
+            .withCoalescingSizeInBytes(COALESCING_SIZE_IN_BYTES)
+            .build();
+
+    private final TableRepairCoalescer myTableRepairCoalescer = new TableRepairCoalescer();
+
+    private ReplicaRepairGroup myReplicaRepairGroup;
+
+    @Before
+    public void setup()
+    {
+        myReplicaRepairGroup = replicaRepairGroup(new LongTokenRange(0, 10));
+    }
+
+    @Test
+    public void testSmallTablesAreCoalesced()
+    {
+        TableRepairJob repairJob = repairJob(tableReference(KEYSPACE_NAME, "table1"), myRepairConfiguration, myReplicaRepairGroup);
+        repairJob(tableReference(KEYSPACE_NAME, "table3"), myRepairConfiguration, myReplicaRepairGroup);
+        repairJob(tableReference(KEYSPACE_NAME, "table2"), myRepairConfiguration, myReplicaRepairGroup);
+
+        assertThat(myTableRepairCoalescer.getCoalescedTables(repairJob, myReplicaRepairGroup))
+                .containsExactly(tableReference(KEYSPACE_NAME, "table2"), tableReference(KEYSPACE_NAME, "table3"));
+    }
+
+    @Test
+    public void testLargeTableIsNotCoalesced()
+    {
+        TableRepairJob repairJob = repairJob(tableReference(KEYSPACE_NAME, "table1"), myRepairConfiguration, myReplicaRepairGroup);
+        TableReference largeTable = tableReference(KEYSPACE_NAME, "table2");
+        repairJob(largeTable, myRepairConfiguration, myReplicaRepairGroup);
+        when(myTableStorageStates.getDataSize(largeTable)).thenReturn(COALESCING_SIZE_IN_BYTES);
+
+        assertThat(myTableRepairCoalescer.getCoalescedTables(repairJob, myReplicaRepairGroup)).isEmpty();
+    }
+
+    @Test
+    public void testLargeTableDoesNotCoalesce()
+    {
+        TableReference largeTable = tableReference(KEYSPACE_NAME, "table1");
+        TableRepairJob repairJob = repairJob(largeTable, myRepairConfiguration, myReplicaRepairGroup);
+        repairJob(tableReference(KEYSPACE_NAME, "table2"), myRepairConfiguration, myReplicaRepairGroup);
+        when(myTableStorageStates.getDataSize(largeTable)).thenReturn(COALESCING_SIZE_IN_BYTES);
+
+        assertThat(myTableRepairCoalescer.getCoalescedTables(repairJob, myReplicaRepairGroup)).isEmpty();
+    }
+
+    @Test
+    public void testTablesWithoutCoalescingAreNotCoalesced()
+    {
+        TableRepairJob repairJob = repairJob(tableReference(KEYSPACE_NAME, "table1"), RepairConfiguration.DEFAULT, myReplicaRepairGroup);
+        repairJob(tableReference(KEYSPACE_NAME, "table2"), RepairConfiguration.DEFAULT, myReplicaRepairGroup);
+
+        assertThat(myTableRepairCoalescer.getCoalescedTables(repairJob, myReplicaRepairGroup)).isEmpty();
+    }
+
+    @Test
+    public void testTableInOtherKeyspaceIsNotCoalesced()
+    {
+        TableRepairJob repairJob = repairJob(tableReference(KEYSPACE_NAME, "table1"), myRepairConfiguration, myReplicaRepairGroup);
+        repairJob(tableReference("keyspace2", "table2"), myRepairConfiguration, myReplicaRepairGroup);
+
+        assertThat(myTableRepairCoalescer.getCoalescedTables(repairJob, myReplicaRepairGroup)).isEmpty();
+    }
+
+    @Test
+    public void testTableWithOtherConfigurationIsNotCoalesced()
+    {
+        RepairConfiguration otherRepairConfiguration = RepairConfiguration.newBuilder(myRepairConfiguration)
+                .withRepairUnwindRatio(1.0d)
+                .build();
+        TableRepairJob repairJob = repairJob(tableReference(KEYSPACE_NAME, "table1"), myRepairConfiguration, myReplicaRepairGroup);
+        repairJob(tableReference(KEYSPACE_NAME, "table2"), otherRepairConfiguration, myReplicaRepairGroup);
+
+        assertThat(myTableRepairCoalescer.getCoalescedTables(repairJob, myReplicaRepairGroup)).isEmpty();
+    }
+
+    @Test
+    public void testTableWithOtherRangesIsNotCoalesced()
+    {
+        ReplicaRepairGroup otherReplicaRepairGroup = new ReplicaRepairGroup(ImmutableSet.copyOf(myReplicaRepairGroup.getReplicas()),
+                ImmutableList.of(new LongTokenRange(10, 20)));
+        TableRepairJob repairJob = repairJob(tableReference(KEYSPACE_NAME, "table1"), myRepairConfiguration, myReplicaRepairGroup);
+        repairJob(tableReference(KEYSPACE_NAME, "table2"), myRepairConfiguration, otherReplicaRepairGroup);
+
+        assertThat(myTableRepairCoalescer.getCoalescedTables(repairJob, myReplicaRepairGroup)).isEmpty();
+    }
+
+    @Test
+    public void testTableWithOtherReplicasIsNotCoalesced()
+    {
+        TableRepairJob repairJob = repairJob(tableReference(KEYSPACE_NAME, "table1"), myRepairConfiguration, myReplicaRepairGroup);
+        repairJob(tableReference(KEYSPACE_NAME, "table2"), myRepairConfiguration, replicaRepairGroup(new LongTokenRange(0, 10)));
+
+        assertThat(myTableRepairCoalescer.getCoalescedTables(repairJob, myReplicaRepairGroup)).isEmpty();
+    }
+
+    @Test
+    public void testTableNotDueIsNotCoalesced()
+    {
+        TableRepairJob repairJob = repairJob(tableReference(KEYSPACE_NAME, "table1"), myRepairConfiguration, myReplicaRepairGroup);
+        repairJob(tableReference(KEYSPACE_NAME, "table2"), myRepairConfiguration);
+
+        assertThat(myTableRepairCoalescer.getCoalescedTables(repairJob, myReplicaRepairGroup)).isEmpty();
+    }
+
+    @Test
+    public void testUnregisteredTableIsNotCoalesced()
+    {
+        TableRepairJob repairJob = repairJob(tableReference(KEYSPACE_NAME, "table1"), myRepairConfiguration, myReplicaRepairGroup);
+        TableRepairJob otherRepairJob = repairJob(tableReference(KEYSPACE_NAME, "table2"), myRepairConfiguration, myReplicaRepairGroup);
+
+        myTableRepairCoalescer.unregister(otherRepairJob);
+
+        assertThat(myTableRepairCoalescer.getCoalescedTables(repairJob, myReplicaRepairGroup)).isEmpty();
+    }
+
+    @Test
+    public void testIteratorWithCoalescedTables()
+    {
+        TableRepairJob repairJob = repairJob(tableReference(KEYSPACE_NAME, "table1"), myRepairConfiguration, myReplicaRepairGroup);
+        repairJob(tableReference(KEYSPACE_NAME, "table2"), myRepairConfiguration, myReplicaRepairGroup);
+
+        Collection<RepairTask> repairTasks = ((RepairGroup) repairJob.iterator().next()).getRepairTasks();
+
+        assertThat(repairTasks).hasSize(1);
+        RepairTask repairTask = repairTasks.iterator().next();
+        assertThat(repairTask.getTableReference()).isEqualTo(tableReference(KEYSPACE_NAME, "table1"));
+        assertThat(repairTask.getCoalescedTables()).containsExactly(tableReference(KEYSPACE_NAME, "table2"));
+    }
+
+    @Test
+    public void testCoalescedTableIsNotRepairedAgain()
+    {
+        TableRepairJob repairJob = repairJob(tableReference(KEYSPACE_NAME, "table1"), myRepairConfiguration, myReplicaRepairGroup);
+
+        RepairState coalescedRepairState = mock(RepairState.class);
+        AtomicReference<RepairStateSnapshot> coalescedSnapshot = new AtomicReference<>(snapshot(myReplicaRepairGroup));
+        when(coalescedRepairState.getSnapshot()).thenAnswer(invocation -> coalescedSnapshot.get());
+        doAnswer(invocation -> {
+            coalescedSnapshot.set(snapshot());
+            return null;
+        }).when(coalescedRepairState).update();
+        TableRepairJob coalescedRepairJob = repairJob(tableReference(KEYSPACE_NAME, "table2"), myRepairConfiguration, coalescedRepairState);
+
+        RepairGroup repairGroup = (RepairGroup) repairJob.iterator().next();
+        assertThat(repairGroup.getCoalescedTables()).containsExactly(tableReference(KEYSPACE_NAME, "table2"));
+
+        repairJob.postExecute(true, repairGroup);
+
+        verify(coalescedRepairState).update();
+        assertThat(coalescedRepairJob.iterator().hasNext()).isFalse();
+        assertThat(myTableRepairCoalescer.getCoalescedTables(repairJob, myReplicaRepairGroup)).isEmpty();
+    }
+
+    private TableRepairJob repairJob(TableReference tableReference, RepairConfiguration repairConfiguration,
+            ReplicaRepairGroup... replicaRepairGroups)
+    {
+        RepairState repairState = mock(RepairState.class);
+        RepairStateSnapshot repairStateSnapshot = snapshot(replicaRepairGroups);
+        when(repairState.getSnapshot()).thenReturn(repairStateSnapshot);
+
+        return repairJob(tableReference, repairConfiguration, repairState);
+    }
+
+    private TableRepairJob repairJob(TableReference tableReference, RepairConfiguration repairConfiguration, RepairState repairState)
+    {
+        TableRepairJob repairJob = new TableRepairJob.Builder()
+                .withTableReference(tableReference)
+                .withJmxProxyFactory(myJmxProxyFactory)
+                .withRepairNotificationDispatcher(myRepairNotificationDispatcher)
+                .withRepairState(repairState)
+                .withTableRepairMetrics(myTableRepairMetrics)
+                .withRepairConfiguration(repairConfiguration)
+                .withRepairLockType(RepairLockType.VNODE)
+                .withTableStorageStates(myTableStorageStates)
+                .withRepairHistory(myRepairHistory)
+                .withTableRepairCoalescer(myTableRepairCoalescer)
+                .build();
+
+        myTableRepairCoalescer.register(repairJob);
+
+        return repairJob;
+    }
+
+    private ReplicaRepairGroup replicaRepairGroup(LongTokenRange tokenRange)
+    {
+        Node node = mock(Node.class);
+        when(node.getId()).thenReturn(UUID.randomUUID());
+        when(node.getDatacenter()).thenReturn("DC1");
+
+        return new ReplicaRepairGroup(ImmutableSet.of(node), ImmutableList.of(tokenRange));
+    }
+
+    private RepairStateSnapshot snapshot(ReplicaRepairGroup... replicaRepairGroups)
+    {
+        ImmutableList.Builder<VnodeRepairState> vnodeRepairStates = ImmutableList.builder();
+        for (ReplicaRepairGroup replicaRepairGroup : replicaRepairGroups)
+        {
+            for (LongTokenRange tokenRange : replicaRepairGroup)
+            {
+                vnodeRepairStates.add(new VnodeRepairState(tokenRange, ImmutableSet.copyOf(replicaRepairGroup.getReplicas()), 1234L));
+            }
+        }
+
+        return RepairStateSnapshot.newBuilder()
+                .withReplicaRepairGroups(ImmutableList.copyOf(replicaRepairGroups))
+                .withLastRepairedAt(1234L)
+                .withVnodeRepairStates(VnodeRepairStatesImpl.newBuilder(vnodeRepairStates.build()).build())
+                .build();
+    }
+}
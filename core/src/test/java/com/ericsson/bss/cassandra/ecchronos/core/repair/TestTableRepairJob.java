@@ -17,8 +17,12 @@ package com.ericsson.bss.cassandra.ecchronos.core.repair;
 import com.datastax.driver.core.KeyspaceMetadata;
 import com.datastax.driver.core.Metadata;
 import com.datastax.driver.core.exceptions.OverloadedException;
+import com.ericsson.bss.cassandra.ecchronos.core.JmxProxy;
 import com.ericsson.bss.cassandra.ecchronos.core.JmxProxyFactory;
 import com.ericsson.bss.cassandra.ecchronos.core.TableStorageStates;
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.InsufficientNodesException;
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockContendedException;
+import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
 import com.ericsson.bss.cassandra.ecchronos.core.metrics.TableRepairMetrics;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.state.*;
 import com.ericsson.bss.cassandra.ecchronos.core.scheduling.LockFactory;
@@ -36,11 +40,17 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import java.net.InetAddress;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.ericsson.bss.cassandra.ecchronos.core.MockTableReferenceFactory.tableReference;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
@@ -60,6 +70,8 @@ public class TestTableRepairJob
     @Mock
     private JmxProxyFactory myJmxProxyFactory;
 
+    private final RepairNotificationDispatcher myRepairNotificationDispatcher = new RepairNotificationDispatcher();
+
     @Mock
     private Metadata myMetadata;
 
@@ -119,6 +131,7 @@ public class TestTableRepairJob
                 .withConfiguration(configuration)
                 .withTableReference(myTableReference)
                 .withJmxProxyFactory(myJmxProxyFactory)
+                .withRepairNotificationDispatcher(myRepairNotificationDispatcher)
                 .withRepairState(myRepairState)
                 .withTableRepairMetrics(myTableRepairMetrics)
                 .withRepairConfiguration(myRepairConfiguration)
@@ -131,6 +144,7 @@ public class TestTableRepairJob
     @After
     public void finalVerification()
     {
+        myRepairNotificationDispatcher.close();
         verifyNoMoreInteractions(ignoreStubs(myJmxProxyFactory));
         verifyNoMoreInteractions(ignoreStubs(myMetadata));
         verifyNoMoreInteractions(ignoreStubs(myLockFactory));
@@ -253,6 +267,7 @@ public class TestTableRepairJob
         myRepairJob.postExecute(false, null);
 
         assertThat(myRepairJob.getLastSuccessfulRun()).isEqualTo(lastRun);
+        assertThat(myRepairJob.getNextRunnableTime()).isLessThanOrEqualTo(System.currentTimeMillis());
         verify(myRepairState, times(1)).update();
     }
 
@@ -317,6 +332,137 @@ public class TestTableRepairJob
         assertThat(repairTask.getTableReference()).isEqualTo(myTableReference);
     }
 
+    @Test
+    public void testYieldedGroupContinuesWithRemainingRangesWhenRunAgain() throws Exception
+    {
+        LongTokenRange firstRange = new LongTokenRange(0, 10);
+        LongTokenRange secondRange = new LongTokenRange(10, 20);
+        Node node = mock(Node.class);
+        when(node.getPublicAddress()).thenReturn(InetAddress.getByName("127.0.0.1"));
+        ImmutableSet<Node> replicas = ImmutableSet.of(node);
+
+        VnodeRepairStates vnodeRepairStates = VnodeRepairStatesImpl.newBuilder(ImmutableList.of(
+                new VnodeRepairState(firstRange, replicas, 1234L),
+                new VnodeRepairState(secondRange, replicas, 1234L))).build();
+        RepairStateSnapshot repairStateSnapshot = RepairStateSnapshot.newBuilder()
+                .withReplicaRepairGroups(Collections.singletonList(new ReplicaRepairGroup(replicas, ImmutableList.of(firstRange, secondRange))))
+                .withLastRepairedAt(1234L)
+                .withVnodeRepairStates(vnodeRepairStates)
+                .build();
+        when(myRepairState.getSnapshot()).thenReturn(repairStateSnapshot);
+
+        JmxProxy jmxProxy = mock(JmxProxy.class);
+        AtomicReference<NotificationListener> notificationListener = new AtomicReference<>();
+        AtomicInteger repairCount = new AtomicInteger();
+        doAnswer(invocation -> {
+            notificationListener.set(invocation.getArgumentAt(0, NotificationListener.class));
+            return null;
+        }).when(jmxProxy).addStorageServiceListener(any(NotificationListener.class));
+        when(jmxProxy.repairAsync(eq(keyspaceName), any())).thenAnswer(invocation -> {
+            int repair = repairCount.incrementAndGet();
+            String[] range = ((Map<String, String>) invocation.getArgumentAt(1, Map.class)).get(RepairOptions.RANGES_KEY).split("[:,]");
+            progressAndComplete(notificationListener.get(), repair, new LongTokenRange(Long.parseLong(range[0]), Long.parseLong(range[1])));
+            return repair;
+        });
+        when(myJmxProxyFactory.connect()).thenReturn(jmxProxy);
+
+        RepairGroup repairGroup = (RepairGroup) myRepairJob.iterator().next();
+        repairGroup.setPreemptionSignal(() -> true);
+
+        assertThat(repairGroup.execute()).isTrue();
+        assertThat(repairGroup.isFinished()).isFalse();
+        verify(jmxProxy).repairAsync(eq(keyspaceName), any());
+
+        RepairGroup remainingGroup = (RepairGroup) myRepairJob.iterator().next();
+        assertThat(remainingGroup.getRepairTasks()).extracting(RepairTask::getTokenRanges)
+                .containsExactly(ImmutableSet.of(secondRange));
+
+        assertThat(remainingGroup.execute()).isTrue();
+        assertThat(remainingGroup.isFinished()).isTrue();
+        verify(jmxProxy, times(2)).repairAsync(eq(keyspaceName), any());
+
+        RepairGroup nextGroup = (RepairGroup) myRepairJob.iterator().next();
+        assertThat(nextGroup.getRepairTasks()).hasSize(2);
+        verify(myTableRepairMetrics, times(2)).repairTiming(eq(myTableReference), anyLong(), any(TimeUnit.class), eq(true));
+    }
+
+    @Test
+    public void testIteratorSkipsGroupThatIsBackingOff()
+    {
+        ReplicaRepairGroup failingGroup = replicaRepairGroup(new LongTokenRange(0, 10));
+        ReplicaRepairGroup otherGroup = replicaRepairGroup(new LongTokenRange(10, 20));
+        when(myRepairState.getSnapshot()).thenReturn(snapshot(failingGroup, otherGroup));
+        when(myLockFactory.sufficientNodesForLocking(any(), any())).thenReturn(false);
+
+        ScheduledTask failingTask = myRepairJob.iterator().next();
+        assertThatExceptionOfType(LockException.class).isThrownBy(() -> failingTask.getLock(myLockFactory));
+
+        Iterator<ScheduledTask> iterator = myRepairJob.iterator();
+
+        Collection<RepairTask> repairTasks = ((RepairGroup) iterator.next()).getRepairTasks();
+        assertThat(repairTasks.iterator().next().getReplicas()).containsExactlyInAnyOrderElementsOf(otherGroup.getReplicas());
+        assertThat(iterator.hasNext()).isFalse();
+        assertThat(myRepairJob.runnable()).isTrue();
+        verify(myRepairState).update();
+    }
+
+    @Test
+    public void testNotRunnableWhenAllGroupsAreBackingOff()
+    {
+        ReplicaRepairGroup failingGroup = replicaRepairGroup(new LongTokenRange(0, 10));
+        when(myRepairState.getSnapshot()).thenReturn(snapshot(failingGroup));
+        when(myLockFactory.sufficientNodesForLocking(any(), any())).thenReturn(false);
+
+        ScheduledTask failingTask = myRepairJob.iterator().next();
+        assertThatExceptionOfType(LockException.class).isThrownBy(() -> failingTask.getLock(myLockFactory));
+
+        assertThat(myRepairJob.iterator().hasNext()).isFalse();
+        assertThat(myRepairJob.runnable()).isFalse();
+        assertThat(myRepairJob.getNextRunnableTime()).isGreaterThan(System.currentTimeMillis());
+        verify(myRepairState).update();
+    }
+
+    @Test
+    public void testGroupIsRetriedWhenLockIsReleased()
+    {
+        ReplicaRepairGroup failingGroup = replicaRepairGroup(new LongTokenRange(0, 10));
+        when(myRepairState.getSnapshot()).thenReturn(snapshot(failingGroup));
+        when(myLockFactory.sufficientNodesForLocking(any(), any())).thenReturn(true);
+        when(myLockFactory.getCachedFailure(any(), any())).thenReturn(Optional.of(new LockContendedException("contended", -1L)));
+
+        ScheduledTask failingTask = myRepairJob.iterator().next();
+        assertThatExceptionOfType(LockContendedException.class).isThrownBy(() -> failingTask.getLock(myLockFactory));
+
+        Node node = failingGroup.getReplicas().iterator().next();
+        RepairResource repairResource = new RepairResource(node.getDatacenter(), node.getId().toString());
+
+        myRepairJob.onLockReleased("DC2", repairResource.getResourceName(1));
+        myRepairJob.onLockReleased("DC1", new RepairResource("DC1", UUID.randomUUID().toString()).getResourceName(1));
+        assertThat(myRepairJob.iterator().hasNext()).isFalse();
+
+        myRepairJob.onLockReleased("DC1", repairResource.getResourceName(1));
+        assertThat(myRepairJob.iterator().hasNext()).isTrue();
+        assertThat(myRepairJob.getNextRunnableTime()).isLessThanOrEqualTo(System.currentTimeMillis());
+    }
+
+    @Test
+    public void testGroupWithInsufficientNodesIsNotRetriedWhenLockIsReleased()
+    {
+        ReplicaRepairGroup failingGroup = replicaRepairGroup(new LongTokenRange(0, 10));
+        when(myRepairState.getSnapshot()).thenReturn(snapshot(failingGroup));
+        when(myLockFactory.sufficientNodesForLocking(any(), any())).thenReturn(false);
+
+        ScheduledTask failingTask = myRepairJob.iterator().next();
+        assertThatExceptionOfType(InsufficientNodesException.class).isThrownBy(() -> failingTask.getLock(myLockFactory));
+
+        Node node = failingGroup.getReplicas().iterator().next();
+        RepairResource repairResource = new RepairResource(node.getDatacenter(), node.getId().toString());
+
+        myRepairJob.onLockReleased("DC1", repairResource.getResourceName(1));
+        assertThat(myRepairJob.iterator().hasNext()).isFalse();
+        assertThat(myRepairJob.getNextRunnableTime()).isGreaterThan(System.currentTimeMillis());
+    }
+
     @Test
     public void testIteratorWithTargetSize()
     {
@@ -370,6 +516,102 @@ public class TestTableRepairJob
         }
     }
 
+    @Test
+    public void testIteratorWithTargetSizeCalculatedOncePerSnapshot()
+    {
+        LongTokenRange tokenRange = new LongTokenRange(0, 10);
+        ImmutableSet<Node> replicas = ImmutableSet.of(mock(Node.class), mock(Node.class));
+        ImmutableList<LongTokenRange> vnodes = ImmutableList.of(tokenRange);
+
+        VnodeRepairStates vnodeRepairStates = VnodeRepairStatesImpl.newBuilder(ImmutableList.of(new VnodeRepairState(tokenRange, replicas, 1234L))).build();
+        ReplicaRepairGroup replicaRepairGroup = new ReplicaRepairGroup(replicas, vnodes);
+
+        RepairStateSnapshot repairStateSnapshot = RepairStateSnapshot.newBuilder()
+                .withReplicaRepairGroups(Collections.singletonList(replicaRepairGroup))
+                .withLastRepairedAt(1234L)
+                .withVnodeRepairStates(vnodeRepairStates)
+                .build();
+        RepairStateSnapshot newRepairStateSnapshot = RepairStateSnapshot.newBuilder()
+                .withReplicaRepairGroups(Collections.singletonList(replicaRepairGroup))
+                .withLastRepairedAt(1234L)
+                .withVnodeRepairStates(vnodeRepairStates)
+                .build();
+        when(myRepairState.getSnapshot()).thenReturn(repairStateSnapshot);
+        when(myTableStorageStates.getDataSize(eq(myTableReference))).thenReturn(THOUSAND_MB_IN_BYTES);
+
+        assertThat(myRepairJob.iterator().next()).isInstanceOf(RepairGroup.class);
+        assertThat(myRepairJob.iterator().next()).isInstanceOf(RepairGroup.class);
+
+        verify(myTableStorageStates, times(1)).getDataSize(eq(myTableReference));
+
+        when(myRepairState.getSnapshot()).thenReturn(newRepairStateSnapshot);
+
+        assertThat(myRepairJob.iterator().next()).isInstanceOf(RepairGroup.class);
+
+        verify(myTableStorageStates, times(2)).getDataSize(eq(myTableReference));
+    }
+
+    @Test
+    public void testLatestStartTimeWithoutRepairHistory()
+    {
+        long repairedAt = System.currentTimeMillis();
+        doReturn(repairedAt).when(myRepairStateSnapshot).lastRepairedAt();
+        VnodeRepairState vnodeRepairState = TestUtils.createVnodeRepairState(1, 2, ImmutableSet.of(), repairedAt);
+        VnodeRepairStatesImpl vnodeRepairStates = VnodeRepairStatesImpl.newBuilder(Arrays.asList(vnodeRepairState)).build();
+        when(myRepairStateSnapshot.getVnodeRepairStates()).thenReturn(vnodeRepairStates);
+
+        assertThat(myRepairJob.getLatestStartTime()).isEqualTo(repairedAt + TimeUnit.DAYS.toMillis(GC_GRACE_DAYS));
+    }
+
+    @Test
+    public void testLatestStartTimeOnlyCountsVnodesDueForRepair()
+    {
+        RepairConfiguration repairConfiguration = RepairConfiguration.newBuilder(myRepairConfiguration)
+                .withTargetRepairSizeInBytes(RepairConfiguration.FULL_REPAIR_SIZE)
+                .withRepairSessionConcurrency(2)
+                .withMaxRangesPerSession(2)
+                .build();
+        TableRepairJob repairJob = new TableRepairJob.Builder()
+                .withTableReference(myTableReference)
+                .withJmxProxyFactory(myJmxProxyFactory)
+                .withRepairNotificationDispatcher(myRepairNotificationDispatcher)
+                .withRepairState(myRepairState)
+                .withTableRepairMetrics(myTableRepairMetrics)
+                .withRepairConfiguration(repairConfiguration)
+                .withRepairLockType(RepairLockType.VNODE)
+                .withTableStorageStates(myTableStorageStates)
+                .withRepairHistory(myRepairHistory)
+                .build();
+
+        long now = System.currentTimeMillis();
+        long repairedAt = now - TimeUnit.DAYS.toMillis(GC_GRACE_DAYS + 2);
+        long recentlyRepairedAt = now - TimeUnit.HOURS.toMillis(1);
+        ImmutableSet<Node> replicas = ImmutableSet.of(mock(Node.class), mock(Node.class));
+
+        List<VnodeRepairState> vnodes = new ArrayList<>();
+        for (int i = 0; i < 8; i++)
+        {
+            long lastRepairedAt = i < 4 ? repairedAt : recentlyRepairedAt;
+            vnodes.add(new VnodeRepairState(new LongTokenRange(i * 10, i * 10 + 10), replicas, lastRepairedAt));
+        }
+        LongTokenRange dueRange = vnodes.get(0).getTokenRange();
+
+        RepairStateSnapshot repairStateSnapshot = RepairStateSnapshot.newBuilder()
+                .withReplicaRepairGroups(Collections.singletonList(new ReplicaRepairGroup(replicas, ImmutableList.of(dueRange))))
+                .withLastRepairedAt(repairedAt)
+                .withVnodeRepairStates(VnodeRepairStatesImpl.newBuilder(vnodes).build())
+                .build();
+        when(myRepairState.getSnapshot()).thenReturn(repairStateSnapshot);
+
+        RepairTask repairTask = ((RepairGroup) repairJob.iterator().next()).getRepairTasks().iterator().next();
+        repairTask.getTableRepairMetrics().repairTiming(myTableReference, 1, TimeUnit.HOURS, true);
+
+        // Four vnodes are due, packed two per session and running two sessions at a time
+        long deadline = repairedAt + TimeUnit.DAYS.toMillis(GC_GRACE_DAYS);
+        assertThat(repairJob.getLatestStartTime()).isEqualTo(deadline - TimeUnit.HOURS.toMillis(1));
+        verify(myTableRepairMetrics).repairTiming(eq(myTableReference), eq(1L), eq(TimeUnit.HOURS), eq(true));
+    }
+
     @Test
     public void testStatusCompleted()
     {
@@ -466,4 +708,53 @@ public class TestTableRepairJob
         assertThat(myRepairJob.getView().getProgress()).isEqualTo(0);
     }
 
+    private ReplicaRepairGroup replicaRepairGroup(LongTokenRange tokenRange)
+    {
+        Node node = mock(Node.class);
+        when(node.getId()).thenReturn(UUID.randomUUID());
+        when(node.getDatacenter()).thenReturn("DC1");
+
+        return new ReplicaRepairGroup(ImmutableSet.of(node), ImmutableList.of(tokenRange));
+    }
+
+    private RepairStateSnapshot snapshot(ReplicaRepairGroup... replicaRepairGroups)
+    {
+        List<VnodeRepairState> vnodeRepairStates = new ArrayList<>();
+        for (ReplicaRepairGroup replicaRepairGroup : replicaRepairGroups)
+        {
+            for (LongTokenRange tokenRange : replicaRepairGroup)
+            {
+                vnodeRepairStates.add(new VnodeRepairState(tokenRange, ImmutableSet.copyOf(replicaRepairGroup.getReplicas()), 1234L));
+            }
+        }
+
+        return RepairStateSnapshot.newBuilder()
+                .withReplicaRepairGroups(Arrays.asList(replicaRepairGroups))
+                .withLastRepairedAt(1234L)
+                .withVnodeRepairStates(VnodeRepairStatesImpl.newBuilder(vnodeRepairStates).build())
+                .build();
+    }
+
+    private void progressAndComplete(NotificationListener notificationListener, int repair, LongTokenRange range)
+    {
+        String repairSession = "repair:" + repair;
+
+        Notification notification = new Notification("progress", repairSession, 0,
+                String.format("Repair session RepairSession for range %s finished", Collections.singletonList(range)));
+        notification.setUserData(getNotificationData(RepairTask.ProgressEventType.PROGRESS.ordinal()));
+        notificationListener.handleNotification(notification, null);
+
+        notification = new Notification("progress", repairSession, 1, "Done with repair");
+        notification.setUserData(getNotificationData(RepairTask.ProgressEventType.COMPLETE.ordinal()));
+        notificationListener.handleNotification(notification, null);
+    }
+
+    private Map<String, Integer> getNotificationData(int type)
+    {
+        Map<String, Integer> data = new HashMap<>();
+        data.put("type", type);
+        data.put("progressCount", 1);
+        data.put("total", 1);
+        return data;
+    }
 }
@@ -15,6 +15,8 @@
 package com.ericsson.bss.cassandra.ecchronos.core.scheduling;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.awaitility.Awaitility.await;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyMapOf;
@@ -26,16 +28,20 @@ import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import com.codahale.metrics.MetricRegistry;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 
 import com.ericsson.bss.cassandra.ecchronos.core.exceptions.LockException;
 import org.mockito.Mock;
@@ -179,6 +185,131 @@ public class TestScheduleManager
         assertThat(myScheduler.getQueueSize()).isEqualTo(2);
     }
 
+    @Test (timeout = 2000L)
+    public void testRunningTwoJobsWithDifferentResourcesInParallel() throws InterruptedException
+    {
+        LongRunningJob job = new LongRunningJob(ScheduledJob.Priority.HIGH, "resource1");
+        LongRunningJob job2 = new LongRunningJob(ScheduledJob.Priority.LOW, "resource2");
+        ScheduleManagerImpl scheduler = ScheduleManagerImpl.builder()
+                .withLockFactory(myLockFactory)
+                .withWorkers(2)
+                .build();
+        scheduler.schedule(job);
+        scheduler.schedule(job2);
+
+        final CountDownLatch cdl = new CountDownLatch(1);
+
+        new Thread()
+        {
+            @Override
+            public void run()
+            {
+                scheduler.run();
+                cdl.countDown();
+            }
+        }.start();
+
+        while(!job.hasStarted())
+        {
+            Thread.sleep(10);
+        }
+
+        scheduler.run();
+
+        cdl.await();
+        scheduler.close();
+
+        assertThat(job.hasRun()).isTrue();
+        assertThat(job2.hasRun()).isTrue();
+        assertThat(scheduler.getQueueSize()).isEqualTo(2);
+    }
+
+    @Test (timeout = 2000L)
+    public void testRunningTwoJobsWithSameResourceInParallelShouldFail() throws InterruptedException, LockException
+    {
+        LongRunningJob job = new LongRunningJob(ScheduledJob.Priority.HIGH, "resource1");
+        LongRunningJob job2 = new LongRunningJob(ScheduledJob.Priority.LOW, "resource1");
+        ScheduleManagerImpl scheduler = ScheduleManagerImpl.builder()
+                .withLockFactory(myLockFactory)
+                .withWorkers(2)
+                .build();
+        scheduler.schedule(job);
+        scheduler.schedule(job2);
+
+        final CountDownLatch cdl = new CountDownLatch(1);
+
+        new Thread()
+        {
+            @Override
+            public void run()
+            {
+                scheduler.run();
+                cdl.countDown();
+            }
+        }.start();
+
+        while(!job.hasStarted())
+        {
+            Thread.sleep(10);
+        }
+
+        scheduler.run();
+
+        cdl.await();
+        scheduler.close();
+
+        assertThat(job.hasRun()).isTrue();
+        assertThat(job2.hasRun()).isFalse();
+        assertThat(scheduler.getQueueSize()).isEqualTo(2);
+        verify(myLockFactory, times(1)).tryLock(anyString(), anyString(), anyInt(), anyMapOf(String.class, String.class));
+    }
+
+    @Test (timeout = 2000L)
+    public void testRunningTwoJobsWithSameResourceAndTwoSlotsInParallel() throws InterruptedException
+    {
+        LongRunningJob job = new LongRunningJob(ScheduledJob.Priority.HIGH, "resource1", 2);
+        LongRunningJob job2 = new LongRunningJob(ScheduledJob.Priority.LOW, "resource1", 2);
+        ScheduleManagerImpl scheduler = ScheduleManagerImpl.builder()
+                .withLockFactory(myLockFactory)
+                .withWorkers(2)
+                .build();
+        scheduler.schedule(job);
+        scheduler.schedule(job2);
+
+        final CountDownLatch cdl = new CountDownLatch(1);
+
+        new Thread()
+        {
+            @Override
+            public void run()
+            {
+                scheduler.run();
+                cdl.countDown();
+            }
+        }.start();
+
+        while(!job.hasStarted())
+        {
+            Thread.sleep(10);
+        }
+
+        scheduler.run();
+
+        cdl.await();
+        scheduler.close();
+
+        assertThat(job.hasRun()).isTrue();
+        assertThat(job2.hasRun()).isTrue();
+        assertThat(scheduler.getQueueSize()).isEqualTo(2);
+    }
+
+    @Test
+    public void testBuildWithoutWorkers()
+    {
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> ScheduleManagerImpl.builder().withLockFactory(myLockFactory).withWorkers(0).build());
+    }
+
     @Test
     public void testTwoJobsRejected()
     {
@@ -262,17 +393,408 @@ public class TestScheduleManager
         assertThat(myScheduler.getQueueSize()).isEqualTo(0);
     }
 
+    @Test (timeout = 2000L)
+    public void testJobIsRunWithoutPolling() throws InterruptedException
+    {
+        ScheduleManagerImpl scheduler = ScheduleManagerImpl.builder()
+                .withLockFactory(myLockFactory)
+                .withRunInterval(50, TimeUnit.MILLISECONDS)
+                .build();
 
+        try
+        {
+            DummyJob job = new DummyJob(ScheduledJob.Priority.LOW);
+            scheduler.schedule(job);
 
+            while (!job.hasRun())
+            {
+                Thread.sleep(10);
+            }
+        }
+        finally
+        {
+            scheduler.close();
+        }
+    }
+
+    @Test (timeout = 2000L)
+    public void testWakeUpAtNextRunnableTime() throws InterruptedException
+    {
+        ScheduleManagerImpl scheduler = ScheduleManagerImpl.builder()
+                .withLockFactory(myLockFactory)
+                .withRunInterval(50, TimeUnit.MILLISECONDS)
+                .build();
+
+        try
+        {
+            DummyJob job = new DummyJob(ScheduledJob.Priority.LOW);
+            job.setRunnableIn(TimeUnit.MINUTES.toMillis(10));
+            scheduler.schedule(job);
+
+            while (scheduler.getNextWakeUpTime() != job.getNextRunnableTime())
+            {
+                Thread.sleep(10);
+            }
+
+            assertThat(job.hasRun()).isFalse();
+        }
+        finally
+        {
+            scheduler.close();
+        }
+    }
+
+    @Test (timeout = 2000L)
+    public void testWakeUpWhenRunnableTimeIsMovedEarlier() throws InterruptedException
+    {
+        ScheduleManagerImpl scheduler = ScheduleManagerImpl.builder()
+                .withLockFactory(myLockFactory)
+                .withRunInterval(50, TimeUnit.MILLISECONDS)
+                .build();
+
+        try
+        {
+            DummyJob job = new DummyJob(ScheduledJob.Priority.LOW);
+            job.setRunnableIn(TimeUnit.MINUTES.toMillis(10));
+            scheduler.schedule(job);
+
+            while (scheduler.getNextWakeUpTime() != job.getNextRunnableTime())
+            {
+                Thread.sleep(10);
+            }
+
+            job.setRunnableIn(100);
+
+            await().atMost(1, TimeUnit.SECONDS).until(job::hasRun);
+        }
+        finally
+        {
+            scheduler.close();
+        }
+    }
+
+    @Test (timeout = 2000L)
+    public void testLockReleaseWakesUpWaitingJob() throws InterruptedException
+    {
+        ScheduleManagerImpl scheduler = ScheduleManagerImpl.builder()
+                .withLockFactory(myLockFactory)
+                .withRunInterval(50, TimeUnit.MILLISECONDS)
+                .build();
+
+        ArgumentCaptor<LockFactory.LockReleaseListener> listenerCaptor = ArgumentCaptor.forClass(LockFactory.LockReleaseListener.class);
+        verify(myLockFactory, times(2)).addLockReleaseListener(listenerCaptor.capture());
+        LockFactory.LockReleaseListener listener = listenerCaptor.getValue();
+
+        try
+        {
+            List<String> releasedResources = new ArrayList<>();
+            DummyJob job = new DummyJob(ScheduledJob.Priority.LOW)
+            {
+                @Override
+                public void onLockReleased(String dataCenter, String resource)
+                {
+                    releasedResources.add(resource);
+                    setRunnableIn(0);
+                }
+            };
+            job.setRunnableIn(TimeUnit.MINUTES.toMillis(10));
+            scheduler.schedule(job);
+
+            while (scheduler.getNextWakeUpTime() != job.getNextRunnableTime())
+            {
+                Thread.sleep(10);
+            }
+
+            listener.onLockReleased("dc1", "resource1");
+
+            await().atMost(1, TimeUnit.SECONDS).until(job::hasRun);
+            assertThat(releasedResources).containsExactly("resource1");
+        }
+        finally
+        {
+            scheduler.close();
+        }
+
+        verify(myLockFactory).removeLockReleaseListener(listener);
+    }
+
+    @Test
+    public void testMetrics()
+    {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        ScheduleManagerImpl scheduler = ScheduleManagerImpl.builder()
+                .withLockFactory(myLockFactory)
+                .withMetricRegistry(metricRegistry)
+                .build();
+
+        try
+        {
+            DummyJob job = new DummyJob(ScheduledJob.Priority.LOW);
+            DummyJob parkedJob = new DummyJob(ScheduledJob.Priority.HIGH);
+            parkedJob.setRunnableIn(TimeUnit.MINUTES.toMillis(10));
+            scheduler.schedule(job);
+            scheduler.schedule(parkedJob);
+
+            assertThat(metricRegistry.getGauges().get("LOW-RunnableJobs").getValue()).isEqualTo(1);
+            assertThat(metricRegistry.getGauges().get("LOW-ParkedJobs").getValue()).isEqualTo(0);
+            assertThat(metricRegistry.getGauges().get("HIGH-RunnableJobs").getValue()).isEqualTo(0);
+            assertThat(metricRegistry.getGauges().get("HIGH-ParkedJobs").getValue()).isEqualTo(1);
+
+            scheduler.run();
+
+            assertThat(job.hasRun()).isTrue();
+            assertThat(metricRegistry.getTimers().get("SchedulerRunTime").getCount()).isEqualTo(1);
+            assertThat(metricRegistry.getTimers().get("JobStartDelay").getCount()).isEqualTo(1);
+            assertThat(metricRegistry.getTimers().get("SCHEDULE_LOCK-LockAcquireTime").getCount()).isEqualTo(1);
+            assertThat(metricRegistry.getCounters().get("SCHEDULE_LOCK-LockFailures")).isNull();
+
+            DummyJob rejectedJob = new DummyJob(ScheduledJob.Priority.LOW);
+            scheduler.schedule(rejectedJob);
+            scheduler.addRunPolicy(new RejectingRunPolicy());
+            scheduler.run();
+
+            assertThat(rejectedJob.hasRun()).isFalse();
+
+            assertThat(metricRegistry.getCounters().get("RejectingRunPolicy-RunPolicyRejections").getCount()).isEqualTo(1);
+        }
+        finally
+        {
+            scheduler.close();
+        }
+
+        assertThat(metricRegistry.getMetrics()).isEmpty();
+    }
+
+    @Test
+    public void testJobIsDeferredDuringCooldown() throws LockException
+    {
+        DummyLock lock = new DummyLock();
+        when(myLockFactory.tryLock(anyString(), anyString(), anyInt(), anyMapOf(String.class, String.class))).thenReturn(lock);
+        CooldownJob job = new CooldownJob(TimeUnit.MINUTES.toMillis(10), 2);
+        myScheduler.schedule(job);
+
+        long before = System.currentTimeMillis();
+        myScheduler.run();
+
+        assertThat(job.getNumRuns()).isEqualTo(1);
+        assertThat(job.getNumPostExecutes()).isEqualTo(0);
+        assertThat(lock.closed).isTrue();
+        assertThat(job.getNextRunnableTime()).isGreaterThanOrEqualTo(before + TimeUnit.MINUTES.toMillis(10));
+
+        myScheduler.run();
+
+        assertThat(job.getNumRuns()).isEqualTo(1);
+        verify(myLockFactory, times(1)).tryLock(anyString(), anyString(), anyInt(), anyMapOf(String.class, String.class));
+    }
+
+    @Test
+    public void testJobIsNotifiedWhenTaskIsFinishedAfterCooldown()
+    {
+        CooldownJob job = new CooldownJob(1, 1);
+        myScheduler.schedule(job);
+
+        myScheduler.run();
+
+        assertThat(job.getNumRuns()).isEqualTo(1);
+        assertThat(job.getNumPostExecutes()).isEqualTo(0);
+
+        await().atMost(1, TimeUnit.SECONDS).until(job::runnable);
+        myScheduler.run();
+
+        assertThat(job.getNumRuns()).isEqualTo(2);
+        assertThat(job.getNumPostExecutes()).isEqualTo(1);
+    }
+
+    @Test
+    public void testTaskYieldsToWaitingHighestPriorityJob()
+    {
+        DummyJob highestPriorityJob = new DummyJob(ScheduledJob.Priority.HIGHEST);
+        PreemptibleJob job = new PreemptibleJob(ScheduledJob.Priority.LOW, 3, () -> myScheduler.schedule(highestPriorityJob));
+        myScheduler.schedule(job);
+
+        myScheduler.run();
+
+        assertThat(job.getNumSteps()).isEqualTo(1);
+        assertThat(highestPriorityJob.hasRun()).isFalse();
+
+        myScheduler.run();
+
+        assertThat(highestPriorityJob.hasRun()).isTrue();
+        assertThat(job.getNumSteps()).isEqualTo(1);
+
+        myScheduler.run();
+
+        assertThat(job.getNumSteps()).isEqualTo(3);
+    }
+
+    @Test
+    public void testHighestPriorityTaskIsNotPreempted()
+    {
+        DummyJob highestPriorityJob = new DummyJob(ScheduledJob.Priority.HIGHEST);
+        PreemptibleJob job = new PreemptibleJob(ScheduledJob.Priority.HIGHEST, 3, () -> myScheduler.schedule(highestPriorityJob));
+        myScheduler.schedule(job);
+
+        myScheduler.run();
+
+        assertThat(job.getNumSteps()).isEqualTo(3);
+        assertThat(highestPriorityJob.hasRun()).isFalse();
+    }
+
+    @Test
+    public void testLockIsReusedByNextJob() throws LockException
+    {
+        DummyLock lock = new DummyLock();
+        when(myLockFactory.tryLock(anyString(), anyString(), anyInt(), anyMapOf(String.class, String.class))).thenReturn(lock);
+        DummyJob job = new DummyJob(ScheduledJob.Priority.LOW);
+        DummyJob job2 = new DummyJob(ScheduledJob.Priority.LOW);
+
+        try (ScheduleManagerImpl scheduler = lockReusingScheduler(3, TimeUnit.MINUTES.toMillis(5)))
+        {
+            scheduler.schedule(job);
+            scheduler.schedule(job2);
+
+            scheduler.run();
+        }
+
+        assertThat(job.hasRun()).isTrue();
+        assertThat(job2.hasRun()).isTrue();
+        assertThat(lock.closed).isTrue();
+        verify(myLockFactory, times(1)).tryLock(anyString(), anyString(), anyInt(), anyMapOf(String.class, String.class));
+    }
+
+    @Test
+    public void testLockIsReusedByMaxTasks() throws LockException
+    {
+        DummyJob job = new DummyJob(ScheduledJob.Priority.LOW);
+        DummyJob job2 = new DummyJob(ScheduledJob.Priority.LOW);
+        DummyJob job3 = new DummyJob(ScheduledJob.Priority.LOW);
+
+        try (ScheduleManagerImpl scheduler = lockReusingScheduler(2, TimeUnit.MINUTES.toMillis(5)))
+        {
+            scheduler.schedule(job);
+            scheduler.schedule(job2);
+            scheduler.schedule(job3);
+
+            scheduler.run();
+
+            assertThat(Arrays.asList(job.hasRun(), job2.hasRun(), job3.hasRun())).containsOnlyOnce(false);
+            verify(myLockFactory, times(1)).tryLock(anyString(), anyString(), anyInt(), anyMapOf(String.class, String.class));
+
+            scheduler.run();
+        }
+
+        assertThat(job.hasRun() && job2.hasRun() && job3.hasRun()).isTrue();
+        verify(myLockFactory, times(2)).tryLock(anyString(), anyString(), anyInt(), anyMapOf(String.class, String.class));
+    }
+
+    @Test
+    public void testLockIsNotReusedAfterMaxHoldTime() throws LockException
+    {
+        DummyJob job = new DummyJob(ScheduledJob.Priority.LOW);
+        DummyJob job2 = new DummyJob(ScheduledJob.Priority.LOW);
+
+        try (ScheduleManagerImpl scheduler = lockReusingScheduler(3, 0))
+        {
+            scheduler.schedule(job);
+            scheduler.schedule(job2);
+
+            scheduler.run();
+        }
+
+        assertThat(job.hasRun() ^ job2.hasRun()).isTrue();
+        verify(myLockFactory, times(1)).tryLock(anyString(), anyString(), anyInt(), anyMapOf(String.class, String.class));
+    }
+
+    @Test
+    public void testLockIsNotReusedWithDifferentResources() throws LockException
+    {
+        DummyJob job = new DummyJob(ScheduledJob.Priority.HIGH);
+        LongRunningJob job2 = new LongRunningJob(ScheduledJob.Priority.LOW, "other");
+
+        try (ScheduleManagerImpl scheduler = lockReusingScheduler(3, TimeUnit.MINUTES.toMillis(5)))
+        {
+            scheduler.schedule(job);
+            scheduler.schedule(job2);
+
+            scheduler.run();
+        }
+
+        assertThat(job.hasRun()).isTrue();
+        assertThat(job2.hasStarted()).isFalse();
+        verify(myLockFactory, times(1)).tryLock(anyString(), anyString(), anyInt(), anyMapOf(String.class, String.class));
+    }
+
+    @Test
+    public void testLockIsNotReusedWhenNextJobIsRejected() throws LockException
+    {
+        DummyJob job = new DummyJob(ScheduledJob.Priority.HIGH);
+        DummyJob rejectedJob = new DummyJob(ScheduledJob.Priority.MEDIUM);
+        DummyJob job3 = new DummyJob(ScheduledJob.Priority.LOW);
+
+        try (ScheduleManagerImpl scheduler = lockReusingScheduler(3, TimeUnit.MINUTES.toMillis(5)))
+        {
+            scheduler.addRunPolicy(j -> j == rejectedJob ? 1000L : -1L);
+            scheduler.schedule(job);
+            scheduler.schedule(rejectedJob);
+            scheduler.schedule(job3);
+
+            scheduler.run();
+        }
+
+        assertThat(job.hasRun()).isTrue();
+        assertThat(rejectedJob.hasRun()).isFalse();
+        assertThat(job3.hasRun()).isFalse();
+        verify(myLockFactory, times(1)).tryLock(anyString(), anyString(), anyInt(), anyMapOf(String.class, String.class));
+    }
+
+    @Test
+    public void testBuildWithoutTasksPerLock()
+    {
+        assertThatExceptionOfType(IllegalArgumentException.class)
+                .isThrownBy(() -> ScheduleManagerImpl.builder().withLockFactory(myLockFactory).withMaxTasksPerLock(0).build());
+    }
+
+    private ScheduleManagerImpl lockReusingScheduler(int maxTasksPerLock, long maxLockHoldTimeInMs)
+    {
+        return ScheduleManagerImpl.builder()
+                .withLockFactory(myLockFactory)
+                .withMaxTasksPerLock(maxTasksPerLock)
+                .withMaxLockHoldTime(maxLockHoldTimeInMs, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    private static class RejectingRunPolicy implements RunPolicy
+    {
+        @Override
+        public long validate(ScheduledJob job)
+        {
+            return 1000L;
+        }
+    }
 
     private class LongRunningJob extends ScheduledJob
     {
+        private final String myResource;
+        private final int myResourceSlots;
+
         private volatile boolean hasRun = false;
         private volatile boolean hasStarted = false;
 
         public LongRunningJob(Priority priority)
+        {
+            this(priority, null);
+        }
+
+        public LongRunningJob(Priority priority, String resource)
+        {
+            this(priority, resource, 1);
+        }
+
+        public LongRunningJob(Priority priority, String resource, int resourceSlots)
         {
             super(new ConfigurationBuilder().withPriority(priority).withRunInterval(1, TimeUnit.SECONDS).build());
+            myResource = resource;
+            myResourceSlots = resourceSlots;
         }
 
         public boolean hasStarted()
@@ -320,6 +842,158 @@ public class TestScheduleManager
             {
                 // NOOP
             }
+
+            @Override
+            public Set<?> getLockResources()
+            {
+                if (myResource == null)
+                {
+                    return super.getLockResources();
+                }
+                return Collections.singleton(myResource);
+            }
+
+            @Override
+            public int getLockResourceSlots(Object resource)
+            {
+                return myResourceSlots;
+            }
+        }
+    }
+
+    /**
+     * A job with a single task that yields with a cooldown the provided number of times before it finishes.
+     */
+    private class CooldownJob extends ScheduledJob
+    {
+        private final AtomicInteger numRuns = new AtomicInteger();
+        private final AtomicInteger numPostExecutes = new AtomicInteger();
+        private final CooldownTask task;
+
+        CooldownJob(long cooldownInMs, int yields)
+        {
+            super(new ConfigurationBuilder().withPriority(Priority.LOW).withRunInterval(1, TimeUnit.SECONDS).build());
+            task = new CooldownTask(cooldownInMs, yields);
+        }
+
+        int getNumRuns()
+        {
+            return numRuns.get();
+        }
+
+        int getNumPostExecutes()
+        {
+            return numPostExecutes.get();
+        }
+
+        @Override
+        public Iterator<ScheduledTask> iterator()
+        {
+            return Collections.<ScheduledTask> singletonList(task).iterator();
+        }
+
+        @Override
+        protected void postExecute(boolean successful, ScheduledTask task)
+        {
+            numPostExecutes.incrementAndGet();
+            super.postExecute(successful, task);
+        }
+
+        private class CooldownTask extends ScheduledTask
+        {
+            private final long myCooldownInMs;
+            private final int myYields;
+
+            CooldownTask(long cooldownInMs, int yields)
+            {
+                myCooldownInMs = cooldownInMs;
+                myYields = yields;
+            }
+
+            @Override
+            public boolean execute()
+            {
+                numRuns.incrementAndGet();
+                return true;
+            }
+
+            @Override
+            public boolean isFinished()
+            {
+                return numRuns.get() > myYields;
+            }
+
+            @Override
+            public long getCooldownInMs()
+            {
+                return isFinished() ? 0L : myCooldownInMs;
+            }
+        }
+    }
+
+    /**
+     * A job with a single task that runs the provided number of steps and yields between the steps when preempted.
+     */
+    private class PreemptibleJob extends ScheduledJob
+    {
+        private final AtomicInteger numSteps = new AtomicInteger();
+        private final PreemptibleTask task;
+
+        PreemptibleJob(Priority priority, int steps, Runnable onFirstStep)
+        {
+            super(new ConfigurationBuilder().withPriority(priority).withRunInterval(1, TimeUnit.SECONDS).build());
+            task = new PreemptibleTask(steps, onFirstStep);
+        }
+
+        int getNumSteps()
+        {
+            return numSteps.get();
+        }
+
+        @Override
+        public Iterator<ScheduledTask> iterator()
+        {
+            return Collections.<ScheduledTask> singletonList(task).iterator();
+        }
+
+        private class PreemptibleTask extends ScheduledTask
+        {
+            private final int mySteps;
+            private final Runnable myOnFirstStep;
+
+            PreemptibleTask(int steps, Runnable onFirstStep)
+            {
+                mySteps = steps;
+                myOnFirstStep = onFirstStep;
+            }
+
+            @Override
+            public boolean execute()
+            {
+                boolean hasRun = false;
+
+                while (!isFinished())
+                {
+                    if (hasRun && isPreempted())
+                    {
+                        return true;
+                    }
+
+                    if (numSteps.incrementAndGet() == 1)
+                    {
+                        myOnFirstStep.run();
+                    }
+                    hasRun = true;
+                }
+
+                return true;
+            }
+
+            @Override
+            public boolean isFinished()
+            {
+                return numSteps.get() >= mySteps;
+            }
         }
     }
 
@@ -15,10 +15,13 @@
 package com.ericsson.bss.cassandra.ecchronos.core.scheduling;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
 
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
 import com.ericsson.bss.cassandra.ecchronos.core.exceptions.ScheduledJobException;
@@ -60,12 +63,244 @@ public class TestScheduledJobQueue
         assertThat(queue.iterator()).containsExactly(job2, job);
     }
 
+    @Test
+    public void testJobsAreSortedByCurrentPriority()
+    {
+        Random random = new Random(0);
+        long now = System.currentTimeMillis();
+        Priority[] priorities = Priority.values();
+
+        for (int i = 0; i < 200; i++)
+        {
+            DummyJob job = new DummyJob(priorities[random.nextInt(priorities.length)]);
+            job.myLastSuccessfulRun = now - TimeUnit.MINUTES.toMillis(random.nextInt(60 * 48));
+            queue.add(job);
+        }
+
+        List<ScheduledJob> jobs = new ArrayList<>();
+        queue.iterator().forEachRemaining(jobs::add);
+
+        assertThat(jobs).hasSize(200);
+        assertThat(jobs).isSortedAccordingTo(new Comp());
+    }
+
+    @Test
+    public void testJobIsReindexedWhenLastSuccessfulRunChanges()
+    {
+        long now = System.currentTimeMillis();
+        DummyJob job = new DummyJob(Priority.LOW);
+        DummyJob job2 = new DummyJob(Priority.LOW);
+        job.myLastSuccessfulRun = now - TimeUnit.HOURS.toMillis(2);
+        job2.myLastSuccessfulRun = now - TimeUnit.HOURS.toMillis(5);
+
+        queue.add(job);
+        queue.add(job2);
+
+        assertThat(queue.iterator()).containsExactly(job2, job);
+
+        job.myLastSuccessfulRun = now - TimeUnit.HOURS.toMillis(10);
+        job.changed();
+
+        assertThat(queue.iterator()).containsExactly(job, job2);
+        assertThat(queue.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testJobIsReindexedWhenBecomingRunnable()
+    {
+        long now = System.currentTimeMillis();
+        DummyJob job = new DummyJob(Priority.LOW);
+        DummyJob job2 = new DummyJob(Priority.LOW);
+        job.myLastSuccessfulRun = now - TimeUnit.HOURS.toMillis(2);
+        job2.myLastSuccessfulRun = now - TimeUnit.HOURS.toMillis(5);
+        job2.setRunnableIn(100);
+
+        queue.add(job);
+        queue.add(job2);
+
+        assertThat(queue.iterator()).containsExactly(job);
+
+        job2.myLastSuccessfulRun = now - TimeUnit.HOURS.toMillis(1);
+
+        await().atMost(1, TimeUnit.SECONDS).until(() -> queue.getRunnableJobCount(Priority.LOW, System.currentTimeMillis()) == 2);
+        assertThat(queue.iterator()).containsExactly(job, job2);
+        assertThat(queue.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testNotRunnableJobIsNotVisited()
+    {
+        CountingJob job = new CountingJob(Priority.LOW);
+        CountingJob job2 = new CountingJob(Priority.HIGH);
+        job2.setRunnableIn(TimeUnit.MINUTES.toMillis(10));
+
+        queue.add(job);
+        queue.add(job2);
+
+        assertThat(queue.iterator()).containsExactly(job);
+        assertThat(job.stateChecks).isEqualTo(1);
+        assertThat(job2.stateChecks).isEqualTo(0);
+    }
+
+    @Test
+    public void testRunnableJobCount()
+    {
+        DummyJob job = new DummyJob(Priority.LOW);
+        DummyJob job2 = new DummyJob(Priority.LOW);
+        DummyJob job3 = new DummyJob(Priority.HIGH);
+        job2.setRunnableIn(TimeUnit.MINUTES.toMillis(10));
+
+        queue.add(job);
+        queue.add(job2);
+        queue.add(job3);
+
+        long now = System.currentTimeMillis();
+        assertThat(queue.getRunnableJobCount(Priority.LOW, now)).isEqualTo(1);
+        assertThat(queue.size(Priority.LOW)).isEqualTo(2);
+        assertThat(queue.getRunnableJobCount(Priority.HIGH, now)).isEqualTo(1);
+        assertThat(queue.size(Priority.HIGH)).isEqualTo(1);
+
+        job.setRunnableIn(TimeUnit.MINUTES.toMillis(10));
+        queue.remove(job3);
+
+        assertThat(queue.getRunnableJobCount(Priority.LOW, now)).isEqualTo(0);
+        assertThat(queue.size(Priority.LOW)).isEqualTo(2);
+        assertThat(queue.getRunnableJobCount(Priority.HIGH, now)).isEqualTo(0);
+        assertThat(queue.size(Priority.HIGH)).isEqualTo(0);
+    }
+
+    @Test
+    public void testJobReindexedDuringIterationIsReturnedOnce()
+    {
+        long now = System.currentTimeMillis();
+        DummyJob job = new DummyJob(Priority.LOW);
+        DummyJob job2 = new DummyJob(Priority.LOW);
+        job.myLastSuccessfulRun = now - TimeUnit.HOURS.toMillis(5);
+        job2.myLastSuccessfulRun = now - TimeUnit.HOURS.toMillis(2);
+
+        queue.add(job);
+        queue.add(job2);
+
+        Iterator<ScheduledJob> iterator = queue.iterator();
+        assertThat(iterator.next()).isEqualTo(job);
+
+        job.myLastSuccessfulRun = now - TimeUnit.HOURS.toMillis(1);
+        job.changed();
+
+        assertThat(iterator).containsExactly(job2);
+        assertThat(queue.iterator()).containsExactly(job2, job);
+    }
+
+    @Test
+    public void testJobsAreSortedByDeadline()
+    {
+        ScheduledJobQueue deadlineQueue = JobOrdering.DEADLINE.createQueue();
+        Random random = new Random(0);
+        long now = System.currentTimeMillis();
+        Priority[] priorities = Priority.values();
+
+        for (int i = 0; i < 200; i++)
+        {
+            DeadlineJob job = new DeadlineJob(priorities[random.nextInt(priorities.length)]);
+            job.myLatestStartTime = now + TimeUnit.MINUTES.toMillis(random.nextInt(60 * 48));
+            deadlineQueue.add(job);
+        }
+
+        List<ScheduledJob> jobs = new ArrayList<>();
+        deadlineQueue.iterator().forEachRemaining(jobs::add);
+
+        assertThat(jobs).hasSize(200);
+        assertThat(jobs).isSortedAccordingTo(new DeadlineJobComparator());
+    }
+
+    @Test
+    public void testJobIsReindexedWhenLatestStartTimeChanges()
+    {
+        ScheduledJobQueue deadlineQueue = JobOrdering.DEADLINE.createQueue();
+        long now = System.currentTimeMillis();
+        DeadlineJob job = new DeadlineJob(Priority.LOW);
+        DeadlineJob job2 = new DeadlineJob(Priority.HIGH);
+        job.myLatestStartTime = now + TimeUnit.HOURS.toMillis(1);
+        job2.myLatestStartTime = now + TimeUnit.HOURS.toMillis(2);
+
+        deadlineQueue.add(job);
+        deadlineQueue.add(job2);
+
+        assertThat(deadlineQueue.iterator()).containsExactly(job, job2);
+
+        job.myLatestStartTime = now + TimeUnit.HOURS.toMillis(3);
+        job.changed();
+
+        assertThat(deadlineQueue.iterator()).containsExactly(job2, job);
+    }
+
     @Test
     public void testEmptyQueue()
     {
         assertThat(queue.iterator()).isEmpty();
     }
 
+    @Test
+    public void testEmptyQueueNextRunnableTime()
+    {
+        assertThat(queue.getNextRunnableTime()).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testNextRunnableTimeIsEarliestJob()
+    {
+        DummyJob job = new DummyJob(Priority.LOW);
+        DummyJob job2 = new DummyJob(Priority.HIGH);
+        job.setRunnableIn(TimeUnit.MINUTES.toMillis(10));
+        job2.setRunnableIn(TimeUnit.MINUTES.toMillis(5));
+
+        queue.add(job);
+        queue.add(job2);
+
+        assertThat(queue.getNextRunnableTime()).isEqualTo(job2.getNextRunnableTime());
+    }
+
+    @Test
+    public void testNextRunnableTimeIsUpdatedWhenJobChanges()
+    {
+        List<Long> runnableTimes = new ArrayList<>();
+        queue.setRunnableTimeListener(runnableTimes::add);
+
+        DummyJob job = new DummyJob(Priority.LOW);
+        DummyJob job2 = new DummyJob(Priority.HIGH);
+        job.setRunnableIn(TimeUnit.MINUTES.toMillis(10));
+        job2.setRunnableIn(TimeUnit.MINUTES.toMillis(5));
+
+        queue.add(job);
+        queue.add(job2);
+
+        job.setRunnableIn(TimeUnit.MINUTES.toMillis(1));
+        assertThat(queue.getNextRunnableTime()).isEqualTo(job.getNextRunnableTime());
+        assertThat(runnableTimes).containsExactly(job.getNextRunnableTime());
+
+        queue.remove(job);
+        assertThat(queue.getNextRunnableTime()).isEqualTo(job2.getNextRunnableTime());
+
+        job.setRunnableIn(0);
+        assertThat(runnableTimes).hasSize(1);
+    }
+
+    @Test
+    public void testHasRunnableJob()
+    {
+        DummyJob job = new DummyJob(Priority.HIGHEST);
+        DummyJob job2 = new DummyJob(Priority.HIGHEST);
+        job2.setRunnableIn(TimeUnit.MINUTES.toMillis(10));
+
+        queue.add(job);
+        queue.add(job2);
+
+        long now = System.currentTimeMillis();
+        assertThat(queue.hasRunnableJob(Priority.HIGHEST, now, j -> true)).isTrue();
+        assertThat(queue.hasRunnableJob(Priority.HIGHEST, now, j -> j != job)).isFalse();
+        assertThat(queue.hasRunnableJob(Priority.LOW, now, j -> true)).isFalse();
+    }
+
     @Test
     public void testNonRunnableQueueIsEmpty() throws ScheduledJobException
     {
@@ -177,6 +412,39 @@ public class TestScheduledJobQueue
         }
     }
 
+    private class DeadlineJob extends DummyJob
+    {
+        private volatile long myLatestStartTime;
+
+        DeadlineJob(Priority priority)
+        {
+            super(priority);
+        }
+
+        @Override
+        public long getLatestStartTime()
+        {
+            return myLatestStartTime;
+        }
+    }
+
+    private class CountingJob extends DummyJob
+    {
+        private int stateChecks = 0;
+
+        CountingJob(Priority priority)
+        {
+            super(priority);
+        }
+
+        @Override
+        public State getState()
+        {
+            stateChecks++;
+            return super.getState();
+        }
+    }
+
     private class StateJob extends DummyJob
     {
         private State state;
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 Telefonaktiebolaget LM Ericsson
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ericsson.bss.cassandra.ecchronos.core.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class TestTokenRangeIndex
+{
+    @Test
+    public void testEmptyIndex()
+    {
+        TokenRangeIndex<String> index = new TokenRangeIndex<>(Collections.emptyMap());
+
+        assertThat(index.size()).isEqualTo(0);
+        assertThat(index.values()).isEmpty();
+        assertThat(index.get(1, 2)).isNull();
+    }
+
+    @Test
+    public void testGetRanges()
+    {
+        Map<LongTokenRange, String> values = new HashMap<>();
+        values.put(new LongTokenRange(1, 2), "first");
+        values.put(new LongTokenRange(2, 3), "second");
+        values.put(new LongTokenRange(Long.MAX_VALUE, Long.MIN_VALUE), "wrapping");
+
+        TokenRangeIndex<String> index = new TokenRangeIndex<>(values);
+
+        assertThat(index.size()).isEqualTo(3);
+        assertThat(index.values()).containsOnly("first", "second", "wrapping");
+        assertThat(index.get(1, 2)).isEqualTo("first");
+        assertThat(index.get(2, 3)).isEqualTo("second");
+        assertThat(index.get(Long.MAX_VALUE, Long.MIN_VALUE)).isEqualTo("wrapping");
+    }
+
+    @Test
+    public void testGetUnknownRange()
+    {
+        TokenRangeIndex<String> index = new TokenRangeIndex<>(Collections.singletonMap(new LongTokenRange(1, 2), "first"));
+
+        assertThat(index.get(2, 1)).isNull();
+        assertThat(index.get(1, 3)).isNull();
+        assertThat(index.get(0, 2)).isNull();
+    }
+
+    @Test
+    public void testGetManyRanges()
+    {
+        Map<LongTokenRange, Long> values = new HashMap<>();
+        long step = Long.MAX_VALUE / 5000 * 2;
+
+        for (long start = Long.MIN_VALUE; start < Long.MAX_VALUE - step; start += step)
+        {
+            values.put(new LongTokenRange(start, start + step), start);
+        }
+
+        TokenRangeIndex<Long> index = new TokenRangeIndex<>(values);
+
+        assertThat(index.size()).isEqualTo(values.size());
+        for (LongTokenRange range : values.keySet())
+        {
+            assertThat(index.get(range.start, range.end)).isEqualTo(range.start);
+            assertThat(index.get(range.end, range.start)).isNull();
+        }
+    }
+}
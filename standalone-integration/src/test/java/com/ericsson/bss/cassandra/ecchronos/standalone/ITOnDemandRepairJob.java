@@ -39,6 +39,7 @@ import com.ericsson.bss.cassandra.ecchronos.core.repair.OnDemandRepairSchedulerI
 import com.ericsson.bss.cassandra.ecchronos.core.repair.OnDemandStatus;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.RepairConfiguration;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.RepairLockType;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.RepairNotificationDispatcher;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.state.*;
 import com.ericsson.bss.cassandra.ecchronos.core.scheduling.ScheduleManagerImpl;
 import com.ericsson.bss.cassandra.ecchronos.core.utils.*;
@@ -62,6 +63,8 @@ public class ITOnDemandRepairJob extends TestBase
 
     private static OnDemandRepairSchedulerImpl myRepairSchedulerImpl;
 
+    private static RepairNotificationDispatcher myRepairNotificationDispatcher;
+
     private static ScheduleManagerImpl myScheduleManagerImpl;
 
     private static CASLockFactory myLockFactory;
@@ -115,8 +118,11 @@ public class ITOnDemandRepairJob extends TestBase
                 .withRunInterval(100, TimeUnit.MILLISECONDS)
                 .build();
 
+        myRepairNotificationDispatcher = new RepairNotificationDispatcher();
+
         myRepairSchedulerImpl = OnDemandRepairSchedulerImpl.builder()
                 .withJmxProxyFactory(getJmxProxyFactory())
+                .withRepairNotificationDispatcher(myRepairNotificationDispatcher)
                 .withTableRepairMetrics(mockTableRepairMetrics)
                 .withScheduleManager(myScheduleManagerImpl)
                 .withRepairLockType(RepairLockType.VNODE)
@@ -149,6 +155,7 @@ public class ITOnDemandRepairJob extends TestBase
     {
         myHostStates.close();
         myRepairSchedulerImpl.close();
+        myRepairNotificationDispatcher.close();
         myScheduleManagerImpl.close();
         myLockFactory.close();
     }
@@ -41,6 +41,7 @@ import com.ericsson.bss.cassandra.ecchronos.core.TableStorageStates;
 import com.ericsson.bss.cassandra.ecchronos.core.metrics.TableRepairMetrics;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.RepairConfiguration;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.RepairLockType;
+import com.ericsson.bss.cassandra.ecchronos.core.repair.RepairNotificationDispatcher;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.RepairSchedulerImpl;
 import com.ericsson.bss.cassandra.ecchronos.core.repair.state.*;
 import com.ericsson.bss.cassandra.ecchronos.core.scheduling.ScheduleManagerImpl;
@@ -90,6 +91,8 @@ public class ITTableRepairJob extends TestBase
 
     private static RepairSchedulerImpl myRepairSchedulerImpl;
 
+    private static RepairNotificationDispatcher myRepairNotificationDispatcher;
+
     private static ScheduleManagerImpl myScheduleManagerImpl;
 
     private static CASLockFactory myLockFactory;
@@ -168,8 +171,11 @@ public class ITTableRepairJob extends TestBase
                 .withTableRepairMetrics(mockTableRepairMetrics)
                 .build();
 
+        myRepairNotificationDispatcher = new RepairNotificationDispatcher();
+
         myRepairSchedulerImpl = RepairSchedulerImpl.builder()
                 .withJmxProxyFactory(getJmxProxyFactory())
+                .withRepairNotificationDispatcher(myRepairNotificationDispatcher)
                 .withTableRepairMetrics(mockTableRepairMetrics)
                 .withFaultReporter(mockFaultReporter)
                 .withScheduleManager(myScheduleManagerImpl)
@@ -222,6 +228,7 @@ public class ITTableRepairJob extends TestBase
     {
         myHostStates.close();
         myRepairSchedulerImpl.close();
+        myRepairNotificationDispatcher.close();
         myScheduleManagerImpl.close();
         myLockFactory.close();
     }